@@ -18,15 +18,16 @@
 package iexport;
 
 import iexport.itunes.Library;
+import iexport.logging.AsyncLogger;
 import iexport.logging.LogLevel;
 import iexport.logging.Logging;
 import iexport.parsing.ITunesParsingException;
+import iexport.parsing.LibraryInput;
 import iexport.parsing.LibraryParser;
 import iexport.settings.*;
 import iexport.tasks.Task;
 import iexport.tasks.TaskRegistry;
 
-import java.io.File;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -106,6 +107,12 @@ public class IExport
         Logging.getLogger().debug("Using logLevel " + logLevel);
         Logging.getLogger().setLogLevel(logLevel);
 
+        // Switch to writing the output on a background thread if requested
+        if (generalSettings.getAsyncLogging())
+        {
+            Logging.setLogger(new AsyncLogger(logLevel));
+        }
+
         // Notify the user of any settings that have been set in the .yaml file but that actually do not exist
         reportPotentialMistakesInSettings(settingsTriple);
 
@@ -119,12 +126,20 @@ public class IExport
             taskName = args[1];
         }
 
+        // Interactive mode reads the task name from STDIN, which cannot also provide the library
+        boolean interactiveMode = INTERACTIVE_MODE_NAMES.stream().anyMatch(taskName::equalsIgnoreCase);
+        if (interactiveMode && LibraryInput.STDIN_PATH.equals(settingsTriple.parsingSettings().getXmlFilePathString()))
+        {
+            Logging.getLogger().error("Cannot use interactive mode while reading the library from STDIN; specify the task in the settings or on the command line");
+            System.exit(EXIT_CODE_ERROR);
+        }
+
         // Parse the library.
         Library library = parseLibrary(settingsTriple);
 
         // Get the task object.
         Task task;
-        if (INTERACTIVE_MODE_NAMES.stream().anyMatch(taskName::equalsIgnoreCase))
+        if (interactiveMode)
         {
             // Get the task using interactive mode.
             task = getTaskUsingInteractiveMode();
@@ -180,6 +195,7 @@ public class IExport
             Logging.getLogger().error("Exception: " + e.getClass().getSimpleName());
             Logging.getLogger().error("Message: " + e.getMessage());
             Logging.getLogger().message("Trace: ");
+            Logging.getLogger().flush();
             e.printStackTrace();
             System.exit(EXIT_CODE_ERROR);
         }
@@ -200,8 +216,8 @@ public class IExport
 
         long startParsing = System.nanoTime();
 
-        File file = new File(libraryXmlFilePathString);
-        LibraryParser iTunesLibraryParser = new LibraryParser(file, settingsTriple.parsingSettings());
+        LibraryInput libraryInput = LibraryInput.fromPath(libraryXmlFilePathString);
+        LibraryParser iTunesLibraryParser = new LibraryParser(libraryInput, settingsTriple.parsingSettings());
 
         Library library;
         try
@@ -307,6 +323,7 @@ public class IExport
             TaskRegistry.getHelpTask().printListOfTasks(false);
 
             Logging.getLogger().message("");
+            Logging.getLogger().flush();
             System.out.print("Type a task name: ");
             Scanner scanner = new Scanner(System.in);
             String taskName = scanner.next();
@@ -72,6 +72,7 @@ import java.util.Objects;
  *                             the penultimate entry of ancestry is the parent of this playlist,
  *                             the last entry of ancestry is this playlist itself
  * @param tracks               the list of tracks contained in the playlist
+ *                             (for parsed libraries, a view of the {@link PlaylistMembership} of the library)
  * @param children             the list of child playlists
  */
 public record Playlist
@@ -104,7 +105,8 @@ public record Playlist
         )
 {
     /**
-     * Constructor that sets {@link #tracks} amd {@link #children} to an empty {@link ArrayList} each
+     * Constructor that sets {@link #tracks} to an empty {@link PlaylistMembership.PlaylistTracks},
+     * {@link #ancestry} amd {@link #children} to an empty {@link ArrayList} each,
      * and otherwise behaves as the canonical constructor.
      */
     public Playlist (Integer playlistId,
@@ -139,7 +141,7 @@ public record Playlist
                 audiobooks,
                 parent,
                 new ArrayList<>(),
-                new ArrayList<>(),
+                new PlaylistMembership.PlaylistTracks(),
                 new ArrayList<>()
         );
     }
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.itunes;
+
+import iexport.utils.IntList;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Which tracks are contained in which playlists, stored in compressed sparse row format in both directions.
+ * <p>
+ * Tracks and playlists are identified by their ordinals, i.e. their positions in the lists passed to {@link #build(List, List, List)}.
+ * The ordinals of the tracks of playlist {@code p} are {@code trackOrdinals[trackOffsets[p]]} up to (exclusively) {@code trackOrdinals[trackOffsets[p + 1]]},
+ * and the ordinals of the playlists containing track {@code t} are stored in the same way in {@link #playlistOrdinals}.
+ * <p>
+ * {@link Playlist#tracks()} and {@link Track#inPlaylists()} are views of type {@link PlaylistTracks} and {@link TrackPlaylists}
+ * over these arrays instead of a list and a hash set per object.
+ * Tracks that are added to a playlist after the membership has been built (e.g. to a smart playlist)
+ * are stored in a small list inside the views.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class PlaylistMembership
+{
+    /**
+     * The tracks by their ordinals.
+     */
+    private final Track[] tracks;
+
+    /**
+     * The playlists by their ordinals.
+     */
+    private final Playlist[] playlists;
+
+    /**
+     * For each playlist ordinal, the start of its row in {@link #trackOrdinals}, followed by the total number of entries.
+     */
+    private final int[] trackOffsets;
+
+    /**
+     * The ordinals of the tracks of each playlist, in the order of the playlist, including duplicates.
+     */
+    private final int[] trackOrdinals;
+
+    /**
+     * For each track ordinal, the start of its row in {@link #playlistOrdinals}, followed by the total number of entries.
+     */
+    private final int[] playlistOffsets;
+
+    /**
+     * The ordinals of the playlists containing each track, in ascending order and without duplicates.
+     */
+    private final int[] playlistOrdinals;
+
+    /**
+     * @param tracks           the tracks by their ordinals
+     * @param playlists        the playlists by their ordinals
+     * @param trackOffsets     the start of the row of each playlist in trackOrdinals
+     * @param trackOrdinals    the ordinals of the tracks of each playlist
+     * @param playlistOffsets  the start of the row of each track in playlistOrdinals
+     * @param playlistOrdinals the ordinals of the playlists containing each track
+     */
+    private PlaylistMembership (Track[] tracks, Playlist[] playlists, int[] trackOffsets, int[] trackOrdinals, int[] playlistOffsets, int[] playlistOrdinals)
+    {
+        this.tracks = tracks;
+        this.playlists = playlists;
+        this.trackOffsets = trackOffsets;
+        this.trackOrdinals = trackOrdinals;
+        this.playlistOffsets = playlistOffsets;
+        this.playlistOrdinals = playlistOrdinals;
+    }
+
+    /**
+     * Build the membership and make {@link Playlist#tracks()} and {@link Track#inPlaylists()} views of it.
+     * <p>
+     * If a playlist or track has not been constructed with such a view (e.g. using the canonical constructor with another collection),
+     * its collection is filled instead.
+     *
+     * @param tracks                    the tracks, their positions are their ordinals
+     * @param playlists                 the playlists, their positions are their ordinals
+     * @param trackOrdinalsOfPlaylists  for each playlist, the ordinals of its tracks in the order of the playlist
+     * @return the membership
+     */
+    public static PlaylistMembership build (List<Track> tracks, List<Playlist> playlists, List<IntList> trackOrdinalsOfPlaylists)
+    {
+        int trackCount = tracks.size();
+        int playlistCount = playlists.size();
+        if (trackOrdinalsOfPlaylists.size() != playlistCount)
+        {
+            throw new IllegalArgumentException("Got " + trackOrdinalsOfPlaylists.size() + " rows for " + playlistCount + " playlists");
+        }
+
+        // The rows of the playlists are simply concatenated.
+        int[] trackOffsets = new int[playlistCount + 1];
+        for (int p = 0; p < playlistCount; p++)
+        {
+            trackOffsets[p + 1] = trackOffsets[p] + trackOrdinalsOfPlaylists.get(p).size();
+        }
+        int[] trackOrdinals = new int[trackOffsets[playlistCount]];
+        for (int p = 0; p < playlistCount; p++)
+        {
+            IntList row = trackOrdinalsOfPlaylists.get(p);
+            for (int i = 0; i < row.size(); i++)
+            {
+                int t = row.get(i);
+                if (t < 0 || t >= trackCount)
+                {
+                    throw new IllegalArgumentException("Track ordinal " + t + " of playlist " + playlists.get(p) + " out of bounds for " + trackCount + " tracks");
+                }
+                trackOrdinals[trackOffsets[p] + i] = t;
+            }
+        }
+
+        // Transpose them, counting each playlist at most once per track.
+        // Since the playlists are visited in ascending order, a duplicate is always the last playlist recorded for the track.
+        int[] lastPlaylist = new int[trackCount];
+        Arrays.fill(lastPlaylist, -1);
+        int[] playlistOffsets = new int[trackCount + 1];
+        for (int p = 0; p < playlistCount; p++)
+        {
+            for (int i = trackOffsets[p]; i < trackOffsets[p + 1]; i++)
+            {
+                int t = trackOrdinals[i];
+                if (lastPlaylist[t] != p)
+                {
+                    lastPlaylist[t] = p;
+                    playlistOffsets[t + 1]++;
+                }
+            }
+        }
+        for (int t = 0; t < trackCount; t++)
+        {
+            playlistOffsets[t + 1] += playlistOffsets[t];
+        }
+
+        int[] playlistOrdinals = new int[playlistOffsets[trackCount]];
+        int[] next = Arrays.copyOf(playlistOffsets, trackCount);
+        Arrays.fill(lastPlaylist, -1);
+        for (int p = 0; p < playlistCount; p++)
+        {
+            for (int i = trackOffsets[p]; i < trackOffsets[p + 1]; i++)
+            {
+                int t = trackOrdinals[i];
+                if (lastPlaylist[t] != p)
+                {
+                    lastPlaylist[t] = p;
+                    playlistOrdinals[next[t]++] = p;
+                }
+            }
+        }
+
+        PlaylistMembership membership = new PlaylistMembership(tracks.toArray(new Track[0]), playlists.toArray(new Playlist[0]),
+                trackOffsets, trackOrdinals, playlistOffsets, playlistOrdinals);
+        membership.bindViews();
+        return membership;
+    }
+
+    /**
+     * Make the views of the tracks and playlists refer to their rows.
+     */
+    private void bindViews ()
+    {
+        for (int t = 0; t < tracks.length; t++)
+        {
+            if (tracks[t].inPlaylists() instanceof TrackPlaylists view)
+            {
+                view.bind(this, t);
+            }
+            else
+            {
+                for (int i = playlistOffsets[t]; i < playlistOffsets[t + 1]; i++)
+                {
+                    tracks[t].inPlaylists().add(playlists[playlistOrdinals[i]]);
+                }
+            }
+        }
+
+        for (int p = 0; p < playlists.length; p++)
+        {
+            if (playlists[p].tracks() instanceof PlaylistTracks view)
+            {
+                view.bind(this, p);
+            }
+            else
+            {
+                for (int i = trackOffsets[p]; i < trackOffsets[p + 1]; i++)
+                {
+                    playlists[p].tracks().add(tracks[trackOrdinals[i]]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param track a track
+     * @return the ordinal of the track in this membership, or -1 if it does not belong to it
+     */
+    private int ordinalOf (Track track)
+    {
+        if (track.inPlaylists() instanceof TrackPlaylists view && view.membership == this)
+        {
+            return view.ordinal;
+        }
+        return -1;
+    }
+
+    /**
+     * The tracks of a playlist, a view of its row in a {@link PlaylistMembership}.
+     * <p>
+     * Before the membership has been built, the view is empty.
+     * Tracks can only be appended; they are stored in a separate list.
+     * Entries can be replaced by other tracks of the same membership, so the list can be sorted.
+     */
+    public static class PlaylistTracks extends AbstractList<Track> implements RandomAccess
+    {
+        /**
+         * The membership, or null if it has not been built yet.
+         */
+        private PlaylistMembership membership = null;
+
+        /**
+         * The start of the row in {@link PlaylistMembership#trackOrdinals}.
+         */
+        private int start = 0;
+
+        /**
+         * The length of the row.
+         */
+        private int rowSize = 0;
+
+        /**
+         * The tracks that have been appended, or null if there are none.
+         */
+        private List<Track> appended = null;
+
+        /**
+         * @param membership the membership
+         * @param ordinal    the ordinal of the playlist
+         */
+        private void bind (PlaylistMembership membership, int ordinal)
+        {
+            this.membership = membership;
+            this.start = membership.trackOffsets[ordinal];
+            this.rowSize = membership.trackOffsets[ordinal + 1] - start;
+            modCount++;
+        }
+
+        @Override
+        public Track get (int index)
+        {
+            if (index < 0 || index >= size())
+            {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+            }
+            if (index < rowSize)
+            {
+                return membership.tracks[membership.trackOrdinals[start + index]];
+            }
+            return appended.get(index - rowSize);
+        }
+
+        @Override
+        public Track set (int index, Track track)
+        {
+            if (index < 0 || index >= size())
+            {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+            }
+            if (index >= rowSize)
+            {
+                return appended.set(index - rowSize, track);
+            }
+
+            int ordinal = membership.ordinalOf(track);
+            if (ordinal < 0)
+            {
+                throw new IllegalArgumentException("Track " + track + " does not belong to the library of this playlist");
+            }
+            Track previous = get(index);
+            membership.trackOrdinals[start + index] = ordinal;
+            return previous;
+        }
+
+        @Override
+        public void add (int index, Track track)
+        {
+            if (index < rowSize || index > size())
+            {
+                throw new UnsupportedOperationException("Tracks can only be appended to the tracks of a playlist");
+            }
+            if (appended == null)
+            {
+                appended = new ArrayList<>();
+            }
+            appended.add(index - rowSize, track);
+            modCount++;
+        }
+
+        @Override
+        public int size ()
+        {
+            return rowSize + (appended == null ? 0 : appended.size());
+        }
+    }
+
+    /**
+     * The playlists containing a track, a view of its row in a {@link PlaylistMembership}.
+     * <p>
+     * Before the membership has been built, the view is empty.
+     * Playlists can be added; they are stored in a separate list.
+     */
+    public static class TrackPlaylists extends AbstractSet<Playlist>
+    {
+        /**
+         * The membership, or null if it has not been built yet.
+         */
+        private PlaylistMembership membership = null;
+
+        /**
+         * The ordinal of the track in the membership.
+         */
+        private int ordinal = -1;
+
+        /**
+         * The playlists that have been added, or null if there are none.
+         */
+        private List<Playlist> added = null;
+
+        /**
+         * @param membership the membership
+         * @param ordinal    the ordinal of the track
+         */
+        private void bind (PlaylistMembership membership, int ordinal)
+        {
+            this.membership = membership;
+            this.ordinal = ordinal;
+        }
+
+        /**
+         * @return the length of the row
+         */
+        private int rowSize ()
+        {
+            return membership == null ? 0 : membership.playlistOffsets[ordinal + 1] - membership.playlistOffsets[ordinal];
+        }
+
+        @Override
+        public boolean add (Playlist playlist)
+        {
+            if (contains(playlist))
+            {
+                return false;
+            }
+            if (added == null)
+            {
+                added = new ArrayList<>();
+            }
+            return added.add(playlist);
+        }
+
+        @Override
+        public Iterator<Playlist> iterator ()
+        {
+            return new Iterator<>()
+            {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext ()
+                {
+                    return index < size();
+                }
+
+                @Override
+                public Playlist next ()
+                {
+                    if (!hasNext())
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    int rowSize = rowSize();
+                    Playlist playlist = index < rowSize
+                            ? membership.playlists[membership.playlistOrdinals[membership.playlistOffsets[ordinal] + index]]
+                            : added.get(index - rowSize);
+                    index++;
+                    return playlist;
+                }
+            };
+        }
+
+        @Override
+        public int size ()
+        {
+            return rowSize() + (added == null ? 0 : added.size());
+        }
+    }
+}
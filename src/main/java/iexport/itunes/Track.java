@@ -18,7 +18,6 @@
 package iexport.itunes;
 
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
@@ -246,6 +245,7 @@ import java.util.Set;
  * @param inPlaylists         the playlists this track is contained in.
  *                            <p>
  *                            This is NOT a property of an iTunes track that is parsed from the .xml file.
+ *                            For parsed libraries, it is a view of the {@link PlaylistMembership} of the library.
  */
 public record Track
         (
@@ -310,7 +310,7 @@ public record Track
         )
 {
     /**
-     * Constructor that sets {@link #inPlaylists} to an empty {@link HashSet} and otherwise behaves as the canonical constructor.
+     * Constructor that sets {@link #inPlaylists} to an empty {@link PlaylistMembership.TrackPlaylists} and otherwise behaves as the canonical constructor.
      */
     public Track (Integer trackId,
                   String location,
@@ -366,7 +366,7 @@ public record Track
                   String genre)
     {
         this(trackId,
-                year, trackCount, trackNumber, discNumber, discCount, totalTime, bitRate, sampleRate, size, rating, albumRating, bpm, playCount, skipCount, startTime, stopTime, volumeAdjustment, fileFolderCount, libraryFolderCount, artWorkCount, playDate, persistentId, location, name, sortName, artist, sortArtist, album, sortAlbum, albumArtist, sortAlbumArtist, sortComposer, composer, kind, work, grouping, genre, comments, equalizer, trackType, ratingComputed, albumRatingComputed, compilation, disabled, disliked, loved, dateAdded, dateModified, releaseDate, playDateUTC, skipDate, new HashSet<>()
+                year, trackCount, trackNumber, discNumber, discCount, totalTime, bitRate, sampleRate, size, rating, albumRating, bpm, playCount, skipCount, startTime, stopTime, volumeAdjustment, fileFolderCount, libraryFolderCount, artWorkCount, playDate, persistentId, location, name, sortName, artist, sortArtist, album, sortAlbum, albumArtist, sortAlbumArtist, sortComposer, composer, kind, work, grouping, genre, comments, equalizer, trackType, ratingComputed, albumRatingComputed, compilation, disabled, disliked, loved, dateAdded, dateModified, releaseDate, playDateUTC, skipDate, new PlaylistMembership.TrackPlaylists()
         );
     }
 
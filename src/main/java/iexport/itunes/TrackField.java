@@ -0,0 +1,264 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.itunes;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The scalar fields of a {@link Track}, i.e. all record components except {@link Track#inPlaylists()}.
+ * <p>
+ * This allows code that works with arbitrary fields (e.g. queries, statistics, or tabular exports)
+ * to refer to a field by its name (the name of the record component, e.g. {@code playCount})
+ * and to access its value in a uniform way.
+ * <p>
+ * Each field has one of four {@link Type types}.
+ * Fields of type {@link Type#NUMBER} and {@link Type#DATE} can be accessed as {@code long} using {@link #getLong(Track)};
+ * dates are represented as milliseconds since the epoch.
+ * <p>
+ * iTunes omits the play count and the skip count of tracks that have never been played or skipped,
+ * so {@link #getLong(Track)} treats a missing value of these fields as 0.
+ */
+public enum TrackField
+{
+    TRACK_ID("trackId", Type.NUMBER, Track::trackId),
+    YEAR("year", Type.NUMBER, Track::year),
+    TRACK_COUNT("trackCount", Type.NUMBER, Track::trackCount),
+    TRACK_NUMBER("trackNumber", Type.NUMBER, Track::trackNumber),
+    DISC_NUMBER("discNumber", Type.NUMBER, Track::discNumber),
+    DISC_COUNT("discCount", Type.NUMBER, Track::discCount),
+    TOTAL_TIME("totalTime", Type.NUMBER, Track::totalTime),
+    BIT_RATE("bitRate", Type.NUMBER, Track::bitRate),
+    SAMPLE_RATE("sampleRate", Type.NUMBER, Track::sampleRate),
+    SIZE("size", Type.NUMBER, Track::size),
+    RATING("rating", Type.NUMBER, Track::rating),
+    ALBUM_RATING("albumRating", Type.NUMBER, Track::albumRating),
+    BPM("bpm", Type.NUMBER, Track::bpm),
+    PLAY_COUNT("playCount", Type.NUMBER, Track::playCount, true),
+    SKIP_COUNT("skipCount", Type.NUMBER, Track::skipCount, true),
+    START_TIME("startTime", Type.NUMBER, Track::startTime),
+    STOP_TIME("stopTime", Type.NUMBER, Track::stopTime),
+    VOLUME_ADJUSTMENT("volumeAdjustment", Type.NUMBER, Track::volumeAdjustment),
+    FILE_FOLDER_COUNT("fileFolderCount", Type.NUMBER, Track::fileFolderCount),
+    LIBRARY_FOLDER_COUNT("libraryFolderCount", Type.NUMBER, Track::libraryFolderCount),
+    ART_WORK_COUNT("artWorkCount", Type.NUMBER, Track::artWorkCount),
+    PLAY_DATE("playDate", Type.NUMBER, Track::playDate),
+    PERSISTENT_ID("persistentId", Type.STRING, Track::persistentId),
+    LOCATION("location", Type.STRING, Track::location),
+    NAME("name", Type.STRING, Track::name),
+    SORT_NAME("sortName", Type.STRING, Track::sortName),
+    ARTIST("artist", Type.STRING, Track::artist),
+    SORT_ARTIST("sortArtist", Type.STRING, Track::sortArtist),
+    ALBUM("album", Type.STRING, Track::album),
+    SORT_ALBUM("sortAlbum", Type.STRING, Track::sortAlbum),
+    ALBUM_ARTIST("albumArtist", Type.STRING, Track::albumArtist),
+    SORT_ALBUM_ARTIST("sortAlbumArtist", Type.STRING, Track::sortAlbumArtist),
+    SORT_COMPOSER("sortComposer", Type.STRING, Track::sortComposer),
+    COMPOSER("composer", Type.STRING, Track::composer),
+    KIND("kind", Type.STRING, Track::kind),
+    WORK("work", Type.STRING, Track::work),
+    GROUPING("grouping", Type.STRING, Track::grouping),
+    GENRE("genre", Type.STRING, Track::genre),
+    COMMENTS("comments", Type.STRING, Track::comments),
+    EQUALIZER("equalizer", Type.STRING, Track::equalizer),
+    TRACK_TYPE("trackType", Type.STRING, Track::trackType),
+    RATING_COMPUTED("ratingComputed", Type.BOOLEAN, Track::ratingComputed),
+    ALBUM_RATING_COMPUTED("albumRatingComputed", Type.BOOLEAN, Track::albumRatingComputed),
+    COMPILATION("compilation", Type.BOOLEAN, Track::compilation),
+    DISABLED("disabled", Type.BOOLEAN, Track::disabled),
+    DISLIKED("disliked", Type.BOOLEAN, Track::disliked),
+    LOVED("loved", Type.BOOLEAN, Track::loved),
+    DATE_ADDED("dateAdded", Type.DATE, Track::dateAdded),
+    DATE_MODIFIED("dateModified", Type.DATE, Track::dateModified),
+    RELEASE_DATE("releaseDate", Type.DATE, Track::releaseDate),
+    PLAY_DATE_UTC("playDateUTC", Type.DATE, Track::playDateUTC),
+    SKIP_DATE("skipDate", Type.DATE, Track::skipDate);
+
+    /**
+     * The type of field.
+     */
+    public enum Type
+    {
+        /**
+         * An {@link Integer} or {@link Long}.
+         */
+        NUMBER,
+
+        /**
+         * A {@link String}.
+         */
+        STRING,
+
+        /**
+         * A {@link Boolean}.
+         */
+        BOOLEAN,
+
+        /**
+         * A {@link Date}.
+         */
+        DATE
+    }
+
+    /**
+     * The fields by their name in lower case.
+     */
+    private static final Map<String, TrackField> FIELDS_BY_NAME = new HashMap<>();
+
+    static
+    {
+        for (TrackField field : values())
+        {
+            FIELDS_BY_NAME.put(field.getName().toLowerCase(Locale.ROOT), field);
+        }
+    }
+
+    /**
+     * The name of the field, i.e. the name of the record component.
+     */
+    private final String name;
+
+    /**
+     * The type of the field.
+     */
+    private final Type type;
+
+    /**
+     * The accessor for the field.
+     */
+    private final Function<Track, ?> accessor;
+
+    /**
+     * Whether {@link #getLong(Track)} should return 0 instead of null if the track has no value for the field.
+     */
+    private final boolean missingIsZero;
+
+    /**
+     * @param name     the name of the field
+     * @param type     the type of the field
+     * @param accessor the accessor for the field
+     */
+    TrackField (String name, Type type, Function<Track, ?> accessor)
+    {
+        this(name, type, accessor, false);
+    }
+
+    /**
+     * @param name          the name of the field
+     * @param type          the type of the field
+     * @param accessor      the accessor for the field
+     * @param missingIsZero whether {@link #getLong(Track)} should return 0 instead of null if the track has no value for the field
+     */
+    TrackField (String name, Type type, Function<Track, ?> accessor, boolean missingIsZero)
+    {
+        this.name = name;
+        this.type = type;
+        this.accessor = accessor;
+        this.missingIsZero = missingIsZero;
+    }
+
+    /**
+     * Look up a field by its name, ignoring case.
+     *
+     * @param name the name of a field, e.g. {@code playCount}
+     * @return the field, or null if there is no field of that name
+     */
+    public static TrackField forName (String name)
+    {
+        return FIELDS_BY_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the names of all fields
+     */
+    public static List<String> getNames ()
+    {
+        return Arrays.stream(values()).map(TrackField::getName).toList();
+    }
+
+    /**
+     * @return the name of the field, i.e. the name of the record component
+     */
+    public String getName ()
+    {
+        return name;
+    }
+
+    /**
+     * @return the type of the field
+     */
+    public Type getType ()
+    {
+        return type;
+    }
+
+    /**
+     * @return true if the value of this field can be accessed via {@link #getLong(Track)}
+     */
+    public boolean isNumeric ()
+    {
+        return type == Type.NUMBER || type == Type.DATE;
+    }
+
+    /**
+     * @param track a track
+     * @return the value of this field for the track (may be null)
+     */
+    public Object getValue (Track track)
+    {
+        return accessor.apply(track);
+    }
+
+    /**
+     * Get the value of a field of type {@link Type#NUMBER} or {@link Type#DATE} as long.
+     * <p>
+     * For {@link #PLAY_COUNT} and {@link #SKIP_COUNT}, a missing value is returned as 0, see {@link TrackField}.
+     *
+     * @param track a track
+     * @return the value of this field (dates in milliseconds since the epoch), or null if the track has no value for it
+     */
+    public Long getLong (Track track)
+    {
+        Object value = accessor.apply(track);
+
+        if (value == null)
+        {
+            return missingIsZero ? 0L : null;
+        }
+        if (value instanceof Number number)
+        {
+            return number.longValue();
+        }
+        if (value instanceof Date date)
+        {
+            return date.getTime();
+        }
+
+        throw new RuntimeException("Field " + name + " of type " + type + " has no numeric value");
+    }
+
+    /**
+     * @param track a track
+     * @return the value of this field as string, or null if the track has no value for it
+     */
+    public String getString (Track track)
+    {
+        Object value = accessor.apply(track);
+        return value == null ? null : value.toString();
+    }
+}
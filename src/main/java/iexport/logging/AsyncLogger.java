@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A logger that logs all messages up to a specified log level to STDOUT, like {@link StdoutLogger},
+ * but hands the messages to a background thread instead of printing them on the calling thread.
+ * <p>
+ * Messages are put into a bounded ring buffer ({@link ArrayBlockingQueue} with capacity {@value #CAPACITY}).
+ * The writer thread takes all messages that are currently in the buffer at once,
+ * formats them into a single block of text, writes it to STDOUT, and then flushes once per block,
+ * so a task that logs hundreds of thousands of lines does not pay for a flush per line.
+ * If the buffer is full, logging blocks until the writer thread has caught up, so no message is lost.
+ * <p>
+ * Messages are written in the order in which they have been logged.
+ * Because they are written later, {@link #flush()} has to be called before writing to STDOUT directly.
+ * A shutdown hook flushes the logger when the application exits, also via {@link System#exit}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class AsyncLogger extends Logger
+{
+    /**
+     * The capacity of the ring buffer.
+     */
+    private static final int CAPACITY = 1 << 14;
+
+    /**
+     * The size of the buffer of the writer for STDOUT.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Should output messages be prefixes with their log level?
+     */
+    private static final boolean USE_PREFIXES = true;
+
+    /**
+     * The messages that have been logged, but not yet written.
+     */
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(CAPACITY);
+
+    /**
+     * The writer for STDOUT.
+     */
+    private final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, UTF_8), BUFFER_SIZE);
+
+    /**
+     * The writer thread.
+     */
+    private final Thread writerThread;
+
+    /**
+     * The number of messages that have been put into the buffer (or are about to be).
+     */
+    private final AtomicLong logged = new AtomicLong();
+
+    /**
+     * Lock for {@link #written}, notified whenever messages have been written.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The number of messages that have been written.
+     */
+    private long written = 0;
+
+    /**
+     * The messages of which log level should we accept?
+     */
+    private volatile LogLevel verbosity;
+
+    /**
+     * Create the logger and start its writer thread.
+     *
+     * @param logLevel the initial log level
+     */
+    public AsyncLogger (LogLevel logLevel)
+    {
+        this.verbosity = logLevel;
+
+        writerThread = new Thread(this::writeMessages, "iExport logger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "iExport logger shutdown"));
+    }
+
+    /**
+     * Log a message with the specified log level and the specified amount of indentation.
+     * <p>
+     * If the {@link #verbosity} of the logger is set to more than {@code logLevel}, the message will be discarded.
+     * Otherwise, it will be put into the buffer and later be formatted as described in {@link StdoutLogger#log}.
+     *
+     * @param logLevel    the log level of the message.
+     * @param indentation the amount of indentation to use.
+     * @param message     the message.
+     */
+    @Override
+    public void log (LogLevel logLevel, int indentation, String message)
+    {
+        if (!isEnabled(logLevel))
+        {
+            return;
+        }
+
+        // Count before putting, so that flush() cannot miss a message that has already been taken.
+        logged.incrementAndGet();
+        try
+        {
+            queue.put(new Entry(logLevel, indentation, message));
+        }
+        catch (InterruptedException e)
+        {
+            logged.decrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public LogLevel getLogLevel ()
+    {
+        return verbosity;
+    }
+
+    @Override
+    public void setLogLevel (LogLevel logLevel)
+    {
+        verbosity = logLevel;
+    }
+
+    /**
+     * Wait until all messages that have been logged so far have been written and flushed.
+     * <p>
+     * Returns early if the writer thread has stopped, e.g. because writing to STDOUT failed.
+     */
+    @Override
+    public void flush ()
+    {
+        long target = logged.get();
+        synchronized (lock)
+        {
+            while (written < target && writerThread.isAlive())
+            {
+                try
+                {
+                    lock.wait(100);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The loop of the writer thread: take all messages in the buffer, write them as one block, flush, repeat.
+     */
+    private void writeMessages ()
+    {
+        List<Entry> batch = new ArrayList<>();
+        StringBuilder builder = new StringBuilder(BUFFER_SIZE);
+
+        try
+        {
+            while (true)
+            {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+
+                builder.setLength(0);
+                for (Entry entry : batch)
+                {
+                    LogFormatter.append(builder, USE_PREFIXES ? LogFormatter.getPrefix(entry.logLevel()) : "", entry.indentation(), entry.message());
+                }
+                out.append(builder);
+                out.flush();
+
+                synchronized (lock)
+                {
+                    written += batch.size();
+                    lock.notifyAll();
+                }
+                batch.clear();
+            }
+        }
+        catch (InterruptedException | IOException e)
+        {
+            // Stop writing; flush() notices that the thread is no longer alive.
+        }
+    }
+
+    /**
+     * A message that has been logged.
+     *
+     * @param logLevel    the log level of the message
+     * @param indentation the amount of indentation to use
+     * @param message     the message
+     */
+    private record Entry(LogLevel logLevel, int indentation, String message)
+    {
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A logger that keeps the messages instead of logging them,
+ * until they are either passed on to another logger using {@link #replay()} or dropped.
+ * <p>
+ * This is used for work whose result may be discarded and redone, e.g. parsing a chunk of the library,
+ * so that its messages are only logged once, see {@link Logging#setThreadLogger(Logger)}.
+ * <p>
+ * The log level is the one of the logger to which the messages are passed on.
+ * This class is not thread-safe, each thread should use its own instance.
+ */
+public class BufferingLogger extends Logger
+{
+    /**
+     * The logger to which the messages are passed on.
+     */
+    private final Logger target;
+
+    /**
+     * The messages that have been logged so far.
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * @param target the logger to which the messages are passed on
+     */
+    public BufferingLogger (Logger target)
+    {
+        this.target = target;
+    }
+
+    @Override
+    public void log (LogLevel logLevel, int indentation, String message)
+    {
+        if (isEnabled(logLevel))
+        {
+            entries.add(new Entry(logLevel, indentation, message));
+        }
+    }
+
+    @Override
+    public boolean isEnabled (LogLevel logLevel)
+    {
+        return target.isEnabled(logLevel);
+    }
+
+    @Override
+    public LogLevel getLogLevel ()
+    {
+        return target.getLogLevel();
+    }
+
+    @Override
+    public void setLogLevel (LogLevel logLevel)
+    {
+        target.setLogLevel(logLevel);
+    }
+
+    /**
+     * Pass the messages that have been logged so far on to the target logger, in the order in which they have been logged.
+     */
+    public void replay ()
+    {
+        for (Entry entry : entries)
+        {
+            target.log(entry.logLevel(), entry.indentation(), entry.message());
+        }
+        entries.clear();
+    }
+
+    /**
+     * A message that has been logged.
+     *
+     * @param logLevel    the log level
+     * @param indentation the indentation with which the message shall be printed
+     * @param message     the message
+     */
+    private record Entry(LogLevel logLevel, int indentation, String message)
+    {
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.logging;
+
+/**
+ * Formats log messages for output, shared by {@link StdoutLogger} and {@link AsyncLogger}.
+ * <p>
+ * A message is split into lines (at {@code \n}, {@code \r\n}, or {@code \r}; trailing empty lines are dropped),
+ * and each line is prefixed by the indentation and a prefix depending on the log level.
+ * The lines are appended to a {@link StringBuilder}, without using regular expressions or intermediate strings.
+ */
+final class LogFormatter
+{
+    /**
+     * How much indentation to use for each level of indentation?
+     * <p>
+     * If the {@code indentation} parameter of {@link Logger#log} is set to {@code n},
+     * this string will be repeated {@code n} times.
+     */
+    private static final String BASE_INDENTATION = "    "; // 4 spaces
+
+    /**
+     * The indentation strings for the most common levels of indentation.
+     */
+    private static final String[] INDENTATIONS = new String[16];
+
+    static
+    {
+        for (int i = 0; i < INDENTATIONS.length; i++)
+        {
+            INDENTATIONS[i] = BASE_INDENTATION.repeat(i);
+        }
+    }
+
+    /**
+     * This class should not be instantiated.
+     */
+    private LogFormatter ()
+    {
+
+    }
+
+    /**
+     * @param logLevel a log level
+     * @return the prefix that is prepended to every line of a message with the log level
+     */
+    static String getPrefix (LogLevel logLevel)
+    {
+        return switch (logLevel)
+                {
+                    case DEBUG -> "DEBUG: ";
+                    case NORMAL -> "";
+                    case WARNING -> "WARNING: ";
+                    case ERROR -> "ERROR: ";
+                };
+    }
+
+    /**
+     * Append a message, formatted as lines that each end with {@code \n}.
+     *
+     * @param builder     the builder
+     * @param prefix      the prefix for every line
+     * @param indentation the amount of indentation
+     * @param message     the message
+     */
+    static void append (StringBuilder builder, String prefix, int indentation, String message)
+    {
+        String indentationString = indentation < INDENTATIONS.length ? INDENTATIONS[indentation] : BASE_INDENTATION.repeat(indentation);
+
+        // Drop trailing line breaks, but keep a single empty line for an empty message.
+        int end = message.length();
+        while (end > 0 && (message.charAt(end - 1) == '\n' || message.charAt(end - 1) == '\r'))
+        {
+            end--;
+        }
+
+        int start = 0;
+        while (true)
+        {
+            int lineEnd = start;
+            while (lineEnd < end && message.charAt(lineEnd) != '\n' && message.charAt(lineEnd) != '\r')
+            {
+                lineEnd++;
+            }
+
+            builder.append(indentationString).append(prefix).append(message, start, lineEnd).append('\n');
+
+            if (lineEnd >= end)
+            {
+                return;
+            }
+
+            // Skip the line break, treating \r\n as a single line break.
+            start = lineEnd + 1;
+            if (message.charAt(lineEnd) == '\r' && start < end && message.charAt(start) == '\n')
+            {
+                start++;
+            }
+        }
+    }
+}
@@ -17,11 +17,16 @@
 
 package iexport.logging;
 
+import java.util.function.Supplier;
 
 /**
  * A generic logger that logs messages with a specified logLevel and a specified amount of indentation.
  * <p>
  * How these log level and indentation are treated is up to the implementation;
+ * <p>
+ * Messages that are expensive to construct and likely to be discarded (e.g. debug messages in loops)
+ * should be passed as {@link Supplier}, or be guarded by {@link #isEnabled(LogLevel)},
+ * so that they are only constructed if they are actually logged.
  */
 public abstract class Logger
 {
@@ -39,6 +44,35 @@ public abstract class Logger
 
     public abstract void log (LogLevel logLevel, int indentation, String message);
 
+    /**
+     * Log a message that is only constructed if the logger accepts messages of the log level,
+     * see {@link #log}.
+     *
+     * @param logLevel    the log level
+     * @param indentation the indentation with which the message shall be printed
+     * @param message     supplies the message
+     */
+    public void log (LogLevel logLevel, int indentation, Supplier<String> message)
+    {
+        if (isEnabled(logLevel))
+        {
+            log(logLevel, indentation, message.get());
+        }
+    }
+
+    /**
+     * Does this logger currently accept messages of the specified log level?
+     * <p>
+     * The default implementation compares the log level to {@link #getLogLevel()}.
+     *
+     * @param logLevel the log level
+     * @return true if messages of this log level will not be discarded
+     */
+    public boolean isEnabled (LogLevel logLevel)
+    {
+        return logLevel.lessVerbose(getLogLevel());
+    }
+
     /**
      * Get the maximum log level that this locker will track.
      * <p>
@@ -58,6 +92,17 @@ public abstract class Logger
      */
     public abstract void setLogLevel (LogLevel logLevel);
 
+    /**
+     * Wait until all messages that have been logged so far have actually been written.
+     * <p>
+     * This needs to be called before writing to STDOUT without going through the logger,
+     * e.g. when printing a progress bar or asking the user for input.
+     * Loggers that write every message immediately do not need to override this method.
+     */
+    public void flush ()
+    {
+    }
+
     /**
      * Convenience method for logging something with {@link LogLevel#ERROR},
      * see {@link #log}.
@@ -81,6 +126,31 @@ public abstract class Logger
         error(0, message);
     }
 
+    /**
+     * Convenience method for logging something with {@link LogLevel#ERROR}
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param indentation the indentation with which the message shall be printed
+     * @param message     supplies the message
+     */
+    public void error (int indentation, Supplier<String> message)
+    {
+        log(LogLevel.ERROR, indentation, message);
+    }
+
+    /**
+     * Convenience method for logging something with {@link LogLevel#ERROR} with no indentation
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param message supplies the message
+     */
+    public void error (Supplier<String> message)
+    {
+        error(0, message);
+    }
+
     /**
      * Convenience method for logging something with {@link LogLevel#WARNING},
      * see {@link #log}.
@@ -104,6 +174,31 @@ public abstract class Logger
         warning(0, message);
     }
 
+    /**
+     * Convenience method for logging something with {@link LogLevel#WARNING}
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param indentation the indentation with which the message shall be printed
+     * @param message     supplies the message
+     */
+    public void warning (int indentation, Supplier<String> message)
+    {
+        log(LogLevel.WARNING, indentation, message);
+    }
+
+    /**
+     * Convenience method for logging something with {@link LogLevel#WARNING} with no indentation
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param message supplies the message
+     */
+    public void warning (Supplier<String> message)
+    {
+        warning(0, message);
+    }
+
     /**
      * Convenience method for logging something with {@link LogLevel#NORMAL},
      * see {@link #log}.
@@ -127,6 +222,31 @@ public abstract class Logger
         message(0, message);
     }
 
+    /**
+     * Convenience method for logging something with {@link LogLevel#NORMAL}
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param indentation the indentation with which the message shall be printed
+     * @param message     supplies the message
+     */
+    public void message (int indentation, Supplier<String> message)
+    {
+        log(LogLevel.NORMAL, indentation, message);
+    }
+
+    /**
+     * Convenience method for logging something with {@link LogLevel#NORMAL} with no indentation
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param message supplies the message
+     */
+    public void message (Supplier<String> message)
+    {
+        message(0, message);
+    }
+
     /**
      * Convenience method for logging something with {@link LogLevel#DEBUG},
      * see {@link #log}.
@@ -150,4 +270,29 @@ public abstract class Logger
         debug(0, message);
     }
 
+    /**
+     * Convenience method for logging something with {@link LogLevel#DEBUG}
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param indentation the indentation with which the message shall be printed
+     * @param message     supplies the message
+     */
+    public void debug (int indentation, Supplier<String> message)
+    {
+        log(LogLevel.DEBUG, indentation, message);
+    }
+
+    /**
+     * Convenience method for logging something with {@link LogLevel#DEBUG} with no indentation
+     * that is only constructed if the logger accepts such messages,
+     * see {@link #log(LogLevel, int, Supplier)}.
+     *
+     * @param message supplies the message
+     */
+    public void debug (Supplier<String> message)
+    {
+        debug(0, message);
+    }
+
 }
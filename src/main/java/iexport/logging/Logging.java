@@ -20,21 +20,63 @@ package iexport.logging;
 /**
  * A static class holding an instance of {@link Logger} that is essentially a singleton.
  * <p>
- * By default, we use a {@link StdoutLogger} that simply prints to Stdout
+ * By default, we use a {@link StdoutLogger} that simply prints to Stdout.
+ * It can be replaced using {@link #setLogger}, e.g. by an {@link AsyncLogger},
+ * and for a single thread using {@link #setThreadLogger}, e.g. by a {@link BufferingLogger}.
  */
 public class Logging
 {
     /**
      * The singleton logger.
      */
-    private static final Logger instance = new StdoutLogger();
+    private static volatile Logger instance = new StdoutLogger();
 
     /**
-     * @return the singleton logger
+     * Loggers that replace the singleton logger for single threads.
+     */
+    private static final ThreadLocal<Logger> threadLoggers = new ThreadLocal<>();
+
+    /**
+     * @return the logger of the current thread if one has been set, otherwise the singleton logger
      */
     public static Logger getLogger ()
     {
-        return instance;
+        Logger threadLogger = threadLoggers.get();
+        return threadLogger != null ? threadLogger : instance;
+    }
+
+    /**
+     * Replace the singleton logger.
+     * <p>
+     * The previous logger is flushed first, so messages logged before the replacement are written before those logged after it.
+     *
+     * @param logger the new logger
+     */
+    public static void setLogger (Logger logger)
+    {
+        Logger previous = instance;
+        previous.flush();
+        instance = logger;
+    }
+
+    /**
+     * Replace the logger for the current thread only.
+     * <p>
+     * This has to be undone by passing null (e.g. in a finally block) before the thread is used for something else,
+     * in particular if it belongs to a thread pool.
+     *
+     * @param logger the logger for the current thread, or null to use the singleton logger again
+     */
+    public static void setThreadLogger (Logger logger)
+    {
+        if (logger == null)
+        {
+            threadLoggers.remove();
+        }
+        else
+        {
+            threadLoggers.set(logger);
+        }
     }
 
     /**
@@ -30,6 +30,12 @@ public class NullLogger extends Logger
         // (-:
     }
 
+    @Override
+    public boolean isEnabled (LogLevel logLevel)
+    {
+        return false;
+    }
+
     @Override
     public LogLevel getLogLevel ()
     {
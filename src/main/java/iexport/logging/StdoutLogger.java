@@ -18,15 +18,13 @@
 package iexport.logging;
 
 import java.io.PrintStream;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * A logger that logs all messages up to a specified log level to STDOUT.
+ * <p>
+ * Every message is printed (and flushed) immediately, see {@link AsyncLogger} for a faster alternative.
  */
 public class StdoutLogger extends Logger
 {
@@ -40,24 +38,6 @@ public class StdoutLogger extends Logger
      */
     private static final PrintStream OUT = new PrintStream(System.out, true, UTF_8);
 
-    /**
-     * Pattern for newline (either \n or \r\n).
-     */
-    private static final Pattern NEWLINE_PATTERN = Pattern.compile("\\R");
-
-    /**
-     * How much indentation to use for each level of indentation?
-     * <p>
-     * If the {@code indentation} parameter of {@link #log} is set to {@code n},
-     * this string will be repeated {@code n} times.
-     */
-    private static final String BASE_INDENTATION = "    "; // 4 spaces
-
-    /**
-     * A list of prefixes that will be prepended to every message depending on it's log level.
-     */
-    private static final Map<LogLevel, String> PREFIXES = new HashMap<>();
-
     /**
      * The default log level.
      * <p>
@@ -65,13 +45,10 @@ public class StdoutLogger extends Logger
      */
     private static final LogLevel DEFAULT_LOGLEVEL = LogLevel.NORMAL;
 
-    static
-    {
-        PREFIXES.put(LogLevel.DEBUG, "DEBUG: ");
-        PREFIXES.put(LogLevel.NORMAL, "");
-        PREFIXES.put(LogLevel.WARNING, "WARNING: ");
-        PREFIXES.put(LogLevel.ERROR, "ERROR: ");
-    }
+    /**
+     * The buffer into which a message is formatted.
+     */
+    private final StringBuilder buffer = new StringBuilder(256);
 
     /**
      * The messages of which log level should we accept?
@@ -84,8 +61,8 @@ public class StdoutLogger extends Logger
      * If the {@link #verbosity} of the logger is set to more than {@code logLevel}, the message will be discarded.
      * <p>
      * Otherwise, it will be split into lines,
-     * each line will be prefixed by a prefix depending on the log level (see {@link #PREFIXES})
-     * and the specified amount of indentation ({@code indentation} many copies of {@link #BASE_INDENTATION}),
+     * each line will be prefixed by a prefix depending on the log level (see {@link LogFormatter#getPrefix})
+     * and the specified amount of indentation,
      * and then printed to STDOUT.
      *
      * @param logLevel    the log level of the message.
@@ -93,31 +70,15 @@ public class StdoutLogger extends Logger
      * @param message     the message.
      */
     @Override
-    public void log (LogLevel logLevel, int indentation, String message)
+    public synchronized void log (LogLevel logLevel, int indentation, String message)
     {
         // We only need to do something if we actually accept messages of this type
-        if (accepts(logLevel))
+        if (isEnabled(logLevel))
         {
-            if (USE_PREFIXES)
-            {
-                final String prefix = PREFIXES.get(logLevel) == null ? "" : PREFIXES.get(logLevel);
-
-                NEWLINE_PATTERN
-                        .splitAsStream(message)
-                        .map((s) -> prefix + s)
-                        .map((s) -> String.join("", Collections.nCopies(indentation, BASE_INDENTATION)) + s)
-                        .forEach(OUT::println);
-            }
-            else
-            {
-                // Just add indentation.
-                NEWLINE_PATTERN
-                        .splitAsStream(message)
-                        .map((s) -> BASE_INDENTATION.repeat(indentation) + s)
-                        .forEach(OUT::println);
-            }
+            buffer.setLength(0);
+            LogFormatter.append(buffer, USE_PREFIXES ? LogFormatter.getPrefix(logLevel) : "", indentation, message);
+            OUT.print(buffer);
         }
-
     }
 
     @Override
@@ -131,15 +92,4 @@ public class StdoutLogger extends Logger
     {
         verbosity = logLevel;
     }
-
-    /**
-     * Does this logger currently accept messages of the specified log level?
-     *
-     * @param logLevel the log level
-     * @return true iff it accepts messages with this log level
-     */
-    private boolean accepts (LogLevel logLevel)
-    {
-        return logLevel.lessVerbose(verbosity);
-    }
 }
@@ -0,0 +1,646 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing;
+
+import iexport.itunes.Track;
+import iexport.logging.Logging;
+import iexport.parsing.builders.LibraryBuilder;
+import iexport.parsing.builders.PlaylistBuilder;
+import iexport.parsing.builders.TrackBuilder;
+import iexport.parsing.keys.LibraryKeys;
+import iexport.parsing.keys.PlaylistKeys;
+import iexport.parsing.keys.TrackKeys;
+import iexport.parsing.plist.BinaryPlistReader;
+import iexport.parsing.plist.PlistFormatException;
+import iexport.parsing.plist.PlistToken;
+import iexport.utils.IntList;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/**
+ * Parses a library file that is a binary property list using a {@link BinaryPlistReader} on the (memory-mapped) file,
+ * instead of constructing a tree of {@link com.dd.plist.NSObject}s using dd-plist first.
+ * <p>
+ * It performs the same steps as {@code MappedLibraryParser}.
+ * Since every object of a binary property list can be located by its index via the offset table,
+ * the entries of the "Tracks" dictionary and the "Playlists" array can be split into chunks by their position
+ * without scanning the file first, and the chunks are decoded concurrently.
+ * Only the values that are handed to a handler are ever decoded.
+ * The results are added to the {@link LibraryParser} in the order of the file, as if they had been parsed sequentially.
+ * <p>
+ * If the tracks should be decoded lazily, only the object indices of the track dictionaries are recorded in {@link LazyTracks}.
+ * They are later decoded by {@link #trackDecoder(UnknownKeyHistogram)}.
+ */
+class BinaryLibraryParser
+{
+    /**
+     * The key of the array of tracks inside a playlist dictionary.
+     */
+    private static final String PLAYLIST_ITEMS = "Playlist Items";
+
+    /**
+     * The key of the track id inside the entries of the "Playlist Items" array.
+     */
+    private static final String TRACK_ID = "Track ID";
+
+    /**
+     * Chunks of the "Tracks" dictionary should not have fewer entries than this.
+     */
+    private static final int MIN_TRACKS_PER_CHUNK = 1000;
+
+    /**
+     * Chunks of the "Playlists" array should not have fewer entries than this.
+     */
+    private static final int MIN_PLAYLISTS_PER_CHUNK = 8;
+
+    /**
+     * The number of chunks per thread, so that threads that finish early can take over more chunks.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * The reader for the library file.
+     */
+    private final BinaryPlistReader reader;
+
+    /**
+     * The number of threads that parse the "Tracks" dictionary and the "Playlists" array.
+     */
+    private final int threads;
+
+    /**
+     * Counts the keys of the library for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownLibraryKeys;
+
+    /**
+     * Counts the keys of tracks for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownTrackKeys;
+
+    /**
+     * Counts the keys of playlists for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownPlaylistKeys;
+
+    /**
+     * @param buffer              the buffer holding the library file
+     * @param threads             the number of threads that parse the "Tracks" dictionary and the "Playlists" array
+     * @param unknownLibraryKeys  counts the keys of the library for which no handler exists
+     * @param unknownTrackKeys    counts the keys of tracks for which no handler exists
+     * @param unknownPlaylistKeys counts the keys of playlists for which no handler exists
+     * @throws PlistFormatException if the buffer does not hold a well-formed binary property list
+     */
+    BinaryLibraryParser (ByteBuffer buffer, int threads, UnknownKeyHistogram unknownLibraryKeys,
+                         UnknownKeyHistogram unknownTrackKeys, UnknownKeyHistogram unknownPlaylistKeys)
+            throws PlistFormatException
+    {
+        this.reader = new BinaryPlistReader(buffer);
+        this.threads = threads;
+        this.unknownLibraryKeys = unknownLibraryKeys;
+        this.unknownTrackKeys = unknownTrackKeys;
+        this.unknownPlaylistKeys = unknownPlaylistKeys;
+    }
+
+    /**
+     * Parse the whole library file.
+     * <p>
+     * The metadata is set on the library builder, the tracks and playlists are added to the library parser.
+     *
+     * @param libraryParser  the parser to which the tracks and playlists should be added
+     * @param libraryBuilder the builder for the library
+     * @param lazyTracks     records the track dictionaries instead of decoding them, or null
+     * @throws PlistFormatException if the file is malformed or uses constructs that are not supported
+     */
+    void parse (LibraryParser libraryParser, LibraryBuilder libraryBuilder, LazyTracks lazyTracks)
+            throws PlistFormatException
+    {
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try
+        {
+            parse(libraryParser, libraryBuilder, lazyTracks, executor);
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Parse the whole library file.
+     *
+     * @param libraryParser  the parser to which the tracks and playlists should be added
+     * @param libraryBuilder the builder for the library
+     * @param lazyTracks     records the track dictionaries instead of decoding them, or null
+     * @param executor       the executor for parsing chunks concurrently, or null
+     * @throws PlistFormatException if the file is malformed or uses constructs that are not supported
+     */
+    private void parse (LibraryParser libraryParser, LibraryBuilder libraryBuilder, LazyTracks lazyTracks, ExecutorService executor)
+            throws PlistFormatException
+    {
+        int root = reader.getTopObject();
+        if (reader.type(root) != PlistToken.DICT_START)
+        {
+            throw new PlistFormatException("Expected a dictionary as root object, got " + reader.type(root));
+        }
+
+        boolean hasTracks = false;
+        boolean hasPlaylists = false;
+
+        int count = reader.count(root);
+        for (int i = 0; i < count; i++)
+        {
+            String key = reader.keyValue(reader.dictionaryKey(root, i));
+            int value = reader.dictionaryValue(root, i);
+
+            switch (key)
+            {
+                case "Tracks" ->
+                {
+                    hasTracks = true;
+                    if (reader.type(value) != PlistToken.DICT_START)
+                    {
+                        Logging.getLogger().warning("Library " + libraryBuilder + " has Tracks dictionary of unexpected type " + reader.type(value) + ", expected a dictionary; skipping it");
+                        continue;
+                    }
+                    if (lazyTracks != null)
+                    {
+                        recordTracks(value, lazyTracks);
+                    }
+                    else
+                    {
+                        parseTracks(libraryParser, value, executor);
+                    }
+                }
+                case "Playlists" ->
+                {
+                    hasPlaylists = true;
+                    if (reader.type(value) != PlistToken.ARRAY_START)
+                    {
+                        Logging.getLogger().warning("Library " + libraryBuilder + " has Playlists array of unexpected type " + reader.type(value) + ", expected an array.");
+                        continue;
+                    }
+                    parsePlaylists(libraryParser, value, executor);
+                }
+                default -> handle(libraryBuilder, key, value, LibraryKeys.getHandlerFor(key), unknownLibraryKeys);
+            }
+        }
+
+        if (!hasTracks)
+        {
+            Logging.getLogger().warning("Library " + libraryBuilder + " has no Tracks dictionary.");
+        }
+        if (!hasPlaylists)
+        {
+            Logging.getLogger().warning("Library " + libraryBuilder + " has no Playlists array.");
+        }
+    }
+
+    /**
+     * Parse the entries of the "Tracks" dictionary, concurrently if an executor is given.
+     *
+     * @param libraryParser the parser to which the tracks should be added
+     * @param tracks        the index of the "Tracks" dictionary
+     * @param executor      the executor for parsing chunks concurrently, or null
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parseTracks (LibraryParser libraryParser, int tracks, ExecutorService executor)
+            throws PlistFormatException
+    {
+        int count = reader.count(tracks);
+        List<TrackChunk> chunks = parseInChunks(count, MIN_TRACKS_PER_CHUNK, executor,
+                (from, to) -> parseTrackChunk(tracks, from, to));
+
+        // Add the tracks in the order of the file.
+        for (TrackChunk chunk : chunks)
+        {
+            unknownTrackKeys.addAll(chunk.unknownKeys());
+            for (int i = 0; i < chunk.tracks().size(); i++)
+            {
+                libraryParser.addTrackWithKey(chunk.trackIds().get(i), chunk.tracks().get(i));
+            }
+        }
+    }
+
+    /**
+     * Parse a range of entries of the "Tracks" dictionary.
+     *
+     * @param tracks the index of the "Tracks" dictionary
+     * @param from   the position of the first entry
+     * @param to     the (exclusive) position of the last entry
+     * @return the parsed tracks
+     * @throws PlistFormatException if the file is malformed
+     */
+    private TrackChunk parseTrackChunk (int tracks, int from, int to)
+            throws PlistFormatException
+    {
+        UnknownKeyHistogram unknownKeys = new UnknownKeyHistogram("track");
+        IntList trackIds = new IntList(to - from);
+        List<Track> trackList = new ArrayList<>(to - from);
+
+        for (int i = from; i < to; i++)
+        {
+            // The key is the track id.
+            String trackIdKey = reader.keyValue(reader.dictionaryKey(tracks, i));
+            int trackId;
+            try
+            {
+                trackId = Integer.parseInt(trackIdKey);
+            }
+            catch (NumberFormatException e)
+            {
+                Logging.getLogger().warning("Track with key Track ID  \"" + trackIdKey + "\" is not an integer; skipping it");
+                continue;
+            }
+
+            int track = reader.dictionaryValue(tracks, i);
+            if (reader.type(track) != PlistToken.DICT_START)
+            {
+                Logging.getLogger().warning("Track with id \"" + trackId + "\" has track dictionary of unexpected type " + reader.type(track) + ", expected a dictionary; skipping it");
+                continue;
+            }
+
+            trackIds.add(trackId);
+            trackList.add(parseTrack(track, unknownKeys));
+        }
+
+        return new TrackChunk(trackIds, trackList, unknownKeys);
+    }
+
+    /**
+     * Record the object indices of the track dictionaries in the "Tracks" dictionary without decoding them.
+     *
+     * @param tracks     the index of the "Tracks" dictionary
+     * @param lazyTracks records the track dictionaries
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void recordTracks (int tracks, LazyTracks lazyTracks)
+            throws PlistFormatException
+    {
+        int count = reader.count(tracks);
+        for (int i = 0; i < count; i++)
+        {
+            // The key is the track id.
+            String trackIdKey = reader.keyValue(reader.dictionaryKey(tracks, i));
+            int trackId;
+            try
+            {
+                trackId = Integer.parseInt(trackIdKey);
+            }
+            catch (NumberFormatException e)
+            {
+                Logging.getLogger().warning("Track with key Track ID  \"" + trackIdKey + "\" is not an integer; skipping it");
+                continue;
+            }
+
+            int track = reader.dictionaryValue(tracks, i);
+            if (reader.type(track) != PlistToken.DICT_START)
+            {
+                Logging.getLogger().warning("Track with id \"" + trackId + "\" has track dictionary of unexpected type " + reader.type(track) + ", expected a dictionary; skipping it");
+                continue;
+            }
+
+            lazyTracks.add(trackId, track);
+        }
+    }
+
+    /**
+     * Create a decoder for the track dictionaries whose object indices have been recorded in {@link LazyTracks}.
+     *
+     * @param unknownKeys counts the keys of tracks for which no handler exists
+     * @return the decoder
+     */
+    LazyTracks.TrackDecoder trackDecoder (UnknownKeyHistogram unknownKeys)
+    {
+        return (object) -> parseTrack((int) object, unknownKeys);
+    }
+
+    /**
+     * Parse a track dictionary.
+     *
+     * @param track       the index of the track dictionary
+     * @param unknownKeys counts the keys for which no handler exists
+     * @return the track
+     * @throws PlistFormatException if the file is malformed
+     */
+    private Track parseTrack (int track, UnknownKeyHistogram unknownKeys)
+            throws PlistFormatException
+    {
+        TrackBuilder trackBuilder = new TrackBuilder();
+
+        int count = reader.count(track);
+        for (int i = 0; i < count; i++)
+        {
+            String key = reader.keyValue(reader.dictionaryKey(track, i));
+            handle(trackBuilder, key, reader.dictionaryValue(track, i), TrackKeys.getHandlerFor(key), unknownKeys);
+        }
+
+        return trackBuilder.build();
+    }
+
+    /**
+     * Parse the entries of the "Playlists" array, concurrently if an executor is given.
+     *
+     * @param libraryParser the parser to which the playlist builders should be added
+     * @param playlists     the index of the "Playlists" array
+     * @param executor      the executor for parsing chunks concurrently, or null
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parsePlaylists (LibraryParser libraryParser, int playlists, ExecutorService executor)
+            throws PlistFormatException
+    {
+        int count = reader.count(playlists);
+        List<PlaylistChunk> chunks = parseInChunks(count, MIN_PLAYLISTS_PER_CHUNK, executor,
+                (from, to) -> parsePlaylistChunk(playlists, from, to));
+
+        // Add the playlists in the order of the file.
+        for (PlaylistChunk chunk : chunks)
+        {
+            unknownPlaylistKeys.addAll(chunk.unknownKeys());
+            chunk.playlistBuilders().forEach(libraryParser::addPlaylistBuilder);
+        }
+    }
+
+    /**
+     * Parse a range of elements of the "Playlists" array.
+     *
+     * @param playlists the index of the "Playlists" array
+     * @param from      the position of the first element
+     * @param to        the (exclusive) position of the last element
+     * @return the parsed playlist builders
+     * @throws PlistFormatException if the file is malformed
+     */
+    private PlaylistChunk parsePlaylistChunk (int playlists, int from, int to)
+            throws PlistFormatException
+    {
+        UnknownKeyHistogram unknownKeys = new UnknownKeyHistogram("playlist");
+        List<PlaylistBuilder> playlistBuilders = new ArrayList<>(to - from);
+
+        for (int i = from; i < to; i++)
+        {
+            int playlist = reader.arrayElement(playlists, i);
+            if (reader.type(playlist) != PlistToken.DICT_START)
+            {
+                Logging.getLogger().warning("Playlist dictionary of unexpected type " + reader.type(playlist) + ", expected a dictionary; skipping it");
+                continue;
+            }
+
+            playlistBuilders.add(parsePlaylist(playlist, unknownKeys));
+        }
+
+        return new PlaylistChunk(playlistBuilders, unknownKeys);
+    }
+
+    /**
+     * Parse a playlist dictionary.
+     *
+     * @param playlist    the index of the playlist dictionary
+     * @param unknownKeys counts the keys for which no handler exists
+     * @return the builder for the playlist
+     * @throws PlistFormatException if the file is malformed
+     */
+    private PlaylistBuilder parsePlaylist (int playlist, UnknownKeyHistogram unknownKeys)
+            throws PlistFormatException
+    {
+        PlaylistBuilder playlistBuilder = new PlaylistBuilder();
+        int playlistItems = -1;
+
+        int count = reader.count(playlist);
+        for (int i = 0; i < count; i++)
+        {
+            String key = reader.keyValue(reader.dictionaryKey(playlist, i));
+            int value = reader.dictionaryValue(playlist, i);
+
+            if (key.equals(PLAYLIST_ITEMS))
+            {
+                // Parse the items after the other keys, so that messages can refer to the name of the playlist.
+                playlistItems = value;
+            }
+            else
+            {
+                handle(playlistBuilder, key, value, PlaylistKeys.getHandlerFor(key), unknownKeys);
+            }
+        }
+
+        if (playlistItems < 0)
+        {
+            Logging.getLogger().debug(() -> playlistBuilder + " has no track array; skipping it");
+        }
+        else
+        {
+            parsePlaylistItems(playlistBuilder, playlistItems);
+        }
+
+        return playlistBuilder;
+    }
+
+    /**
+     * Parse the "Playlist Items" array of a playlist to detect the tracks of the playlist.
+     * <p>
+     * Each entry of the array should be a dictionary with the single key "Track ID".
+     *
+     * @param playlistBuilder the builder for the playlist
+     * @param playlistItems   the index of the "Playlist Items" array
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parsePlaylistItems (PlaylistBuilder playlistBuilder, int playlistItems)
+            throws PlistFormatException
+    {
+        if (reader.type(playlistItems) != PlistToken.ARRAY_START)
+        {
+            Logging.getLogger().warning(playlistBuilder + " has track array of unexpected type " + reader.type(playlistItems) + ", skipping it");
+            return;
+        }
+
+        int count = reader.count(playlistItems);
+        for (int i = 0; i < count; i++)
+        {
+            int item = reader.arrayElement(playlistItems, i);
+            if (reader.type(item) != PlistToken.DICT_START)
+            {
+                Logging.getLogger().warning("Track array of " + playlistBuilder + " contains entry of unexpected type " + reader.type(item) + "; skipping it");
+                continue;
+            }
+
+            // each dictionary should just have a single key-value pair inside it
+            int size = reader.count(item);
+            if (size != 1)
+            {
+                Logging.getLogger().warning("Dictionary inside track array of " + playlistBuilder + " has unexpected size " + size + ", expected size 1; skipping it.");
+                continue;
+            }
+
+            // the key inside the dictionary should be "Track ID"
+            if (!reader.keyValue(reader.dictionaryKey(item, 0)).equals(TRACK_ID))
+            {
+                Logging.getLogger().warning("Dictionary inside track array of " + playlistBuilder + " does not contain the key \"Track ID\"; skipping it.");
+                continue;
+            }
+
+            // the value for the key "Track ID" should be an integer
+            Object trackId = reader.value(reader.dictionaryValue(item, 0));
+            if (trackId instanceof Integer id)
+            {
+                playlistBuilder.addTrackId(id);
+            }
+            else
+            {
+                Logging.getLogger().warning("Value " + trackId + " inside track array of " + playlistBuilder + " has unexpected type " + (trackId == null ? "container" : trackId.getClass().getSimpleName()) + ", expected an integer; skipping it.");
+            }
+        }
+    }
+
+    /**
+     * Decode the value of a key and pass it to the handler for the key,
+     * or count the key as unknown if there is no handler.
+     *
+     * @param builder     the builder whose fields the handler sets
+     * @param key         the key
+     * @param value       the index of the value
+     * @param handler     the handler for the key, or null
+     * @param unknownKeys counts the keys for which no handler exists
+     * @param <B>         the type of the builder
+     * @throws PlistFormatException if the file is malformed
+     */
+    private <B> void handle (B builder, String key, int value, BiConsumer<B, Object> handler, UnknownKeyHistogram unknownKeys)
+            throws PlistFormatException
+    {
+        if (handler != null)
+        {
+            Object decoded = reader.value(value);
+            if (decoded != null)
+            {
+                handler.accept(builder, decoded);
+            }
+            return;
+        }
+
+        // No handler exists; the value is only needed as an example the first time.
+        if (unknownKeys.isCounted(key))
+        {
+            unknownKeys.count(key, null);
+            return;
+        }
+
+        Object decoded = reader.value(value);
+        unknownKeys.count(key, decoded != null ? decoded : reader.type(value));
+    }
+
+    /**
+     * Split a range of entries into chunks and parse them, concurrently if an executor is given.
+     *
+     * @param count        the number of entries
+     * @param minChunkSize the minimal number of entries per chunk
+     * @param executor     the executor for parsing chunks concurrently, or null
+     * @param chunkParser  parses a range of entries
+     * @param <C>          the type of the results of the chunks
+     * @return the results of the chunks in the order of the entries
+     * @throws PlistFormatException if the file is malformed
+     */
+    private <C> List<C> parseInChunks (int count, int minChunkSize, ExecutorService executor, ChunkParser<C> chunkParser)
+            throws PlistFormatException
+    {
+        int chunkCount = executor == null ? 1 : (int) Math.max(1, Math.min((long) CHUNKS_PER_THREAD * threads, count / minChunkSize));
+        if (chunkCount == 1)
+        {
+            return List.of(chunkParser.parse(0, count));
+        }
+
+        List<Future<C>> futures = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++)
+        {
+            int from = (int) ((long) count * i / chunkCount);
+            int to = (int) ((long) count * (i + 1) / chunkCount);
+            futures.add(executor.submit(() -> chunkParser.parse(from, to)));
+        }
+
+        List<C> results = new ArrayList<>(chunkCount);
+        try
+        {
+            for (Future<C> future : futures)
+            {
+                results.add(future.get());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while parsing the library", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof PlistFormatException plistFormatException)
+            {
+                futures.forEach((future) -> future.cancel(true));
+                throw plistFormatException;
+            }
+            throw new RuntimeException("Parsing the library has failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Parses a range of entries of an array or a dictionary.
+     *
+     * @param <C> the type of the result
+     */
+    @FunctionalInterface
+    private interface ChunkParser<C>
+    {
+        /**
+         * @param from the position of the first entry
+         * @param to   the (exclusive) position of the last entry
+         * @return the result for the range
+         * @throws PlistFormatException if the file is malformed
+         */
+        C parse (int from, int to)
+                throws PlistFormatException;
+    }
+
+    /**
+     * The tracks parsed from a chunk of the "Tracks" dictionary.
+     *
+     * @param trackIds    the Track IDs from the keys of the dictionary
+     * @param tracks      the tracks
+     * @param unknownKeys counts the keys of the tracks for which no handler exists
+     */
+    private record TrackChunk(IntList trackIds, List<Track> tracks, UnknownKeyHistogram unknownKeys)
+    {
+    }
+
+    /**
+     * The playlists parsed from a chunk of the "Playlists" array.
+     *
+     * @param playlistBuilders the builders for the playlists
+     * @param unknownKeys      counts the keys of the playlists for which no handler exists
+     */
+    private record PlaylistChunk(List<PlaylistBuilder> playlistBuilders, UnknownKeyHistogram unknownKeys)
+    {
+    }
+}
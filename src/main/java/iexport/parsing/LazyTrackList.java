@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing;
+
+import iexport.itunes.Track;
+import iexport.logging.Logging;
+import iexport.parsing.plist.PlistFormatException;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The list of all tracks of a library that has been parsed with parsing.lazyTracks.
+ * <p>
+ * The tracks that have not been decoded while parsing are decoded when the list is accessed for the first time.
+ * Afterwards, it contains the same tracks in the same order as if all tracks had been decoded while parsing.
+ * A comparator passed to {@link #sort(Comparator)} before that is remembered and applied after decoding.
+ * <p>
+ * This class is thread-safe for reading.
+ */
+class LazyTrackList extends AbstractList<Track> implements RandomAccess
+{
+    /**
+     * The entries of the "Tracks" dictionary, or null once all tracks have been decoded.
+     */
+    private LazyTracks lazyTracks;
+
+    /**
+     * The comparator by which the tracks should be sorted after decoding them, or null.
+     */
+    private Comparator<? super Track> comparator = null;
+
+    /**
+     * All tracks, or null if they have not been decoded yet.
+     */
+    private volatile List<Track> tracks = null;
+
+    /**
+     * @param lazyTracks the entries of the "Tracks" dictionary
+     */
+    LazyTrackList (LazyTracks lazyTracks)
+    {
+        this.lazyTracks = lazyTracks;
+    }
+
+    /**
+     * @return all tracks, decoding the remaining ones if this has not been done yet
+     */
+    private List<Track> tracks ()
+    {
+        List<Track> result = tracks;
+        if (result != null)
+        {
+            return result;
+        }
+
+        synchronized (this)
+        {
+            if (tracks == null)
+            {
+                Logging.getLogger().debug("Decoding the remaining tracks of the library.");
+
+                UnknownKeyHistogram unknownKeys = new UnknownKeyHistogram("track");
+                try
+                {
+                    result = lazyTracks.decodeAll(unknownKeys);
+                }
+                catch (PlistFormatException e)
+                {
+                    throw new RuntimeException("Decoding the tracks of the library has failed: " + e.getMessage(), e);
+                }
+                unknownKeys.report();
+
+                if (comparator != null)
+                {
+                    result.sort(comparator);
+                }
+
+                // The entries keep the library file in memory, we no longer need them.
+                lazyTracks = null;
+                tracks = result;
+            }
+            return tracks;
+        }
+    }
+
+    @Override
+    public Track get (int index)
+    {
+        return tracks().get(index);
+    }
+
+    @Override
+    public int size ()
+    {
+        return tracks().size();
+    }
+
+    @Override
+    public Track set (int index, Track track)
+    {
+        return tracks().set(index, track);
+    }
+
+    @Override
+    public void add (int index, Track track)
+    {
+        tracks().add(index, track);
+    }
+
+    @Override
+    public Track remove (int index)
+    {
+        return tracks().remove(index);
+    }
+
+    @Override
+    public synchronized void sort (Comparator<? super Track> comparator)
+    {
+        if (tracks == null)
+        {
+            this.comparator = comparator;
+            return;
+        }
+        tracks.sort(comparator);
+    }
+}
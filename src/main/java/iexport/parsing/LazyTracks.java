@@ -0,0 +1,479 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing;
+
+import iexport.itunes.Track;
+import iexport.logging.Logging;
+import iexport.parsing.plist.PlistFormatException;
+import iexport.utils.IntIntMap;
+import iexport.utils.IntList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * The entries of the "Tracks" dictionary of the library, whose track dictionaries are only decoded on request.
+ * <p>
+ * While parsing, only the Track ID and the location of each track dictionary in the file are recorded.
+ * The tracks can then be decoded by their Track IDs (e.g. only the tracks contained in the playlists that are not ignored),
+ * and all remaining tracks can be decoded later.
+ * Each track is decoded at most once; decoding is done concurrently in chunks of entries.
+ * <p>
+ * An entry whose Track ID from the key differs from the Track ID inside its dictionary is skipped when it is decoded.
+ * Entries with the same key as an earlier entry are skipped when they are recorded.
+ * <p>
+ * If fingerprints are recorded, the tracks whose dictionaries have not changed since the previous run
+ * can be taken from a {@link LibraryCache} instead of being decoded, see {@link #reuse(LibraryCache)}.
+ * <p>
+ * This class is not thread-safe.
+ */
+class LazyTracks
+{
+    /**
+     * Chunks should not have fewer entries than this.
+     */
+    private static final int MIN_TRACKS_PER_CHUNK = 1000;
+
+    /**
+     * The number of chunks per thread, so that threads that finish early can take over more chunks.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Creates a decoder for a single thread, given the histogram in which it should count the unknown keys.
+     */
+    private final Function<UnknownKeyHistogram, TrackDecoder> decoders;
+
+    /**
+     * The number of threads that decode tracks.
+     */
+    private final int threads;
+
+    /**
+     * The Track ID from the key of each entry, in the order of the file.
+     */
+    private int[] trackIds = new int[1024];
+
+    /**
+     * The location of the track dictionary of each entry, see {@link TrackDecoder}.
+     */
+    private long[] locations = new long[1024];
+
+    /**
+     * The fingerprint of the track dictionary of each entry, or null if no fingerprints are recorded.
+     */
+    private long[] fingerprints;
+
+    /**
+     * The number of entries.
+     */
+    private int size = 0;
+
+    /**
+     * The position of the entry for each Track ID.
+     */
+    private final IntIntMap entriesByTrackId = new IntIntMap();
+
+    /**
+     * The decoded track of each entry, or null if the entry has not been decoded or has been skipped.
+     */
+    private Track[] tracks = null;
+
+    /**
+     * Has each entry been decoded?
+     */
+    private boolean[] decoded = null;
+
+    /**
+     * @param decoders creates a decoder for a single thread, given the histogram in which it should count the unknown keys
+     * @param threads  the number of threads that decode tracks
+     */
+    LazyTracks (Function<UnknownKeyHistogram, TrackDecoder> decoders, int threads)
+    {
+        this(decoders, threads, false);
+    }
+
+    /**
+     * @param decoders     creates a decoder for a single thread, given the histogram in which it should count the unknown keys
+     * @param threads      the number of threads that decode tracks
+     * @param fingerprints should the fingerprints of the track dictionaries be recorded?
+     */
+    LazyTracks (Function<UnknownKeyHistogram, TrackDecoder> decoders, int threads, boolean fingerprints)
+    {
+        this.decoders = decoders;
+        this.threads = threads;
+        this.fingerprints = fingerprints ? new long[trackIds.length] : null;
+    }
+
+    /**
+     * Record an entry of the "Tracks" dictionary without decoding it.
+     *
+     * @param trackId  the Track ID from the key of the entry
+     * @param location the location of its track dictionary
+     */
+    void add (int trackId, long location)
+    {
+        add(trackId, location, 0);
+    }
+
+    /**
+     * Record an entry of the "Tracks" dictionary without decoding it.
+     *
+     * @param trackId     the Track ID from the key of the entry
+     * @param location    the location of its track dictionary
+     * @param fingerprint the fingerprint of its track dictionary, ignored if no fingerprints are recorded
+     */
+    void add (int trackId, long location, long fingerprint)
+    {
+        if (entriesByTrackId.putIfAbsent(trackId, size) != IntIntMap.ABSENT)
+        {
+            Logging.getLogger().warning("Library already contains track with id " + trackId + "; Skipping new track.");
+            return;
+        }
+
+        if (size == trackIds.length)
+        {
+            trackIds = Arrays.copyOf(trackIds, 2 * size);
+            locations = Arrays.copyOf(locations, 2 * size);
+            if (fingerprints != null)
+            {
+                fingerprints = Arrays.copyOf(fingerprints, 2 * size);
+            }
+        }
+        trackIds[size] = trackId;
+        locations[size] = location;
+        if (fingerprints != null)
+        {
+            fingerprints[size] = fingerprint;
+        }
+        size++;
+    }
+
+    /**
+     * @return the number of recorded entries
+     */
+    int size ()
+    {
+        return size;
+    }
+
+    /**
+     * @return true iff the fingerprints of the track dictionaries are recorded
+     */
+    boolean hasFingerprints ()
+    {
+        return fingerprints != null;
+    }
+
+    /**
+     * @param entry the position of an entry
+     * @return the Track ID from the key of the entry
+     */
+    int getTrackId (int entry)
+    {
+        return trackIds[entry];
+    }
+
+    /**
+     * @param entry the position of an entry
+     * @return the fingerprint of the track dictionary of the entry
+     */
+    long getFingerprint (int entry)
+    {
+        return fingerprints[entry];
+    }
+
+    /**
+     * @param entry the position of an entry
+     * @return the decoded track of the entry, or null if the entry has not been decoded or has been skipped
+     */
+    Track getTrack (int entry)
+    {
+        return tracks == null ? null : tracks[entry];
+    }
+
+    /**
+     * Take the tracks whose track dictionaries have the same fingerprint as in the previous run from the cache,
+     * so that they do not need to be decoded.
+     *
+     * @param cache the cache of the previous run
+     * @return the number of tracks that have been taken from the cache
+     */
+    int reuse (LibraryCache cache)
+    {
+        ensureArrays();
+
+        int count = 0;
+        for (int entry = 0; entry < size; entry++)
+        {
+            LibraryCache.CachedTrack cachedTrack = cache.getTrack(trackIds[entry]);
+            if (!decoded[entry] && cachedTrack != null && cachedTrack.fingerprint() == fingerprints[entry])
+            {
+                tracks[entry] = cachedTrack.track();
+                decoded[entry] = true;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decode the tracks with the given Track IDs that have not been decoded yet.
+     * Track IDs without an entry are ignored, Track IDs may occur several times.
+     *
+     * @param requestedTrackIds the Track IDs
+     * @param unknownKeys       counts the keys of the tracks for which no handler exists
+     * @return the tracks that have been decoded by this call and have not been skipped, in the order of the file
+     * @throws PlistFormatException if a track dictionary is malformed
+     */
+    List<Track> decode (IntList requestedTrackIds, UnknownKeyHistogram unknownKeys)
+            throws PlistFormatException
+    {
+        ensureArrays();
+
+        // Select the entries, which also removes duplicates and puts them in the order of the file,
+        // keeping the reads from the file sequential.
+        boolean[] selected = new boolean[size];
+        int count = 0;
+        for (int i = 0; i < requestedTrackIds.size(); i++)
+        {
+            int entry = entriesByTrackId.get(requestedTrackIds.get(i));
+            if (entry != IntIntMap.ABSENT && !decoded[entry] && !selected[entry])
+            {
+                selected[entry] = true;
+                count++;
+            }
+        }
+
+        int[] entries = new int[count];
+        count = 0;
+        for (int entry = 0; entry < size; entry++)
+        {
+            if (selected[entry])
+            {
+                entries[count++] = entry;
+            }
+        }
+        return decodeEntries(entries, unknownKeys);
+    }
+
+    /**
+     * Decode all tracks that have not been decoded yet.
+     *
+     * @param unknownKeys counts the keys of the tracks for which no handler exists
+     * @return all tracks that have not been skipped, including the ones decoded before, in the order of the file
+     * @throws PlistFormatException if a track dictionary is malformed
+     */
+    List<Track> decodeAll (UnknownKeyHistogram unknownKeys)
+            throws PlistFormatException
+    {
+        ensureArrays();
+
+        int[] entries = new int[size];
+        int count = 0;
+        for (int entry = 0; entry < size; entry++)
+        {
+            if (!decoded[entry])
+            {
+                entries[count++] = entry;
+            }
+        }
+        decodeEntries(Arrays.copyOf(entries, count), unknownKeys);
+
+        List<Track> result = new ArrayList<>(size);
+        for (int entry = 0; entry < size; entry++)
+        {
+            if (tracks[entry] != null)
+            {
+                result.add(tracks[entry]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Allocate the arrays for the decoded tracks once all entries have been recorded.
+     */
+    private void ensureArrays ()
+    {
+        if (tracks == null)
+        {
+            tracks = new Track[size];
+            decoded = new boolean[size];
+        }
+    }
+
+    /**
+     * Decode the given entries, concurrently if more than one thread should be used.
+     *
+     * @param entries     the positions of the entries, in ascending order
+     * @param unknownKeys counts the keys of the tracks for which no handler exists
+     * @return the decoded tracks that have not been skipped, in the order of the entries
+     * @throws PlistFormatException if a track dictionary is malformed
+     */
+    private List<Track> decodeEntries (int[] entries, UnknownKeyHistogram unknownKeys)
+            throws PlistFormatException
+    {
+        int chunkCount = (int) Math.max(1, Math.min((long) CHUNKS_PER_THREAD * threads, entries.length / MIN_TRACKS_PER_CHUNK));
+
+        List<DecodedChunk> chunks;
+        if (threads == 1 || chunkCount == 1)
+        {
+            chunks = List.of(decodeChunk(entries, 0, entries.length));
+        }
+        else
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try
+            {
+                List<Future<DecodedChunk>> futures = new ArrayList<>(chunkCount);
+                for (int i = 0; i < chunkCount; i++)
+                {
+                    int from = (int) ((long) entries.length * i / chunkCount);
+                    int to = (int) ((long) entries.length * (i + 1) / chunkCount);
+                    futures.add(executor.submit(() -> decodeChunk(entries, from, to)));
+                }
+                chunks = getAll(futures);
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        // Check the tracks in the order of the file.
+        List<Track> result = new ArrayList<>(entries.length);
+        int i = 0;
+        for (DecodedChunk chunk : chunks)
+        {
+            unknownKeys.addAll(chunk.unknownKeys());
+            for (Track track : chunk.tracks())
+            {
+                int entry = entries[i++];
+                decoded[entry] = true;
+
+                /*
+                 * we should verify that the two Track IDs match
+                 * - the Track ID from the key of the "Tracks" dictionary of the library
+                 * - the Track ID from the key "Track ID" of the track dictionary
+                 */
+                if (!Integer.valueOf(trackIds[entry]).equals(track.trackId()))
+                {
+                    Logging.getLogger().warning("For track " + track + ", Track ID  " + trackIds[entry] + " from key does not match internal Track ID " + track.trackId() + "; skipping it");
+                    continue;
+                }
+
+                tracks[entry] = track;
+                result.add(track);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decode a range of the given entries.
+     *
+     * @param entries the positions of the entries
+     * @param from    the first position in entries
+     * @param to      the (exclusive) last position in entries
+     * @return the decoded tracks
+     * @throws PlistFormatException if a track dictionary is malformed
+     */
+    private DecodedChunk decodeChunk (int[] entries, int from, int to)
+            throws PlistFormatException
+    {
+        UnknownKeyHistogram unknownKeys = new UnknownKeyHistogram("track");
+        TrackDecoder decoder = decoders.apply(unknownKeys);
+
+        List<Track> decodedTracks = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+        {
+            decodedTracks.add(decoder.decode(locations[entries[i]]));
+        }
+        return new DecodedChunk(decodedTracks, unknownKeys);
+    }
+
+    /**
+     * Wait for the results of the chunks.
+     *
+     * @param futures the futures of the chunks
+     * @return the results in the order of the futures
+     * @throws PlistFormatException if a chunk could not be decoded
+     */
+    private static List<DecodedChunk> getAll (List<Future<DecodedChunk>> futures)
+            throws PlistFormatException
+    {
+        List<DecodedChunk> results = new ArrayList<>(futures.size());
+        try
+        {
+            for (Future<DecodedChunk> future : futures)
+            {
+                results.add(future.get());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while decoding the tracks", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof PlistFormatException plistFormatException)
+            {
+                throw plistFormatException;
+            }
+            throw new RuntimeException("Decoding the tracks has failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Decodes the track dictionary at a location that has been recorded while parsing.
+     * <p>
+     * What a location is depends on the parser, e.g. a position in the file or the index of an object.
+     * Instances are used by a single thread.
+     */
+    @FunctionalInterface
+    interface TrackDecoder
+    {
+        /**
+         * @param location the location of a track dictionary
+         * @return the decoded track
+         * @throws PlistFormatException if the track dictionary is malformed
+         */
+        Track decode (long location)
+                throws PlistFormatException;
+    }
+
+    /**
+     * The tracks decoded from a chunk of entries.
+     *
+     * @param tracks      the decoded tracks, in the order of the entries
+     * @param unknownKeys counts the keys of the tracks for which no handler exists
+     */
+    private record DecodedChunk(List<Track> tracks, UnknownKeyHistogram unknownKeys)
+    {
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing;
+
+import iexport.itunes.PlaylistMembership;
+import iexport.itunes.Track;
+import iexport.logging.Logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The tracks of the previous run, together with fingerprints of the bytes they have been decoded from,
+ * so that a track whose dictionary has not changed does not need to be decoded again (see parsing.cacheFilePath).
+ * <p>
+ * A cache file has the following layout (all numbers big endian, strings as written by {@link DataOutputStream#writeUTF(String)}):
+ * <ul>
+ *     <li> the magic number {@code ICAC} and the version of the format (int),
+ *     <li> the signature of {@link Track}, i.e. the names and types of its record components (string);
+ *     a cache with a different signature is ignored,
+ *     <li> the fingerprint of the "Playlists" array (long),
+ *     the number of playlists (int) and their Playlist Persistent IDs in the order in which their dependencies have been resolved (strings),
+ *     <li> the number of tracks (int) and per track its Track ID (int), the fingerprint of its dictionary (long),
+ *     and its record components except {@link Track#inPlaylists()}, each as a tag (byte) followed by the value,
+ *     <li> the CRC-32C of all preceding bytes (long).
+ * </ul>
+ * Fingerprints are 64-bit hashes, not cryptographic ones; they detect changes, not tampering.
+ * <p>
+ * A cache file may be truncated or corrupt. Every count and length is checked against the size of the file before anything is allocated,
+ * the checksum is checked before the cache is used, and any failure while reading means that the cache is ignored.
+ */
+class LibraryCache
+{
+    /**
+     * The magic number at the start of a cache file, the bytes {@code ICAC}.
+     */
+    private static final int MAGIC = 'I' << 24 | 'C' << 16 | 'A' << 8 | 'C';
+
+    /**
+     * The version of the format.
+     */
+    private static final int VERSION = 2;
+
+    // The tags of the values of record components.
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_INTEGER = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_STRING = 3;
+    private static final byte TAG_BOOLEAN = 4;
+    private static final byte TAG_DATE = 5;
+
+    /**
+     * The accessors of the record components of {@link Track} that are stored, i.e. all but {@link Track#inPlaylists()}.
+     */
+    private static final Method[] ACCESSORS;
+
+    /**
+     * The canonical constructor of {@link Track}.
+     */
+    private static final Constructor<Track> CONSTRUCTOR;
+
+    /**
+     * The names and types of the record components of {@link Track}.
+     */
+    private static final String SIGNATURE;
+
+    static
+    {
+        RecordComponent[] components = Track.class.getRecordComponents();
+        ACCESSORS = Arrays.stream(components)
+                .filter((component) -> component.getType() != Set.class)
+                .map(RecordComponent::getAccessor)
+                .toArray(Method[]::new);
+        SIGNATURE = Arrays.stream(components)
+                .map((component) -> component.getName() + ":" + component.getType().getSimpleName())
+                .collect(Collectors.joining(","));
+        try
+        {
+            CONSTRUCTOR = Track.class.getDeclaredConstructor(Arrays.stream(components).map(RecordComponent::getType).toArray(Class[]::new));
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new RuntimeException("Track has no canonical constructor", e);
+        }
+    }
+
+    /**
+     * The cached tracks by their Track ID.
+     */
+    private final Map<Integer, CachedTrack> tracksById;
+
+    /**
+     * The fingerprint of the "Playlists" array.
+     */
+    private final long playlistsFingerprint;
+
+    /**
+     * The Playlist Persistent IDs in the order in which their dependencies have been resolved.
+     */
+    private final List<String> playlistOrder;
+
+    /**
+     * @param tracksById           the cached tracks by their Track ID
+     * @param playlistsFingerprint the fingerprint of the "Playlists" array
+     * @param playlistOrder        the Playlist Persistent IDs in the order in which their dependencies have been resolved
+     */
+    private LibraryCache (Map<Integer, CachedTrack> tracksById, long playlistsFingerprint, List<String> playlistOrder)
+    {
+        this.tracksById = tracksById;
+        this.playlistsFingerprint = playlistsFingerprint;
+        this.playlistOrder = playlistOrder;
+    }
+
+    /**
+     * Compute the fingerprint of a range of bytes, e.g. of a track dictionary.
+     *
+     * @param buffer the buffer
+     * @param start  the start of the range
+     * @param end    the (exclusive) end of the range
+     * @return the fingerprint
+     */
+    static long fingerprint (ByteBuffer buffer, int start, int end)
+    {
+        long hash = 0xCBF29CE484222325L ^ (end - start);
+
+        // Eight bytes at a time, then the remaining bytes one by one.
+        int position = start;
+        for (; position + 8 <= end; position += 8)
+        {
+            hash = Long.rotateLeft((hash ^ buffer.getLong(position)) * 0x9E3779B97F4A7C15L, 29);
+        }
+        for (; position < end; position++)
+        {
+            hash = (hash ^ buffer.get(position)) * 0x100000001B3L;
+        }
+
+        // Mix the high bits into the low bits.
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Read the cache file of the previous run.
+     *
+     * @param file the cache file
+     * @return the cache, or null if the file does not exist or cannot be used
+     */
+    static LibraryCache read (Path file)
+    {
+        CheckedInputStream checked;
+        try (DataInputStream in = new DataInputStream(checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16),
+                                                                                      new CRC32C())))
+        {
+            long fileSize = Files.size(file);
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(SIGNATURE))
+            {
+                Logging.getLogger().debug("The cache file " + file + " has been written by a different version of iExport, ignoring it.");
+                return null;
+            }
+
+            long playlistsFingerprint = in.readLong();
+            // Each Playlist Persistent ID takes at least the two bytes of its length.
+            int playlistCount = readCount(in, fileSize, 2, "playlists");
+            List<String> playlistOrder = new ArrayList<>(playlistCount);
+            for (int i = 0; i < playlistCount; i++)
+            {
+                playlistOrder.add(in.readUTF());
+            }
+
+            // Each track takes at least its Track ID, its fingerprint and one tag per record component.
+            int trackCount = readCount(in, fileSize, 4 + 8 + ACCESSORS.length, "tracks");
+            Map<Integer, CachedTrack> tracksById = new HashMap<>(2 * trackCount);
+            Object[] values = new Object[ACCESSORS.length + 1];
+            for (int i = 0; i < trackCount; i++)
+            {
+                int trackId = in.readInt();
+                long fingerprint = in.readLong();
+                for (int component = 0; component < ACCESSORS.length; component++)
+                {
+                    values[component] = readValue(in, fileSize);
+                }
+                values[ACCESSORS.length] = new PlaylistMembership.TrackPlaylists();
+                tracksById.put(trackId, new CachedTrack(fingerprint, CONSTRUCTOR.newInstance(values)));
+            }
+
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum)
+            {
+                throw new IOException("the checksum does not match");
+            }
+
+            return new LibraryCache(tracksById, playlistsFingerprint, playlistOrder);
+        }
+        catch (NoSuchFileException e)
+        {
+            Logging.getLogger().debug("The cache file " + file + " does not exist yet.");
+            return null;
+        }
+        catch (IOException | ReflectiveOperationException | RuntimeException e)
+        {
+            Logging.getLogger().warning("Reading the cache file " + file + " has failed (" + e + "), ignoring it.");
+            return null;
+        }
+    }
+
+    /**
+     * Write the cache file for the next run, replacing an existing file.
+     * <p>
+     * The file is first written to a temporary file that then replaces the old file,
+     * so a crash while writing does not leave a truncated file.
+     *
+     * @param file                 the cache file
+     * @param lazyTracks           the entries of the "Tracks" dictionary with their fingerprints, all of which have been decoded
+     * @param playlistsFingerprint the fingerprint of the "Playlists" array
+     * @param playlistOrder        the Playlist Persistent IDs in the order in which their dependencies have been resolved
+     * @throws IOException if writing the file fails
+     */
+    static void write (Path file, LazyTracks lazyTracks, long playlistsFingerprint, List<String> playlistOrder)
+            throws IOException
+    {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        CheckedOutputStream checked;
+        try (DataOutputStream out = new DataOutputStream(checked = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16),
+                                                                                         new CRC32C())))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(SIGNATURE);
+
+            out.writeLong(playlistsFingerprint);
+            out.writeInt(playlistOrder.size());
+            for (String playlistPersistentId : playlistOrder)
+            {
+                out.writeUTF(playlistPersistentId);
+            }
+
+            int trackCount = 0;
+            for (int entry = 0; entry < lazyTracks.size(); entry++)
+            {
+                if (lazyTracks.getTrack(entry) != null)
+                {
+                    trackCount++;
+                }
+            }
+
+            out.writeInt(trackCount);
+            for (int entry = 0; entry < lazyTracks.size(); entry++)
+            {
+                Track track = lazyTracks.getTrack(entry);
+                if (track == null)
+                {
+                    continue;
+                }
+
+                out.writeInt(lazyTracks.getTrackId(entry));
+                out.writeLong(lazyTracks.getFingerprint(entry));
+                for (Method accessor : ACCESSORS)
+                {
+                    writeValue(out, accessor.invoke(track));
+                }
+            }
+
+            out.writeLong(checked.getChecksum().getValue());
+        }
+        catch (IllegalAccessException | InvocationTargetException e)
+        {
+            throw new IOException("Accessing the fields of a track has failed", e);
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param trackId a Track ID
+     * @return the cached track with this Track ID, or null
+     */
+    CachedTrack getTrack (int trackId)
+    {
+        return tracksById.get(trackId);
+    }
+
+    /**
+     * @return the fingerprint of the "Playlists" array
+     */
+    long getPlaylistsFingerprint ()
+    {
+        return playlistsFingerprint;
+    }
+
+    /**
+     * @return the Playlist Persistent IDs in the order in which their dependencies have been resolved
+     */
+    List<String> getPlaylistOrder ()
+    {
+        return playlistOrder;
+    }
+
+    /**
+     * @param out   the stream
+     * @param value the value of a record component
+     * @throws IOException if writing fails or the value is of an unexpected type
+     */
+    private static void writeValue (DataOutputStream out, Object value)
+            throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(TAG_NULL);
+        }
+        else if (value instanceof Integer integer)
+        {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt(integer);
+        }
+        else if (value instanceof Long longValue)
+        {
+            out.writeByte(TAG_LONG);
+            out.writeLong(longValue);
+        }
+        else if (value instanceof String string)
+        {
+            // Strings may be longer than what writeUTF supports.
+            byte[] bytes = string.getBytes(UTF_8);
+            out.writeByte(TAG_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if (value instanceof Boolean booleanValue)
+        {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(booleanValue);
+        }
+        else if (value instanceof Date date)
+        {
+            out.writeByte(TAG_DATE);
+            out.writeLong(date.getTime());
+        }
+        else
+        {
+            throw new IOException("Unexpected value " + value + " of type " + value.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Read a count or a length and check that the file can contain that many entries.
+     *
+     * @param in           the stream
+     * @param fileSize     the size of the cache file
+     * @param minEntrySize the minimal number of bytes that each entry takes in the file
+     * @param entries      what is counted, for the error message
+     * @return the count
+     * @throws IOException if reading fails or the count is negative or too large for the file
+     */
+    private static int readCount (DataInputStream in, long fileSize, int minEntrySize, String entries)
+            throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0 || (long) count * minEntrySize > fileSize)
+        {
+            throw new IOException("invalid number of " + entries + " " + count + " for a file of " + fileSize + " bytes");
+        }
+        return count;
+    }
+
+    /**
+     * @param in       the stream
+     * @param fileSize the size of the cache file, which bounds the length of strings
+     * @return the value of a record component
+     * @throws IOException if reading fails, the tag is unknown, or a length is invalid
+     */
+    private static Object readValue (DataInputStream in, long fileSize)
+            throws IOException
+    {
+        byte tag = in.readByte();
+        return switch (tag)
+        {
+            case TAG_NULL -> null;
+            case TAG_INTEGER -> in.readInt();
+            case TAG_LONG -> in.readLong();
+            case TAG_STRING ->
+            {
+                byte[] bytes = new byte[readCount(in, fileSize, 1, "bytes")];
+                in.readFully(bytes);
+                yield new String(bytes, UTF_8);
+            }
+            case TAG_BOOLEAN -> in.readBoolean();
+            case TAG_DATE -> new Date(in.readLong());
+            default -> throw new IOException("Unknown tag " + tag);
+        };
+    }
+
+    /**
+     * A track from the cache.
+     *
+     * @param fingerprint the fingerprint of the dictionary it has been decoded from
+     * @param track       the track, not contained in any playlist yet
+     */
+    record CachedTrack(long fingerprint, Track track)
+    {
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing;
+
+import com.dd.plist.BinaryPropertyListWriter;
+import com.dd.plist.NSObject;
+import com.dd.plist.PropertyListParser;
+import com.github.luben.zstd.ZstdInputStream;
+import iexport.logging.Logging;
+import iexport.parsing.plist.PlistTokenizer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The source of the library file that should be parsed by {@link LibraryParser}.
+ * <p>
+ * This is either a file or a stream (e.g. STDIN).
+ * Both may be compressed using gzip (e.g. "iTunes Music Library.xml.gz") or zstd (e.g. "iTunes Music Library.xml.zst");
+ * the compression is detected from the first bytes of the content, independently of the file name.
+ * <p>
+ * Uncompressed files are mapped into memory.
+ * Compressed files and streams are decompressed on a separate thread using a {@link PrefetchingInputStream}
+ * and collected in a single array on the heap.
+ * For compressed files, the array is allocated with the decompressed size stated in the file
+ * (the ISIZE field of gzip, the frame content size of zstd, if present), so it does not have to grow while collecting.
+ * Parsing starts once the content has been collected completely,
+ * since the parsers need random access to the whole content (e.g. to decode tracks lazily or to parse chunks concurrently).
+ */
+public class LibraryInput
+{
+    /**
+     * The path that stands for STDIN.
+     */
+    public static final String STDIN_PATH = "-";
+
+    /**
+     * The magic number at the start of gzip-compressed data.
+     */
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1F, (byte) 0x8B};
+
+    /**
+     * The magic number at the start of zstd-compressed data.
+     */
+    private static final byte[] ZSTD_MAGIC = {(byte) 0x28, (byte) 0xB5, (byte) 0x2F, (byte) 0xFD};
+
+    /**
+     * The start of a CDATA section in an .xml file.
+     */
+    private static final String CDATA_START = "<![CDATA[";
+
+    /**
+     * The end of a CDATA section in an .xml file.
+     */
+    private static final String CDATA_END = "]]>";
+
+    /**
+     * The size of the buffer for the compressed data.
+     */
+    private static final int COMPRESSED_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The initial size of the array collecting a stream whose size is not known.
+     */
+    private static final int INITIAL_CONTENT_SIZE = 1 << 20;
+
+    /**
+     * The maximal size of the content, i.e. the maximal size of an array.
+     */
+    private static final int MAX_CONTENT_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * A description of the input for messages, e.g. the path of the file.
+     */
+    private final String description;
+
+    /**
+     * The file, or null if the input is a stream.
+     */
+    private final File file;
+
+    /**
+     * The stream, or null if the input is a file.
+     */
+    private final InputStream stream;
+
+    /**
+     * The (decompressed) content of the input, once it has been read.
+     */
+    private ByteBuffer content = null;
+
+    /**
+     * Read the library from a file.
+     *
+     * @param file the file
+     */
+    public LibraryInput (File file)
+    {
+        this.description = file.getPath();
+        this.file = file;
+        this.stream = null;
+    }
+
+    /**
+     * Read the library from a stream.
+     * <p>
+     * The stream can only be read once, and it will be closed after reading.
+     *
+     * @param stream      the stream
+     * @param description a description of the input for messages
+     */
+    public LibraryInput (InputStream stream, String description)
+    {
+        this.description = description;
+        this.file = null;
+        this.stream = stream;
+    }
+
+    /**
+     * @param path the path of a file, or {@link #STDIN_PATH} for STDIN
+     * @return the input for the path
+     */
+    public static LibraryInput fromPath (String path)
+    {
+        if (path.equals(STDIN_PATH))
+        {
+            return new LibraryInput(System.in, "STDIN");
+        }
+        return new LibraryInput(new File(path));
+    }
+
+    /**
+     * Get the content of the input, decompressed if necessary.
+     * <p>
+     * The content is only read once; further calls return the same buffer.
+     *
+     * @return a buffer holding the content
+     * @throws IOException if the input cannot be read
+     */
+    ByteBuffer read ()
+            throws IOException
+    {
+        if (content == null)
+        {
+            if (file != null)
+            {
+                ByteBuffer mapped = map(file);
+                content = startsWith(mapped, GZIP_MAGIC) || startsWith(mapped, ZSTD_MAGIC)
+                        ? readFully(new FileInputStream(file), decompressedSize(mapped))
+                        : mapped;
+            }
+            else
+            {
+                content = readFully(stream, -1);
+            }
+        }
+        return content;
+    }
+
+    /**
+     * @return true iff the (decompressed) content is a binary property list
+     * @throws IOException if the input cannot be read
+     */
+    public boolean isBinaryPropertyList ()
+            throws IOException
+    {
+        return PlistTokenizer.isBinaryPropertyList(read());
+    }
+
+    /**
+     * Convert the input into the other format of property lists using dd-plist,
+     * i.e. a binary property list into an .xml file and vice versa, e.g. to compare the parsers on both formats.
+     * <p>
+     * dd-plist writes strings containing {@code &} or {@code <} as CDATA sections, which iTunes does not use
+     * and {@code MappedLibraryParser} does not support, so they are replaced by escaped text.
+     *
+     * @return an input holding the converted content in memory
+     * @throws IOException if the input cannot be read or converted
+     */
+    public LibraryInput convert ()
+            throws IOException
+    {
+        boolean binary = isBinaryPropertyList();
+
+        byte[] converted;
+        try
+        {
+            NSObject propertyList = parsePropertyList();
+            converted = binary
+                    ? replaceCdataSections(propertyList.toXMLPropertyList()).getBytes(StandardCharsets.UTF_8)
+                    : BinaryPropertyListWriter.writeToArray(propertyList);
+        }
+        catch (IOException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new IOException("Converting " + description + " has failed: " + e.getMessage(), e);
+        }
+
+        return new LibraryInput(new ByteArrayInputStream(converted), description + (binary ? " (converted to .xml)" : " (converted to a binary property list)"));
+    }
+
+    /**
+     * @param xml an .xml file
+     * @return the file with each CDATA section replaced by its escaped content
+     */
+    private static String replaceCdataSections (String xml)
+    {
+        StringBuilder replaced = new StringBuilder(xml.length());
+        int position = 0;
+        int start;
+        while ((start = xml.indexOf(CDATA_START, position)) >= 0)
+        {
+            int end = xml.indexOf(CDATA_END, start);
+            if (end < 0)
+            {
+                break;
+            }
+            replaced.append(xml, position, start)
+                    .append(xml.substring(start + CDATA_START.length(), end)
+                                    .replace("&", "&amp;")
+                                    .replace("<", "&lt;")
+                                    .replace(">", "&gt;"));
+            position = end + CDATA_END.length();
+        }
+        return replaced.append(xml, position, xml.length()).toString();
+    }
+
+    /**
+     * Parse the input into a property list using dd-plist.
+     *
+     * @return the root object of the property list
+     * @throws Exception if reading or parsing fails
+     */
+    NSObject parsePropertyList ()
+            throws Exception
+    {
+        if (file != null && content == null && !isCompressed(file))
+        {
+            return PropertyListParser.parse(file);
+        }
+
+        ByteBuffer buffer = read();
+        if (buffer.hasArray())
+        {
+            return PropertyListParser.parse(new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), buffer.limit()));
+        }
+
+        byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return PropertyListParser.parse(bytes);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return description;
+    }
+
+    /**
+     * Decompress a stream (if it is compressed) on a separate thread and collect its content.
+     *
+     * @param in             the stream, which will be closed
+     * @param expectedSize the size of the decompressed content if it is known, otherwise -1
+     * @return a buffer holding the decompressed content
+     * @throws IOException if reading fails
+     */
+    private ByteBuffer readFully (InputStream in, long expectedSize)
+            throws IOException
+    {
+        BufferedInputStream buffered = new BufferedInputStream(in, COMPRESSED_BUFFER_SIZE);
+        buffered.mark(ZSTD_MAGIC.length);
+        ByteBuffer magic = ByteBuffer.wrap(buffered.readNBytes(ZSTD_MAGIC.length));
+        buffered.reset();
+
+        InputStream decompressed;
+        if (startsWith(magic, GZIP_MAGIC))
+        {
+            Logging.getLogger().debug(() -> "Decompressing " + description + " using gzip.");
+            decompressed = new GZIPInputStream(buffered, COMPRESSED_BUFFER_SIZE);
+        }
+        else if (startsWith(magic, ZSTD_MAGIC))
+        {
+            Logging.getLogger().debug(() -> "Decompressing " + description + " using zstd.");
+            decompressed = new ZstdInputStream(buffered);
+        }
+        else
+        {
+            decompressed = buffered;
+        }
+
+        try (InputStream prefetching = new PrefetchingInputStream(decompressed, "iExport reader for " + description))
+        {
+            return collect(prefetching, expectedSize);
+        }
+    }
+
+    /**
+     * Collect the content of a stream in a single array.
+     * <p>
+     * Unlike {@link InputStream#readAllBytes()}, which collects blocks and then copies them into the result,
+     * this writes the data directly into the result, which only has to grow if the expected size is unknown or wrong.
+     *
+     * @param in           the stream
+     * @param expectedSize the size of the content if it is known, otherwise -1
+     * @return a buffer holding the content, whose capacity is its size
+     * @throws IOException if reading fails or the content is too large
+     */
+    private ByteBuffer collect (InputStream in, long expectedSize)
+            throws IOException
+    {
+        // One more byte than expected, so reaching the end does not require growing.
+        int capacity = expectedSize >= 0 ? (int) Math.min(expectedSize + 1, MAX_CONTENT_SIZE) : INITIAL_CONTENT_SIZE;
+        byte[] content = new byte[capacity];
+        int size = 0;
+
+        int count;
+        while ((count = in.read(content, size, content.length - size)) >= 0)
+        {
+            size += count;
+            if (size == content.length)
+            {
+                if (size == MAX_CONTENT_SIZE)
+                {
+                    throw new IOException("The content of " + description + " is too large (more than " + MAX_CONTENT_SIZE + " bytes)");
+                }
+                Logging.getLogger().debug(() -> "The content of " + description + " is larger than expected, growing the buffer.");
+                content = Arrays.copyOf(content, (int) Math.min((long) size + (size >> 1), MAX_CONTENT_SIZE));
+            }
+        }
+
+        return ByteBuffer.wrap(content, 0, size).slice();
+    }
+
+    /**
+     * Determine the size of the decompressed content of a compressed file from its metadata.
+     * <p>
+     * For gzip, this is the ISIZE field at the end of the file, i.e. the size modulo 2^32 of the last member.
+     * For zstd, this is the frame content size in the header of the first frame, if the compressor has written it.
+     * Either may be smaller than the actual size (for files with several members or frames), which is only a performance issue.
+     *
+     * @param compressed the content of the compressed file
+     * @return the size of the decompressed content, or -1 if it is not known
+     */
+    private static long decompressedSize (ByteBuffer compressed)
+    {
+        int limit = compressed.limit();
+
+        if (startsWith(compressed, GZIP_MAGIC))
+        {
+            return limit >= 18 ? Integer.toUnsignedLong(compressed.order(ByteOrder.LITTLE_ENDIAN).getInt(limit - 4)) : -1;
+        }
+
+        if (startsWith(compressed, ZSTD_MAGIC) && limit > ZSTD_MAGIC.length)
+        {
+            // Frame header descriptor: frame content size flag (bits 7-6), single segment flag (bit 5), dictionary id flag (bits 1-0).
+            int descriptor = compressed.get(ZSTD_MAGIC.length) & 0xFF;
+            int contentSizeFlag = descriptor >>> 6;
+            boolean singleSegment = (descriptor & 0x20) != 0;
+            int dictionaryIdSize = new int[]{0, 1, 2, 4}[descriptor & 0x3];
+            int contentSizeSize = new int[]{singleSegment ? 1 : 0, 2, 4, 8}[contentSizeFlag];
+            int position = ZSTD_MAGIC.length + 1 + (singleSegment ? 0 : 1) + dictionaryIdSize;
+
+            if (contentSizeSize == 0 || position + contentSizeSize > limit)
+            {
+                return -1;
+            }
+
+            long size = 0;
+            for (int i = contentSizeSize - 1; i >= 0; i--)
+            {
+                size = (size << 8) | (compressed.get(position + i) & 0xFF);
+            }
+            // The two-byte field is stored with an offset of 256.
+            return contentSizeSize == 2 ? size + 256 : (size < 0 ? -1 : size);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Map a file into memory.
+     *
+     * @param file the file
+     * @return a read-only buffer holding the contents of the file
+     * @throws IOException if the file cannot be read or is too large to be mapped
+     */
+    private static ByteBuffer map (File file)
+            throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException("The file is too large to be mapped (" + size + " bytes)");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return true iff the file starts with the magic number of a supported compression format
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean isCompressed (File file)
+            throws IOException
+    {
+        try (InputStream in = new FileInputStream(file))
+        {
+            ByteBuffer magic = ByteBuffer.wrap(in.readNBytes(ZSTD_MAGIC.length));
+            return startsWith(magic, GZIP_MAGIC) || startsWith(magic, ZSTD_MAGIC);
+        }
+    }
+
+    /**
+     * @param buffer a buffer
+     * @param prefix a sequence of bytes
+     * @return true iff the buffer starts with the sequence
+     */
+    private static boolean startsWith (ByteBuffer buffer, byte[] prefix)
+    {
+        if (buffer.limit() < prefix.length)
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (buffer.get(i) != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
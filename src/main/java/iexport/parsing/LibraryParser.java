@@ -20,20 +20,30 @@ package iexport.parsing;
 import com.dd.plist.NSArray;
 import com.dd.plist.NSDictionary;
 import com.dd.plist.NSObject;
-import com.dd.plist.PropertyListParser;
 import iexport.itunes.Library;
 import iexport.itunes.Playlist;
+import iexport.itunes.PlaylistMembership;
 import iexport.itunes.Track;
 import iexport.logging.Logging;
 import iexport.parsing.builders.LibraryBuilder;
 import iexport.parsing.builders.PlaylistBuilder;
 import iexport.parsing.keys.LibraryKeys;
-import iexport.parsing.sorting.PlaylistComparator;
+import iexport.parsing.plist.PlistFormatException;
+import iexport.parsing.plist.PlistTokenizer;
+import iexport.parsing.sorting.PlaylistTreeOrder;
 import iexport.parsing.sorting.TrackComparator;
+import iexport.query.QueryParsingException;
+import iexport.query.SmartPlaylists;
 import iexport.settings.ParsingSettings;
+import iexport.utils.IntIntMap;
+import iexport.utils.IntList;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,30 +51,57 @@ import java.util.Map;
 /**
  * The main class of the iExport parsing module.
  * <p>
- * It will take a (link to an) .xml file of type {@link File} a convert it into a {@link Library}.
+ * It will take a (link to an) .xml file of type {@link File}, or more generally a {@link LibraryInput}, a convert it into a {@link Library}.
  * <p>
  * It proceeds as follows:
  * <ol>
  *     <li> Create a {@link LibraryBuilder}.
+ *     <li> Either tokenize the memory-mapped file using {@code MappedLibraryParser}
+ *     (or read it using {@code BinaryLibraryParser} if it is a binary property list) if parsing.mappedParser is set,
+ *     or parse it into a tree of {@link NSObject}s using dd-plist.
  *     <li> Parse the metadata of the library (the keys whose values are not arrays or dictionaries)
  *     using the handlers from {@link LibraryKeys}
  *     and  set the fields of the {@link LibraryBuilder}.
  *     <li> Parse the "Tracks" dictionary of the library, obtaining a list of {@link Track}
+ *     (if parsing.lazyTracks or parsing.cacheFilePath is set, only the locations of the tracks are recorded, see {@link LazyTracks})
  *     <li> Parse the "Playlists" array of the library, obtaining a list of {@link PlaylistBuilder}
+ *     <li> If parsing.cacheFilePath is set, we take the tracks whose dictionaries have not changed since the previous run
+ *     from the {@link LibraryCache} and decode only the other tracks.
  * <p>
  *          It now remains to construct the relationships between tracks and playlists and the relationship among playlists.
  *     <li> We resolve the parent-child relationships between the playlists.
  *     While doing so, we convert each {@link PlaylistBuilder} into an actual {@link Playlist}.
- *     <li> We turn the list of track ids of type {@link Integer} of each {@link PlaylistBuilder} into an actual list of {@link Track} objects
+ *     If the "Playlists" array has not changed since the previous run, the playlists are processed in the order
+ *     in which their dependencies have been resolved in the previous run, so that no playlist needs to be requeued.
+ *     <li> If parsing.lazyTracks is set, we decode the tracks that are contained in the playlists that have not been ignored.
+ *     The remaining tracks will be decoded once {@link Library#tracks()} is accessed, see {@link LazyTrackList}.
+ *     <li> We turn the list of track ids of each {@link PlaylistBuilder} into an actual list of {@link Track} objects,
+ *     stored for all playlists together in a {@link PlaylistMembership}
+ *     <li> We add the smart playlists defined in the settings (parsing.smartPlaylists), see {@link SmartPlaylists}.
  *     <li> Finally, we sort the playlists and tracks using the comparators from {@link iexport.parsing.sorting}
  * </ol>
  */
 public class LibraryParser
 {
     /**
-     * The file that should be parsed.
+     * The name of the parser that reads the library using dd-plist, see {@link #getParserName()}.
      */
-    private final File libraryFile;
+    public static final String PARSER_DD_PLIST = "dd-plist";
+
+    /**
+     * The name of the parser that tokenizes .xml files, see {@link #getParserName()}.
+     */
+    public static final String PARSER_MAPPED = "MappedLibraryParser";
+
+    /**
+     * The name of the parser that reads binary property lists, see {@link #getParserName()}.
+     */
+    public static final String PARSER_BINARY = "BinaryLibraryParser";
+
+    /**
+     * The file or stream that should be parsed.
+     */
+    private final LibraryInput libraryInput;
 
     /**
      * The settings that will be used for parsing.
@@ -95,22 +132,86 @@ public class LibraryParser
     private final List<PlaylistBuilder> playlistBuilders = new ArrayList<>();
 
     /**
-     * A map that maps track ids to tracks.
+     * The tracks that have been added, in the order in which they have been added.
+     * <p>
+     * Will be needed for parsing playlists, see {@link #trackOrdinalsById}.
+     */
+    private final List<Track> tracksByOrdinal = new ArrayList<>();
+
+    /**
+     * A map that maps track ids to the positions of the tracks in {@link #tracksByOrdinal}.
      * <p>
-     * Will be needed for parsing playlists.
+     * Track IDs are neither boxed nor hashed as objects,
+     * since there is one lookup for each entry of each playlist.
+     */
+    private final IntIntMap trackOrdinalsById = new IntIntMap();
+
+    /**
+     * The recorded entries of the "Tracks" dictionary if the tracks are decoded lazily, null otherwise.
      */
-    private final Map<Integer, Track> tracksById = new HashMap<>();
+    private LazyTracks lazyTracks = null;
+
+    /**
+     * The cache of the previous run if parsing.cacheFilePath is set and the cache file could be read, null otherwise.
+     */
+    private LibraryCache libraryCache = null;
+
+    /**
+     * The fingerprint of the "Playlists" array, if the fingerprints are recorded.
+     */
+    private long playlistsFingerprint = 0;
+
+    /**
+     * The Playlist Persistent IDs in the order in which their dependencies have been resolved, to be stored in the cache.
+     */
+    private final List<String> playlistOrder = new ArrayList<>();
+
+    /**
+     * Counts the keys of the library for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownLibraryKeys = new UnknownKeyHistogram("library");
+
+    /**
+     * Counts the keys of tracks for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownTrackKeys = new UnknownKeyHistogram("track");
+
+    /**
+     * Counts the keys of playlists for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownPlaylistKeys = new UnknownKeyHistogram("playlist");
 
     /**
      * The builder that will be used to construct the library.
      */
     private LibraryBuilder libraryBuilder;
 
+    /**
+     * The name of the parser that has read the library file, see {@link #getParserName()}.
+     */
+    private String parserName = null;
+
     public LibraryParser (File libraryFile, ParsingSettings parsingSettings)
+    {
+        this(new LibraryInput(libraryFile), parsingSettings);
+    }
+
+    public LibraryParser (LibraryInput libraryInput, ParsingSettings parsingSettings)
     {
         this.parsingSettings = parsingSettings;
         libraryBuilder = new LibraryBuilder();
-        this.libraryFile = libraryFile;
+        this.libraryInput = libraryInput;
+    }
+
+    /**
+     * Get the parser that has read the library file,
+     * which is not the requested one if e.g. parsing.mappedParser is set but the file uses constructs it does not support.
+     *
+     * @return {@link #PARSER_DD_PLIST}, {@link #PARSER_MAPPED}, or {@link #PARSER_BINARY}, or null if the library has not been parsed yet
+     */
+    public String getParserName ()
+    {
+        return parserName;
     }
 
     /**
@@ -122,38 +223,321 @@ public class LibraryParser
     public Library parse ()
             throws ITunesParsingException
     {
+        // Parse the rules of the smart playlists first, so that mistakes are reported before the (slow) parsing of the file.
+        SmartPlaylists smartPlaylists = compileSmartPlaylists();
 
-        // The dictionary that is at the root of the parsed file.
-        NSDictionary rootDictionary = parseAndGetRootDictionary();
+        // Parse the metadata, the "Tracks" dictionary, and the "Playlists" array.
+        parseLibraryFile();
 
-        // Parse the keys of the root dictionary itself that are not arrays or dictionaries.
-        parseMetadata(rootDictionary);
-
-        // Parse the "Tracks" dictionary.
-        parseTracks(rootDictionary);
-
-        // Parse the Playlists array.
-        parsePlaylists(rootDictionary);
+        // Take the unchanged tracks from the cache of the previous run.
+        if (lazyTracks != null && lazyTracks.hasFingerprints())
+        {
+            reuseCachedTracks();
+        }
 
         // Set the parent-child relationships between the playlists,
         // in turn converting PlaylistBuilders into actual Playlists.
         processPlaylistBuilders();
 
+        // Decode the tracks that are needed by the remaining playlists,
+        // or all tracks that are not cached if the cache should be written.
+        if (lazyTracks != null && lazyTracks.hasFingerprints())
+        {
+            decodeAndCacheTracks();
+        }
+        else if (lazyTracks != null)
+        {
+            decodeReferencedTracks();
+        }
+
         // Turn the track ids of the playlist builders into actual tracks.
         convertPlaylistTrackIdListToTrackList();
 
+        // Report the keys without handler, once for all tracks and playlists.
+        unknownLibraryKeys.report();
+        unknownTrackKeys.report();
+        unknownPlaylistKeys.report();
+
         // We can now build the library.
+        if (lazyTracks != null)
+        {
+            libraryBuilder.setTracks(new LazyTrackList(lazyTracks));
+        }
         Library library = libraryBuilder.build();
 
         // Reset this object in case someone uses it twice.
         reset();
 
+        // Evaluate the smart playlists against the library.
+        if (!smartPlaylists.isEmpty())
+        {
+            smartPlaylists.addTo(library, parsingSettings.getIgnoreEmptyPlaylists());
+        }
+
         // Sort tracks and playlists.
         sortLibrary(library);
 
         return library;
     }
 
+    /**
+     * Parse the rules of the smart playlists specified in parsing.smartPlaylists.
+     *
+     * @return the smart playlists
+     */
+    private SmartPlaylists compileSmartPlaylists ()
+    {
+        SmartPlaylists smartPlaylists = new SmartPlaylists();
+
+        for (Map.Entry<String, String> entry : parsingSettings.getSmartPlaylists().entrySet())
+        {
+            try
+            {
+                smartPlaylists.add(entry.getKey(), entry.getValue());
+            }
+            catch (QueryParsingException e)
+            {
+                throw new RuntimeException("Invalid rule for smart playlist \"" + entry.getKey() + "\" in "
+                        + parsingSettings.getYamlPath("smartPlaylists") + ": " + e.getMessage(), e);
+            }
+        }
+
+        return smartPlaylists;
+    }
+
+    /**
+     * Parse the metadata, the tracks, and the playlists from {@link #libraryInput}.
+     * <p>
+     * If parsing.mappedParser is set, the file is parsed by {@code MappedLibraryParser},
+     * or by {@code BinaryLibraryParser} if it is a binary property list.
+     * If this is not possible (e.g. because the file uses constructs that are not supported), we fall back to dd-plist.
+     *
+     * @throws ITunesParsingException if parsing fails in an non-recoverable way
+     */
+    private void parseLibraryFile ()
+            throws ITunesParsingException
+    {
+        if (parsingSettings.getMappedParser())
+        {
+            try
+            {
+                parseMappedLibraryFile();
+                return;
+            }
+            catch (PlistFormatException e)
+            {
+                Logging.getLogger().warning("Parsing the memory-mapped library file has failed (" + e.getMessage() + "), falling back to dd-plist.");
+                reset();
+            }
+        }
+
+        parserName = PARSER_DD_PLIST;
+
+        // The dictionary that is at the root of the parsed file.
+        NSDictionary rootDictionary = parseAndGetRootDictionary();
+
+        // Parse the keys of the root dictionary itself that are not arrays or dictionaries.
+        parseMetadata(rootDictionary);
+
+        // Parse the "Tracks" dictionary.
+        parseTracks(rootDictionary);
+
+        // Parse the Playlists array.
+        parsePlaylists(rootDictionary);
+    }
+
+    /**
+     * Parse {@link #libraryInput} using {@code MappedLibraryParser}, or {@code BinaryLibraryParser} if it is a binary property list.
+     *
+     * @throws ITunesParsingException if the file cannot be read
+     * @throws PlistFormatException   if the file is malformed or uses constructs that are not supported
+     */
+    private void parseMappedLibraryFile ()
+            throws ITunesParsingException, PlistFormatException
+    {
+        ByteBuffer buffer;
+        try
+        {
+            buffer = libraryInput.read();
+        }
+        catch (IOException e)
+        {
+            throw new ITunesParsingException(this.getClass().getSimpleName() + ": Reading the library file " + libraryInput + " has failed", e);
+        }
+
+        if (PlistTokenizer.isBinaryPropertyList(buffer))
+        {
+            Logging.getLogger().debug("The library file is a binary property list, reading it by object index.");
+            if (!parsingSettings.getCacheFilePathString().isEmpty())
+            {
+                Logging.getLogger().debug("The cache of " + parsingSettings.getYamlPath("cacheFilePath") + " is only supported for .xml files, not using it.");
+            }
+            var binaryLibraryParser = new BinaryLibraryParser(buffer, parsingSettings.getParserThreads(), unknownLibraryKeys, unknownTrackKeys, unknownPlaylistKeys);
+            if (parsingSettings.getLazyTracks())
+            {
+                lazyTracks = new LazyTracks(binaryLibraryParser::trackDecoder, parsingSettings.getParserThreads());
+            }
+            binaryLibraryParser.parse(this, libraryBuilder, lazyTracks);
+            parserName = PARSER_BINARY;
+            return;
+        }
+
+        var mappedLibraryParser = new MappedLibraryParser(buffer, parsingSettings.getParserThreads(), unknownLibraryKeys, unknownTrackKeys, unknownPlaylistKeys);
+        if (!parsingSettings.getCacheFilePathString().isEmpty())
+        {
+            // The fingerprints are computed over the bytes of the track dictionaries while skipping them.
+            lazyTracks = new LazyTracks(mappedLibraryParser::trackDecoder, parsingSettings.getParserThreads(), true);
+        }
+        else if (parsingSettings.getLazyTracks())
+        {
+            lazyTracks = new LazyTracks(mappedLibraryParser::trackDecoder, parsingSettings.getParserThreads());
+        }
+        mappedLibraryParser.parse(this, libraryBuilder, lazyTracks);
+        parserName = PARSER_MAPPED;
+    }
+
+    /**
+     * Read the cache file specified in parsing.cacheFilePath and take the tracks whose dictionaries have not changed from it.
+     */
+    private void reuseCachedTracks ()
+    {
+        libraryCache = LibraryCache.read(Path.of(parsingSettings.getCacheFilePathString()));
+        if (libraryCache == null)
+        {
+            return;
+        }
+
+        int reused = lazyTracks.reuse(libraryCache);
+        Logging.getLogger().debug("Took " + reused + " of " + lazyTracks.size() + " tracks from the cache.");
+    }
+
+    /**
+     * Decode all tracks that have not been taken from the cache, add all tracks to the library,
+     * and write the cache file for the next run.
+     *
+     * @throws ITunesParsingException if a track dictionary is malformed
+     */
+    private void decodeAndCacheTracks ()
+            throws ITunesParsingException
+    {
+        List<Track> tracks;
+        try
+        {
+            tracks = lazyTracks.decodeAll(unknownTrackKeys);
+        }
+        catch (PlistFormatException e)
+        {
+            throw new ITunesParsingException(this.getClass().getSimpleName() + ": Decoding the tracks has failed (" + e.getMessage() + ")", e);
+        }
+
+        for (Track track : tracks)
+        {
+            addTrackToLibrary(track);
+        }
+
+        Path cacheFile = Path.of(parsingSettings.getCacheFilePathString());
+        try
+        {
+            LibraryCache.write(cacheFile, lazyTracks, playlistsFingerprint, playlistOrder);
+        }
+        catch (IOException e)
+        {
+            Logging.getLogger().warning("Writing the cache file " + cacheFile + " has failed: " + e.getMessage());
+        }
+
+        // All tracks are in the library now, the list must not be replaced by a lazy one.
+        lazyTracks = null;
+    }
+
+    /**
+     * Set the fingerprint of the "Playlists" array, which is stored in the cache
+     * to detect whether the dependencies among the playlists can be resolved in the same order as in the previous run.
+     *
+     * @param playlistsFingerprint the fingerprint
+     */
+    void setPlaylistsFingerprint (long playlistsFingerprint)
+    {
+        this.playlistsFingerprint = playlistsFingerprint;
+    }
+
+    /**
+     * Decode the tracks whose Track IDs occur in the playlists that have not been ignored,
+     * and register them for {@link #convertPlaylistTrackIdListToTrackList()}.
+     *
+     * @throws ITunesParsingException if a track dictionary is malformed
+     */
+    private void decodeReferencedTracks ()
+            throws ITunesParsingException
+    {
+        IntList trackIds = new IntList();
+        for (Playlist playlist : libraryBuilder.getPlaylists())
+        {
+            trackIds.addAll(playlistsBuildersByPersistentId.get(playlist.playlistPersistentId()).getTrackIds());
+        }
+
+        List<Track> tracks;
+        try
+        {
+            tracks = lazyTracks.decode(trackIds, unknownTrackKeys);
+        }
+        catch (PlistFormatException e)
+        {
+            throw new ITunesParsingException(this.getClass().getSimpleName() + ": Decoding the tracks has failed (" + e.getMessage() + "), consider setting "
+                    + parsingSettings.getYamlPath("lazyTracks") + " to false", e);
+        }
+
+        for (Track track : tracks)
+        {
+            putTrack(track);
+        }
+        Logging.getLogger().debug("Decoded " + tracks.size() + " of " + lazyTracks.size() + " tracks that are contained in playlists.");
+    }
+
+    /**
+     * Add a track that has been parsed from the "Tracks" dictionary of the library.
+     * <p>
+     * It will check that the Track ID from the key of the "Tracks" dictionary matches the Track ID of the track.
+     *
+     * @param trackId the Track ID from the key of the "Tracks" dictionary
+     * @param track   the track to add
+     */
+    void addTrackWithKey (int trackId, Track track)
+    {
+        /*
+         * we should verify that the two Track IDs match
+         * - the Track ID from the key of the "Tracks" dictionary of the library
+         * - the Track ID from the key "Track ID" of the track dictionary
+         */
+        if (!Integer.valueOf(trackId).equals(track.trackId()))
+        {
+            Logging.getLogger().warning("For track " + track + ", Track ID  " + trackId + " from key does not match internal Track ID " + track.trackId() + "; skipping it");
+            return;
+        }
+
+        addTrackToLibrary(track);
+    }
+
+    /**
+     * Add a playlist builder that has been parsed from the "Playlists" array of the library.
+     *
+     * @param playlistBuilder the builder
+     */
+    void addPlaylistBuilder (PlaylistBuilder playlistBuilder)
+    {
+        // we add it to the library builder object
+        playlistBuilders.add(playlistBuilder);
+
+        // converting it into an actual Playlist will be done later
+        // to this end, we will need the persistent id of the playlist
+        if (playlistBuilder.getPlaylistPersistentId() == null)
+        {
+            Logging.getLogger().warning("Playlist " + playlistBuilder + " has no Playlist Persistent ID, resolving dependencies for this playlist will likely fail.");
+            return;
+        }
+
+        playlistsBuildersByPersistentId.put(playlistBuilder.getPlaylistPersistentId(), playlistBuilder);
+    }
+
     /**
      * This method adds a track to a {@link LibraryBuilder}.
      * <p>
@@ -164,20 +548,42 @@ public class LibraryParser
     void addTrackToLibrary (Track track)
     {
         // Check for a duplicate.
-        Integer trackId = track.trackId();
-        if (tracksById.get(trackId) != null)
+        int trackId = track.trackId();
+        Track oldTrack = getTrackById(trackId);
+        if (oldTrack != null)
         {
             Logging.getLogger().warning("Library already contains track with id " + trackId + "; Skipping new track.");
-            Logging.getLogger().debug(1, "Old track:" + tracksById.get(trackId));
-            Logging.getLogger().debug(1, "New track:" + track);
+            Logging.getLogger().debug(1, () -> "Old track:" + oldTrack);
+            Logging.getLogger().debug(1, () -> "New track:" + track);
             return;
         }
 
         // No duplicate, we can add the track.
-        tracksById.put(track.trackId(), track);
+        putTrack(track);
         libraryBuilder.getTracks().add(track);
     }
 
+    /**
+     * Register a track for the lookup by its Track ID, without adding it to the library.
+     *
+     * @param track the track, whose Track ID has not been registered before
+     */
+    private void putTrack (Track track)
+    {
+        trackOrdinalsById.putIfAbsent(track.trackId(), tracksByOrdinal.size());
+        tracksByOrdinal.add(track);
+    }
+
+    /**
+     * @param trackId a Track ID
+     * @return the track with this Track ID that has been added, or null
+     */
+    private Track getTrackById (int trackId)
+    {
+        int ordinal = trackOrdinalsById.get(trackId);
+        return ordinal == IntIntMap.ABSENT ? null : tracksByOrdinal.get(ordinal);
+    }
+
     /**
      * Resets the internal state of the parser in case somebody tries to use the same parser twice
      */
@@ -189,34 +595,54 @@ public class LibraryParser
         playlistsBuildersByPersistentId.clear();
         playlistsByPersistentId.clear();
         playlistBuilders.clear();
-        tracksById.clear();
+        tracksByOrdinal.clear();
+        trackOrdinalsById.clear();
+        lazyTracks = null;
+        libraryCache = null;
+        playlistsFingerprint = 0;
+        playlistOrder.clear();
+        unknownLibraryKeys.clear();
+        unknownTrackKeys.clear();
+        unknownPlaylistKeys.clear();
     }
 
     /**
-     * Populate {@link Playlist#tracks} by converting the list of track ids, {@link PlaylistBuilder#trackIds},
+     * Populate {@link Playlist#tracks} and {@link Track#inPlaylists} by converting the list of track ids, {@link PlaylistBuilder#trackIds},
      * into a list of real {@link Track} objects using the tracks that have been parsed.
+     * <p>
+     * The tracks are stored as ordinals (positions in {@link #tracksByOrdinal}) in a {@link PlaylistMembership}
+     * of which both collections are views.
      */
     private void convertPlaylistTrackIdListToTrackList ()
     {
-        for (Playlist playlist : libraryBuilder.getPlaylists())
+        List<Playlist> playlists = new ArrayList<>(libraryBuilder.getPlaylists());
+        List<IntList> trackOrdinalsOfPlaylists = new ArrayList<>(playlists.size());
+
+        for (Playlist playlist : playlists)
         {
-            for (Integer trackId : playlistsBuildersByPersistentId.get(playlist.playlistPersistentId()).getTrackIds())
+            IntList trackIds = playlistsBuildersByPersistentId.get(playlist.playlistPersistentId()).getTrackIds();
+            IntList trackOrdinals = new IntList(trackIds.size());
+            for (int i = 0; i < trackIds.size(); i++)
             {
-                Track track = tracksById.get(trackId);
+                int trackId = trackIds.get(i);
+                int ordinal = trackOrdinalsById.get(trackId);
 
-                if (track == null)
+                if (ordinal == IntIntMap.ABSENT)
                 {
                     Logging.getLogger().warning("Playlist " + playlist + " should contain track with track id " + trackId + ", but this track does not exist; skipping it");
                     continue;
                 }
 
-                playlist.addTrack(track);
+                trackOrdinals.add(ordinal);
             }
+            trackOrdinalsOfPlaylists.add(trackOrdinals);
         }
+
+        PlaylistMembership.build(tracksByOrdinal, playlists, trackOrdinalsOfPlaylists);
     }
 
     /**
-     * Parse {@link #libraryFile} into a property list and then get the {@link NSDictionary}
+     * Parse {@link #libraryInput} into a property list and then get the {@link NSDictionary}
      * at the root of the property list files.
      *
      * @return the dictionary at the root of the property list file
@@ -229,7 +655,7 @@ public class LibraryParser
         NSObject propertyList;
         try
         {
-            propertyList = PropertyListParser.parse(libraryFile);
+            propertyList = libraryInput.parsePropertyList();
         }
         catch (Exception e)
         {
@@ -276,7 +702,7 @@ public class LibraryParser
                 }
                 else
                 {
-                    Logging.getLogger().debug("No handler for library key \"" + key + "\" with value \"" + value + "\"");
+                    unknownLibraryKeys.count(key, value);
                 }
             }
         }
@@ -285,7 +711,9 @@ public class LibraryParser
     /**
      * Sort the playlists and tracks using the comparators from {@link iexport.parsing.sorting}
      * <p>
-     * We sort all playlists ({@link Library#playlists}, {@link Library#playlistsAtTopLevel}, and {@link Playlist#children} of each playlist using {@link iexport.parsing.sorting.PlaylistComparator}.
+     * We sort all playlists ({@link Library#playlists}, {@link Library#playlistsAtTopLevel}, and {@link Playlist#children} of each playlist)
+     * in the order of {@link iexport.parsing.sorting.PlaylistComparator}, computed by {@link PlaylistTreeOrder}:
+     * the siblings are sorted, and {@link Library#playlists} becomes the pre-order traversal of the tree of playlists.
      * <p>
      * We sort all tracks ({@link Library#tracks} and {@link Playlist#tracks} of each playlist using {@link iexport.parsing.sorting.TrackComparator}.
      *
@@ -293,17 +721,16 @@ public class LibraryParser
      */
     private void sortLibrary (Library library)
     {
-        var playlistComparator = new PlaylistComparator();
         var trackComparator = new TrackComparator();
 
-        library.playlistsAtTopLevel().sort(playlistComparator);
-        library.playlists().sort(playlistComparator);
+        // Sorts the top-level playlists and the children of each playlist.
+        var playlistTreeOrder = new PlaylistTreeOrder(library.playlistsAtTopLevel());
+        playlistTreeOrder.sort(library.playlists());
         library.tracks().sort(trackComparator);
 
         for (Playlist playlist : library.playlists())
         {
             playlist.tracks().sort(trackComparator);
-            playlist.children().sort(playlistComparator);
         }
     }
 
@@ -341,6 +768,17 @@ public class LibraryParser
         // Copy all playlist builders into a work list.
         List<PlaylistBuilder> workList = new ArrayList<>(playlistBuilders);
 
+        // If the playlists have not changed, process them in the order of the previous run, in which each parent precedes its children.
+        if (libraryCache != null && libraryCache.getPlaylistsFingerprint() == playlistsFingerprint)
+        {
+            Map<String, Integer> previousPositions = new HashMap<>();
+            for (String playlistPersistentId : libraryCache.getPlaylistOrder())
+            {
+                previousPositions.putIfAbsent(playlistPersistentId, previousPositions.size());
+            }
+            workList.sort(Comparator.comparing((PlaylistBuilder builder) -> previousPositions.getOrDefault(builder.getPlaylistPersistentId(), Integer.MAX_VALUE)));
+        }
+
         while (!workList.isEmpty())
         {
             iterationCount++;
@@ -353,7 +791,7 @@ public class LibraryParser
 
                 for (PlaylistBuilder remaining : workList)
                 {
-                    Logging.getLogger().debug(1, remaining.toString());
+                    Logging.getLogger().debug(1, remaining::toString);
                 }
                 Logging.getLogger().error("Continuing with the libraries that could be processed.");
                 return;
@@ -368,8 +806,9 @@ public class LibraryParser
             {
                 if (playlistBuilder.getPlaylistPersistentId() != null)
                 {
-                    Logging.getLogger().debug("Adding " + playlistBuilder.getPlaylistPersistentId() + " to the list of ignored playlists.");
+                    Logging.getLogger().debug(() -> "Adding " + playlistBuilder.getPlaylistPersistentId() + " to the list of ignored playlists.");
                     ignoredPlaylistPersistentIds.add(playlistBuilder.getPlaylistPersistentId());
+                    playlistOrder.add(playlistBuilder.getPlaylistPersistentId());
                 }
                 continue;
             }
@@ -385,14 +824,15 @@ public class LibraryParser
                 // Check if we should ignore the parent playlist.
                 if (ignoredPlaylistPersistentIds.contains(parentPersistentId))
                 {
-                    Logging.getLogger().debug("Ignoring " + playlistBuilder
+                    Logging.getLogger().debug(() -> "Ignoring " + playlistBuilder
                             + " because its parent with persistent id " + parentPersistentId + " has been ignored.");
 
                     if (playlistBuilder.getPlaylistPersistentId() != null)
                     {
-                        Logging.getLogger().debug("dding " + playlistBuilder.getPlaylistPersistentId()
+                        Logging.getLogger().debug(() -> "dding " + playlistBuilder.getPlaylistPersistentId()
                                 + " to the list of ignored playlists.");
                         ignoredPlaylistPersistentIds.add(playlistBuilder.getPlaylistPersistentId());
+                        playlistOrder.add(playlistBuilder.getPlaylistPersistentId());
                     }
 
                     continue;
@@ -442,6 +882,10 @@ public class LibraryParser
             // do some additional maintenance
             libraryBuilder.getPlaylists().add(playlist);
             playlistsByPersistentId.put(playlist.playlistPersistentId(), playlist);
+            if (playlist.playlistPersistentId() != null)
+            {
+                playlistOrder.add(playlist.playlistPersistentId());
+            }
 
             if (parent == null)
             {
@@ -531,21 +975,8 @@ public class LibraryParser
             }
 
             // we can now invoke the track parser to turned the trackDictionary into a track
-            TrackParser trackParser = new TrackParser(trackDictionary);
-            Track track = trackParser.parse();
-
-            /*
-             * we should verify that the two Track IDs match
-             * - the Track ID from the key of the "Tracks" dictionary of the library
-             * - the Track ID from the key "Track ID" of the track dictionary
-             */
-            if (!track.trackId().equals(trackId))
-            {
-                Logging.getLogger().warning("For track " + track + ", Track ID  " + trackId + " from key does not match internal Track ID " + track.trackId() + "; skipping it");
-                continue;
-            }
-
-            addTrackToLibrary(track);
+            TrackParser trackParser = new TrackParser(trackDictionary, unknownTrackKeys);
+            addTrackWithKey(trackId, trackParser.parse());
         }
     }
 
@@ -592,21 +1023,8 @@ public class LibraryParser
             }
 
             // we can now the convert this dictionary into a PlaylistBuilder
-            PlaylistParser playlistParser = new PlaylistParser(playlistDictionary);
-            PlaylistBuilder playlistBuilder = playlistParser.parse();
-
-            // we add it to the library builder object
-            playlistBuilders.add(playlistBuilder);
-
-            // converting it into an actual Playlist will be done later
-            // to this end, we will need the persistent id of the playlist
-            if (playlistBuilder.getPlaylistPersistentId() == null)
-            {
-                Logging.getLogger().warning("Playlist " + playlistBuilder + " has no Playlist Persistent ID, resolving dependencies for this playlist will likely fail.");
-                continue;
-            }
-
-            playlistsBuildersByPersistentId.put(playlistBuilder.getPlaylistPersistentId(), playlistBuilder);
+            PlaylistParser playlistParser = new PlaylistParser(playlistDictionary, unknownPlaylistKeys);
+            addPlaylistBuilder(playlistParser.parse());
         }
     }
 
@@ -627,9 +1045,9 @@ public class LibraryParser
         // If parsing.ignoreEmptyPlaylists is set to true, ignore playlists with empty track list
         if (parsingSettings.getIgnoreEmptyPlaylists())
         {
-            if (builder.getTrackIds() == null || builder.getTrackIds().size() == 0)
+            if (builder.getTrackIds() == null || builder.getTrackIds().isEmpty())
             {
-                Logging.getLogger().debug("Ignoring empty playlist " + builder + " because parsing.ignoreEmptyPlaylists is set");
+                Logging.getLogger().debug(() -> "Ignoring empty playlist " + builder + " because parsing.ignoreEmptyPlaylists is set");
                 return true;
             }
         }
@@ -642,7 +1060,7 @@ public class LibraryParser
                     || (builder.getMovies() != null && builder.getMovies())
                     || (builder.getTvShows() != null && builder.getTvShows()))
             {
-                Logging.getLogger().debug("Ignoring special playlist " + builder + " because parsing.ignoreNonMusicPlaylists is set");
+                Logging.getLogger().debug(() -> "Ignoring special playlist " + builder + " because parsing.ignoreNonMusicPlaylists is set");
                 return true;
             }
         }
@@ -654,7 +1072,7 @@ public class LibraryParser
         {
             if (builder.getDistinguishedKind() != null)
             {
-                Logging.getLogger().debug("Ignoring distinguished playlist " + builder + " because parsing.ignoreNonMusicPlaylists is set");
+                Logging.getLogger().debug(() -> "Ignoring distinguished playlist " + builder + " because parsing.ignoreNonMusicPlaylists is set");
                 return true;
             }
         }
@@ -666,7 +1084,7 @@ public class LibraryParser
         {
             if (builder.getMaster() != null && builder.getMaster())
             {
-                Logging.getLogger().debug("Ignoring master playlist " + builder + " because parsing.ignoreNonMusicPlaylists is set");
+                Logging.getLogger().debug(() -> "Ignoring master playlist " + builder + " because parsing.ignoreNonMusicPlaylists is set");
                 return true;
             }
         }
@@ -674,7 +1092,7 @@ public class LibraryParser
         // Ignore playlists whose name is in parsing.ignorePlaylistsByName
         if (builder.getName() != null && parsingSettings.getIgnorePlaylistNames().contains(builder.getName()))
         {
-            Logging.getLogger().debug("Ignoring playlist " + builder + " because its name is in parsing.ignorePlaylistsByName " + "(" + parsingSettings.getIgnorePlaylistNames() + ")");
+            Logging.getLogger().debug(() -> "Ignoring playlist " + builder + " because its name is in parsing.ignorePlaylistsByName " + "(" + parsingSettings.getIgnorePlaylistNames() + ")");
             return true;
         }
 
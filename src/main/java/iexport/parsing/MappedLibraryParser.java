@@ -0,0 +1,805 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing;
+
+import iexport.itunes.Track;
+import iexport.logging.BufferingLogger;
+import iexport.logging.Logging;
+import iexport.parsing.builders.LibraryBuilder;
+import iexport.parsing.builders.PlaylistBuilder;
+import iexport.parsing.builders.TrackBuilder;
+import iexport.parsing.keys.LibraryKeys;
+import iexport.parsing.keys.PlaylistKeys;
+import iexport.parsing.keys.TrackKeys;
+import iexport.parsing.plist.ChunkBoundaries;
+import iexport.parsing.plist.KeyTable;
+import iexport.parsing.plist.PlistFormatException;
+import iexport.parsing.plist.PlistToken;
+import iexport.parsing.plist.PlistTokenizer;
+import iexport.utils.IntList;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Parses the library file using a {@link PlistTokenizer} that works directly on the (memory-mapped) file,
+ * instead of constructing a tree of {@link com.dd.plist.NSObject}s using dd-plist first.
+ * <p>
+ * It performs the same steps as {@code LibraryParser.parseMetadata}, {@link TrackParser}, and {@link PlaylistParser},
+ * but calls the key handlers while tokenizing,
+ * so only the values that are handed to a handler are ever decoded.
+ * <p>
+ * Dictionaries and arrays that occur as values of ordinary keys are skipped.
+ * <p>
+ * If more than one thread should be used, the "Tracks" dictionary and the "Playlists" array are first skipped to find their extent,
+ * then split into chunks at entry boundaries using {@link ChunkBoundaries},
+ * and the chunks are parsed concurrently by separate instances of this class.
+ * The results are added to the {@link LibraryParser} in the order of the file, as if they had been parsed sequentially.
+ * <p>
+ * If the tracks should be decoded lazily, the track dictionaries are only skipped, and their positions are recorded in {@link LazyTracks}.
+ * They are later decoded by the parsers from {@link #trackDecoder(UnknownKeyHistogram)}.
+ */
+class MappedLibraryParser
+{
+    /**
+     * The key of the array of tracks inside a playlist dictionary.
+     */
+    private static final String PLAYLIST_ITEMS = "Playlist Items";
+
+    /**
+     * The key of the track id inside the entries of the "Playlist Items" array.
+     */
+    private static final String TRACK_ID = "Track ID";
+
+    /**
+     * Chunks of the "Tracks" dictionary and the "Playlists" array should not be smaller than this number of bytes.
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The number of chunks per thread, so that threads that finish early can take over more chunks.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * The buffer holding the library file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The tokenizer for the library file, or for a chunk of it.
+     */
+    private final PlistTokenizer tokenizer;
+
+    /**
+     * The number of threads that parse the "Tracks" dictionary and the "Playlists" array.
+     */
+    private final int threads;
+
+    /**
+     * Recognizes the keys without decoding them.
+     */
+    private final KeyTable keyTable;
+
+    /**
+     * Counts the keys of the library for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownLibraryKeys;
+
+    /**
+     * Counts the keys of tracks for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownTrackKeys;
+
+    /**
+     * Counts the keys of playlists for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownPlaylistKeys;
+
+    /**
+     * @param buffer              the buffer holding the library file
+     * @param threads             the number of threads that parse the "Tracks" dictionary and the "Playlists" array
+     * @param unknownLibraryKeys  counts the keys of the library for which no handler exists
+     * @param unknownTrackKeys    counts the keys of tracks for which no handler exists
+     * @param unknownPlaylistKeys counts the keys of playlists for which no handler exists
+     */
+    MappedLibraryParser (ByteBuffer buffer, int threads, UnknownKeyHistogram unknownLibraryKeys,
+                         UnknownKeyHistogram unknownTrackKeys, UnknownKeyHistogram unknownPlaylistKeys)
+    {
+        this(buffer, new PlistTokenizer(buffer), threads, unknownLibraryKeys, unknownTrackKeys, unknownPlaylistKeys);
+    }
+
+    /**
+     * @param buffer              the buffer holding the library file
+     * @param tokenizer           the tokenizer for the library file, or for a chunk of it
+     * @param threads             the number of threads that parse the "Tracks" dictionary and the "Playlists" array
+     * @param unknownLibraryKeys  counts the keys of the library for which no handler exists
+     * @param unknownTrackKeys    counts the keys of tracks for which no handler exists
+     * @param unknownPlaylistKeys counts the keys of playlists for which no handler exists
+     */
+    private MappedLibraryParser (ByteBuffer buffer, PlistTokenizer tokenizer, int threads, UnknownKeyHistogram unknownLibraryKeys,
+                                 UnknownKeyHistogram unknownTrackKeys, UnknownKeyHistogram unknownPlaylistKeys)
+    {
+        this.buffer = buffer;
+        this.tokenizer = tokenizer;
+        this.threads = threads;
+        this.unknownLibraryKeys = unknownLibraryKeys;
+        this.unknownTrackKeys = unknownTrackKeys;
+        this.unknownPlaylistKeys = unknownPlaylistKeys;
+
+        Set<String> knownKeys = new HashSet<>();
+        knownKeys.addAll(LibraryKeys.getKeys());
+        knownKeys.addAll(TrackKeys.getKeys());
+        knownKeys.addAll(PlaylistKeys.getKeys());
+        keyTable = new KeyTable(knownKeys);
+    }
+
+    /**
+     * Parse the whole library file.
+     * <p>
+     * The metadata is set on the library builder, the tracks and playlists are added to the library parser.
+     *
+     * @param libraryParser  the parser to which the tracks and playlists should be added
+     * @param libraryBuilder the builder for the library
+     * @param lazyTracks     records the track dictionaries instead of decoding them, or null
+     * @throws PlistFormatException if the file is malformed or uses constructs that are not supported
+     */
+    void parse (LibraryParser libraryParser, LibraryBuilder libraryBuilder, LazyTracks lazyTracks)
+            throws PlistFormatException
+    {
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try
+        {
+            parse(libraryParser, libraryBuilder, lazyTracks, executor);
+        }
+        finally
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Parse the whole library file.
+     *
+     * @param libraryParser  the parser to which the tracks and playlists should be added
+     * @param libraryBuilder the builder for the library
+     * @param lazyTracks     records the track dictionaries instead of decoding them, or null
+     * @param executor       the executor for parsing chunks concurrently, or null
+     * @throws PlistFormatException if the file is malformed or uses constructs that are not supported
+     */
+    private void parse (LibraryParser libraryParser, LibraryBuilder libraryBuilder, LazyTracks lazyTracks, ExecutorService executor)
+            throws PlistFormatException
+    {
+        expect(tokenizer.next(), PlistToken.DICT_START);
+
+        boolean hasTracks = false;
+        boolean hasPlaylists = false;
+
+        PlistToken token;
+        while ((token = tokenizer.next()) == PlistToken.KEY)
+        {
+            String key = keyTable.get(tokenizer);
+            PlistToken valueToken = tokenizer.next();
+
+            switch (key)
+            {
+                case "Tracks" ->
+                {
+                    hasTracks = true;
+                    if (valueToken != PlistToken.DICT_START)
+                    {
+                        Logging.getLogger().warning("Library " + libraryBuilder + " has Tracks dictionary of unexpected type " + valueToken + ", expected a dictionary; skipping it");
+                        tokenizer.skipValue(valueToken);
+                        continue;
+                    }
+                    if (lazyTracks != null)
+                    {
+                        // Skipping the track dictionaries is cheap, there is no need for chunks.
+                        parseTracks(null, lazyTracks, PlistToken.DICT_END);
+                    }
+                    else if (executor != null)
+                    {
+                        parseTracksConcurrently(libraryParser, executor);
+                    }
+                    else
+                    {
+                        parseTracks((track, trackId) -> libraryParser.addTrackWithKey(trackId, track), null, PlistToken.DICT_END);
+                    }
+                }
+                case "Playlists" ->
+                {
+                    hasPlaylists = true;
+                    if (valueToken != PlistToken.ARRAY_START)
+                    {
+                        Logging.getLogger().warning("Library " + libraryBuilder + " has Playlists array of unexpected type " + valueToken + ", expected an array.");
+                        tokenizer.skipValue(valueToken);
+                        continue;
+                    }
+                    int start = tokenizer.getTokenStart();
+                    if (executor != null)
+                    {
+                        parsePlaylistsConcurrently(libraryParser, executor);
+                    }
+                    else
+                    {
+                        parsePlaylists(libraryParser::addPlaylistBuilder, PlistToken.ARRAY_END);
+                    }
+                    if (lazyTracks != null && lazyTracks.hasFingerprints())
+                    {
+                        libraryParser.setPlaylistsFingerprint(LibraryCache.fingerprint(buffer, start, tokenizer.getPosition()));
+                    }
+                }
+                default -> handle(libraryBuilder, key, valueToken, LibraryKeys.getHandlerFor(key), unknownLibraryKeys);
+            }
+        }
+        expect(token, PlistToken.DICT_END);
+
+        if (!hasTracks)
+        {
+            Logging.getLogger().warning("Library " + libraryBuilder + " has no Tracks dictionary.");
+        }
+        if (!hasPlaylists)
+        {
+            Logging.getLogger().warning("Library " + libraryBuilder + " has no Playlists array.");
+        }
+    }
+
+    /**
+     * Parse the entries of the "Tracks" dictionary concurrently, after its {@link PlistToken#DICT_START} has been read.
+     *
+     * @param libraryParser the parser to which the tracks should be added
+     * @param executor      the executor for parsing the chunks
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parseTracksConcurrently (LibraryParser libraryParser, ExecutorService executor)
+            throws PlistFormatException
+    {
+        // Skip the dictionary to find its end.
+        int start = tokenizer.getPosition();
+        tokenizer.skipValue(PlistToken.DICT_START);
+        int end = tokenizer.getTokenStart();
+        int closingTagEnd = tokenizer.getPosition();
+
+        int[] boundaries = ChunkBoundaries.ofTracks(buffer, start, end, chunkCount(start, end));
+        List<Future<TrackChunk>> futures = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++)
+        {
+            int chunkStart = boundaries[i];
+            int chunkEnd = boundaries[i + 1];
+            futures.add(executor.submit(() -> parseTrackChunk(chunkStart, chunkEnd, PlistToken.END_OF_INPUT)));
+        }
+
+        List<TrackChunk> chunks = getAll(futures);
+        if (chunks == null)
+        {
+            Logging.getLogger().debug("Parsing the Tracks dictionary in chunks has failed, parsing it sequentially.");
+            chunks = List.of(parseTrackChunk(start, closingTagEnd, PlistToken.DICT_END));
+        }
+
+        // Add the tracks in the order of the file.
+        for (TrackChunk chunk : chunks)
+        {
+            chunk.messages().replay();
+            unknownTrackKeys.addAll(chunk.unknownKeys());
+            for (int i = 0; i < chunk.tracks().size(); i++)
+            {
+                libraryParser.addTrackWithKey(chunk.trackIds().get(i), chunk.tracks().get(i));
+            }
+        }
+    }
+
+    /**
+     * Parse a chunk of the "Tracks" dictionary.
+     * <p>
+     * Messages (e.g. warnings of key handlers) are kept in the chunk,
+     * so that they are only logged if the chunk is used and not if it is discarded and parsed again sequentially.
+     *
+     * @param start      the start of the chunk
+     * @param end        the end of the chunk
+     * @param terminator {@link PlistToken#END_OF_INPUT}, or {@link PlistToken#DICT_END} if the chunk includes the end of the dictionary
+     * @return the parsed tracks
+     * @throws PlistFormatException if the chunk does not consist of complete entries
+     */
+    private TrackChunk parseTrackChunk (int start, int end, PlistToken terminator)
+            throws PlistFormatException
+    {
+        MappedLibraryParser chunkParser = forChunk(start, end);
+
+        IntList trackIds = new IntList();
+        List<Track> tracks = new ArrayList<>();
+        BufferingLogger messages = new BufferingLogger(Logging.getLogger());
+        Logging.setThreadLogger(messages);
+        try
+        {
+            chunkParser.parseTracks((track, trackId) ->
+            {
+                trackIds.add(trackId);
+                tracks.add(track);
+            }, null, terminator);
+        }
+        finally
+        {
+            Logging.setThreadLogger(null);
+        }
+
+        return new TrackChunk(trackIds, tracks, chunkParser.unknownTrackKeys, messages);
+    }
+
+    /**
+     * Parse the entries of the "Tracks" dictionary.
+     *
+     * @param consumer   receives each track together with the Track ID from its key
+     * @param lazyTracks records the position of each track dictionary instead of decoding it, or null to decode the tracks
+     * @param terminator {@link PlistToken#DICT_END} if the parsed range includes the end of the dictionary, {@link PlistToken#END_OF_INPUT} for a chunk
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parseTracks (ObjIntConsumer<Track> consumer, LazyTracks lazyTracks, PlistToken terminator)
+            throws PlistFormatException
+    {
+        PlistToken token;
+        while ((token = tokenizer.next()) == PlistToken.KEY)
+        {
+            // The key is the track id, decode it without constructing a string.
+            long trackIdKey;
+            try
+            {
+                trackIdKey = tokenizer.longValue();
+            }
+            catch (PlistFormatException e)
+            {
+                trackIdKey = Long.MIN_VALUE;
+            }
+
+            if (trackIdKey < Integer.MIN_VALUE || trackIdKey > Integer.MAX_VALUE)
+            {
+                checkNotInChunk(terminator);
+                Logging.getLogger().warning("Track with key Track ID  \"" + tokenizer.stringValue() + "\" is not an integer; skipping it");
+                tokenizer.skipValue(tokenizer.next());
+                continue;
+            }
+            int trackId = (int) trackIdKey;
+
+            PlistToken valueToken = tokenizer.next();
+            if (valueToken != PlistToken.DICT_START)
+            {
+                checkNotInChunk(terminator);
+                Logging.getLogger().warning("Track with id \"" + trackId + "\" has track dictionary of unexpected type " + valueToken + ", expected a dictionary; skipping it");
+                tokenizer.skipValue(valueToken);
+                continue;
+            }
+
+            if (lazyTracks != null)
+            {
+                int start = tokenizer.getTokenStart();
+                tokenizer.skipValue(valueToken);
+                lazyTracks.add(trackId, start, lazyTracks.hasFingerprints() ? LibraryCache.fingerprint(buffer, start, tokenizer.getPosition()) : 0);
+                continue;
+            }
+
+            consumer.accept(parseTrack(), trackId);
+        }
+        expect(token, terminator);
+    }
+
+    /**
+     * Parse a track dictionary, after its {@link PlistToken#DICT_START} has been read.
+     *
+     * @return the track
+     * @throws PlistFormatException if the file is malformed
+     */
+    Track parseTrack ()
+            throws PlistFormatException
+    {
+        TrackBuilder trackBuilder = new TrackBuilder();
+
+        PlistToken token;
+        while ((token = tokenizer.next()) == PlistToken.KEY)
+        {
+            String key = keyTable.get(tokenizer);
+            handle(trackBuilder, key, tokenizer.next(), TrackKeys.getHandlerFor(key), unknownTrackKeys);
+        }
+        expect(token, PlistToken.DICT_END);
+
+        return trackBuilder.build();
+    }
+
+    /**
+     * Create a decoder for the track dictionaries whose positions have been recorded in {@link LazyTracks}.
+     * <p>
+     * Each decoder has its own tokenizer, so several of them can be used concurrently.
+     *
+     * @param unknownKeys counts the keys of tracks for which no handler exists
+     * @return the decoder
+     */
+    LazyTracks.TrackDecoder trackDecoder (UnknownKeyHistogram unknownKeys)
+    {
+        MappedLibraryParser decoder = new MappedLibraryParser(buffer, new PlistTokenizer(buffer, 0, buffer.limit()), 1,
+                new UnknownKeyHistogram("library"), unknownKeys, new UnknownKeyHistogram("playlist"));
+
+        return (position) ->
+        {
+            decoder.tokenizer.seek((int) position);
+            decoder.expect(decoder.tokenizer.next(), PlistToken.DICT_START);
+            return decoder.parseTrack();
+        };
+    }
+
+    /**
+     * Parse the entries of the "Playlists" array concurrently, after its {@link PlistToken#ARRAY_START} has been read.
+     *
+     * @param libraryParser the parser to which the playlist builders should be added
+     * @param executor      the executor for parsing the chunks
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parsePlaylistsConcurrently (LibraryParser libraryParser, ExecutorService executor)
+            throws PlistFormatException
+    {
+        // Skip the array to find its end.
+        int start = tokenizer.getPosition();
+        tokenizer.skipValue(PlistToken.ARRAY_START);
+        int end = tokenizer.getTokenStart();
+        int closingTagEnd = tokenizer.getPosition();
+
+        int[] boundaries = ChunkBoundaries.ofPlaylists(buffer, start, end, chunkCount(start, end));
+        List<Future<PlaylistChunk>> futures = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++)
+        {
+            int chunkStart = boundaries[i];
+            int chunkEnd = boundaries[i + 1];
+            futures.add(executor.submit(() -> parsePlaylistChunk(chunkStart, chunkEnd, PlistToken.END_OF_INPUT)));
+        }
+
+        List<PlaylistChunk> chunks = getAll(futures);
+        if (chunks == null)
+        {
+            Logging.getLogger().debug("Parsing the Playlists array in chunks has failed, parsing it sequentially.");
+            chunks = List.of(parsePlaylistChunk(start, closingTagEnd, PlistToken.ARRAY_END));
+        }
+
+        // Add the playlists in the order of the file.
+        for (PlaylistChunk chunk : chunks)
+        {
+            chunk.messages().replay();
+            unknownPlaylistKeys.addAll(chunk.unknownKeys());
+            chunk.playlistBuilders().forEach(libraryParser::addPlaylistBuilder);
+        }
+    }
+
+    /**
+     * Parse a chunk of the "Playlists" array.
+     * <p>
+     * Messages are kept in the chunk, see {@link #parseTrackChunk(int, int, PlistToken)}.
+     *
+     * @param start      the start of the chunk
+     * @param end        the end of the chunk
+     * @param terminator {@link PlistToken#END_OF_INPUT}, or {@link PlistToken#ARRAY_END} if the chunk includes the end of the array
+     * @return the parsed playlist builders
+     * @throws PlistFormatException if the chunk does not consist of complete entries
+     */
+    private PlaylistChunk parsePlaylistChunk (int start, int end, PlistToken terminator)
+            throws PlistFormatException
+    {
+        MappedLibraryParser chunkParser = forChunk(start, end);
+
+        List<PlaylistBuilder> playlistBuilders = new ArrayList<>();
+        BufferingLogger messages = new BufferingLogger(Logging.getLogger());
+        Logging.setThreadLogger(messages);
+        try
+        {
+            chunkParser.parsePlaylists(playlistBuilders::add, terminator);
+        }
+        finally
+        {
+            Logging.setThreadLogger(null);
+        }
+
+        return new PlaylistChunk(playlistBuilders, chunkParser.unknownPlaylistKeys, messages);
+    }
+
+    /**
+     * Parse the entries of the "Playlists" array.
+     *
+     * @param consumer   receives each playlist builder
+     * @param terminator {@link PlistToken#ARRAY_END} if the parsed range includes the end of the array, {@link PlistToken#END_OF_INPUT} for a chunk
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parsePlaylists (Consumer<PlaylistBuilder> consumer, PlistToken terminator)
+            throws PlistFormatException
+    {
+        PlistToken token;
+        while ((token = tokenizer.next()) != terminator)
+        {
+            if (token != PlistToken.DICT_START)
+            {
+                checkNotInChunk(terminator);
+                Logging.getLogger().warning("Playlist dictionary of unexpected type " + token + ", expected a dictionary; skipping it");
+                tokenizer.skipValue(token);
+                continue;
+            }
+
+            consumer.accept(parsePlaylist());
+        }
+    }
+
+    /**
+     * Parse a playlist dictionary, after its {@link PlistToken#DICT_START} has been read.
+     *
+     * @return the builder for the playlist
+     * @throws PlistFormatException if the file is malformed
+     */
+    PlaylistBuilder parsePlaylist ()
+            throws PlistFormatException
+    {
+        PlaylistBuilder playlistBuilder = new PlaylistBuilder();
+        boolean hasPlaylistItems = false;
+
+        PlistToken token;
+        while ((token = tokenizer.next()) == PlistToken.KEY)
+        {
+            String key = keyTable.get(tokenizer);
+            PlistToken valueToken = tokenizer.next();
+
+            if (key.equals(PLAYLIST_ITEMS))
+            {
+                hasPlaylistItems = true;
+                parsePlaylistItems(playlistBuilder, valueToken);
+            }
+            else
+            {
+                handle(playlistBuilder, key, valueToken, PlaylistKeys.getHandlerFor(key), unknownPlaylistKeys);
+            }
+        }
+        expect(token, PlistToken.DICT_END);
+
+        if (!hasPlaylistItems)
+        {
+            Logging.getLogger().debug(() -> playlistBuilder + " has no track array; skipping it");
+        }
+
+        return playlistBuilder;
+    }
+
+    /**
+     * Parse the "Playlist Items" array of a playlist to detect the tracks of the playlist.
+     * <p>
+     * Each entry of the array should be a dictionary with the single key "Track ID".
+     *
+     * @param playlistBuilder the builder for the playlist
+     * @param token           the first token of the value of the "Playlist Items" key
+     * @throws PlistFormatException if the file is malformed
+     */
+    private void parsePlaylistItems (PlaylistBuilder playlistBuilder, PlistToken token)
+            throws PlistFormatException
+    {
+        if (token != PlistToken.ARRAY_START)
+        {
+            Logging.getLogger().warning(playlistBuilder + " has track array of unexpected type " + token + ", skipping it");
+            tokenizer.skipValue(token);
+            return;
+        }
+
+        while ((token = tokenizer.next()) != PlistToken.ARRAY_END)
+        {
+            if (token != PlistToken.DICT_START)
+            {
+                Logging.getLogger().warning("Track array of " + playlistBuilder + " contains entry of unexpected type " + token + "; skipping it");
+                tokenizer.skipValue(token);
+                continue;
+            }
+
+            int size = 0;
+            Object trackId = null;
+            while ((token = tokenizer.next()) == PlistToken.KEY)
+            {
+                size++;
+                String key = keyTable.get(tokenizer);
+                PlistToken valueToken = tokenizer.next();
+
+                if (key.equals(TRACK_ID))
+                {
+                    trackId = tokenizer.value(valueToken);
+                }
+                else
+                {
+                    tokenizer.skipValue(valueToken);
+                }
+            }
+            expect(token, PlistToken.DICT_END);
+
+            // each dictionary should just have a single key-value pair inside it
+            if (size != 1)
+            {
+                Logging.getLogger().warning("Dictionary inside track array of " + playlistBuilder + " has unexpected size " + size + ", expected size 1; skipping it.");
+                continue;
+            }
+
+            // the value for the key "Track ID" should be an integer
+            if (trackId instanceof Integer id)
+            {
+                playlistBuilder.addTrackId(id);
+            }
+            else if (trackId == null)
+            {
+                Logging.getLogger().warning("Dictionary inside track array of " + playlistBuilder + " does not contain the key \"Track ID\"; skipping it.");
+            }
+            else
+            {
+                Logging.getLogger().warning("Value " + trackId + " inside track array of " + playlistBuilder + " has unexpected type " + trackId.getClass().getSimpleName() + ", expected an integer; skipping it.");
+            }
+        }
+    }
+
+    /**
+     * Decode the value of a key and pass it to the handler for the key,
+     * or count the key as unknown if there is no handler.
+     *
+     * @param builder     the builder whose fields the handler sets
+     * @param key         the key
+     * @param valueToken  the first token of the value
+     * @param handler     the handler for the key, or null
+     * @param unknownKeys counts the keys for which no handler exists
+     * @param <B>         the type of the builder
+     * @throws PlistFormatException if the file is malformed
+     */
+    private <B> void handle (B builder, String key, PlistToken valueToken, BiConsumer<B, Object> handler, UnknownKeyHistogram unknownKeys)
+            throws PlistFormatException
+    {
+        if (handler != null)
+        {
+            Object value = tokenizer.value(valueToken);
+            if (value != null)
+            {
+                handler.accept(builder, value);
+            }
+            return;
+        }
+
+        // No handler exists; the value is only needed as an example the first time.
+        if (unknownKeys.isCounted(key))
+        {
+            tokenizer.skipValue(valueToken);
+            unknownKeys.count(key, null);
+            return;
+        }
+
+        Object value = tokenizer.value(valueToken);
+        unknownKeys.count(key, value != null ? value : valueToken);
+    }
+
+    /**
+     * Irregular entries in a chunk usually mean that the chunk does not start at an entry boundary.
+     * Instead of reporting them, we give up on the chunks; the entries will be reported when parsing sequentially.
+     *
+     * @param terminator the token that terminates the entries that are parsed
+     * @throws PlistFormatException if a chunk is parsed
+     */
+    private void checkNotInChunk (PlistToken terminator)
+            throws PlistFormatException
+    {
+        if (terminator == PlistToken.END_OF_INPUT)
+        {
+            throw new PlistFormatException("Irregular entry in chunk at byte " + tokenizer.getTokenStart());
+        }
+    }
+
+    /**
+     * @param start the start of a chunk
+     * @param end   the end of the chunk
+     * @return a parser for the chunk, with its own histograms of unknown keys
+     */
+    private MappedLibraryParser forChunk (int start, int end)
+    {
+        return new MappedLibraryParser(buffer, new PlistTokenizer(buffer, start, end), 1,
+                new UnknownKeyHistogram("library"), new UnknownKeyHistogram("track"), new UnknownKeyHistogram("playlist"));
+    }
+
+    /**
+     * @param start the start of a range
+     * @param end   the end of the range
+     * @return the number of chunks into which the range should be split
+     */
+    private int chunkCount (int start, int end)
+    {
+        return (int) Math.max(1, Math.min((long) CHUNKS_PER_THREAD * threads, (end - start) / MIN_CHUNK_SIZE));
+    }
+
+    /**
+     * Wait for the results of the chunks.
+     *
+     * @param futures the futures of the chunks
+     * @param <T>     the type of the results
+     * @return the results in the order of the futures, or null if a chunk could not be parsed
+     */
+    private static <T> List<T> getAll (List<Future<T>> futures)
+    {
+        List<T> results = new ArrayList<>(futures.size());
+        try
+        {
+            for (Future<T> future : futures)
+            {
+                results.add(future.get());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while parsing the library", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof PlistFormatException)
+            {
+                futures.forEach((future) -> future.cancel(true));
+                return null;
+            }
+            throw new RuntimeException("Parsing the library has failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * @param token    the token that has been read
+     * @param expected the token that is expected
+     * @throws PlistFormatException if the tokens differ
+     */
+    private void expect (PlistToken token, PlistToken expected)
+            throws PlistFormatException
+    {
+        if (token != expected)
+        {
+            throw new PlistFormatException("Expected " + expected + ", got " + token + " before byte " + tokenizer.getPosition());
+        }
+    }
+
+    /**
+     * The tracks parsed from a chunk of the "Tracks" dictionary.
+     *
+     * @param trackIds    the Track IDs from the keys of the dictionary
+     * @param tracks      the tracks
+     * @param unknownKeys counts the keys of the tracks for which no handler exists
+     * @param messages    the messages logged while parsing the chunk
+     */
+    private record TrackChunk(IntList trackIds, List<Track> tracks, UnknownKeyHistogram unknownKeys, BufferingLogger messages)
+    {
+    }
+
+    /**
+     * The playlists parsed from a chunk of the "Playlists" array.
+     *
+     * @param playlistBuilders the builders for the playlists
+     * @param unknownKeys      counts the keys of the playlists for which no handler exists
+     * @param messages         the messages logged while parsing the chunk
+     */
+    private record PlaylistChunk(List<PlaylistBuilder> playlistBuilders, UnknownKeyHistogram unknownKeys, BufferingLogger messages)
+    {
+    }
+}
@@ -42,6 +42,17 @@ public class PlaylistParser
      */
     private final NSDictionary playlistDictionary;
 
+    /**
+     * Counts the keys for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownKeys;
+
+    /**
+     * Whether {@link #unknownKeys} is owned by this parser and should be reported after parsing.
+     * Otherwise, the caller that passed it in reports it, e.g. once for all playlists of the library.
+     */
+    private final boolean reportUnknownKeys;
+
     /**
      * The builder that will be used to construct the playlist.
      */
@@ -51,8 +62,29 @@ public class PlaylistParser
      * @param playlistDictionary the dictionary of parsed key-value pairs for this playlist
      */
     public PlaylistParser (NSDictionary playlistDictionary)
+    {
+        this(playlistDictionary, new UnknownKeyHistogram("playlist"), true);
+    }
+
+    /**
+     * @param playlistDictionary the dictionary of parsed key-value pairs for this playlist
+     * @param unknownKeys        counts the keys for which no handler exists
+     */
+    PlaylistParser (NSDictionary playlistDictionary, UnknownKeyHistogram unknownKeys)
+    {
+        this(playlistDictionary, unknownKeys, false);
+    }
+
+    /**
+     * @param playlistDictionary the dictionary of parsed key-value pairs for this playlist
+     * @param unknownKeys        counts the keys for which no handler exists
+     * @param reportUnknownKeys  whether the unknown keys should be reported after parsing
+     */
+    private PlaylistParser (NSDictionary playlistDictionary, UnknownKeyHistogram unknownKeys, boolean reportUnknownKeys)
     {
         this.playlistDictionary = playlistDictionary;
+        this.unknownKeys = unknownKeys;
+        this.reportUnknownKeys = reportUnknownKeys;
         this.playlistBuilder = new PlaylistBuilder();
     }
 
@@ -72,6 +104,13 @@ public class PlaylistParser
         // Parse the Tracks array.
         parsePlaylistItems();
 
+        // Nobody else will report the keys without handler.
+        if (reportUnknownKeys)
+        {
+            unknownKeys.report();
+            unknownKeys.clear();
+        }
+
         // reset the PlaylistBuilder in case someone makes the mistake of using this method twice
         PlaylistBuilder result = playlistBuilder;
         playlistBuilder = new PlaylistBuilder();
@@ -102,7 +141,7 @@ public class PlaylistParser
                 else
                 {
                     // no handler for this key exists
-                    Logging.getLogger().debug("No handler for playlist key \"" + key + "\" with value \"" + value + "\"");
+                    unknownKeys.count(key, value);
                 }
             }
         }
@@ -120,7 +159,7 @@ public class PlaylistParser
 
         if (playlistItemsArrayObject == null)
         {
-            Logging.getLogger().debug(playlistBuilder.toString() + " has no track array; skipping it");
+            Logging.getLogger().debug(() -> playlistBuilder + " has no track array; skipping it");
             return;
         }
 
@@ -172,7 +211,7 @@ public class PlaylistParser
                 continue;
             }
 
-            Integer trackId;
+            int trackId;
             // the value for the key "Track ID" should be an integer
             try
             {
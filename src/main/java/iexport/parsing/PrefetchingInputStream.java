@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream that reads another input stream on a separate thread.
+ * <p>
+ * The separate thread reads blocks of {@link #BLOCK_SIZE} bytes and hands them over through a bounded queue,
+ * so that expensive reads (e.g. decompressing) overlap with the processing of the data,
+ * while at most {@link #QUEUE_CAPACITY} blocks are buffered.
+ */
+class PrefetchingInputStream extends InputStream
+{
+    /**
+     * The size of the blocks that are read at once.
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The maximal number of blocks that are buffered.
+     */
+    private static final int QUEUE_CAPACITY = 16;
+
+    /**
+     * Marks the end of the stream in the queue.
+     */
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    /**
+     * The stream that is read on the separate thread.
+     */
+    private final InputStream in;
+
+    /**
+     * The blocks that have been read but not yet consumed.
+     */
+    private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * The thread reading {@link #in}.
+     */
+    private final Thread thread;
+
+    /**
+     * The exception or error that occurred while reading, or null.
+     */
+    private volatile Throwable failure = null;
+
+    /**
+     * The block that is currently consumed.
+     */
+    private byte[] currentBlock = new byte[0];
+
+    /**
+     * The position in {@link #currentBlock}.
+     */
+    private int position = 0;
+
+    /**
+     * Has {@link #END_OF_STREAM} been taken from the queue?
+     */
+    private boolean finished = false;
+
+    /**
+     * Start reading the given stream on a separate thread.
+     *
+     * @param in         the stream
+     * @param threadName the name of the thread
+     */
+    PrefetchingInputStream (InputStream in, String threadName)
+    {
+        this.in = in;
+        thread = new Thread(this::readBlocks, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public int read ()
+            throws IOException
+    {
+        if (!nextBlockIfNeeded())
+        {
+            return -1;
+        }
+        return currentBlock[position++] & 0xFF;
+    }
+
+    @Override
+    public int read (byte[] b, int off, int len)
+            throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        if (!nextBlockIfNeeded())
+        {
+            return -1;
+        }
+
+        int count = Math.min(len, currentBlock.length - position);
+        System.arraycopy(currentBlock, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available ()
+    {
+        return currentBlock.length - position;
+    }
+
+    @Override
+    public void close ()
+            throws IOException
+    {
+        thread.interrupt();
+        in.close();
+    }
+
+    /**
+     * Take the next block from the queue if the current one has been consumed.
+     *
+     * @return false if the end of the stream has been reached
+     * @throws IOException if reading has failed
+     */
+    private boolean nextBlockIfNeeded ()
+            throws IOException
+    {
+        while (position == currentBlock.length)
+        {
+            if (finished)
+            {
+                return false;
+            }
+
+            byte[] block;
+            try
+            {
+                block = blocks.take();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + thread.getName());
+            }
+
+            if (block == END_OF_STREAM)
+            {
+                finished = true;
+                if (failure instanceof IOException e)
+                {
+                    throw e;
+                }
+                if (failure != null)
+                {
+                    throw new IOException("Reading on " + thread.getName() + " has failed: " + failure, failure);
+                }
+                return false;
+            }
+
+            currentBlock = block;
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Read the blocks of {@link #in} into {@link #blocks}. Runs on {@link #thread}.
+     * <p>
+     * Whatever happens (including runtime exceptions and errors of {@link #in}, e.g. an {@link OutOfMemoryError} of a decompressor),
+     * {@link #END_OF_STREAM} is put into the queue, so the consumer never waits forever;
+     * the only exception is that the stream has been closed, in which case nobody waits for the end.
+     */
+    private void readBlocks ()
+    {
+        boolean closed = false;
+        try
+        {
+            byte[] block;
+            while ((block = in.readNBytes(BLOCK_SIZE)).length > 0)
+            {
+                blocks.put(block);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            closed = true;
+        }
+        catch (Throwable e)
+        {
+            failure = e;
+        }
+        finally
+        {
+            if (!closed)
+            {
+                try
+                {
+                    blocks.put(END_OF_STREAM);
+                }
+                catch (InterruptedException e)
+                {
+                    // The stream has been closed.
+                }
+            }
+        }
+    }
+}
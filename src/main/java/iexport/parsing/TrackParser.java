@@ -19,7 +19,6 @@ package iexport.parsing;
 
 import com.dd.plist.NSDictionary;
 import iexport.itunes.Track;
-import iexport.logging.Logging;
 import iexport.parsing.builders.TrackBuilder;
 import iexport.parsing.keys.TrackKeys;
 
@@ -33,6 +32,17 @@ public class TrackParser
      */
     private final NSDictionary trackDictionary;
 
+    /**
+     * Counts the keys for which no handler exists.
+     */
+    private final UnknownKeyHistogram unknownKeys;
+
+    /**
+     * Whether {@link #unknownKeys} is owned by this parser and should be reported after parsing.
+     * Otherwise, the caller that passed it in reports it, e.g. once for all tracks of the library.
+     */
+    private final boolean reportUnknownKeys;
+
     /**
      * The mutable track builder that used to generate the track.
      */
@@ -42,8 +52,29 @@ public class TrackParser
      * @param trackDictionary the dictionary of parsed key-value pairs for this track
      */
     public TrackParser (NSDictionary trackDictionary)
+    {
+        this(trackDictionary, new UnknownKeyHistogram("track"), true);
+    }
+
+    /**
+     * @param trackDictionary the dictionary of parsed key-value pairs for this track
+     * @param unknownKeys     counts the keys for which no handler exists
+     */
+    TrackParser (NSDictionary trackDictionary, UnknownKeyHistogram unknownKeys)
+    {
+        this(trackDictionary, unknownKeys, false);
+    }
+
+    /**
+     * @param trackDictionary   the dictionary of parsed key-value pairs for this track
+     * @param unknownKeys       counts the keys for which no handler exists
+     * @param reportUnknownKeys whether the unknown keys should be reported after parsing
+     */
+    private TrackParser (NSDictionary trackDictionary, UnknownKeyHistogram unknownKeys, boolean reportUnknownKeys)
     {
         this.trackDictionary = trackDictionary;
+        this.unknownKeys = unknownKeys;
+        this.reportUnknownKeys = reportUnknownKeys;
         trackBuilder = new TrackBuilder();
     }
 
@@ -73,7 +104,7 @@ public class TrackParser
                 }
                 else
                 {
-                    Logging.getLogger().debug("DEBUG: No handler for track key \"" + key + "\" with value \"" + value + "\"");
+                    unknownKeys.count(key, value);
                 }
             }
         }
@@ -81,6 +112,13 @@ public class TrackParser
         // We can now build the track.
         Track track = trackBuilder.build();
 
+        // Nobody else will report the keys without handler.
+        if (reportUnknownKeys)
+        {
+            unknownKeys.report();
+            unknownKeys.clear();
+        }
+
         // Reset the track Builder in case someone makes the mistake of using this track builder twice
         trackBuilder = new TrackBuilder();
 
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.parsing;
+
+import iexport.logging.LogLevel;
+import iexport.logging.Logging;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the keys in the .xml file for which no handler exists (e.g. keys introduced by newer versions of iTunes),
+ * so that they can be reported once after parsing instead of once per occurrence.
+ * <p>
+ * Counting an occurrence is a single map lookup; no message is constructed while parsing.
+ * <p>
+ * This class is thread-safe.
+ */
+class UnknownKeyHistogram
+{
+    /**
+     * What the keys belong to, e.g. "track".
+     */
+    private final String kind;
+
+    /**
+     * The number of occurrences per key.
+     */
+    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    /**
+     * The value of the first occurrence per key.
+     */
+    private final Map<String, Object> examples = new ConcurrentHashMap<>();
+
+    /**
+     * @param kind what the keys belong to, e.g. "track"
+     */
+    UnknownKeyHistogram (String kind)
+    {
+        this.kind = kind;
+    }
+
+    /**
+     * Count an occurrence of a key without handler.
+     *
+     * @param key   the key
+     * @param value the value of the key, may be null if the key has been counted before
+     */
+    void count (String key, Object value)
+    {
+        AtomicInteger count = counts.get(key);
+        if (count == null)
+        {
+            if (value != null)
+            {
+                examples.putIfAbsent(key, value);
+            }
+            count = counts.computeIfAbsent(key, (k) -> new AtomicInteger());
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Add the counts of another histogram, e.g. one that has been used for a part of the file.
+     * <p>
+     * Examples are only taken from the other histogram for keys that have not been counted before.
+     *
+     * @param other the other histogram
+     */
+    void addAll (UnknownKeyHistogram other)
+    {
+        other.counts.forEach((key, count) ->
+        {
+            Object example = other.examples.get(key);
+            if (example != null)
+            {
+                examples.putIfAbsent(key, example);
+            }
+            counts.computeIfAbsent(key, (k) -> new AtomicInteger()).addAndGet(count.get());
+        });
+    }
+
+    /**
+     * @param key the key
+     * @return true iff the key has been counted before, i.e. its value is no longer needed as an example
+     */
+    boolean isCounted (String key)
+    {
+        return counts.containsKey(key);
+    }
+
+    /**
+     * Log the keys without handler with {@link LogLevel#DEBUG}, the most frequent first.
+     */
+    void report ()
+    {
+        if (counts.isEmpty() || !Logging.getLogger().isEnabled(LogLevel.DEBUG))
+        {
+            return;
+        }
+
+        Logging.getLogger().debug("No handler for " + counts.size() + " " + kind + " keys:");
+        counts.entrySet().stream()
+                .sorted(Comparator.comparing((Map.Entry<String, AtomicInteger> entry) -> entry.getValue().get()).reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .forEach((entry) -> Logging.getLogger().debug(1, "\"" + entry.getKey() + "\": " + entry.getValue().get() + " times"
+                        + ", e.g. with value \"" + examples.get(entry.getKey()) + "\""));
+    }
+
+    /**
+     * Forget all counted keys.
+     */
+    void clear ()
+    {
+        counts.clear();
+        examples.clear();
+    }
+}
@@ -36,7 +36,7 @@ public class LibraryBuilder
     /**
      * The list of tracks in this library.
      */
-    private final List<Track> tracks = new ArrayList<>();
+    private List<Track> tracks = new ArrayList<>();
 
     /**
      * The list of playlists in this library (that have already been constructed).
@@ -122,6 +122,16 @@ public class LibraryBuilder
         return tracks;
     }
 
+    /**
+     * Replace the list of tracks, e.g. by a list that decodes the tracks on demand.
+     *
+     * @param tracks the list of tracks
+     */
+    public void setTracks (List<Track> tracks)
+    {
+        this.tracks = tracks;
+    }
+
     public List<Playlist> getPlaylistsAtTopLevel ()
     {
         return playlistsAtTopLevel;
@@ -19,9 +19,7 @@ package iexport.parsing.builders;
 
 import iexport.itunes.Playlist;
 import iexport.itunes.Track;
-
-import java.util.LinkedList;
-import java.util.List;
+import iexport.utils.IntList;
 
 /**
  * A mutable builder class for building records of type {@link iexport.itunes.Playlist}.
@@ -37,8 +35,9 @@ public class PlaylistBuilder
      * This can be parsed from the .xml file.
      * <p>
      * {@link iexport.parsing.LibraryParser} will later be convert this into an actual list of {@link Track} objects.
+     * The ids are stored without boxing, since large playlists contain many thousands of them.
      */
-    private final List<Integer> trackIds;
+    private final IntList trackIds;
 
     private Integer depth;
     private Integer playlistId;
@@ -61,7 +60,7 @@ public class PlaylistBuilder
 
     public PlaylistBuilder ()
     {
-        this.trackIds = new LinkedList<>();
+        this.trackIds = new IntList();
     }
 
     public Boolean getAudiobooks ()
@@ -114,12 +113,12 @@ public class PlaylistBuilder
         this.distinguishedKind = distinguishedKind;
     }
 
-    public void addTrackId (Integer trackId)
+    public void addTrackId (int trackId)
     {
         trackIds.add(trackId);
     }
 
-    public List<Integer> getTrackIds ()
+    public IntList getTrackIds ()
     {
         return trackIds;
     }
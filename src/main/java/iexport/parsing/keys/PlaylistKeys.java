@@ -20,8 +20,10 @@ package iexport.parsing.keys;
 import iexport.logging.Logging;
 import iexport.parsing.builders.PlaylistBuilder;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiConsumer;
 
 /**
@@ -52,6 +54,14 @@ public class PlaylistKeys
         return handlers.get(key);
     }
 
+    /**
+     * @return the keys for which a handler exists
+     */
+    public static Set<String> getKeys ()
+    {
+        return Collections.unmodifiableSet(handlers.keySet());
+    }
+
     /**
      * Logs a warning if a parsed value has an unexpected type and cannot be set.
      *
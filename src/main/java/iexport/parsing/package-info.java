@@ -20,7 +20,10 @@
  * (in the form of the {@code iTunes Music Library.xml} file, which is actually a property list file)
  * into java objects from the package {@link iexport.itunes}.
  * <p>
- * This package relies on {@link com.dd.plist.PropertyListParser} and the other classes from {@link com.dd.plist}
- * in order to parse the property list file into java objects.
+ * By default, the .xml file is parsed by {@code MappedLibraryParser}
+ * using the tokenizer from {@link iexport.parsing.plist} on the memory-mapped file,
+ * or by {@code BinaryLibraryParser} using the random-access reader from {@link iexport.parsing.plist} if it is a binary property list.
+ * Otherwise, this package relies on {@link com.dd.plist.PropertyListParser}
+ * and the other classes from {@link com.dd.plist} in order to parse the property list file into java objects.
  */
 package iexport.parsing;
@@ -0,0 +1,520 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing.plist;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A random-access reader for binary property lists that works directly on the bytes of a {@link ByteBuffer},
+ * typically a {@link java.nio.MappedByteBuffer} of the library file.
+ * <p>
+ * A binary property list consists of a flat sequence of objects that refer to each other by their index,
+ * an offset table mapping each index to the position of the object, and a trailer pointing to the offset table.
+ * This class only reads the trailer up front;
+ * each object is located via the offset table and decoded on request,
+ * so the caller can decode exactly the objects it needs, in any order.
+ * <p>
+ * The types of objects are reported as the {@link PlistToken} that would start the same value in an XML property list.
+ * It supports the types that can occur in XML property lists;
+ * other types (e.g. sets or UIDs) lead to a {@link PlistFormatException}.
+ * <p>
+ * Instances are thread-safe, the buffer is only accessed using absolute reads.
+ */
+public class BinaryPlistReader
+{
+    /**
+     * The magic number and version at the start of binary property lists.
+     */
+    private static final byte[] MAGIC = "bplist00".getBytes(US_ASCII);
+
+    /**
+     * The size of the trailer at the end of the file.
+     */
+    private static final int TRAILER_SIZE = 32;
+
+    /**
+     * Dates are stored as seconds since 2001-01-01T00:00:00Z, this is the same point in time in milliseconds since the Unix epoch.
+     */
+    private static final long EPOCH = 978307200000L;
+
+    /**
+     * The buffer holding the property list.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The position of the offset table.
+     */
+    private final int offsetTableStart;
+
+    /**
+     * The number of bytes per entry of the offset table.
+     */
+    private final int offsetSize;
+
+    /**
+     * The number of bytes per reference to an object inside arrays and dictionaries.
+     */
+    private final int objectRefSize;
+
+    /**
+     * The number of objects.
+     */
+    private final int objectCount;
+
+    /**
+     * The index of the root object.
+     */
+    private final int topObject;
+
+    /**
+     * The strings that have been decoded by {@link #keyValue(int)}, by object index.
+     * <p>
+     * Writers store each distinct string only once, so the keys of all dictionaries share a few objects.
+     */
+    private final String[] keys;
+
+    /**
+     * @param buffer the buffer holding the property list
+     * @throws PlistFormatException if the buffer does not hold a binary property list, or its trailer is malformed
+     */
+    public BinaryPlistReader (ByteBuffer buffer)
+            throws PlistFormatException
+    {
+        this.buffer = buffer;
+
+        int size = buffer.limit();
+        if (size < MAGIC.length + TRAILER_SIZE)
+        {
+            throw new PlistFormatException("Binary property list is too short (" + size + " bytes)");
+        }
+        for (int i = 0; i < MAGIC.length; i++)
+        {
+            if (buffer.get(i) != MAGIC[i])
+            {
+                throw new PlistFormatException("Not a binary property list of version 00");
+            }
+        }
+
+        int trailer = size - TRAILER_SIZE;
+        offsetSize = buffer.get(trailer + 6) & 0xFF;
+        objectRefSize = buffer.get(trailer + 7) & 0xFF;
+        long objects = readNumber(trailer + 8, 8);
+        long top = readNumber(trailer + 16, 8);
+        long tableStart = readNumber(trailer + 24, 8);
+
+        if (offsetSize < 1 || offsetSize > 8 || objectRefSize < 1 || objectRefSize > 8)
+        {
+            throw new PlistFormatException("Binary property list has invalid offset size " + offsetSize + " or reference size " + objectRefSize);
+        }
+        if (objects < 1 || objects > Integer.MAX_VALUE || top < 0 || top >= objects)
+        {
+            throw new PlistFormatException("Binary property list has invalid object count " + objects + " or root object " + top);
+        }
+        if (tableStart < MAGIC.length || tableStart + objects * offsetSize > trailer)
+        {
+            throw new PlistFormatException("Binary property list has invalid offset table position " + tableStart);
+        }
+
+        offsetTableStart = (int) tableStart;
+        objectCount = (int) objects;
+        topObject = (int) top;
+        keys = new String[objectCount];
+    }
+
+    /**
+     * @return the index of the root object
+     */
+    public int getTopObject ()
+    {
+        return topObject;
+    }
+
+    /**
+     * @param object the index of an object
+     * @return the type of the object, {@link PlistToken#DICT_START} and {@link PlistToken#ARRAY_START} for containers
+     * @throws PlistFormatException if the object is of an unsupported type
+     */
+    public PlistToken type (int object)
+            throws PlistFormatException
+    {
+        int marker = buffer.get(offset(object)) & 0xFF;
+        return switch (marker >> 4)
+        {
+            case 0x0 -> switch (marker)
+            {
+                case 0x08 -> PlistToken.FALSE;
+                case 0x09 -> PlistToken.TRUE;
+                default -> throw unsupported(object, marker);
+            };
+            case 0x1 -> PlistToken.INTEGER;
+            case 0x2 -> PlistToken.REAL;
+            case 0x3 ->
+            {
+                if (marker != 0x33)
+                {
+                    throw unsupported(object, marker);
+                }
+                yield PlistToken.DATE;
+            }
+            case 0x4 -> PlistToken.DATA;
+            case 0x5, 0x6, 0x7 -> PlistToken.STRING;
+            case 0xA -> PlistToken.ARRAY_START;
+            case 0xD -> PlistToken.DICT_START;
+            default -> throw unsupported(object, marker);
+        };
+    }
+
+    /**
+     * @param object the index of an array or a dictionary
+     * @return the number of elements of the array, or the number of entries of the dictionary
+     * @throws PlistFormatException if the object is neither an array nor a dictionary, or is truncated
+     */
+    public int count (int object)
+            throws PlistFormatException
+    {
+        int offset = offset(object);
+        int marker = buffer.get(offset) & 0xFF;
+        int refsPerEntry = switch (marker >> 4)
+        {
+            case 0xA -> 1;
+            case 0xD -> 2;
+            default -> throw new PlistFormatException("Object " + object + " is neither an array nor a dictionary");
+        };
+
+        int count = length(offset);
+        if ((long) contentStart(offset) + (long) count * refsPerEntry * objectRefSize > offsetTableStart)
+        {
+            throw new PlistFormatException("Object " + object + " with " + count + " entries exceeds the object table");
+        }
+        return count;
+    }
+
+    /**
+     * @param array the index of an array
+     * @param i     the position in the array, between 0 and {@link #count(int)}
+     * @return the index of the element at the position
+     * @throws PlistFormatException if the array is malformed
+     */
+    public int arrayElement (int array, int i)
+            throws PlistFormatException
+    {
+        return reference(array, i);
+    }
+
+    /**
+     * @param dictionary the index of a dictionary
+     * @param i          the position of an entry in the dictionary, between 0 and {@link #count(int)}
+     * @return the index of the key of the entry
+     * @throws PlistFormatException if the dictionary is malformed
+     */
+    public int dictionaryKey (int dictionary, int i)
+            throws PlistFormatException
+    {
+        return reference(dictionary, i);
+    }
+
+    /**
+     * @param dictionary the index of a dictionary
+     * @param i          the position of an entry in the dictionary, between 0 and {@link #count(int)}
+     * @return the index of the value of the entry
+     * @throws PlistFormatException if the dictionary is malformed
+     */
+    public int dictionaryValue (int dictionary, int i)
+            throws PlistFormatException
+    {
+        // The references to all keys are followed by the references to all values.
+        return reference(dictionary, length(offset(dictionary)) + i);
+    }
+
+    /**
+     * Decode a value as the same Java object as {@link com.dd.plist.NSObject#toJavaObject()}
+     * ({@link String}, {@link Integer} or {@link Long}, {@link Double}, {@link Date}, {@link Boolean}, or {@code byte[]}).
+     * <p>
+     * Null is returned for dictionaries and arrays.
+     *
+     * @param object the index of an object
+     * @return the decoded value, or null
+     * @throws PlistFormatException if the object is malformed or of an unsupported type
+     */
+    public Object value (int object)
+            throws PlistFormatException
+    {
+        return switch (type(object))
+        {
+            case STRING -> stringValue(object);
+            case INTEGER ->
+            {
+                long value = longValue(object);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+                {
+                    yield (int) value;
+                }
+                yield value;
+            }
+            case REAL -> realValue(object);
+            case DATE -> new Date(dateMillis(object));
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            case DATA -> dataValue(object);
+            default -> null;
+        };
+    }
+
+    /**
+     * @param object the index of an integer
+     * @return its value; integers of 16 bytes are truncated to their lower 8 bytes
+     * @throws PlistFormatException if it is not an integer
+     */
+    public long longValue (int object)
+            throws PlistFormatException
+    {
+        int offset = offset(object);
+        int marker = buffer.get(offset) & 0xFF;
+        if (marker >> 4 != 0x1 || (marker & 0xF) > 4)
+        {
+            throw new PlistFormatException("Object " + object + " is not an integer");
+        }
+
+        // Integers with less than 8 bytes are unsigned, integers with 8 bytes are signed.
+        int size = 1 << (marker & 0xF);
+        return size <= 8 ? readNumber(offset + 1, size) : readNumber(offset + 1 + size - 8, 8);
+    }
+
+    /**
+     * @param object the index of a real
+     * @return its value
+     * @throws PlistFormatException if it is not a real of 4 or 8 bytes
+     */
+    public double realValue (int object)
+            throws PlistFormatException
+    {
+        int offset = offset(object);
+        return switch (buffer.get(offset) & 0xFF)
+        {
+            case 0x22 -> Float.intBitsToFloat((int) readNumber(offset + 1, 4));
+            case 0x23 -> Double.longBitsToDouble(readNumber(offset + 1, 8));
+            default -> throw new PlistFormatException("Object " + object + " is not a real");
+        };
+    }
+
+    /**
+     * @param object the index of a date
+     * @return the date in milliseconds since the epoch, truncated like dd-plist does
+     * @throws PlistFormatException if it is not a date
+     */
+    public long dateMillis (int object)
+            throws PlistFormatException
+    {
+        int offset = offset(object);
+        if ((buffer.get(offset) & 0xFF) != 0x33)
+        {
+            throw new PlistFormatException("Object " + object + " is not a date");
+        }
+        return EPOCH + (long) (1000 * Double.longBitsToDouble(readNumber(offset + 1, 8)));
+    }
+
+    /**
+     * @param object the index of a string
+     * @return the decoded string
+     * @throws PlistFormatException if it is not a string or is truncated
+     */
+    public String stringValue (int object)
+            throws PlistFormatException
+    {
+        int offset = offset(object);
+        int marker = buffer.get(offset) & 0xFF;
+        int length = length(offset);
+        return switch (marker >> 4)
+        {
+            case 0x5 -> new String(bytes(object, offset, length), US_ASCII);
+            case 0x6 -> new String(bytes(object, offset, 2L * length), UTF_16BE);
+            case 0x7 -> new String(bytes(object, offset, length), UTF_8);
+            default -> throw new PlistFormatException("Object " + object + " is not a string");
+        };
+    }
+
+    /**
+     * Like {@link #stringValue(int)}, but the result is remembered,
+     * so that the keys of dictionaries, which share their objects, are only decoded once.
+     *
+     * @param object the index of a string
+     * @return the decoded string
+     * @throws PlistFormatException if it is not a string or is truncated
+     */
+    public String keyValue (int object)
+            throws PlistFormatException
+    {
+        String key = keys[object];
+        if (key == null)
+        {
+            key = stringValue(object);
+            keys[object] = key;
+        }
+        return key;
+    }
+
+    /**
+     * @param object the index of a data object
+     * @return its bytes
+     * @throws PlistFormatException if it is not a data object or is truncated
+     */
+    public byte[] dataValue (int object)
+            throws PlistFormatException
+    {
+        int offset = offset(object);
+        if ((buffer.get(offset) & 0xFF) >> 4 != 0x4)
+        {
+            throw new PlistFormatException("Object " + object + " is not a data object");
+        }
+        return bytes(object, offset, length(offset));
+    }
+
+    /**
+     * @param object the index of an object
+     * @return the position of the object
+     * @throws PlistFormatException if the index or the position is out of range
+     */
+    private int offset (int object)
+            throws PlistFormatException
+    {
+        if (object < 0 || object >= objectCount)
+        {
+            throw new PlistFormatException("Reference to object " + object + " is out of range, there are " + objectCount + " objects");
+        }
+
+        long offset = readNumber(offsetTableStart + object * offsetSize, offsetSize);
+        if (offset < MAGIC.length || offset >= offsetTableStart)
+        {
+            throw new PlistFormatException("Object " + object + " has invalid position " + offset);
+        }
+        return (int) offset;
+    }
+
+    /**
+     * @param container the index of an array or a dictionary
+     * @param i         the position of the reference in the container
+     * @return the object index stored in the reference
+     * @throws PlistFormatException if the reference does not fit into an int
+     */
+    private int reference (int container, int i)
+            throws PlistFormatException
+    {
+        long reference = readNumber(contentStart(offset(container)) + i * objectRefSize, objectRefSize);
+        if (reference < 0 || reference > Integer.MAX_VALUE)
+        {
+            throw new PlistFormatException("Object " + container + " contains invalid reference " + reference);
+        }
+        return (int) reference;
+    }
+
+    /**
+     * The lower four bits of the marker of strings, data objects, arrays, and dictionaries are their length.
+     * If they are all set, the length follows as an integer object.
+     *
+     * @param offset the position of an object
+     * @return the length of the object
+     * @throws PlistFormatException if the length is malformed
+     */
+    private int length (int offset)
+            throws PlistFormatException
+    {
+        int length = buffer.get(offset) & 0xF;
+        if (length != 0xF)
+        {
+            return length;
+        }
+
+        int marker = buffer.get(offset + 1) & 0xFF;
+        if (marker >> 4 != 0x1 || (marker & 0xF) > 3)
+        {
+            throw new PlistFormatException("Object at byte " + offset + " has a malformed length");
+        }
+        long value = readNumber(offset + 2, 1 << (marker & 0xF));
+        if (value < 0 || value > Integer.MAX_VALUE)
+        {
+            throw new PlistFormatException("Object at byte " + offset + " has invalid length " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param offset the position of an object
+     * @return the position of the content of the object, after its marker and length
+     */
+    private int contentStart (int offset)
+    {
+        if ((buffer.get(offset) & 0xF) != 0xF)
+        {
+            return offset + 1;
+        }
+        return offset + 2 + (1 << (buffer.get(offset + 1) & 0xF));
+    }
+
+    /**
+     * @param object the index of an object
+     * @param offset the position of the object
+     * @param size   the size of its content in bytes
+     * @return a copy of the content
+     * @throws PlistFormatException if the content exceeds the object table
+     */
+    private byte[] bytes (int object, int offset, long size)
+            throws PlistFormatException
+    {
+        int start = contentStart(offset);
+        if (start + size > offsetTableStart)
+        {
+            throw new PlistFormatException("Object " + object + " of " + size + " bytes exceeds the object table");
+        }
+
+        byte[] bytes = new byte[(int) size];
+        buffer.get(start, bytes);
+        return bytes;
+    }
+
+    /**
+     * @param position the position of a big-endian number
+     * @param size     its size in bytes, at most 8
+     * @return the number, unsigned if it has less than 8 bytes
+     */
+    private long readNumber (int position, int size)
+    {
+        long value = 0;
+        for (int i = 0; i < size; i++)
+        {
+            value = (value << 8) | (buffer.get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * @param object the index of an object
+     * @param marker its marker byte
+     * @return an exception reporting the unsupported type of the object
+     */
+    private static PlistFormatException unsupported (int object, int marker)
+    {
+        return new PlistFormatException("Object " + object + " has unsupported type 0x" + Integer.toHexString(marker));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing.plist;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Splits the content of a dictionary or array of a property list into chunks of roughly equal size,
+ * so that the chunks can be tokenized independently by several {@link PlistTokenizer}s.
+ * <p>
+ * The boundaries are found by searching for byte patterns, not by tokenizing.
+ * They are correct for the files written by iTunes;
+ * for unusual files (e.g. with nested dictionaries inside tracks), a chunk may start in the middle of an entry.
+ * Tokenizing such a chunk fails with a {@link PlistFormatException}, so the caller can fall back to tokenizing the whole range.
+ * <p>
+ * This class is fully static and cannot be instantiated.
+ */
+public class ChunkBoundaries
+{
+    private static final byte[] KEY_START = "<key>".getBytes(US_ASCII);
+    private static final byte[] KEY_END = "</key>".getBytes(US_ASCII);
+    private static final byte[] DICT_START = "<dict>".getBytes(US_ASCII);
+    private static final byte[] TRACK_ID_KEY = "<key>Track ID</key>".getBytes(US_ASCII);
+
+    /**
+     * This class should not be instantiated.
+     */
+    private ChunkBoundaries ()
+    {
+    }
+
+    /**
+     * Split the content of the "Tracks" dictionary at entries of the shape {@code <key>2177</key><dict>}.
+     *
+     * @param buffer the buffer holding the property list
+     * @param start  the position after the {@code <dict>} of the "Tracks" dictionary
+     * @param end    the position of its {@code </dict>}
+     * @param chunks the desired number of chunks
+     * @return the boundaries of the chunks, starting with {@code start} and ending with {@code end}
+     */
+    public static int[] ofTracks (ByteBuffer buffer, int start, int end, int chunks)
+    {
+        return split(buffer, start, end, chunks, ChunkBoundaries::alignToTrack);
+    }
+
+    /**
+     * Split the content of the "Playlists" array at dictionaries that do not start with the key "Track ID"
+     * (which are the entries of the "Playlist Items" arrays inside the playlists).
+     *
+     * @param buffer the buffer holding the property list
+     * @param start  the position after the {@code <array>} of the "Playlists" array
+     * @param end    the position of its {@code </array>}
+     * @param chunks the desired number of chunks
+     * @return the boundaries of the chunks, starting with {@code start} and ending with {@code end}
+     */
+    public static int[] ofPlaylists (ByteBuffer buffer, int start, int end, int chunks)
+    {
+        return split(buffer, start, end, chunks, ChunkBoundaries::alignToPlaylist);
+    }
+
+    /**
+     * Split a range into chunks of roughly equal size.
+     *
+     * @param buffer  the buffer holding the property list
+     * @param start   the start of the range
+     * @param end     the end of the range
+     * @param chunks  the desired number of chunks
+     * @param aligner finds the first boundary at or after a position
+     * @return the boundaries of the chunks, starting with {@code start} and ending with {@code end}
+     */
+    private static int[] split (ByteBuffer buffer, int start, int end, int chunks, Aligner aligner)
+    {
+        int[] boundaries = new int[chunks + 1];
+        int count = 0;
+        boundaries[count++] = start;
+
+        for (int i = 1; i < chunks; i++)
+        {
+            int target = (int) (start + (long) (end - start) * i / chunks);
+            int boundary = aligner.align(buffer, Math.max(target, boundaries[count - 1] + 1), end);
+            if (boundary < 0)
+            {
+                break;
+            }
+            boundaries[count++] = boundary;
+        }
+
+        boundaries[count++] = end;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    /**
+     * @param buffer the buffer holding the property list
+     * @param from   the position at which the search starts
+     * @param end    the position at which the search ends
+     * @return the position of the next {@code <key>} that is followed by a {@code <dict>}, or -1
+     */
+    private static int alignToTrack (ByteBuffer buffer, int from, int end)
+    {
+        for (int i = indexOf(buffer, KEY_START, from, end); i >= 0; i = indexOf(buffer, KEY_START, i + 1, end))
+        {
+            int keyEnd = indexOf(buffer, KEY_END, i + KEY_START.length, end);
+            if (keyEnd < 0)
+            {
+                return -1;
+            }
+            if (startsWith(buffer, skipWhitespace(buffer, keyEnd + KEY_END.length, end), DICT_START, end))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param buffer the buffer holding the property list
+     * @param from   the position at which the search starts
+     * @param end    the position at which the search ends
+     * @return the position of the next {@code <dict>} whose first key is not "Track ID", or -1
+     */
+    private static int alignToPlaylist (ByteBuffer buffer, int from, int end)
+    {
+        for (int i = indexOf(buffer, DICT_START, from, end); i >= 0; i = indexOf(buffer, DICT_START, i + 1, end))
+        {
+            int next = skipWhitespace(buffer, i + DICT_START.length, end);
+            if (startsWith(buffer, next, KEY_START, end) && !startsWith(buffer, next, TRACK_ID_KEY, end))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param needle the bytes to search for
+     * @param from   the position at which the search starts
+     * @param end    the position at which the search ends
+     * @return the first position at which the bytes occur, or -1
+     */
+    private static int indexOf (ByteBuffer buffer, byte[] needle, int from, int end)
+    {
+        for (int i = from; i < end; i++)
+        {
+            if (buffer.get(i) == needle[0] && startsWith(buffer, i, needle, end))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param start  a position
+     * @param prefix the bytes to compare with
+     * @param end    the end of the range
+     * @return true iff the bytes starting at the position match
+     */
+    private static boolean startsWith (ByteBuffer buffer, int start, byte[] prefix, int end)
+    {
+        if (start + prefix.length > end)
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (buffer.get(start + i) != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param from   a position
+     * @param end    the end of the range
+     * @return the first position at or after {@code from} that is not whitespace
+     */
+    private static int skipWhitespace (ByteBuffer buffer, int from, int end)
+    {
+        int i = from;
+        while (i < end && (buffer.get(i) == ' ' || buffer.get(i) == '\n' || buffer.get(i) == '\t' || buffer.get(i) == '\r'))
+        {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the first chunk boundary at or after a position.
+     */
+    @FunctionalInterface
+    private interface Aligner
+    {
+        /**
+         * @param buffer the buffer holding the property list
+         * @param from   the position at which the search starts
+         * @param end    the position at which the search ends
+         * @return the boundary, or -1 if there is none
+         */
+        int align (ByteBuffer buffer, int from, int end);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing.plist;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Maps the raw bytes of {@code <key>} tokens to strings without decoding them.
+ * <p>
+ * The table is seeded with the known keys (e.g. from {@link iexport.parsing.keys.TrackKeys}),
+ * so for those, looking up a key is a byte comparison that returns the canonical string.
+ * Keys that are not known are decoded once and then remembered,
+ * so that each distinct key is only allocated once per table.
+ * <p>
+ * This class is not thread-safe; each thread should use its own table.
+ */
+public class KeyTable
+{
+    /**
+     * The UTF-8 encoded keys, by slot.
+     */
+    private byte[][] slotBytes;
+
+    /**
+     * The keys, by slot.
+     */
+    private String[] slotKeys;
+
+    /**
+     * The hashes of the keys, by slot.
+     */
+    private int[] slotHashes;
+
+    /**
+     * The number of keys in the table.
+     */
+    private int size = 0;
+
+    /**
+     * @param knownKeys the keys that the table should be seeded with
+     */
+    public KeyTable (Collection<String> knownKeys)
+    {
+        int capacity = Integer.highestOneBit(Math.max(16, 4 * knownKeys.size()) - 1) << 1;
+        slotBytes = new byte[capacity][];
+        slotKeys = new String[capacity];
+        slotHashes = new int[capacity];
+
+        for (String key : knownKeys)
+        {
+            byte[] bytes = key.getBytes(UTF_8);
+            insert(bytes, key, hash(bytes));
+        }
+    }
+
+    /**
+     * Get the string for the content of the current {@code <key>} token.
+     *
+     * @param tokenizer the tokenizer whose current token is a key
+     * @return the key
+     * @throws PlistFormatException if the key contains an invalid reference
+     */
+    public String get (PlistTokenizer tokenizer)
+            throws PlistFormatException
+    {
+        ByteBuffer buffer = tokenizer.getBuffer();
+        int start = tokenizer.getContentStart();
+        int end = tokenizer.getContentEnd();
+
+        // FNV-1a
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++)
+        {
+            hash = (hash ^ buffer.get(i)) * 0x01000193;
+        }
+
+        int mask = slotKeys.length - 1;
+        for (int slot = hash & mask; slotKeys[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (slotHashes[slot] == hash && matches(slotBytes[slot], buffer, start, end))
+            {
+                return slotKeys[slot];
+            }
+        }
+
+        // A key that we have not seen before, remember it.
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        String key = tokenizer.stringValue();
+        insert(bytes, key, hash);
+        return key;
+    }
+
+    /**
+     * Insert a key that is not yet present, growing the table if it gets too full.
+     *
+     * @param bytes the raw bytes of the key
+     * @param key   the key
+     * @param hash  the hash of the raw bytes
+     */
+    private void insert (byte[] bytes, String key, int hash)
+    {
+        if (2 * (size + 1) > slotKeys.length)
+        {
+            byte[][] oldBytes = slotBytes;
+            String[] oldKeys = slotKeys;
+            int[] oldHashes = slotHashes;
+
+            slotBytes = new byte[2 * oldKeys.length][];
+            slotKeys = new String[2 * oldKeys.length];
+            slotHashes = new int[2 * oldKeys.length];
+            size = 0;
+
+            for (int slot = 0; slot < oldKeys.length; slot++)
+            {
+                if (oldKeys[slot] != null)
+                {
+                    insert(oldBytes[slot], oldKeys[slot], oldHashes[slot]);
+                }
+            }
+        }
+
+        int mask = slotKeys.length - 1;
+        int slot = hash & mask;
+        while (slotKeys[slot] != null)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        slotBytes[slot] = bytes;
+        slotKeys[slot] = key;
+        slotHashes[slot] = hash;
+        size++;
+    }
+
+    /**
+     * @param bytes the raw bytes of a key
+     * @return the FNV-1a hash of the bytes
+     */
+    private static int hash (byte[] bytes)
+    {
+        int hash = 0x811C9DC5;
+        for (byte b : bytes)
+        {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * @param bytes  the raw bytes of a key
+     * @param buffer a buffer
+     * @param start  the start of a range of the buffer
+     * @param end    the (exclusive) end of a range of the buffer
+     * @return true iff the range holds exactly the bytes
+     */
+    private static boolean matches (byte[] bytes, ByteBuffer buffer, int start, int end)
+    {
+        if (bytes.length != end - start)
+        {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (bytes[i] != buffer.get(start + i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing.plist;
+
+/**
+ * An exception that will be thrown if the {@link PlistTokenizer} encounters input that it cannot handle,
+ * e.g. malformed XML or constructs that do not occur in iTunes library files.
+ */
+public class PlistFormatException extends Exception
+{
+    public PlistFormatException (String message)
+    {
+        super(message);
+    }
+
+    public PlistFormatException (String message, Exception cause)
+    {
+        super(message, cause);
+    }
+}
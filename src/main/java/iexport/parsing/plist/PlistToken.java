@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing.plist;
+
+/**
+ * The tokens returned by {@link PlistTokenizer#next()}.
+ */
+public enum PlistToken
+{
+    /**
+     * {@code <dict>}, or the first half of {@code <dict/>}
+     */
+    DICT_START,
+
+    /**
+     * {@code </dict>}, or the second half of {@code <dict/>}
+     */
+    DICT_END,
+
+    /**
+     * {@code <array>}, or the first half of {@code <array/>}
+     */
+    ARRAY_START,
+
+    /**
+     * {@code </array>}, or the second half of {@code <array/>}
+     */
+    ARRAY_END,
+
+    /**
+     * {@code <key>...</key>}
+     */
+    KEY,
+
+    /**
+     * {@code <string>...</string>}
+     */
+    STRING,
+
+    /**
+     * {@code <integer>...</integer>}
+     */
+    INTEGER,
+
+    /**
+     * {@code <real>...</real>}
+     */
+    REAL,
+
+    /**
+     * {@code <date>...</date>}
+     */
+    DATE,
+
+    /**
+     * {@code <true/>}
+     */
+    TRUE,
+
+    /**
+     * {@code <false/>}
+     */
+    FALSE,
+
+    /**
+     * {@code <data>...</data>}
+     */
+    DATA,
+
+    /**
+     * The end of the range that is tokenized.
+     */
+    END_OF_INPUT;
+
+    /**
+     * @return true iff this token starts a value that consists of several tokens
+     */
+    public boolean isContainerStart ()
+    {
+        return this == DICT_START || this == ARRAY_START;
+    }
+}
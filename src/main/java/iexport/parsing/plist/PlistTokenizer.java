@@ -0,0 +1,1059 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing.plist;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A pull tokenizer for XML property lists that works directly on the bytes of a {@link ByteBuffer},
+ * typically a {@link java.nio.MappedByteBuffer} of the library file.
+ * <p>
+ * It only supports the small subset of XML that is used by property lists:
+ * the elements {@code plist}, {@code dict}, {@code array}, {@code key}, {@code string}, {@code integer}, {@code real},
+ * {@code date}, {@code data}, {@code true}, and {@code false},
+ * the predefined entities and character references,
+ * as well as the XML declaration, the DOCTYPE, and comments (which are skipped).
+ * Anything else (e.g. CDATA sections or encodings other than UTF-8) leads to a {@link PlistFormatException}.
+ * <p>
+ * {@link #next()} only determines the type and the byte range of the next token.
+ * Its content is decoded on request by {@link #longValue()}, {@link #dateMillis()}, {@link #stringValue()}, etc.
+ * Integers and dates are decoded from the bytes without constructing intermediate strings,
+ * so the only allocations are the values that the caller actually asks for.
+ * <p>
+ * Instances are not thread-safe, but several tokenizers may work on disjoint ranges of the same buffer.
+ */
+public class PlistTokenizer
+{
+    /**
+     * The magic number at the start of binary property lists.
+     */
+    private static final byte[] BINARY_MAGIC = "bplist".getBytes(US_ASCII);
+
+    /**
+     * The UTF-8 byte order mark.
+     */
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    // The names of the elements.
+    private static final byte[] KEY = "key".getBytes(US_ASCII);
+    private static final byte[] STRING = "string".getBytes(US_ASCII);
+    private static final byte[] INTEGER = "integer".getBytes(US_ASCII);
+    private static final byte[] DATE = "date".getBytes(US_ASCII);
+    private static final byte[] DICT = "dict".getBytes(US_ASCII);
+    private static final byte[] ARRAY = "array".getBytes(US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(US_ASCII);
+    private static final byte[] DATA = "data".getBytes(US_ASCII);
+    private static final byte[] REAL = "real".getBytes(US_ASCII);
+    private static final byte[] PLIST = "plist".getBytes(US_ASCII);
+
+    // The delimiters of the constructs that are skipped.
+    private static final byte[] DECLARATION_END = "?>".getBytes(US_ASCII);
+    private static final byte[] COMMENT_START = "<!--".getBytes(US_ASCII);
+    private static final byte[] COMMENT_END = "-->".getBytes(US_ASCII);
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(US_ASCII);
+
+    /**
+     * The (exclusive) end of the range that is tokenized.
+     */
+    private final int end;
+
+    /**
+     * The buffer holding the property list.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The position of the first byte that has not been tokenized yet.
+     */
+    private int position;
+
+    /**
+     * The position at which the current token starts.
+     */
+    private int tokenStart;
+
+    /**
+     * The position at which the content of the current token starts.
+     */
+    private int contentStart;
+
+    /**
+     * The (exclusive) position at which the content of the current token ends.
+     */
+    private int contentEnd;
+
+    /**
+     * Does the content of the current token contain references or carriage returns that need to be decoded?
+     */
+    private boolean contentNeedsDecoding;
+
+    /**
+     * The second half of a self-closing {@code <dict/>} or {@code <array/>}, or null.
+     */
+    private PlistToken pendingToken = null;
+
+    /**
+     * A reusable buffer for decoding strings.
+     */
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Tokenize the whole buffer.
+     *
+     * @param buffer the buffer holding the property list
+     */
+    public PlistTokenizer (ByteBuffer buffer)
+    {
+        this(buffer, 0, buffer.limit());
+
+        if (startsWith(0, BYTE_ORDER_MARK))
+        {
+            position = BYTE_ORDER_MARK.length;
+        }
+    }
+
+    /**
+     * Tokenize a range of the buffer.
+     * <p>
+     * The range must start and end between two tokens.
+     *
+     * @param buffer the buffer holding the property list
+     * @param start  the position at which tokenizing starts
+     * @param end    the (exclusive) position at which tokenizing ends
+     */
+    public PlistTokenizer (ByteBuffer buffer, int start, int end)
+    {
+        this.buffer = buffer;
+        this.position = start;
+        this.tokenStart = start;
+        this.end = end;
+    }
+
+    /**
+     * Binary property lists cannot be tokenized, they need to be read by {@link BinaryPlistReader}.
+     *
+     * @param buffer the buffer holding a property list
+     * @return true iff it is a binary property list
+     */
+    public static boolean isBinaryPropertyList (ByteBuffer buffer)
+    {
+        return new PlistTokenizer(buffer, 0, buffer.limit()).startsWith(0, BINARY_MAGIC);
+    }
+
+    /**
+     * @return the position of the first byte after the current token
+     */
+    public int getPosition ()
+    {
+        return position;
+    }
+
+    /**
+     * @return the position of the first byte of the current token
+     */
+    public int getTokenStart ()
+    {
+        return tokenStart;
+    }
+
+    /**
+     * Continue tokenizing at a position that has been obtained from {@link #getTokenStart()} before,
+     * e.g. to come back to a value that has been skipped.
+     *
+     * @param position the position of the first byte of a token
+     */
+    public void seek (int position)
+    {
+        this.position = position;
+        this.tokenStart = position;
+        pendingToken = null;
+    }
+
+    /**
+     * Advance to the next token.
+     *
+     * @return the type of the next token, or {@link PlistToken#END_OF_INPUT}
+     * @throws PlistFormatException if the input is malformed or not supported
+     */
+    public PlistToken next ()
+            throws PlistFormatException
+    {
+        if (pendingToken != null)
+        {
+            PlistToken token = pendingToken;
+            pendingToken = null;
+            return token;
+        }
+
+        while (true)
+        {
+            skipWhitespace();
+            if (position >= end)
+            {
+                return PlistToken.END_OF_INPUT;
+            }
+
+            tokenStart = position;
+            if (buffer.get(position) != '<')
+            {
+                throw error("Unexpected character data");
+            }
+
+            byte second = byteAt(position + 1);
+            if (second == '?')
+            {
+                // The XML declaration
+                int declarationEnd = indexOf(DECLARATION_END, position);
+                checkEncoding(position, declarationEnd);
+                position = declarationEnd + 2;
+                continue;
+            }
+            if (second == '!')
+            {
+                if (startsWith(position, CDATA_START))
+                {
+                    throw error("CDATA sections are not supported");
+                }
+                // A comment or the DOCTYPE
+                position = startsWith(position, COMMENT_START)
+                        ? indexOf(COMMENT_END, position) + COMMENT_END.length
+                        : indexOfTagEnd(position) + 1;
+                continue;
+            }
+            if (second == '/')
+            {
+                // A closing tag
+                int nameStart = position + 2;
+                int nameEnd = nameEnd(nameStart);
+                position = indexOfTagEnd(nameEnd) + 1;
+
+                if (nameEquals(nameStart, nameEnd, DICT))
+                {
+                    return PlistToken.DICT_END;
+                }
+                if (nameEquals(nameStart, nameEnd, ARRAY))
+                {
+                    return PlistToken.ARRAY_END;
+                }
+                if (nameEquals(nameStart, nameEnd, PLIST))
+                {
+                    continue;
+                }
+                throw error("Unexpected closing tag");
+            }
+
+            // An opening tag
+            int nameStart = position + 1;
+            int nameEnd = nameEnd(nameStart);
+            int tagEnd = indexOfTagEnd(nameEnd);
+            boolean selfClosing = buffer.get(tagEnd - 1) == '/';
+            position = tagEnd + 1;
+
+            if (nameEquals(nameStart, nameEnd, PLIST))
+            {
+                continue;
+            }
+
+            PlistToken token = elementToken(nameStart, nameEnd);
+            switch (token)
+            {
+                case DICT_START -> pendingToken = selfClosing ? PlistToken.DICT_END : null;
+                case ARRAY_START -> pendingToken = selfClosing ? PlistToken.ARRAY_END : null;
+                default ->
+                {
+                    if (selfClosing)
+                    {
+                        contentStart = position;
+                        contentEnd = position;
+                        contentNeedsDecoding = false;
+                    }
+                    else
+                    {
+                        readContent(nameStart, nameEnd);
+                    }
+                }
+            }
+            return token;
+        }
+    }
+
+    /**
+     * Skip the value that starts with the given token, including all nested values.
+     *
+     * @param token the current token
+     * @throws PlistFormatException if the input is malformed or the token does not start a value
+     */
+    public void skipValue (PlistToken token)
+            throws PlistFormatException
+    {
+        switch (token)
+        {
+            case DICT_START, ARRAY_START ->
+            {
+                int depth = 1;
+                while (depth > 0)
+                {
+                    PlistToken nested = next();
+                    switch (nested)
+                    {
+                        case DICT_START, ARRAY_START -> depth++;
+                        case DICT_END, ARRAY_END -> depth--;
+                        case END_OF_INPUT -> throw error("Unexpected end of input");
+                        default ->
+                        {
+                        }
+                    }
+                }
+            }
+            case STRING, INTEGER, REAL, DATE, TRUE, FALSE, DATA ->
+            {
+            }
+            default -> throw error("Expected a value, got " + token);
+        }
+    }
+
+    /**
+     * Decode the value that starts with the given token into the type that
+     * {@link com.dd.plist.NSObject#toJavaObject()} would produce
+     * ({@link String}, {@link Integer} or {@link Long}, {@link Double}, {@link Date}, {@link Boolean}, or {@code byte[]}).
+     * <p>
+     * Dictionaries and arrays are skipped, and null is returned for them.
+     *
+     * @param token the current token
+     * @return the value, or null
+     * @throws PlistFormatException if the input is malformed or the token does not start a value
+     */
+    public Object value (PlistToken token)
+            throws PlistFormatException
+    {
+        return switch (token)
+                {
+                    case STRING -> stringValue();
+                    case INTEGER -> integerValue();
+                    case REAL -> realValue();
+                    case DATE -> new Date(dateMillis());
+                    case TRUE -> Boolean.TRUE;
+                    case FALSE -> Boolean.FALSE;
+                    case DATA -> dataValue();
+                    default ->
+                    {
+                        skipValue(token);
+                        yield null;
+                    }
+                };
+    }
+
+    /**
+     * @return the content of the current integer token
+     * @throws PlistFormatException if it is not an integer
+     */
+    public long longValue ()
+            throws PlistFormatException
+    {
+        int start = trimmedStart();
+        int stop = trimmedEnd(start);
+
+        boolean negative = false;
+        if (start < stop && (buffer.get(start) == '-' || buffer.get(start) == '+'))
+        {
+            negative = buffer.get(start) == '-';
+            start++;
+        }
+
+        // At most 18 digits always fit into a long.
+        if (start == stop || stop - start > 18)
+        {
+            return parseLongSlowly();
+        }
+
+        long value = 0;
+        for (int i = start; i < stop; i++)
+        {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9)
+            {
+                return parseLongSlowly();
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the content of the current integer token as {@link Integer} if it fits, as {@link Long} otherwise
+     * @throws PlistFormatException if it is not an integer
+     */
+    public Object integerValue ()
+            throws PlistFormatException
+    {
+        long value = longValue();
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+        {
+            return (int) value;
+        }
+        return value;
+    }
+
+    /**
+     * @return the content of the current real token
+     * @throws PlistFormatException if it is not a number
+     */
+    public double realValue ()
+            throws PlistFormatException
+    {
+        String text = contentAsAscii().trim();
+        try
+        {
+            return Double.parseDouble(text);
+        }
+        catch (NumberFormatException e)
+        {
+            throw error("Invalid real \"" + text + "\"");
+        }
+    }
+
+    /**
+     * Decode the content of the current date token, which is usually of the shape {@code 2022-01-31T23:59:59Z}.
+     *
+     * @return the date in milliseconds since the epoch
+     * @throws PlistFormatException if it is not a date
+     */
+    public long dateMillis ()
+            throws PlistFormatException
+    {
+        int start = trimmedStart();
+        int stop = trimmedEnd(start);
+
+        if (stop - start != 20
+                || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-' || buffer.get(start + 10) != 'T'
+                || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':' || buffer.get(start + 19) != 'Z')
+        {
+            return parseDateSlowly();
+        }
+
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int day = digits(start + 8, 2);
+        int hour = digits(start + 11, 2);
+        int minute = digits(start + 14, 2);
+        int second = digits(start + 17, 2);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60)
+        {
+            return parseDateSlowly();
+        }
+
+        long seconds = epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        return seconds * 1000L;
+    }
+
+    /**
+     * @return the content of the current key or string token, with references decoded
+     * @throws PlistFormatException if it contains an invalid reference
+     */
+    public String stringValue ()
+            throws PlistFormatException
+    {
+        int length = contentEnd - contentStart;
+        if (length == 0)
+        {
+            return "";
+        }
+
+        byte[] bytes = scratch(length);
+        buffer.get(contentStart, bytes, 0, length);
+
+        if (contentNeedsDecoding)
+        {
+            length = decodeReferences(bytes, length);
+        }
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+    /**
+     * @return the decoded content of the current data token
+     * @throws PlistFormatException if it is not valid Base64
+     */
+    public byte[] dataValue ()
+            throws PlistFormatException
+    {
+        byte[] encoded = new byte[contentEnd - contentStart];
+        buffer.get(contentStart, encoded);
+        try
+        {
+            return Base64.getMimeDecoder().decode(encoded);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw error("Invalid Base64 data");
+        }
+    }
+
+    /**
+     * @return the buffer holding the property list
+     */
+    ByteBuffer getBuffer ()
+    {
+        return buffer;
+    }
+
+    /**
+     * @return the position at which the content of the current token starts
+     */
+    int getContentStart ()
+    {
+        return contentStart;
+    }
+
+    /**
+     * @return the (exclusive) position at which the content of the current token ends
+     */
+    int getContentEnd ()
+    {
+        return contentEnd;
+    }
+
+    /**
+     * Create an exception that reports the position of the current token.
+     *
+     * @param message the message
+     * @return the exception
+     */
+    PlistFormatException error (String message)
+    {
+        return new PlistFormatException(message + " at byte " + tokenStart);
+    }
+
+    /**
+     * Find the content of the current element and the end of its closing tag.
+     *
+     * @param nameStart the position of the name of the element
+     * @param nameEnd   the (exclusive) end of the name of the element
+     * @throws PlistFormatException if there is no matching closing tag
+     */
+    private void readContent (int nameStart, int nameEnd)
+            throws PlistFormatException
+    {
+        boolean needsDecoding = false;
+        int i = position;
+        while (i < end)
+        {
+            byte b = buffer.get(i);
+            if (b == '<')
+            {
+                break;
+            }
+            if (b == '&' || b == '\r')
+            {
+                needsDecoding = true;
+            }
+            i++;
+        }
+
+        contentStart = position;
+        contentEnd = i;
+        contentNeedsDecoding = needsDecoding;
+
+        // The closing tag needs to match the opening tag.
+        int closingNameEnd = i + 2 + (nameEnd - nameStart);
+        if (byteAt(i + 1) != '/' || closingNameEnd > end || nameEnd(i + 2) != closingNameEnd)
+        {
+            throw error("Missing closing tag");
+        }
+        for (int j = 0; j < nameEnd - nameStart; j++)
+        {
+            if (buffer.get(i + 2 + j) != buffer.get(nameStart + j))
+            {
+                throw error("Mismatched closing tag");
+            }
+        }
+        position = indexOfTagEnd(closingNameEnd) + 1;
+    }
+
+    /**
+     * @param nameStart the position of the name of the element
+     * @param nameEnd   the (exclusive) end of the name of the element
+     * @return the token corresponding to the element
+     * @throws PlistFormatException if the element is not supported
+     */
+    private PlistToken elementToken (int nameStart, int nameEnd)
+            throws PlistFormatException
+    {
+        // The most frequent elements come first.
+        if (nameEquals(nameStart, nameEnd, KEY))
+        {
+            return PlistToken.KEY;
+        }
+        if (nameEquals(nameStart, nameEnd, INTEGER))
+        {
+            return PlistToken.INTEGER;
+        }
+        if (nameEquals(nameStart, nameEnd, STRING))
+        {
+            return PlistToken.STRING;
+        }
+        if (nameEquals(nameStart, nameEnd, DATE))
+        {
+            return PlistToken.DATE;
+        }
+        if (nameEquals(nameStart, nameEnd, DICT))
+        {
+            return PlistToken.DICT_START;
+        }
+        if (nameEquals(nameStart, nameEnd, TRUE))
+        {
+            return PlistToken.TRUE;
+        }
+        if (nameEquals(nameStart, nameEnd, FALSE))
+        {
+            return PlistToken.FALSE;
+        }
+        if (nameEquals(nameStart, nameEnd, ARRAY))
+        {
+            return PlistToken.ARRAY_START;
+        }
+        if (nameEquals(nameStart, nameEnd, DATA))
+        {
+            return PlistToken.DATA;
+        }
+        if (nameEquals(nameStart, nameEnd, REAL))
+        {
+            return PlistToken.REAL;
+        }
+        throw error("Unsupported element");
+    }
+
+    /**
+     * Decode references and normalize line breaks in place.
+     * <p>
+     * The result is never longer than the input.
+     *
+     * @param bytes  the UTF-8 encoded content
+     * @param length the length of the content
+     * @return the length of the decoded content
+     * @throws PlistFormatException if the content contains an invalid reference
+     */
+    private int decodeReferences (byte[] bytes, int length)
+            throws PlistFormatException
+    {
+        int out = 0;
+        int in = 0;
+        while (in < length)
+        {
+            byte b = bytes[in];
+
+            // XML turns "\r\n" and "\r" into "\n".
+            if (b == '\r')
+            {
+                bytes[out++] = '\n';
+                in++;
+                if (in < length && bytes[in] == '\n')
+                {
+                    in++;
+                }
+                continue;
+            }
+
+            if (b != '&')
+            {
+                bytes[out++] = b;
+                in++;
+                continue;
+            }
+
+            int semicolon = in + 1;
+            while (semicolon < length && bytes[semicolon] != ';')
+            {
+                semicolon++;
+            }
+            if (semicolon == length)
+            {
+                throw error("Unterminated reference");
+            }
+
+            String name = new String(bytes, in + 1, semicolon - in - 1, US_ASCII);
+            int codePoint = switch (name)
+                    {
+                        case "amp" -> '&';
+                        case "lt" -> '<';
+                        case "gt" -> '>';
+                        case "quot" -> '"';
+                        case "apos" -> '\'';
+                        default -> characterReference(name);
+                    };
+            out = encodeUtf8(codePoint, bytes, out);
+            in = semicolon + 1;
+        }
+        return out;
+    }
+
+    /**
+     * @param name the name of a reference, e.g. "#38" or "#x26"
+     * @return the code point of the character reference
+     * @throws PlistFormatException if it is not a valid character reference
+     */
+    private int characterReference (String name)
+            throws PlistFormatException
+    {
+        try
+        {
+            if (name.startsWith("#x"))
+            {
+                return Integer.parseInt(name.substring(2), 16);
+            }
+            if (name.startsWith("#"))
+            {
+                return Integer.parseInt(name.substring(1));
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // Handled below
+        }
+        throw error("Invalid reference \"&" + name + ";\"");
+    }
+
+    /**
+     * Write a code point in UTF-8.
+     *
+     * @param codePoint the code point
+     * @param bytes     the array to write to
+     * @param offset    the position to write to
+     * @return the position after the written bytes
+     * @throws PlistFormatException if the code point is invalid
+     */
+    private int encodeUtf8 (int codePoint, byte[] bytes, int offset)
+            throws PlistFormatException
+    {
+        if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT)
+        {
+            throw error("Invalid code point " + codePoint);
+        }
+        if (codePoint < 0x80)
+        {
+            bytes[offset++] = (byte) codePoint;
+        }
+        else if (codePoint < 0x800)
+        {
+            bytes[offset++] = (byte) (0xC0 | (codePoint >> 6));
+            bytes[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else if (codePoint < 0x10000)
+        {
+            bytes[offset++] = (byte) (0xE0 | (codePoint >> 12));
+            bytes[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        else
+        {
+            bytes[offset++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return offset;
+    }
+
+    /**
+     * Parse integers that are not plain decimal numbers of at most 18 digits, e.g. hexadecimal ones.
+     *
+     * @return the integer
+     * @throws PlistFormatException if it is not an integer
+     */
+    private long parseLongSlowly ()
+            throws PlistFormatException
+    {
+        String text = contentAsAscii().trim();
+        try
+        {
+            if (text.startsWith("0x"))
+            {
+                return Long.parseLong(text.substring(2), 16);
+            }
+            return Long.parseLong(text);
+        }
+        catch (NumberFormatException e)
+        {
+            throw error("Invalid integer \"" + text + "\"");
+        }
+    }
+
+    /**
+     * Parse dates that are not of the shape {@code 2022-01-31T23:59:59Z}.
+     *
+     * @return the date in milliseconds since the epoch
+     * @throws PlistFormatException if it is not a date
+     */
+    private long parseDateSlowly ()
+            throws PlistFormatException
+    {
+        String text = contentAsAscii().trim();
+        try
+        {
+            return Instant.parse(text).toEpochMilli();
+        }
+        catch (DateTimeParseException e)
+        {
+            throw error("Invalid date \"" + text + "\"");
+        }
+    }
+
+    /**
+     * Compute the number of days since 1970-01-01 of a date in the proleptic Gregorian calendar,
+     * using the days-from-civil algorithm by Howard Hinnant.
+     *
+     * @param year  the year
+     * @param month the month, 1 to 12
+     * @param day   the day of the month
+     * @return the number of days since the epoch
+     */
+    private static long epochDay (int year, int month, int day)
+    {
+        // Count years from March, so that the leap day is the last day of the year.
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int monthFromMarch = (month + 9) % 12;
+        int dayOfYear = (153 * monthFromMarch + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * @param start the position of the first digit
+     * @param count the number of digits
+     * @return the decimal number, or -1 if one of the bytes is not a digit
+     */
+    private int digits (int start, int count)
+    {
+        int value = 0;
+        for (int i = start; i < start + count; i++)
+        {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9)
+            {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Make sure that the XML declaration does not specify an encoding other than UTF-8.
+     *
+     * @param start the position of the declaration
+     * @param stop  the end of the declaration
+     * @throws PlistFormatException if another encoding is specified
+     */
+    private void checkEncoding (int start, int stop)
+            throws PlistFormatException
+    {
+        byte[] declarationBytes = new byte[stop - start];
+        buffer.get(start, declarationBytes);
+        String declaration = new String(declarationBytes, US_ASCII).toLowerCase(Locale.ROOT);
+
+        int encodingIndex = declaration.indexOf("encoding=");
+        if (encodingIndex >= 0)
+        {
+            String encoding = declaration.substring(encodingIndex + "encoding=".length() + 1);
+            if (!encoding.startsWith("utf-8") && !encoding.startsWith("utf8"))
+            {
+                throw error("Unsupported encoding in " + declaration);
+            }
+        }
+    }
+
+    /**
+     * @return the content of the current token as (7-bit) string, for the rare cases that are not decoded from the bytes
+     */
+    private String contentAsAscii ()
+    {
+        byte[] bytes = new byte[contentEnd - contentStart];
+        buffer.get(contentStart, bytes);
+        return new String(bytes, US_ASCII);
+    }
+
+    /**
+     * @return the first position of the content that is not whitespace
+     */
+    private int trimmedStart ()
+    {
+        int start = contentStart;
+        while (start < contentEnd && isWhitespace(buffer.get(start)))
+        {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * @param start the first position of the content that is not whitespace
+     * @return the position after the last position of the content that is not whitespace
+     */
+    private int trimmedEnd (int start)
+    {
+        int stop = contentEnd;
+        while (stop > start && isWhitespace(buffer.get(stop - 1)))
+        {
+            stop--;
+        }
+        return stop;
+    }
+
+    /**
+     * Advance the position to the next byte that is not whitespace.
+     */
+    private void skipWhitespace ()
+    {
+        while (position < end && isWhitespace(buffer.get(position)))
+        {
+            position++;
+        }
+    }
+
+    /**
+     * @param b a byte
+     * @return true iff it is XML whitespace
+     */
+    private static boolean isWhitespace (byte b)
+    {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * @param nameStart the position at which a name starts
+     * @return the position after the name
+     */
+    private int nameEnd (int nameStart)
+    {
+        int i = nameStart;
+        while (i < end)
+        {
+            byte b = buffer.get(i);
+            if (b == '>' || b == '/' || isWhitespace(b))
+            {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param nameStart the position of a name
+     * @param nameEnd   the position after the name
+     * @param name      the expected name
+     * @return true iff the name matches
+     */
+    private boolean nameEquals (int nameStart, int nameEnd, byte[] name)
+    {
+        return nameEnd - nameStart == name.length && startsWith(nameStart, name);
+    }
+
+    /**
+     * @param start  a position
+     * @param prefix a sequence of bytes
+     * @return true iff the bytes starting at the position match the sequence
+     */
+    private boolean startsWith (int start, byte[] prefix)
+    {
+        if (start + prefix.length > end)
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if (buffer.get(start + i) != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param needle the sequence of bytes to search for
+     * @param from   the position at which the search starts
+     * @return the first position at which the sequence occurs
+     * @throws PlistFormatException if it does not occur
+     */
+    private int indexOf (byte[] needle, int from)
+            throws PlistFormatException
+    {
+        for (int i = from; i < end; i++)
+        {
+            if (buffer.get(i) == needle[0] && startsWith(i, needle))
+            {
+                return i;
+            }
+        }
+        throw error("Unexpected end of input, expected \"" + new String(needle, US_ASCII) + "\"");
+    }
+
+    /**
+     * @param from the position at which the search starts
+     * @return the position of the next '>'
+     * @throws PlistFormatException if there is none
+     */
+    private int indexOfTagEnd (int from)
+            throws PlistFormatException
+    {
+        for (int i = from; i < end; i++)
+        {
+            if (buffer.get(i) == '>')
+            {
+                return i;
+            }
+        }
+        throw error("Unexpected end of input, expected \">\"");
+    }
+
+    /**
+     * @param index a position
+     * @return the byte at the position, or 0 if it is out of range
+     */
+    private byte byteAt (int index)
+    {
+        return index < end ? buffer.get(index) : 0;
+    }
+
+    /**
+     * @param length the required length
+     * @return {@link #scratch}, enlarged if necessary
+     */
+    private byte[] scratch (int length)
+    {
+        if (scratch.length < length)
+        {
+            scratch = new byte[Math.max(length, 2 * scratch.length)];
+        }
+        return scratch;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * This package contains a specialized tokenizer for the XML property list dialect
+ * that is used by the {@code iTunes Music Library.xml} file,
+ * and a random-access reader for the same library stored as a binary property list.
+ * <p>
+ * In contrast to {@link com.dd.plist.PropertyListParser}, they do not construct a tree of objects.
+ * They work directly on the bytes of the (memory-mapped) file,
+ * and only decode the values that are actually needed.
+ */
+package iexport.parsing.plist;
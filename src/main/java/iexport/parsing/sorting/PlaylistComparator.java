@@ -35,6 +35,8 @@ import java.util.List;
  * <p>
  * If the ancestry of one playlist is a prefix of the ancestry of the other,
  * then the playlist with the shorter ancestry is prioritized.
+ * <p>
+ * For sorting all playlists of a library, {@link PlaylistTreeOrder} computes the same order without comparing ancestries.
  */
 public class PlaylistComparator implements Comparator<Playlist>
 {
@@ -90,8 +92,10 @@ public class PlaylistComparator implements Comparator<Playlist>
      *     <li> Prioritizes playlists with the smaller {@link Playlist#name} (using {@link String.CaseInsensitiveComparator}
      *     <li> Prioritizes playlists with the smaller {@link Playlist#playlistPersistentId}
      * </ol>
+     * <p>
+     * It is used by {@link PlaylistTreeOrder} to sort siblings.
      */
-    static private final Comparator<Playlist> BASIC_PLAYLIST_COMPARATOR =
+    static final Comparator<Playlist> BASIC_PLAYLIST_COMPARATOR =
             NULL_PLAYLIST_COMPARATOR
                     .thenComparing(CHILDREN_EXISTENCE_COMPARATOR)
                     .thenComparing(Playlist::name, BasicComparators.STRING_COMPARATOR)
@@ -102,13 +106,19 @@ public class PlaylistComparator implements Comparator<Playlist>
      */
     static private final Comparator<List<Playlist>> ANCESTRY_COMPARATOR = new LexicographicComparator<>(BASIC_PLAYLIST_COMPARATOR);
 
+    /**
+     * Comparator that prioritizes non-null playlists and playlists with non-null ancestry,
+     * and then compares the ancestries using {@link #ANCESTRY_COMPARATOR}.
+     */
+    static private final Comparator<Playlist> PLAYLIST_COMPARATOR =
+            NULL_PLAYLIST_COMPARATOR
+                    .thenComparing(Playlist::ancestry, NULL_ANCESTRY_COMPARATOR)
+                    .thenComparing(Playlist::ancestry, ANCESTRY_COMPARATOR);
+
     @Override
     public int compare (Playlist o1, Playlist o2)
     {
-        return NULL_PLAYLIST_COMPARATOR
-                .thenComparing(Playlist::ancestry, NULL_ANCESTRY_COMPARATOR)
-                .thenComparing(Playlist::ancestry, ANCESTRY_COMPARATOR)
-                .compare(o1, o2);
+        return PLAYLIST_COMPARATOR.compare(o1, o2);
     }
 
 }
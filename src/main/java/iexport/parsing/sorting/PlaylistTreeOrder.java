@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.parsing.sorting;
+
+import iexport.itunes.Playlist;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+/**
+ * The order of {@link PlaylistComparator}, computed once for a tree of playlists instead of comparing ancestries.
+ * <p>
+ * Comparing the ancestries lexicographically orders the playlists like a pre-order traversal of the tree
+ * in which the children of each playlist are ordered by {@link PlaylistComparator#BASIC_PLAYLIST_COMPARATOR}.
+ * Hence, it suffices to sort each list of siblings (the top-level playlists and the children of each playlist)
+ * and to assign each playlist its position in the traversal, its rank.
+ * Comparing two playlists then only compares their ranks.
+ * <p>
+ * Playlists that are not contained in the tree are ordered after all playlists in the tree, using {@link PlaylistComparator}.
+ */
+public class PlaylistTreeOrder implements Comparator<Playlist>
+{
+    private static final int FIRST_HAS_PRIORITY = -1;
+    private static final int SECOND_HAS_PRIORITY = 1;
+
+    /**
+     * The comparator for playlists that are not contained in the tree.
+     */
+    private static final Comparator<Playlist> FALLBACK_COMPARATOR = new PlaylistComparator();
+
+    /**
+     * The rank of each playlist in the tree.
+     * <p>
+     * Playlists are compared by identity, since {@link Playlist#equals(Object)} only compares the persistent ids.
+     */
+    private final Map<Playlist, Integer> ranks = new IdentityHashMap<>();
+
+    /**
+     * The playlists of the tree in pre-order.
+     */
+    private final List<Playlist> preOrder = new ArrayList<>();
+
+    /**
+     * Sort the siblings in the tree below the given top-level playlists (including the top-level playlists) and compute the ranks.
+     *
+     * @param playlistsAtTopLevel the top-level playlists, will be sorted
+     */
+    public PlaylistTreeOrder (List<Playlist> playlistsAtTopLevel)
+    {
+        playlistsAtTopLevel.sort(PlaylistComparator.BASIC_PLAYLIST_COMPARATOR);
+
+        // Traverse the tree without recursion, pushing the children in reverse so that the first child is visited first.
+        Deque<Playlist> stack = new ArrayDeque<>();
+        pushReversed(stack, playlistsAtTopLevel);
+        while (!stack.isEmpty())
+        {
+            Playlist playlist = stack.pop();
+            if (ranks.putIfAbsent(playlist, preOrder.size()) != null)
+            {
+                // Already visited, the tree is not a tree.
+                continue;
+            }
+            preOrder.add(playlist);
+
+            playlist.children().sort(PlaylistComparator.BASIC_PLAYLIST_COMPARATOR);
+            pushReversed(stack, playlist.children());
+        }
+    }
+
+    /**
+     * @return the playlists of the tree in pre-order, i.e. sorted by this comparator
+     */
+    public List<Playlist> getPreOrder ()
+    {
+        return Collections.unmodifiableList(preOrder);
+    }
+
+    /**
+     * Sort a list of playlists by this comparator.
+     * <p>
+     * If the list consists of exactly the playlists of the tree (e.g. {@link iexport.itunes.Library#playlists()}),
+     * it is replaced by the pre-order instead of being sorted.
+     *
+     * @param playlists the list
+     */
+    public void sort (List<Playlist> playlists)
+    {
+        if (playlists.size() == preOrder.size() && containsExactlyTree(playlists))
+        {
+            playlists.clear();
+            playlists.addAll(preOrder);
+            return;
+        }
+
+        playlists.sort(this);
+    }
+
+    @Override
+    public int compare (Playlist o1, Playlist o2)
+    {
+        Integer rank1 = o1 == null ? null : ranks.get(o1);
+        Integer rank2 = o2 == null ? null : ranks.get(o2);
+
+        if (rank1 != null && rank2 != null)
+        {
+            // Both playlists are in the tree
+            return Integer.compare(rank1, rank2);
+        }
+        if (rank1 != null)
+        {
+            return FIRST_HAS_PRIORITY;
+        }
+        if (rank2 != null)
+        {
+            return SECOND_HAS_PRIORITY;
+        }
+
+        // None of them is in the tree, this also handles null
+        return FALLBACK_COMPARATOR.compare(o1, o2);
+    }
+
+    /**
+     * @param playlists a list of as many playlists as there are in the tree
+     * @return true iff each playlist of the tree occurs exactly once in the list
+     */
+    private boolean containsExactlyTree (List<Playlist> playlists)
+    {
+        boolean[] seen = new boolean[preOrder.size()];
+        for (Playlist playlist : playlists)
+        {
+            Integer rank = playlist == null ? null : ranks.get(playlist);
+            if (rank == null || seen[rank])
+            {
+                return false;
+            }
+            seen[rank] = true;
+        }
+        return true;
+    }
+
+    /**
+     * @param stack     the stack
+     * @param playlists the playlists to push, such that the first one will be popped first
+     */
+    private static void pushReversed (Deque<Playlist> stack, List<Playlist> playlists)
+    {
+        // The lists may be linked lists, so do not access them by index.
+        ListIterator<Playlist> iterator = playlists.listIterator(playlists.size());
+        while (iterator.hasPrevious())
+        {
+            stack.push(iterator.previous());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A conjunction of queries.
+ *
+ * @param operands the queries that all need to be satisfied
+ */
+public record AndQuery(List<Query> operands) implements Query
+{
+    @Override
+    public BitSet evaluate (QueryContext context, BitSet candidates)
+    {
+        // Evaluate indexed operands first, then check the remaining operands only for the remaining candidates.
+        List<Query> ordered = operands.stream()
+                .sorted(Comparator.comparing((Query operand) -> !operand.isIndexed(context)))
+                .toList();
+
+        BitSet result = candidates;
+        for (Query operand : ordered)
+        {
+            if (result.isEmpty())
+            {
+                break;
+            }
+            result = operand.evaluate(context, result);
+        }
+
+        return result == candidates ? (BitSet) candidates.clone() : result;
+    }
+
+    @Override
+    public boolean isIndexed (QueryContext context)
+    {
+        return operands.stream().anyMatch((operand) -> operand.isIndexed(context));
+    }
+
+    @Override
+    public String toString ()
+    {
+        return operands.stream().map(Query::toString).collect(Collectors.joining(" and ", "(", ")"));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A hash index over a string field, mapping each value (in lower case) to the ordinals of the tracks with that value.
+ */
+public class HashIndex
+{
+    /**
+     * The ordinals of the tracks for each value, in increasing order.
+     */
+    private final Map<String, int[]> ordinalsByValue;
+
+    /**
+     * Build the index.
+     *
+     * @param field  the field, of type {@link TrackField.Type#STRING}
+     * @param tracks the tracks, indexed by their ordinal
+     */
+    public HashIndex (TrackField field, List<Track> tracks)
+    {
+        // First pass: count the tracks per value, so that we can allocate arrays of the right size.
+        String[] values = new String[tracks.size()];
+        Map<String, int[]> counts = new HashMap<>();
+        for (int i = 0; i < values.length; i++)
+        {
+            String value = field.getString(tracks.get(i));
+            if (value != null)
+            {
+                values[i] = value.toLowerCase(Locale.ROOT);
+                counts.computeIfAbsent(values[i], (key) -> new int[1])[0]++;
+            }
+        }
+
+        // Second pass: fill in the ordinals.
+        ordinalsByValue = new HashMap<>(counts.size() * 2);
+        Map<String, int[]> positions = new HashMap<>(counts.size() * 2);
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] == null)
+            {
+                continue;
+            }
+
+            String value = values[i];
+            int[] ordinals = ordinalsByValue.computeIfAbsent(value, (key) -> new int[counts.get(key)[0]]);
+            int[] position = positions.computeIfAbsent(value, (key) -> new int[1]);
+            ordinals[position[0]++] = i;
+        }
+    }
+
+    /**
+     * @param value a value in lower case
+     * @return a new set containing the ordinals of the tracks with that value
+     */
+    public BitSet lookup (String value)
+    {
+        BitSet result = new BitSet();
+        int[] ordinals = ordinalsByValue.get(value);
+        if (ordinals != null)
+        {
+            for (int ordinal : ordinals)
+            {
+                result.set(ordinal);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of distinct values
+     */
+    public int size ()
+    {
+        return ordinalsByValue.size();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import java.util.BitSet;
+
+/**
+ * The negation of a query.
+ *
+ * @param operand the query that must not be satisfied
+ */
+public record NotQuery(Query operand) implements Query
+{
+    @Override
+    public BitSet evaluate (QueryContext context, BitSet candidates)
+    {
+        BitSet result = (BitSet) candidates.clone();
+        result.andNot(operand.evaluate(context, candidates));
+        return result;
+    }
+
+    @Override
+    public boolean isIndexed (QueryContext context)
+    {
+        return operand.isIndexed(context);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "not " + operand;
+    }
+}
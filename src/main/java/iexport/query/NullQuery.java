@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.TrackField;
+
+import java.util.BitSet;
+
+/**
+ * A condition checking whether a field has a value ({@code is not null}) or not ({@code is null}).
+ *
+ * @param field  the field
+ * @param isNull whether the field should have no value
+ */
+public record NullQuery(TrackField field, boolean isNull) implements Query
+{
+    @Override
+    public BitSet evaluate (QueryContext context, BitSet candidates)
+    {
+        BitSet result = new BitSet();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+        {
+            if ((field.getValue(context.getTrack(i)) == null) == isNull)
+            {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isIndexed (QueryContext context)
+    {
+        return false;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return field.getName() + (isNull ? " is null" : " is not null");
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+/**
+ * The comparison operators of the query language.
+ */
+public enum Operator
+{
+    EQUALS("="),
+    NOT_EQUALS("!="),
+    LESS("<"),
+    LESS_OR_EQUAL("<="),
+    GREATER(">"),
+    GREATER_OR_EQUAL(">="),
+    CONTAINS("contains"),
+    STARTS_WITH("startsWith");
+
+    /**
+     * The symbol of the operator, as it is written in a query.
+     */
+    private final String symbol;
+
+    /**
+     * @param symbol the symbol of the operator
+     */
+    Operator (String symbol)
+    {
+        this.symbol = symbol;
+    }
+
+    /**
+     * @return the symbol of the operator, as it is written in a query
+     */
+    public String getSymbol ()
+    {
+        return symbol;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return symbol;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.Playlist;
+import iexport.itunes.Track;
+
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * A condition on the playlists containing a track:
+ * {@code playlist = 'name'} is satisfied by tracks in a playlist of that name,
+ * {@code playlist contains 'part'} by tracks in a playlist whose name contains the given string.
+ * Both ignore case.
+ * <p>
+ * As the condition is evaluated by going through the tracks of the matching playlists,
+ * it counts as indexed.
+ *
+ * @param operator {@link Operator#EQUALS} or {@link Operator#CONTAINS}
+ * @param name     the name (or part of the name) of the playlist
+ */
+public record PlaylistQuery(Operator operator, String name) implements Query
+{
+    /**
+     * @param operator {@link Operator#EQUALS} or {@link Operator#CONTAINS}
+     * @param name     the name (or part of the name) of the playlist
+     */
+    public PlaylistQuery
+    {
+        name = name.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public BitSet evaluate (QueryContext context, BitSet candidates)
+    {
+        BitSet result = new BitSet();
+        for (Playlist playlist : context.getLibrary().playlists())
+        {
+            if (playlist.name() == null)
+            {
+                continue;
+            }
+
+            String playlistName = playlist.name().toLowerCase(Locale.ROOT);
+            boolean matches = operator == Operator.EQUALS ? playlistName.equals(name) : playlistName.contains(name);
+            if (matches)
+            {
+                for (Track track : playlist.tracks())
+                {
+                    int ordinal = context.getOrdinal(track);
+                    if (ordinal >= 0)
+                    {
+                        result.set(ordinal);
+                    }
+                }
+            }
+        }
+
+        result.and(candidates);
+        return result;
+    }
+
+    @Override
+    public boolean isIndexed (QueryContext context)
+    {
+        return true;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "playlist " + operator + " '" + name + "'";
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import java.util.BitSet;
+
+/**
+ * A parsed query, i.e. a predicate on tracks, see {@link QueryParser} for the syntax.
+ * <p>
+ * Queries are evaluated on sets of tracks represented as {@link BitSet}s,
+ * where bit {@code i} stands for the {@code i}-th track of the library (see {@link QueryContext}).
+ * Conditions on indexed fields are answered by looking up the index,
+ * all other conditions are checked for each candidate track.
+ */
+public interface Query
+{
+    /**
+     * Determine the tracks among {@code candidates} that satisfy this query.
+     *
+     * @param context    the context providing the tracks and indexes
+     * @param candidates the tracks that should be considered (must not be modified)
+     * @return a new set containing the tracks among {@code candidates} that satisfy this query
+     */
+    BitSet evaluate (QueryContext context, BitSet candidates);
+
+    /**
+     * Check whether this query can be answered using indexes, without looking at each candidate track.
+     * <p>
+     * When evaluating a conjunction, indexed parts are evaluated first,
+     * so that the remaining parts only need to check the (hopefully few) remaining candidates.
+     *
+     * @param context the context providing the indexes
+     * @return true if evaluating this query does not require a scan over the candidates
+     */
+    boolean isIndexed (QueryContext context);
+}
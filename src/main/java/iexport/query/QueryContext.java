@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.Library;
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+import iexport.logging.Logging;
+
+import java.util.*;
+
+/**
+ * The context in which queries are evaluated: the tracks of a library and the indexes over them.
+ * <p>
+ * Each track is identified by its ordinal, i.e. its position in {@link Library#tracks()}.
+ * <p>
+ * Indexes are built lazily when a query first needs them and are then reused for all further queries:
+ * <ul>
+ *     <li> hash indexes for equality conditions on the fields in {@link #HASH_INDEXED_FIELDS},
+ *     <li> sorted indexes for range conditions on the fields in {@link #SORTED_INDEXED_FIELDS}.
+ * </ul>
+ * Conditions on other fields are checked track by track.
+ * <p>
+ * This class is thread-safe.
+ */
+public class QueryContext
+{
+    /**
+     * The string fields that get a hash index.
+     */
+    public static final Set<TrackField> HASH_INDEXED_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            TrackField.ARTIST, TrackField.ALBUM_ARTIST, TrackField.ALBUM, TrackField.GENRE));
+
+    /**
+     * The numeric fields and date fields that get a sorted index.
+     */
+    public static final Set<TrackField> SORTED_INDEXED_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            TrackField.YEAR, TrackField.PLAY_COUNT, TrackField.DATE_ADDED));
+
+    /**
+     * The library.
+     */
+    private final Library library;
+
+    /**
+     * The tracks, indexed by their ordinal.
+     */
+    private final List<Track> tracks;
+
+    /**
+     * The hash indexes that have been built so far.
+     */
+    private final Map<TrackField, HashIndex> hashIndexes = new EnumMap<>(TrackField.class);
+
+    /**
+     * The sorted indexes that have been built so far.
+     */
+    private final Map<TrackField, SortedIndex> sortedIndexes = new EnumMap<>(TrackField.class);
+
+    /**
+     * The ordinal of each track, built lazily.
+     */
+    private Map<Track, Integer> ordinals;
+
+    /**
+     * @param library the library whose tracks should be queried
+     */
+    public QueryContext (Library library)
+    {
+        this.library = library;
+        this.tracks = library.tracks() instanceof RandomAccess ? library.tracks() : new ArrayList<>(library.tracks());
+    }
+
+    /**
+     * Evaluate a query on all tracks.
+     *
+     * @param query the query
+     * @return the tracks satisfying the query, in the order of the library
+     */
+    public List<Track> evaluate (Query query)
+    {
+        BitSet result = query.evaluate(this, all());
+
+        List<Track> matchingTracks = new ArrayList<>(result.cardinality());
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1))
+        {
+            matchingTracks.add(tracks.get(i));
+        }
+        return matchingTracks;
+    }
+
+    /**
+     * @return a new set containing all tracks
+     */
+    public BitSet all ()
+    {
+        BitSet all = new BitSet(tracks.size());
+        all.set(0, tracks.size());
+        return all;
+    }
+
+    /**
+     * @return the library
+     */
+    public Library getLibrary ()
+    {
+        return library;
+    }
+
+    /**
+     * @return the number of tracks
+     */
+    public int size ()
+    {
+        return tracks.size();
+    }
+
+    /**
+     * @param ordinal the ordinal of a track
+     * @return the track
+     */
+    public Track getTrack (int ordinal)
+    {
+        return tracks.get(ordinal);
+    }
+
+    /**
+     * @param track a track of the library
+     * @return the ordinal of the track, or -1 if it is not a track of the library
+     */
+    public synchronized int getOrdinal (Track track)
+    {
+        if (ordinals == null)
+        {
+            ordinals = new IdentityHashMap<>(tracks.size() * 2);
+            for (int i = 0; i < tracks.size(); i++)
+            {
+                ordinals.put(tracks.get(i), i);
+            }
+        }
+
+        return ordinals.getOrDefault(track, -1);
+    }
+
+    /**
+     * @param field a field
+     * @return true if equality conditions on this field are answered using a hash index
+     */
+    public boolean hasHashIndex (TrackField field)
+    {
+        return HASH_INDEXED_FIELDS.contains(field);
+    }
+
+    /**
+     * @param field a field
+     * @return true if range conditions on this field are answered using a sorted index
+     */
+    public boolean hasSortedIndex (TrackField field)
+    {
+        return SORTED_INDEXED_FIELDS.contains(field);
+    }
+
+    /**
+     * Get the hash index for a field, building it if necessary.
+     *
+     * @param field a field
+     * @return the index, or null if the field has no hash index
+     */
+    public synchronized HashIndex getHashIndex (TrackField field)
+    {
+        if (!hasHashIndex(field))
+        {
+            return null;
+        }
+
+        return hashIndexes.computeIfAbsent(field, (key) ->
+        {
+            long start = System.nanoTime();
+            HashIndex index = new HashIndex(key, tracks);
+            Logging.getLogger().debug("Built hash index on " + key.getName() + " with " + index.size() + " values in "
+                    + String.format("%.1f", (System.nanoTime() - start) / 1e6) + "ms");
+            return index;
+        });
+    }
+
+    /**
+     * Get the sorted index for a field, building it if necessary.
+     *
+     * @param field a field
+     * @return the index, or null if the field has no sorted index
+     */
+    public synchronized SortedIndex getSortedIndex (TrackField field)
+    {
+        if (!hasSortedIndex(field))
+        {
+            return null;
+        }
+
+        return sortedIndexes.computeIfAbsent(field, (key) ->
+        {
+            long start = System.nanoTime();
+            SortedIndex index = new SortedIndex(key, tracks);
+            Logging.getLogger().debug("Built sorted index on " + key.getName() + " in "
+                    + String.format("%.1f", (System.nanoTime() - start) / 1e6) + "ms");
+            return index;
+        });
+    }
+}
@@ -0,0 +1,705 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.TrackField;
+
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser for queries, i.e. filters on the tracks of a library.
+ * <p>
+ * A query is a boolean combination of conditions, e.g.
+ * <pre>
+ *     artist = 'Radiohead' and (year between 1995 and 2000 or playCount &gt;= 50) and not loved = true
+ * </pre>
+ * The grammar is as follows:
+ * <pre>
+ *     query     := and ( ("or" | "||") and )*
+ *     and       := not ( ("and" | "&amp;&amp;") not )*
+ *     not       := ("not" | "!") not | primary
+ *     primary   := "(" query ")" | condition
+ *     condition := field operator literal
+ *                | field "between" literal "and" literal
+ *                | field "contains" string
+ *                | field "startsWith" string
+ *                | field "is" ["not"] "null"
+ *                | "playlist" ("=" | "contains") string
+ *     operator  := "=" | "==" | "!=" | "&lt;&gt;" | "&lt;" | "&lt;=" | "&gt;" | "&gt;="
+ *     literal   := number | string | "true" | "false"
+ * </pre>
+ * Fields are named as in {@link TrackField}, e.g. {@code albumArtist} or {@code dateAdded}.
+ * Field names and keywords are case-insensitive.
+ * Strings are enclosed in single or double quotes and can contain the quote character by doubling it.
+ * <p>
+ * Comparisons of strings ignore case.
+ * Comparisons of numbers and dates are translated into intervals, see {@link RangeQuery}.
+ * Dates are compared in UTC and can be written as {@code 'YYYY'}, {@code 'YYYY-MM'}, {@code 'YYYY-MM-DD'}
+ * or as an ISO-8601 instant like {@code '2020-05-01T12:00:00Z'}.
+ * A date literal stands for the whole period it describes, so {@code dateAdded = '2020'} matches every track
+ * added during 2020, {@code dateAdded <= '2020-05'} matches every track added before June 2020,
+ * and {@code dateAdded between '2019' and '2020'} matches every track added during 2019 or 2020.
+ */
+public class QueryParser
+{
+    /**
+     * The keyword for conditions on playlist membership.
+     */
+    public static final String PLAYLIST = "playlist";
+
+    /**
+     * The symbols, longer symbols before their prefixes.
+     */
+    private static final List<String> SYMBOLS = List.of("==", "!=", "<>", "<=", ">=", "&&", "||", "=", "<", ">", "!", "(", ")");
+
+    /**
+     * The query.
+     */
+    private final String query;
+
+    /**
+     * The tokens of the query, ending with a token of type {@link TokenType#END}.
+     */
+    private final List<Token> tokens;
+
+    /**
+     * The index of the next token in {@link #tokens}.
+     */
+    private int position = 0;
+
+    /**
+     * Parse a query.
+     *
+     * @param query the query
+     * @return the parsed query
+     * @throws QueryParsingException if the query is malformed
+     */
+    public static Query parse (String query)
+            throws
+            QueryParsingException
+    {
+        QueryParser parser = new QueryParser(query);
+        Query result = parser.parseOr();
+
+        Token token = parser.peek();
+        if (token.type() != TokenType.END)
+        {
+            throw parser.error("Unexpected " + token.describe(), token);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param query the query
+     * @throws QueryParsingException if the query cannot be split into tokens
+     */
+    private QueryParser (String query)
+            throws
+            QueryParsingException
+    {
+        this.query = query;
+        this.tokens = tokenize(query);
+    }
+
+    /**
+     * {@code query := and ( ("or" | "||") and )*}
+     */
+    private Query parseOr ()
+            throws
+            QueryParsingException
+    {
+        List<Query> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while (acceptKeyword("or") || acceptSymbol("||"))
+        {
+            operands.add(parseAnd());
+        }
+        return operands.size() == 1 ? operands.get(0) : new OrQuery(List.copyOf(operands));
+    }
+
+    /**
+     * {@code and := not ( ("and" | "&&") not )*}
+     */
+    private Query parseAnd ()
+            throws
+            QueryParsingException
+    {
+        List<Query> operands = new ArrayList<>();
+        operands.add(parseNot());
+        while (acceptKeyword("and") || acceptSymbol("&&"))
+        {
+            operands.add(parseNot());
+        }
+        return operands.size() == 1 ? operands.get(0) : new AndQuery(List.copyOf(operands));
+    }
+
+    /**
+     * {@code not := ("not" | "!") not | primary}
+     */
+    private Query parseNot ()
+            throws
+            QueryParsingException
+    {
+        if (acceptKeyword("not") || acceptSymbol("!"))
+        {
+            return new NotQuery(parseNot());
+        }
+        return parsePrimary();
+    }
+
+    /**
+     * {@code primary := "(" query ")" | condition}
+     */
+    private Query parsePrimary ()
+            throws
+            QueryParsingException
+    {
+        if (acceptSymbol("("))
+        {
+            Query inner = parseOr();
+            expectSymbol(")");
+            return inner;
+        }
+        return parseCondition();
+    }
+
+    /**
+     * Parse a condition, starting with a field name or {@value #PLAYLIST}.
+     */
+    private Query parseCondition ()
+            throws
+            QueryParsingException
+    {
+        Token fieldToken = next();
+        if (fieldToken.type() != TokenType.IDENTIFIER)
+        {
+            throw error("Expected a field name but got " + fieldToken.describe(), fieldToken);
+        }
+
+        if (fieldToken.text().equalsIgnoreCase(PLAYLIST))
+        {
+            return parsePlaylistCondition();
+        }
+
+        TrackField field = TrackField.forName(fieldToken.text());
+        if (field == null)
+        {
+            throw error("Unknown field \"" + fieldToken.text() + "\", expected one of " + TrackField.getNames()
+                    + " or " + PLAYLIST, fieldToken);
+        }
+
+        if (acceptKeyword("is"))
+        {
+            boolean negated = acceptKeyword("not");
+            expectKeyword("null");
+            return new NullQuery(field, !negated);
+        }
+
+        return switch (field.getType())
+                {
+                    case NUMBER, DATE -> parseRangeCondition(field);
+                    case STRING -> parseStringCondition(field);
+                    case BOOLEAN -> parseBooleanCondition(field);
+                };
+    }
+
+    /**
+     * Parse the remainder of a condition on a numeric field or a date field.
+     */
+    private Query parseRangeCondition (TrackField field)
+            throws
+            QueryParsingException
+    {
+        if (acceptKeyword("between"))
+        {
+            Token lowerToken = peek();
+            long[] lower = parseInterval(field);
+            expectKeyword("and");
+            Token upperToken = peek();
+            long[] upper = parseInterval(field);
+            return new RangeQuery(field, lower[0], upper[1], false,
+                    field.getName() + " between " + lowerToken.describe() + " and " + upperToken.describe());
+        }
+
+        Token operatorToken = peek();
+        Operator operator = parseComparison();
+        Token literalToken = peek();
+        long[] interval = parseInterval(field);
+
+        long from = interval[0];
+        long to = interval[1];
+        String description = field.getName() + " " + operator + " " + literalToken.describe();
+
+        return switch (operator)
+                {
+                    case EQUALS -> new RangeQuery(field, from, to, false, description);
+                    case NOT_EQUALS -> new RangeQuery(field, from, to, true, description);
+                    case LESS -> new RangeQuery(field, Long.MIN_VALUE, from, false, description);
+                    case LESS_OR_EQUAL -> new RangeQuery(field, Long.MIN_VALUE, to, false, description);
+                    case GREATER -> new RangeQuery(field, to, Long.MAX_VALUE, false, description);
+                    case GREATER_OR_EQUAL -> new RangeQuery(field, from, Long.MAX_VALUE, false, description);
+                    default -> throw error("Operator " + operator + " cannot be applied to " + field.getName(), operatorToken);
+                };
+    }
+
+    /**
+     * Parse the remainder of a condition on a string field.
+     */
+    private Query parseStringCondition (TrackField field)
+            throws
+            QueryParsingException
+    {
+        Operator operator;
+        if (acceptKeyword("contains"))
+        {
+            operator = Operator.CONTAINS;
+        }
+        else if (acceptKeyword("startsWith"))
+        {
+            operator = Operator.STARTS_WITH;
+        }
+        else
+        {
+            operator = parseComparison();
+        }
+
+        return new StringQuery(field, operator, expectString());
+    }
+
+    /**
+     * Parse the remainder of a condition on a boolean field.
+     */
+    private Query parseBooleanCondition (TrackField field)
+            throws
+            QueryParsingException
+    {
+        Token operatorToken = peek();
+        Operator operator = parseComparison();
+        if (operator != Operator.EQUALS && operator != Operator.NOT_EQUALS)
+        {
+            throw error("Operator " + operator + " cannot be applied to " + field.getName(), operatorToken);
+        }
+
+        boolean value;
+        if (acceptKeyword("true"))
+        {
+            value = true;
+        }
+        else if (acceptKeyword("false"))
+        {
+            value = false;
+        }
+        else
+        {
+            Token token = peek();
+            throw error("Expected true or false but got " + token.describe(), token);
+        }
+
+        return new BooleanQuery(field, value == (operator == Operator.EQUALS));
+    }
+
+    /**
+     * Parse the remainder of a condition on playlist membership.
+     */
+    private Query parsePlaylistCondition ()
+            throws
+            QueryParsingException
+    {
+        if (acceptKeyword("contains"))
+        {
+            return new PlaylistQuery(Operator.CONTAINS, expectString());
+        }
+
+        Token operatorToken = peek();
+        if (parseComparison() != Operator.EQUALS)
+        {
+            throw error("Expected = or contains after " + PLAYLIST, operatorToken);
+        }
+        return new PlaylistQuery(Operator.EQUALS, expectString());
+    }
+
+    /**
+     * Parse a comparison operator.
+     */
+    private Operator parseComparison ()
+            throws
+            QueryParsingException
+    {
+        Token token = next();
+        if (token.type() == TokenType.SYMBOL)
+        {
+            switch (token.text())
+            {
+                case "=", "==":
+                    return Operator.EQUALS;
+                case "!=", "<>":
+                    return Operator.NOT_EQUALS;
+                case "<":
+                    return Operator.LESS;
+                case "<=":
+                    return Operator.LESS_OR_EQUAL;
+                case ">":
+                    return Operator.GREATER;
+                case ">=":
+                    return Operator.GREATER_OR_EQUAL;
+                default:
+                    break;
+            }
+        }
+        throw error("Expected a comparison operator but got " + token.describe(), token);
+    }
+
+    /**
+     * Parse a literal for a numeric field or a date field and determine the interval it stands for.
+     *
+     * @return an array containing the lower bound (inclusive) and the upper bound (exclusive)
+     */
+    private long[] parseInterval (TrackField field)
+            throws
+            QueryParsingException
+    {
+        Token token = next();
+
+        if (field.getType() == TrackField.Type.NUMBER)
+        {
+            if (token.type() != TokenType.NUMBER)
+            {
+                throw error("Expected a number for " + field.getName() + " but got " + token.describe(), token);
+            }
+            long value = parseNumber(token);
+            return new long[]{value, value + 1};
+        }
+
+        // Dates
+        if (token.type() == TokenType.NUMBER)
+        {
+            return yearInterval(token, token.text());
+        }
+        if (token.type() != TokenType.STRING)
+        {
+            throw error("Expected a date for " + field.getName() + " but got " + token.describe(), token);
+        }
+
+        String text = token.text().trim();
+        try
+        {
+            if (text.matches("\\d{4}"))
+            {
+                return yearInterval(token, text);
+            }
+            if (text.matches("\\d{4}-\\d{2}"))
+            {
+                YearMonth month = YearMonth.parse(text);
+                return new long[]{toMillis(month.atDay(1)), toMillis(month.plusMonths(1).atDay(1))};
+            }
+            if (text.matches("\\d{4}-\\d{2}-\\d{2}"))
+            {
+                LocalDate day = LocalDate.parse(text);
+                return new long[]{toMillis(day), toMillis(day.plusDays(1))};
+            }
+            long instant = Instant.parse(text).toEpochMilli();
+            return new long[]{instant, instant + 1};
+        }
+        catch (DateTimeParseException | ArithmeticException e)
+        {
+            throw error("Invalid date '" + text + "', expected 'YYYY', 'YYYY-MM', 'YYYY-MM-DD' or an ISO-8601 instant", token);
+        }
+    }
+
+    /**
+     * @return the interval covering the given year
+     */
+    private long[] yearInterval (Token token, String text)
+            throws
+            QueryParsingException
+    {
+        Year year;
+        try
+        {
+            year = Year.of(Integer.parseInt(text));
+        }
+        catch (NumberFormatException | DateTimeException e)
+        {
+            throw error("Invalid year " + text, token);
+        }
+        return new long[]{toMillis(year.atDay(1)), toMillis(year.plusYears(1).atDay(1))};
+    }
+
+    /**
+     * @return the number represented by a token of type {@link TokenType#NUMBER}
+     */
+    private long parseNumber (Token token)
+            throws
+            QueryParsingException
+    {
+        try
+        {
+            return Long.parseLong(token.text());
+        }
+        catch (NumberFormatException e)
+        {
+            throw error("Invalid number " + token.text(), token);
+        }
+    }
+
+    /**
+     * @return the start of the given day in UTC, in milliseconds since the epoch
+     */
+    private static long toMillis (LocalDate day)
+    {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Consume a string literal.
+     */
+    private String expectString ()
+            throws
+            QueryParsingException
+    {
+        Token token = next();
+        if (token.type() != TokenType.STRING)
+        {
+            throw error("Expected a quoted string but got " + token.describe(), token);
+        }
+        return token.text();
+    }
+
+    /**
+     * Consume the given keyword.
+     */
+    private void expectKeyword (String keyword)
+            throws
+            QueryParsingException
+    {
+        if (!acceptKeyword(keyword))
+        {
+            Token token = peek();
+            throw error("Expected " + keyword + " but got " + token.describe(), token);
+        }
+    }
+
+    /**
+     * Consume the given symbol.
+     */
+    private void expectSymbol (String symbol)
+            throws
+            QueryParsingException
+    {
+        if (!acceptSymbol(symbol))
+        {
+            Token token = peek();
+            throw error("Expected " + symbol + " but got " + token.describe(), token);
+        }
+    }
+
+    /**
+     * Consume the next token if it is the given keyword (ignoring case).
+     *
+     * @return true if the token has been consumed
+     */
+    private boolean acceptKeyword (String keyword)
+    {
+        Token token = peek();
+        if (token.type() == TokenType.IDENTIFIER && token.text().equalsIgnoreCase(keyword))
+        {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consume the next token if it is the given symbol.
+     *
+     * @return true if the token has been consumed
+     */
+    private boolean acceptSymbol (String symbol)
+    {
+        Token token = peek();
+        if (token.type() == TokenType.SYMBOL && token.text().equals(symbol))
+        {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the next token, without consuming it
+     */
+    private Token peek ()
+    {
+        return tokens.get(position);
+    }
+
+    /**
+     * @return the next token, which is consumed unless it is the end of the query
+     */
+    private Token next ()
+    {
+        Token token = tokens.get(position);
+        if (token.type() != TokenType.END)
+        {
+            position++;
+        }
+        return token;
+    }
+
+    /**
+     * @return an exception pointing to the given token
+     */
+    private QueryParsingException error (String message, Token token)
+    {
+        return new QueryParsingException(message, query, token.position());
+    }
+
+    /**
+     * Split a query into tokens.
+     *
+     * @param query the query
+     * @return the tokens, ending with a token of type {@link TokenType#END}
+     * @throws QueryParsingException if the query contains an unterminated string or an unexpected character
+     */
+    private static List<Token> tokenize (String query)
+            throws
+            QueryParsingException
+    {
+        List<Token> tokens = new ArrayList<>();
+
+        int i = 0;
+        while (i < query.length())
+        {
+            char c = query.charAt(i);
+
+            if (Character.isWhitespace(c))
+            {
+                i++;
+            }
+            else if (c == '\'' || c == '"')
+            {
+                // String, the quote character is escaped by doubling it
+                int start = i;
+                StringBuilder text = new StringBuilder();
+                i++;
+                while (true)
+                {
+                    if (i >= query.length())
+                    {
+                        throw new QueryParsingException("Unterminated string", query, start);
+                    }
+                    char current = query.charAt(i);
+                    if (current == c)
+                    {
+                        if (i + 1 < query.length() && query.charAt(i + 1) == c)
+                        {
+                            text.append(c);
+                            i += 2;
+                            continue;
+                        }
+                        i++;
+                        break;
+                    }
+                    text.append(current);
+                    i++;
+                }
+                tokens.add(new Token(TokenType.STRING, text.toString(), start));
+            }
+            else if (Character.isDigit(c) || (c == '-' && i + 1 < query.length() && Character.isDigit(query.charAt(i + 1))))
+            {
+                int start = i;
+                i++;
+                while (i < query.length() && Character.isDigit(query.charAt(i)))
+                {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, query.substring(start, i), start));
+            }
+            else if (Character.isLetter(c) || c == '_')
+            {
+                int start = i;
+                while (i < query.length() && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '_'))
+                {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.IDENTIFIER, query.substring(start, i), start));
+            }
+            else
+            {
+                String symbol = null;
+                for (String candidate : SYMBOLS)
+                {
+                    if (query.startsWith(candidate, i))
+                    {
+                        symbol = candidate;
+                        break;
+                    }
+                }
+                if (symbol == null)
+                {
+                    throw new QueryParsingException("Unexpected character '" + c + "'", query, i);
+                }
+                tokens.add(new Token(TokenType.SYMBOL, symbol, i));
+                i += symbol.length();
+            }
+        }
+
+        tokens.add(new Token(TokenType.END, "", query.length()));
+        return tokens;
+    }
+
+    /**
+     * The types of tokens.
+     */
+    private enum TokenType
+    {
+        IDENTIFIER,
+        NUMBER,
+        STRING,
+        SYMBOL,
+        END
+    }
+
+    /**
+     * A token of the query.
+     *
+     * @param type     the type of the token
+     * @param text     the text of the token (without quotes for strings)
+     * @param position the position of the first character of the token in the query
+     */
+    private record Token(TokenType type, String text, int position)
+    {
+        /**
+         * @return a description of the token for error messages and {@link RangeQuery#description()}
+         */
+        String describe ()
+        {
+            return switch (type)
+                    {
+                        case END -> "end of query";
+                        case STRING -> "'" + text + "'";
+                        case IDENTIFIER, SYMBOL -> "\"" + text + "\"";
+                        case NUMBER -> text;
+                    };
+        }
+    }
+}
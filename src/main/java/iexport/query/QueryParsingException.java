@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+/**
+ * An exception that will be thrown if a query cannot be parsed.
+ */
+public class QueryParsingException extends Exception
+{
+    /**
+     * The position in the query at which the problem has been detected.
+     */
+    private final int position;
+
+    /**
+     * @param message  a description of the problem
+     * @param query    the query
+     * @param position the position in the query at which the problem has been detected
+     */
+    public QueryParsingException (String message, String query, int position)
+    {
+        super(message + " at position " + position + ":\n" + query + "\n" + " ".repeat(Math.max(0, position)) + "^");
+        this.position = position;
+    }
+
+    /**
+     * @return the position in the query at which the problem has been detected
+     */
+    public int getPosition ()
+    {
+        return position;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.TrackField;
+
+import java.util.BitSet;
+
+/**
+ * A condition on a numeric field or a date field:
+ * the value of the field has to lie in the half-open interval {@code [from, to)},
+ * or, if {@code negated} is set, has to be non-null and lie outside that interval.
+ * <p>
+ * All comparisons on numbers and dates are translated into such intervals by the {@link QueryParser},
+ * e.g. {@code year <= 1999} becomes {@code [Long.MIN_VALUE, 2000)}
+ * and {@code dateAdded = '2020-05-01'} becomes the interval covering that day.
+ *
+ * @param field       the field, of type {@link TrackField.Type#NUMBER} or {@link TrackField.Type#DATE}
+ * @param from        the lower bound (inclusive)
+ * @param to          the upper bound (exclusive)
+ * @param negated     whether the value should lie outside the interval
+ * @param description the condition as written by the user, used for {@link #toString()}
+ */
+public record RangeQuery(TrackField field, long from, long to, boolean negated, String description) implements Query
+{
+    @Override
+    public BitSet evaluate (QueryContext context, BitSet candidates)
+    {
+        SortedIndex index = negated ? null : context.getSortedIndex(field);
+        if (index != null)
+        {
+            BitSet result = index.range(from, to);
+            result.and(candidates);
+            return result;
+        }
+
+        BitSet result = new BitSet();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+        {
+            Long value = field.getLong(context.getTrack(i));
+            if (value != null && (from <= value && value < to) != negated)
+            {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isIndexed (QueryContext context)
+    {
+        return !negated && context.hasSortedIndex(field);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return description;
+    }
+}
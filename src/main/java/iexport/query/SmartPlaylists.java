@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.Library;
+import iexport.itunes.Playlist;
+import iexport.itunes.Track;
+import iexport.logging.Logging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Rule-based playlists that are defined in the settings (parsing.smartPlaylists)
+ * instead of the library.
+ * <p>
+ * Each rule is a query in the language of {@link QueryParser}, e.g. {@code genre == 'Jazz' && rating >= 80}.
+ * The rules are parsed once when they are added.
+ * They are evaluated against the library after it has been parsed, all sharing one {@link QueryContext},
+ * so each index is built at most once.
+ * The resulting playlists are added to the library as top-level playlists,
+ * and from then on behave like the playlists from the library, e.g. for generatePlaylists and exportFiles.
+ * <p>
+ * Rules are evaluated in the order in which they have been added,
+ * so a rule may refer to a smart playlist added before it using {@code playlist = 'name'}.
+ */
+public class SmartPlaylists
+{
+    /**
+     * The rules, in the order in which they have been added.
+     */
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Add a smart playlist.
+     *
+     * @param name  the name of the playlist
+     * @param query the query, see {@link QueryParser}
+     * @throws QueryParsingException if the query is malformed
+     */
+    public void add (String name, String query)
+            throws
+            QueryParsingException
+    {
+        rules.add(new Rule(name, QueryParser.parse(query)));
+    }
+
+    /**
+     * @return true if no smart playlists have been added
+     */
+    public boolean isEmpty ()
+    {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Evaluate the rules against the library and add the resulting playlists to it.
+     * <p>
+     * The playlists are appended to {@link Library#playlists()} and {@link Library#playlistsAtTopLevel()},
+     * the caller is responsible for sorting them afterwards.
+     *
+     * @param library     the library
+     * @param ignoreEmpty whether playlists without tracks should be skipped
+     */
+    public void addTo (Library library, boolean ignoreEmpty)
+    {
+        QueryContext context = new QueryContext(library);
+
+        for (Rule rule : rules)
+        {
+            List<Track> tracks = context.evaluate(rule.query());
+
+            if (tracks.isEmpty() && ignoreEmpty)
+            {
+                Logging.getLogger().debug("Ignoring smart playlist \"" + rule.name() + "\" because it contains no tracks");
+                continue;
+            }
+
+            Playlist playlist = new Playlist(
+                    null,
+                    0,
+                    null,
+                    rule.name(),
+                    persistentIdFor(rule.name()),
+                    null,
+                    true,
+                    null,
+                    false,
+                    false,
+                    null,
+                    null,
+                    null,
+                    null,
+                    null);
+            playlist.ancestry().add(playlist);
+            tracks.forEach(playlist::addTrack);
+
+            library.playlists().add(playlist);
+            library.playlistsAtTopLevel().add(playlist);
+
+            Logging.getLogger().debug("Added smart playlist \"" + rule.name() + "\" with " + tracks.size() + " tracks for " + rule.query());
+        }
+    }
+
+    /**
+     * Derive a persistent id for a smart playlist from its name,
+     * so that it stays the same between runs (like the persistent ids assigned by iTunes).
+     *
+     * @param name the name of the playlist
+     * @return 16 hexadecimal digits
+     */
+    private static String persistentIdFor (String name)
+    {
+        UUID uuid = UUID.nameUUIDFromBytes(("iExport smart playlist " + name).getBytes(StandardCharsets.UTF_8));
+        return String.format("%016X", uuid.getMostSignificantBits());
+    }
+
+    /**
+     * A smart playlist.
+     *
+     * @param name  the name of the playlist
+     * @param query the parsed rule
+     */
+    private record Rule(String name, Query query)
+    {
+    }
+}
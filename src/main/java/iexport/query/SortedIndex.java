@@ -0,0 +1,213 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A sorted index over a numeric field or a date field,
+ * allowing to look up the tracks whose value lies in a given range using binary search.
+ * <p>
+ * Tracks without a value for the field are not contained in the index.
+ */
+public class SortedIndex
+{
+    /**
+     * The values of the field, in increasing order.
+     */
+    private final long[] values;
+
+    /**
+     * The ordinals of the tracks, in the order of {@link #values}.
+     */
+    private final int[] ordinals;
+
+    /**
+     * Build the index.
+     *
+     * @param field  the field, of type {@link TrackField.Type#NUMBER} or {@link TrackField.Type#DATE}
+     * @param tracks the tracks, indexed by their ordinal
+     */
+    public SortedIndex (TrackField field, List<Track> tracks)
+    {
+        long[] allValues = new long[tracks.size()];
+        int[] order = new int[tracks.size()];
+        int count = 0;
+
+        for (int i = 0; i < tracks.size(); i++)
+        {
+            Long value = field.getLong(tracks.get(i));
+            if (value != null)
+            {
+                allValues[i] = value;
+                order[count++] = i;
+            }
+        }
+
+        values = new long[count];
+        ordinals = new int[count];
+        if (!sortPacked(allValues, order, count))
+        {
+            sortByMerging(allValues, order, count);
+            for (int i = 0; i < count; i++)
+            {
+                ordinals[i] = order[i];
+                values[i] = allValues[order[i]];
+            }
+        }
+    }
+
+    /**
+     * Try to sort the ordinals by packing the offset of each value from the minimum and the ordinal into one {@code long}
+     * and sorting these numbers, which avoids boxing and comparators. This fills {@link #values} and {@link #ordinals}.
+     * <p>
+     * This is possible if the offsets fit into the bits that are not needed for the ordinals,
+     * which is the case for all fields of real libraries (e.g. dates in milliseconds need 41 bits).
+     *
+     * @param allValues the values of all tracks, indexed by ordinal
+     * @param order     the ordinals of the tracks that have a value, in its first {@code count} entries
+     * @param count     the number of tracks that have a value
+     * @return true if the ordinals have been sorted, false if the values span too large a range
+     */
+    private boolean sortPacked (long[] allValues, int[] order, int count)
+    {
+        if (count == 0)
+        {
+            return true;
+        }
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++)
+        {
+            min = Math.min(min, allValues[order[i]]);
+            max = Math.max(max, allValues[order[i]]);
+        }
+
+        // The span is interpreted as unsigned number, so it cannot overflow. The packed numbers have to be non-negative.
+        int ordinalBits = 32 - Integer.numberOfLeadingZeros(Math.max(order[count - 1], 1));
+        long span = max - min;
+        if ((span >>> (63 - ordinalBits)) != 0)
+        {
+            return false;
+        }
+
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            packed[i] = ((allValues[order[i]] - min) << ordinalBits) | order[i];
+        }
+        Arrays.sort(packed);
+
+        long ordinalMask = (1L << ordinalBits) - 1;
+        for (int i = 0; i < count; i++)
+        {
+            ordinals[i] = (int) (packed[i] & ordinalMask);
+            values[i] = (packed[i] >>> ordinalBits) + min;
+        }
+        return true;
+    }
+
+    /**
+     * Sort ordinals by their values using a bottom-up merge sort on primitive arrays.
+     *
+     * @param allValues the values of all tracks, indexed by ordinal
+     * @param order     the ordinals to sort, in its first {@code count} entries
+     * @param count     the number of ordinals to sort
+     */
+    private static void sortByMerging (long[] allValues, int[] order, int count)
+    {
+        int[] source = order;
+        int[] target = new int[count];
+
+        for (int width = 1; width < count; width *= 2)
+        {
+            for (int start = 0; start < count; start += 2 * width)
+            {
+                int middle = Math.min(start + width, count);
+                int end = Math.min(start + 2 * width, count);
+                int left = start;
+                int right = middle;
+                for (int i = start; i < end; i++)
+                {
+                    if (left < middle && (right >= end || allValues[source[left]] <= allValues[source[right]]))
+                    {
+                        target[i] = source[left++];
+                    }
+                    else
+                    {
+                        target[i] = source[right++];
+                    }
+                }
+            }
+
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+
+        if (source != order)
+        {
+            System.arraycopy(source, 0, order, 0, count);
+        }
+    }
+
+    /**
+     * @param from the lower bound (inclusive)
+     * @param to   the upper bound (exclusive)
+     * @return a new set containing the ordinals of the tracks whose value lies in {@code [from, to)}
+     */
+    public BitSet range (long from, long to)
+    {
+        BitSet result = new BitSet();
+        int end = firstIndexAtLeast(to);
+        for (int i = firstIndexAtLeast(from); i < end; i++)
+        {
+            result.set(ordinals[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @param value a value
+     * @return the smallest index {@code i} such that {@code values[i] >= value}, or {@code values.length} if there is none
+     */
+    private int firstIndexAtLeast (long value)
+    {
+        int low = 0;
+        int high = values.length;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < value)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.query;
+
+import iexport.itunes.TrackField;
+
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * A condition on a string field. All comparisons ignore case.
+ *
+ * @param field    the field, of type {@link TrackField.Type#STRING}
+ * @param operator the operator
+ * @param value    the value to compare against
+ */
+public record StringQuery(TrackField field, Operator operator, String value) implements Query
+{
+    /**
+     * @param field    the field, of type {@link TrackField.Type#STRING}
+     * @param operator the operator
+     * @param value    the value to compare against
+     */
+    public StringQuery
+    {
+        value = value.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public BitSet evaluate (QueryContext context, BitSet candidates)
+    {
+        HashIndex index = operator == Operator.EQUALS ? context.getHashIndex(field) : null;
+        if (index != null)
+        {
+            BitSet result = index.lookup(value);
+            result.and(candidates);
+            return result;
+        }
+
+        BitSet result = new BitSet();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+        {
+            String fieldValue = field.getString(context.getTrack(i));
+            if (fieldValue != null && matches(fieldValue.toLowerCase(Locale.ROOT)))
+            {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param fieldValue the value of the field in lower case
+     * @return true if the value satisfies the condition
+     */
+    private boolean matches (String fieldValue)
+    {
+        return switch (operator)
+                {
+                    case EQUALS -> fieldValue.equals(value);
+                    case NOT_EQUALS -> !fieldValue.equals(value);
+                    case LESS -> fieldValue.compareTo(value) < 0;
+                    case LESS_OR_EQUAL -> fieldValue.compareTo(value) <= 0;
+                    case GREATER -> fieldValue.compareTo(value) > 0;
+                    case GREATER_OR_EQUAL -> fieldValue.compareTo(value) >= 0;
+                    case CONTAINS -> fieldValue.contains(value);
+                    case STARTS_WITH -> fieldValue.startsWith(value);
+                };
+    }
+
+    @Override
+    public boolean isIndexed (QueryContext context)
+    {
+        return operator == Operator.EQUALS && context.hasHashIndex(field);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return field.getName() + " " + operator + " '" + value + "'";
+    }
+}
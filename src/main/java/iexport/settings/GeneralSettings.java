@@ -64,6 +64,19 @@ public class GeneralSettings extends SettingsImpl
      */
     private static final String SETTING_TASK = "task";
 
+    /**
+     * asyncLogging
+     * <p>
+     * Set to true to write the output on a background thread (see {@link iexport.logging.AsyncLogger}),
+     * which is faster for tasks that print a lot of output.
+     */
+    private static final String SETTING_ASYNC_LOGGING = "asyncLogging";
+
+    /**
+     * Default value for "asyncLogging".
+     */
+    private static final Boolean SETTING_ASYNC_LOGGING_DEFAULT_VALUE = false;
+
     /**
      * Default value for "task".
      */
@@ -94,6 +107,7 @@ public class GeneralSettings extends SettingsImpl
         // Add the default settings.
         GENERAL_DEFAULT_SETTINGS.put(SETTING_LOG_LEVEL, SETTING_LOG_LEVEL_DEFAULT_VALUE);
         GENERAL_DEFAULT_SETTINGS.put(SETTING_TASK, SETTING_TASK_DEFAULT_VALUE);
+        GENERAL_DEFAULT_SETTINGS.put(SETTING_ASYNC_LOGGING, SETTING_ASYNC_LOGGING_DEFAULT_VALUE);
     }
 
     /**
@@ -172,6 +186,30 @@ public class GeneralSettings extends SettingsImpl
         }
     }
 
+    /**
+     * @return asyncLogging
+     */
+    public boolean getAsyncLogging ()
+    {
+        String key = SETTING_ASYNC_LOGGING;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
     @Override
     public String getYamlPrefix ()
     {
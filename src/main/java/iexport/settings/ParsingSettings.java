@@ -18,6 +18,7 @@
 package iexport.settings;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -50,6 +51,59 @@ public class ParsingSettings extends SettingsImpl
      */
     private static final String SETTING_XML_FILE_PATH_DEFAULT_VALUE = "%USERPROFILE%\\Music\\iTunes\\iTunes Music Library.xml";
 
+    /**
+     * parsing.mappedParser
+     * <p>
+     * Set to true to parse the library file with a specialized tokenizer that works directly on the memory-mapped file.
+     * Set to false to construct the whole property list using dd-plist first.
+     */
+    private static final String SETTING_MAPPED_PARSER = "mappedParser";
+
+    /**
+     * Default value for "parsing.mappedParser".
+     */
+    private static final Boolean SETTING_MAPPED_PARSER_DEFAULT_VALUE = true;
+
+    /**
+     * parsing.parserThreads
+     * <p>
+     * The number of threads that parse the "Tracks" dictionary and the "Playlists" array concurrently
+     * if parsing.mappedParser is set.
+     */
+    private static final String SETTING_PARSER_THREADS = "parserThreads";
+
+    /**
+     * Default value for "parsing.parserThreads".
+     */
+    private static final Integer SETTING_PARSER_THREADS_DEFAULT_VALUE = 4;
+
+    /**
+     * parsing.lazyTracks
+     * <p>
+     * Set to true to only decode the tracks that are contained in playlists that are not ignored while parsing,
+     * and the remaining tracks once a task asks for all tracks of the library.
+     * Only used if parsing.mappedParser is set.
+     */
+    private static final String SETTING_LAZY_TRACKS = "lazyTracks";
+
+    /**
+     * Default value for "parsing.lazyTracks".
+     */
+    private static final Boolean SETTING_LAZY_TRACKS_DEFAULT_VALUE = false;
+
+    /**
+     * parsing.cacheFilePath
+     * <p>
+     * Path to a file in which the parsed tracks are cached between runs, so that only changed tracks need to be decoded.
+     * Supports the %USERPROFILE% placeholder. The empty string disables the cache.
+     */
+    private static final String SETTING_CACHE_FILE_PATH = "cacheFilePath";
+
+    /**
+     * Default value for "parsing.cacheFilePath".
+     */
+    private static final String SETTING_CACHE_FILE_PATH_DEFAULT_VALUE = "";
+
     /**
      * parsing.ignoreEmptyPlaylists
      * <p>
@@ -111,15 +165,33 @@ public class ParsingSettings extends SettingsImpl
      */
     private static final List<String> SETTING_IGNORE_PLAYLISTS_BY_NAME_DEFAULT_VALUE = List.of(); // empty List
 
+    /**
+     * parsing.smartPlaylists
+     * <p>
+     * Specify a dictionary of rule-based playlists that should be added to the library,
+     * mapping the name of each playlist to a query (see {@link iexport.query.QueryParser}).
+     */
+    private static final String SETTING_SMART_PLAYLISTS = "smartPlaylists";
+
+    /**
+     * Default value for "parsing.smartPlaylists".
+     */
+    private static final Map<String, String> SETTING_SMART_PLAYLISTS_DEFAULT_VALUE = Map.of(); // empty Map
+
     static
     {
         // Set the default values.
         PARSING_DEFAULT_SETTINGS.put(SETTING_XML_FILE_PATH, SETTING_XML_FILE_PATH_DEFAULT_VALUE);
+        PARSING_DEFAULT_SETTINGS.put(SETTING_MAPPED_PARSER, SETTING_MAPPED_PARSER_DEFAULT_VALUE);
+        PARSING_DEFAULT_SETTINGS.put(SETTING_PARSER_THREADS, SETTING_PARSER_THREADS_DEFAULT_VALUE);
+        PARSING_DEFAULT_SETTINGS.put(SETTING_LAZY_TRACKS, SETTING_LAZY_TRACKS_DEFAULT_VALUE);
+        PARSING_DEFAULT_SETTINGS.put(SETTING_CACHE_FILE_PATH, SETTING_CACHE_FILE_PATH_DEFAULT_VALUE);
         PARSING_DEFAULT_SETTINGS.put(SETTING_IGNORE_EMPTY_PLAYLISTS, SETTING_IGNORE_EMPTY_PLAYLISTS_DEFAULT_VALUE);
         PARSING_DEFAULT_SETTINGS.put(SETTING_IGNORE_NON_MUSIC_PLAYLISTS, SETTING_IGNORE_NON_MUSIC_PLAYLISTS_DEFAULT_VALUE);
         PARSING_DEFAULT_SETTINGS.put(SETTING_IGNORE_DISTINGUISHED_PLAYLISTS, SETTING_IGNORE_DISTINGUISHED_PLAYLISTS_DEFAULT_VALUE);
         PARSING_DEFAULT_SETTINGS.put(SETTING_IGNORE_MASTER, SETTING_IGNORE_MASTER_DEFAULT_VALUE);
         PARSING_DEFAULT_SETTINGS.put(SETTING_IGNORE_PLAYLISTS_BY_NAME, SETTING_IGNORE_PLAYLISTS_BY_NAME_DEFAULT_VALUE);
+        PARSING_DEFAULT_SETTINGS.put(SETTING_SMART_PLAYLISTS, SETTING_SMART_PLAYLISTS_DEFAULT_VALUE);
     }
 
     /**
@@ -159,6 +231,112 @@ public class ParsingSettings extends SettingsImpl
         }
     }
 
+    /**
+     * @return parsing.mappedParser
+     */
+    public boolean getMappedParser ()
+    {
+        String key = SETTING_MAPPED_PARSER;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
+    /**
+     * @return parsing.parserThreads
+     */
+    public int getParserThreads ()
+    {
+        String key = SETTING_PARSER_THREADS;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 1)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return parsing.lazyTracks
+     */
+    public boolean getLazyTracks ()
+    {
+        String key = SETTING_LAZY_TRACKS;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
+    /**
+     * @return parsing.cacheFilePath, the empty string if there should be no cache
+     */
+    public String getCacheFilePathString ()
+    {
+        String key = SETTING_CACHE_FILE_PATH;
+        Object result = getValueFor(key);
+
+        try
+        {
+            String resultString = (String) result;
+            return Settings.applyUserProfileReplacement(resultString);
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got null");
+        }
+    }
+
     /**
      * @return parsing.ignoreEmptyPlaylists
      */
@@ -283,6 +461,43 @@ public class ParsingSettings extends SettingsImpl
         }
     }
 
+    /**
+     * @return parsing.smartPlaylists, in the order in which they have been specified
+     */
+    public Map<String, String> getSmartPlaylists ()
+    {
+        String key = SETTING_SMART_PLAYLISTS;
+        Object result = getValueFor(key);
+
+        Map<?, ?> resultMap;
+        try
+        {
+            resultMap = (Map<?, ?>) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a dictionary from strings to strings, but got " + result.getClass().getSimpleName());
+        }
+        if (resultMap == null)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a dictionary from strings to strings, but got null");
+        }
+
+        Map<String, String> smartPlaylists = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : resultMap.entrySet())
+        {
+            if (!(entry.getKey() instanceof String name) || !(entry.getValue() instanceof String query))
+            {
+                throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                        + ", expected a dictionary from strings to strings, but got entry " + entry.getKey() + ": " + entry.getValue());
+            }
+            smartPlaylists.put(name, query);
+        }
+        return smartPlaylists;
+    }
+
     @Override
     public String getYamlPrefix ()
     {
@@ -17,12 +17,22 @@
 
 package iexport.tasks;
 
+import iexport.tasks.columnarexport.AggregateSnapshotsTask;
+import iexport.tasks.columnarexport.ExportColumnarTask;
 import iexport.tasks.fileexport.ExportFilesTask;
+import iexport.tasks.fileexport.verification.VerifyExportTask;
 import iexport.tasks.generateplaylists.GeneratePlaylistsTask;
+import iexport.tasks.parsercheck.CheckParsersTask;
+import iexport.tasks.printing.PrintDuplicateTracksTask;
 import iexport.tasks.printing.PrintLibraryTask;
 import iexport.tasks.printing.PrintMultiplyListedTracksTask;
 import iexport.tasks.printing.PrintPlaylistsTask;
 import iexport.tasks.printing.PrintUnlistedTracksTask;
+import iexport.tasks.printing.QueryTask;
+import iexport.tasks.sqliteexport.ExportSqliteTask;
+import iexport.tasks.statistics.LibraryStatsTask;
+import iexport.tasks.statistics.PrintTopTracksTask;
+import iexport.tasks.tableexport.ExportTableTask;
 
 import java.util.*;
 
@@ -98,10 +108,30 @@ public class TaskRegistry
 
         registerTask(new PrintMultiplyListedTracksTask());
 
+        registerTask(new PrintDuplicateTracksTask());
+
+        registerTask(new QueryTask());
+
+        registerTask(new LibraryStatsTask());
+
+        registerTask(new PrintTopTracksTask());
+
         registerTask(new GeneratePlaylistsTask());
 
         registerTask(new ExportFilesTask());
 
+        registerTask(new VerifyExportTask());
+
+        registerTask(new ExportTableTask());
+
+        registerTask(new ExportColumnarTask());
+
+        registerTask(new AggregateSnapshotsTask());
+
+        registerTask(new ExportSqliteTask());
+
+        registerTask(new CheckParsersTask());
+
         registerTask(new QuitTask());
     }
 
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import iexport.itunes.Library;
+import iexport.itunes.TrackField;
+import iexport.logging.LogLevel;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A task that aggregates the snapshots written by {@link ExportColumnarTask},
+ * e.g. to see how the play counts per genre developed over a year of daily snapshots.
+ * <p>
+ * All files in tasks.aggregateSnapshots.inputFolder matching tasks.aggregateSnapshots.filePattern are read
+ * using {@link ColumnarReader}, which only decodes the columns in tasks.aggregateSnapshots.groupBy
+ * and tasks.aggregateSnapshots.sum.
+ * The task prints the sums of these columns per snapshot,
+ * and per group their value in the newest snapshot and the change since the oldest snapshot.
+ * <p>
+ * Rows without value count as 0, in line with {@link TrackField#getLong(iexport.itunes.Track)} for play and skip counts;
+ * tracks without value for the column tasks.aggregateSnapshots.groupBy form the group {@value #NO_GROUP}.
+ */
+public class AggregateSnapshotsTask extends Task
+{
+    /**
+     * The name of the group of tracks that have no value for the column tasks.aggregateSnapshots.groupBy.
+     */
+    private static final String NO_GROUP = "(none)";
+
+    /**
+     * The settings used for this task.
+     */
+    private AggregateSnapshotsTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "aggregateSnapshots";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "aggregates columns over the snapshots written by exportColumnar";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new AggregateSnapshotsTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        List<String> sumColumns = settings.getSum();
+        if (sumColumns.isEmpty())
+        {
+            throw new RuntimeException("No columns specified in " + settings.getYamlPath("sum"));
+        }
+
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Path file : findFiles())
+        {
+            snapshots.add(aggregate(file, sumColumns));
+        }
+        snapshots.sort(Comparator.comparing(Snapshot::date, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        // It would be pretty silly to call this task but then hide the output.
+        if (Logging.getLogger().getLogLevel().lessVerbose(LogLevel.NORMAL))
+        {
+            Logging.getLogger().setLogLevel(LogLevel.NORMAL);
+        }
+
+        format(snapshots, sumColumns).forEach(Logging.getLogger()::message);
+    }
+
+    /**
+     * @return the files in tasks.aggregateSnapshots.inputFolder matching tasks.aggregateSnapshots.filePattern, sorted by name
+     */
+    private List<Path> findFiles ()
+    {
+        Path folder = Path.of(settings.getInputFolder());
+        PathMatcher matcher = folder.getFileSystem().getPathMatcher("glob:" + settings.getFilePattern());
+
+        List<Path> files;
+        try (Stream<Path> children = Files.list(folder))
+        {
+            files = children.filter((file) -> matcher.matches(file.getFileName())).sorted().toList();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not list the folder " + folder + ": " + e.getMessage(), e);
+        }
+
+        if (files.isEmpty())
+        {
+            throw new RuntimeException("Folder " + folder + " contains no files matching \"" + settings.getFilePattern() + "\"");
+        }
+        return files;
+    }
+
+    /**
+     * Read the columns of one snapshot and sum them up.
+     *
+     * @param file       the file of the snapshot
+     * @param sumColumns the names of the columns to sum up
+     * @return the sums
+     */
+    private Snapshot aggregate (Path file, List<String> sumColumns)
+    {
+        String groupBy = settings.getGroupBy();
+
+        try (ColumnarReader reader = ColumnarReader.open(file))
+        {
+            List<LongColumn> columns = new ArrayList<>();
+            for (String name : sumColumns)
+            {
+                ColumnInfo info = reader.getColumn(name);
+                if (info == null || info.type() == TrackField.Type.STRING)
+                {
+                    throw new RuntimeException("File " + file + " has no numeric column " + name
+                            + " (specified in " + settings.getYamlPath("sum") + ")");
+                }
+                columns.add(reader.readLongColumn(name));
+            }
+
+            StringColumn groups = null;
+            if (!groupBy.isEmpty())
+            {
+                ColumnInfo info = reader.getColumn(groupBy);
+                if (info == null || info.type() != TrackField.Type.STRING)
+                {
+                    throw new RuntimeException("File " + file + " has no string column " + groupBy
+                            + " (specified in " + settings.getYamlPath("groupBy") + ")");
+                }
+                groups = reader.readStringColumn(groupBy);
+            }
+
+            // Sum up per dictionary code, the last entry is for rows without group.
+            int groupCount = groups == null ? 0 : groups.getDictionary().size();
+            long[][] sumsPerCode = new long[groupCount + 1][columns.size()];
+            long[] totals = new long[columns.size()];
+            for (int row = 0; row < reader.getRowCount(); row++)
+            {
+                long[] sums = groups == null ? null : sumsPerCode[groups.isNull(row) ? groupCount : groups.getCode(row)];
+                for (int i = 0; i < columns.size(); i++)
+                {
+                    LongColumn column = columns.get(i);
+                    if (!column.isNull(row))
+                    {
+                        totals[i] += column.get(row);
+                        if (sums != null)
+                        {
+                            sums[i] += column.get(row);
+                        }
+                    }
+                }
+            }
+
+            Map<String, long[]> sumsPerGroup = new HashMap<>();
+            if (groups != null)
+            {
+                for (int code = 0; code < groupCount; code++)
+                {
+                    sumsPerGroup.put(groups.getDictionary().get(code), sumsPerCode[code]);
+                }
+                sumsPerGroup.put(NO_GROUP, sumsPerCode[groupCount]);
+            }
+
+            Date date = reader.getDate();
+            String name = date == null
+                    ? file.getFileName().toString()
+                    : LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault()).toString();
+            return new Snapshot(name, date, reader.getRowCount(), totals, sumsPerGroup);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not read " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Format the sums per snapshot and the change per group between the oldest and the newest snapshot.
+     *
+     * @param snapshots  the snapshots, oldest first
+     * @param sumColumns the names of the summed columns
+     * @return the lines of the output
+     */
+    private List<String> format (List<Snapshot> snapshots, List<String> sumColumns)
+    {
+        List<String> lines = new ArrayList<>();
+
+        int width = "snapshot".length();
+        for (Snapshot snapshot : snapshots)
+        {
+            width = Math.max(width, snapshot.name().length());
+        }
+
+        lines.add("Snapshots (" + snapshots.size() + ")");
+        lines.add("");
+        StringBuilder header = new StringBuilder(String.format("%-" + width + "s  %8s", "snapshot", "tracks"));
+        sumColumns.forEach((name) -> header.append(String.format("  %14s", name)));
+        lines.add(header.toString());
+        lines.add("-".repeat(header.length()));
+        for (Snapshot snapshot : snapshots)
+        {
+            StringBuilder line = new StringBuilder(String.format("%-" + width + "s  %8d", snapshot.name(), snapshot.tracks()));
+            for (long total : snapshot.totals())
+            {
+                line.append(String.format("  %14d", total));
+            }
+            lines.add(line.toString());
+        }
+
+        String groupBy = settings.getGroupBy();
+        if (groupBy.isEmpty())
+        {
+            return lines;
+        }
+
+        // Compare the newest snapshot with the oldest one, groups missing in one of them count as 0.
+        Snapshot oldest = snapshots.get(0);
+        Snapshot newest = snapshots.get(snapshots.size() - 1);
+        long[] zeros = new long[sumColumns.size()];
+        List<String> groups = new ArrayList<>(newest.sumsPerGroup().keySet());
+        oldest.sumsPerGroup().keySet().stream().filter((group) -> !newest.sumsPerGroup().containsKey(group)).forEach(groups::add);
+
+        Comparator<String> byChange = Comparator.comparingLong((String group) ->
+                newest.sumsPerGroup().getOrDefault(group, zeros)[0] - oldest.sumsPerGroup().getOrDefault(group, zeros)[0]).reversed();
+        groups.sort(byChange.thenComparing(Comparator.naturalOrder()));
+
+        int maxRows = settings.getMaxRows();
+        List<String> rows = maxRows > 0 && groups.size() > maxRows ? groups.subList(0, maxRows) : groups;
+
+        int groupWidth = groupBy.length();
+        for (String group : rows)
+        {
+            groupWidth = Math.max(groupWidth, group.length());
+        }
+
+        lines.add("");
+        lines.add("By " + groupBy + " in " + newest.name() + ", with the change since " + oldest.name());
+        lines.add("");
+        StringBuilder groupHeader = new StringBuilder(String.format("%-" + groupWidth + "s", groupBy));
+        sumColumns.forEach((name) -> groupHeader.append(String.format("  %14s  %12s", name, "change")));
+        lines.add(groupHeader.toString());
+        lines.add("-".repeat(groupHeader.length()));
+        for (String group : rows)
+        {
+            long[] newSums = newest.sumsPerGroup().getOrDefault(group, zeros);
+            long[] oldSums = oldest.sumsPerGroup().getOrDefault(group, zeros);
+
+            StringBuilder line = new StringBuilder(String.format("%-" + groupWidth + "s", group));
+            for (int i = 0; i < sumColumns.size(); i++)
+            {
+                line.append(String.format("  %14d  %+12d", newSums[i], newSums[i] - oldSums[i]));
+            }
+            lines.add(line.toString());
+        }
+        if (rows.size() < groups.size())
+        {
+            lines.add("... (" + (groups.size() - rows.size()) + " more)");
+        }
+
+        return lines;
+    }
+
+    /**
+     * The sums of one snapshot.
+     *
+     * @param name         the date of the snapshot, or the name of the file if the date is not known
+     * @param date         the date of the library, or null if it is not known
+     * @param tracks       the number of tracks
+     * @param totals       the sums of the columns over all tracks
+     * @param sumsPerGroup the sums of the columns per group, empty if tasks.aggregateSnapshots.groupBy is empty
+     */
+    private record Snapshot(String name, Date date, int tracks, long[] totals, Map<String, long[]> sumsPerGroup)
+    {
+    }
+}
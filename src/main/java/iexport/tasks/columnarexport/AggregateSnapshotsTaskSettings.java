@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.Settings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link AggregateSnapshotsTask}.
+ */
+public class AggregateSnapshotsTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the aggregateSnapshots task
+     */
+    private static final Map<String, Object> AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.aggregateSnapshots.inputFolder
+     * <p>
+     * The folder containing the files written by exportColumnar.
+     * Supports the %USERPROFILE% placeholder, which will typically get replaced by "C:\Users\<USERNAME>".
+     */
+    private static final String SETTING_INPUT_FOLDER = "inputFolder";
+
+    /**
+     * Default value for tasks.aggregateSnapshots.inputFolder
+     */
+    private static final String SETTING_INPUT_FOLDER_DEFAULT_VALUE = "%USERPROFILE%\\Desktop\\iExport\\Snapshots";
+
+    /**
+     * tasks.aggregateSnapshots.filePattern
+     * <p>
+     * A glob pattern selecting the files in the input folder that should be read.
+     */
+    private static final String SETTING_FILE_PATTERN = "filePattern";
+
+    /**
+     * Default value for tasks.aggregateSnapshots.filePattern
+     */
+    private static final String SETTING_FILE_PATTERN_DEFAULT_VALUE = "library-*.icol";
+
+    /**
+     * tasks.aggregateSnapshots.groupBy
+     * <p>
+     * The string column by which the tracks should be grouped, or the empty string for no grouping.
+     */
+    private static final String SETTING_GROUP_BY = "groupBy";
+
+    /**
+     * Default value for tasks.aggregateSnapshots.groupBy
+     */
+    private static final String SETTING_GROUP_BY_DEFAULT_VALUE = "genre";
+
+    /**
+     * tasks.aggregateSnapshots.sum
+     * <p>
+     * The numeric columns that should be summed up per snapshot (and group).
+     */
+    private static final String SETTING_SUM = "sum";
+
+    /**
+     * Default value for tasks.aggregateSnapshots.sum
+     */
+    private static final List<String> SETTING_SUM_DEFAULT_VALUE = List.of("playCount", "skipCount");
+
+    /**
+     * tasks.aggregateSnapshots.maxRows
+     * <p>
+     * The maximal number of groups that should be printed, or 0 to print all groups.
+     */
+    private static final String SETTING_MAX_ROWS = "maxRows";
+
+    /**
+     * Default value for tasks.aggregateSnapshots.maxRows
+     */
+    private static final Integer SETTING_MAX_ROWS_DEFAULT_VALUE = 20;
+
+    static
+    {
+        // Set default values.
+        AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS.put(SETTING_INPUT_FOLDER, SETTING_INPUT_FOLDER_DEFAULT_VALUE);
+        AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS.put(SETTING_FILE_PATTERN, SETTING_FILE_PATTERN_DEFAULT_VALUE);
+        AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS.put(SETTING_GROUP_BY, SETTING_GROUP_BY_DEFAULT_VALUE);
+        AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS.put(SETTING_SUM, SETTING_SUM_DEFAULT_VALUE);
+        AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS.put(SETTING_MAX_ROWS, SETTING_MAX_ROWS_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link AggregateSnapshotsTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public AggregateSnapshotsTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
+     *
+     * @return tasks.aggregateSnapshots.inputFolder
+     */
+    public String getInputFolder ()
+    {
+        return Settings.applyUserProfileReplacement(getString(SETTING_INPUT_FOLDER));
+    }
+
+    /**
+     * @return tasks.aggregateSnapshots.filePattern
+     */
+    public String getFilePattern ()
+    {
+        return getString(SETTING_FILE_PATTERN);
+    }
+
+    /**
+     * @return tasks.aggregateSnapshots.groupBy
+     */
+    public String getGroupBy ()
+    {
+        return getString(SETTING_GROUP_BY);
+    }
+
+    /**
+     * @return tasks.aggregateSnapshots.sum
+     */
+    public List<String> getSum ()
+    {
+        String key = SETTING_SUM;
+        Object result = getValueFor(key);
+
+        try
+        {
+            // Type erasure yada yada
+            @SuppressWarnings("unchecked")
+            List<String> resultList = (List<String>) result;
+            return resultList;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.aggregateSnapshots.maxRows
+     */
+    public int getMaxRows ()
+    {
+        String key = SETTING_MAX_ROWS;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a non-negative integer, but got " + value);
+        }
+        return value;
+    }
+
+    /**
+     * @param key the key of a setting whose value is a string
+     * @return the value of the setting
+     */
+    private String getString (String key)
+    {
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return AGGREGATE_SNAPSHOTS_DEFAULT_SETTINGS.get(key);
+    }
+}
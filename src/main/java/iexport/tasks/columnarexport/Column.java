@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+/**
+ * A column that has been read from a columnar file using {@link ColumnarReader}.
+ */
+public abstract class Column
+{
+    /**
+     * The entry for the column in the footer of the file.
+     */
+    private final ColumnInfo info;
+
+    /**
+     * The number of rows.
+     */
+    private final int size;
+
+    /**
+     * One bit per row that is set if the row has no value, or null if all rows have a value.
+     */
+    private final long[] nullBits;
+
+    /**
+     * @param info     the entry for the column in the footer of the file
+     * @param size     the number of rows
+     * @param nullBits one bit per row that is set if the row has no value, or null if all rows have a value
+     */
+    protected Column (ColumnInfo info, int size, long[] nullBits)
+    {
+        this.info = info;
+        this.size = size;
+        this.nullBits = nullBits;
+    }
+
+    /**
+     * @return the entry for the column in the footer of the file
+     */
+    public ColumnInfo getInfo ()
+    {
+        return info;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * @param row a row
+     * @return true if the track in the row has no value for this column
+     */
+    public boolean isNull (int row)
+    {
+        return nullBits != null && (nullBits[row >>> 6] & (1L << (row & 63))) != 0;
+    }
+}
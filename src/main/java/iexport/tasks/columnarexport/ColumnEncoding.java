@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+/**
+ * The encodings of the integers stored for a column of a columnar file.
+ * <p>
+ * Every column is stored as one integer per row:
+ * numbers as they are, dates as milliseconds since the epoch, booleans as 0 or 1,
+ * and strings as code into the dictionary of the column.
+ * These integers are then encoded using one of the following encodings.
+ */
+public enum ColumnEncoding
+{
+    /**
+     * Frame-of-reference bit packing.
+     * <p>
+     * Each value {@code v} is stored as {@code (v - base) / scale} using the minimal number of bits,
+     * where {@code base} is the minimal value and {@code scale} is the greatest common divisor of all differences to it.
+     * E.g. dates in iTunes have a resolution of seconds, so their scale is 1000.
+     */
+    BIT_PACKED,
+
+    /**
+     * Run-length encoding.
+     * <p>
+     * The values are stored as a list of runs, each consisting of a value and the number of consecutive rows that have this value.
+     * This is used for columns in which almost all rows have the same value, e.g. columns that are rarely set.
+     */
+    RUN_LENGTH
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import iexport.itunes.TrackField;
+
+/**
+ * The entry for a column in the footer of a columnar file.
+ *
+ * @param name      the name of the column, i.e. the name of the {@link TrackField}
+ * @param type      the type of the column
+ * @param encoding  the encoding of the integers stored for the column
+ * @param offset    the position of the column in the file
+ * @param length    the length of the column in bytes
+ * @param nullCount the number of rows without a value
+ * @param min       the minimal integer stored for the column (for strings: the minimal dictionary code)
+ * @param max       the maximal integer stored for the column (for strings: the maximal dictionary code)
+ */
+public record ColumnInfo(String name, TrackField.Type type, ColumnEncoding encoding, long offset, long length, int nullCount, long min, long max)
+{
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import iexport.itunes.TrackField;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a columnar file written by {@link ColumnarWriter}.
+ * <p>
+ * The file is memory-mapped and only the footer is parsed when it is opened.
+ * A column is only decoded when it is requested, so scanning a few columns of many snapshots
+ * touches only the pages of the file that contain these columns.
+ * <p>
+ * Example: the total play count per genre
+ * <pre>
+ *     try (ColumnarReader reader = ColumnarReader.open(file))
+ *     {
+ *         StringColumn genres = reader.readStringColumn("genre");
+ *         LongColumn playCounts = reader.readLongColumn("playCount");
+ *
+ *         long[] totals = new long[genres.getDictionary().size()];
+ *         for (int row = 0; row &lt; reader.getRowCount(); row++)
+ *         {
+ *             if (!genres.isNull(row) &amp;&amp; !playCounts.isNull(row))
+ *             {
+ *                 totals[genres.getCode(row)] += playCounts.get(row);
+ *             }
+ *         }
+ *     }
+ * </pre>
+ */
+public class ColumnarReader implements AutoCloseable
+{
+    /**
+     * The file.
+     */
+    private final Path file;
+
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The memory-mapped file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of rows.
+     */
+    private final int rowCount;
+
+    /**
+     * The date of the library, or null if it is not known.
+     */
+    private final Date date;
+
+    /**
+     * The entries for the columns in the footer, by name.
+     */
+    private final Map<String, ColumnInfo> columns = new LinkedHashMap<>();
+
+    /**
+     * Open a columnar file and read its footer.
+     *
+     * @param file the file
+     * @return the reader
+     * @throws IOException if the file cannot be read
+     */
+    public static ColumnarReader open (Path file)
+            throws
+            IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            return new ColumnarReader(file, channel);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map the file and read its footer.
+     *
+     * @param file    the file
+     * @param channel the opened channel of the file, which is closed by {@link #close()}
+     * @throws IOException if mapping the file fails
+     */
+    private ColumnarReader (Path file, FileChannel channel)
+            throws
+            IOException
+    {
+        this.file = file;
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size < 2 * ColumnarWriter.HEADER_SIZE)
+        {
+            throw new RuntimeException("File " + file + " is not an iExport columnar file");
+        }
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new RuntimeException("File " + file + " is too large");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+
+        int end = (int) size;
+        if (buffer.getInt(0) != ColumnarWriter.MAGIC || buffer.getInt(end - 4) != ColumnarWriter.MAGIC)
+        {
+            throw new RuntimeException("File " + file + " is not an iExport columnar file");
+        }
+        if (buffer.getInt(4) != ColumnarWriter.VERSION)
+        {
+            throw new RuntimeException("File " + file + " has unsupported version " + buffer.getInt(4));
+        }
+
+        int footerLength = buffer.getInt(end - 8);
+        ByteBuffer footer = buffer.slice(end - ColumnarWriter.HEADER_SIZE - footerLength, footerLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        rowCount = footer.getInt();
+        long time = footer.getLong();
+        date = time == ColumnarWriter.UNKNOWN_DATE ? null : new Date(time);
+
+        int columnCount = footer.getInt();
+        for (int i = 0; i < columnCount; i++)
+        {
+            String name = readString(footer);
+            TrackField.Type type = TrackField.Type.valueOf(readString(footer));
+            ColumnEncoding encoding = ColumnEncoding.values()[footer.get()];
+            ColumnInfo info = new ColumnInfo(name, type, encoding,
+                    footer.getLong(), footer.getLong(), footer.getInt(), footer.getLong(), footer.getLong());
+            columns.put(name, info);
+        }
+    }
+
+    /**
+     * @return the number of rows, i.e. tracks
+     */
+    public int getRowCount ()
+    {
+        return rowCount;
+    }
+
+    /**
+     * @return the date of the library, or null if it is not known
+     */
+    public Date getDate ()
+    {
+        return date;
+    }
+
+    /**
+     * @return the entries for the columns in the footer
+     */
+    public List<ColumnInfo> getColumns ()
+    {
+        return new ArrayList<>(columns.values());
+    }
+
+    /**
+     * @param name the name of a column
+     * @return the entry for the column in the footer, or null if the file has no such column
+     */
+    public ColumnInfo getColumn (String name)
+    {
+        return columns.get(name);
+    }
+
+    /**
+     * Read a column of type {@link TrackField.Type#NUMBER}, {@link TrackField.Type#DATE}, or {@link TrackField.Type#BOOLEAN}.
+     *
+     * @param name the name of the column
+     * @return the column
+     */
+    public LongColumn readLongColumn (String name)
+    {
+        ColumnInfo info = getColumnInfo(name);
+        if (info.type() == TrackField.Type.STRING)
+        {
+            throw new RuntimeException("Column " + name + " in " + file + " is a string column");
+        }
+
+        ByteBuffer column = columnBuffer(info);
+        long[] nullBits = readNullBits(column, info);
+        long[] values = IntegerCodec.decode(column.slice().order(ByteOrder.LITTLE_ENDIAN), info.encoding(), rowCount);
+        return new LongColumn(info, values, nullBits);
+    }
+
+    /**
+     * Read a column of type {@link TrackField.Type#STRING}.
+     *
+     * @param name the name of the column
+     * @return the column
+     */
+    public StringColumn readStringColumn (String name)
+    {
+        ColumnInfo info = getColumnInfo(name);
+        if (info.type() != TrackField.Type.STRING)
+        {
+            throw new RuntimeException("Column " + name + " in " + file + " is not a string column");
+        }
+
+        ByteBuffer column = columnBuffer(info);
+        long[] nullBits = readNullBits(column, info);
+
+        // Dictionary: count, offsets, strings, padding.
+        int start = column.position();
+        int count = column.getInt(start);
+        int offsets = start + 4;
+        int strings = offsets + 4 * (count + 1);
+        String[] dictionary = new String[count];
+        for (int i = 0; i < count; i++)
+        {
+            int from = column.getInt(offsets + 4 * i);
+            int to = column.getInt(offsets + 4 * (i + 1));
+            byte[] bytes = new byte[to - from];
+            column.get(strings + from, bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        column.position(start + IntegerCodec.align(strings - start + column.getInt(offsets + 4 * count)));
+
+        long[] values = IntegerCodec.decode(column.slice().order(ByteOrder.LITTLE_ENDIAN), info.encoding(), rowCount);
+        int[] codes = new int[rowCount];
+        for (int row = 0; row < rowCount; row++)
+        {
+            codes[row] = (int) values[row];
+        }
+        return new StringColumn(info, dictionary, codes, nullBits);
+    }
+
+    @Override
+    public void close ()
+            throws
+            IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * @param name the name of a column
+     * @return the entry for the column in the footer
+     * @throws RuntimeException if the file has no such column
+     */
+    private ColumnInfo getColumnInfo (String name)
+    {
+        ColumnInfo info = columns.get(name);
+        if (info == null)
+        {
+            throw new RuntimeException("File " + file + " has no column " + name + ", expected one of " + columns.keySet());
+        }
+        return info;
+    }
+
+    /**
+     * @param info the entry for a column in the footer
+     * @return the bytes of the column
+     */
+    private ByteBuffer columnBuffer (ColumnInfo info)
+    {
+        return buffer.slice((int) info.offset(), (int) info.length()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Read the bitmap of rows without value at the start of a column and advance the column past it.
+     *
+     * @param column the bytes of the column
+     * @param info   the entry for the column in the footer
+     * @return the bitmap, or null if all rows have a value
+     */
+    private long[] readNullBits (ByteBuffer column, ColumnInfo info)
+    {
+        if (info.nullCount() == 0)
+        {
+            return null;
+        }
+
+        long[] nullBits = new long[IntegerCodec.wordCount(rowCount, 1)];
+        column.asLongBuffer().get(nullBits);
+        column.position(8 * nullBits.length);
+        return nullBits;
+    }
+
+    /**
+     * Read a string stored as its length (short) and its UTF-8 bytes, and advance the buffer past it.
+     *
+     * @param buffer the buffer, positioned at the string
+     * @return the string
+     */
+    private static String readString (ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes tracks to a columnar file that can be read using {@link ColumnarReader}.
+ * <p>
+ * Instead of storing one row per track, a columnar file stores one column per {@link TrackField},
+ * so an analysis that needs only a few fields (e.g. the play counts per genre in each of a year of daily snapshots)
+ * only has to read these columns.
+ * <p>
+ * A columnar file has the following layout (all numbers little endian):
+ * <ul>
+ *     <li> a header consisting of the magic number {@code ICOL} and the version of the format (int),
+ *     <li> the columns, each starting at a multiple of 8, and each consisting of
+ *     <ul>
+ *         <li> a bitmap with one bit per row marking the rows without a value ({@code long[]}),
+ *         if the column has such rows,
+ *         <li> for columns of type {@link TrackField.Type#STRING}, the dictionary of the column:
+ *         the number of distinct strings (int), the offsets of the strings (int[] with one more entry than strings),
+ *         and the UTF-8 encoded strings, sorted, padded to a multiple of 8,
+ *         <li> the integer per row (numbers as they are, dates as milliseconds since the epoch, booleans as 0 or 1,
+ *         strings as their index in the dictionary), encoded as described in {@link IntegerCodec};
+ *     </ul>
+ *     <li> the footer: the number of rows (int), the date of the library (long, milliseconds since the epoch),
+ *     the number of columns (int), and per column its name (short length and UTF-8 bytes), its type (ditto),
+ *     its {@link ColumnEncoding} (byte), its offset and length (long), the number of rows without value (int),
+ *     and the minimal and maximal integer stored for the column (long),
+ *     <li> a trailer consisting of the length of the footer (int) and the magic number.
+ * </ul>
+ * Rows without value store the same integer as the previous row, so they do not interrupt runs.
+ */
+public class ColumnarWriter
+{
+    /**
+     * The magic number at the start and the end of a columnar file, the bytes {@code ICOL} in little endian.
+     */
+    static final int MAGIC = 'I' | 'C' << 8 | 'O' << 16 | 'L' << 24;
+
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The value stored in the footer if the date of the library is not known.
+     */
+    static final long UNKNOWN_DATE = Long.MIN_VALUE;
+
+    /**
+     * The size of the header and of the trailer.
+     */
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * This class should not be instantiated.
+     */
+    private ColumnarWriter ()
+    {
+
+    }
+
+    /**
+     * Write tracks to a columnar file, replacing an existing file.
+     * <p>
+     * The file is first written to a temporary file that then replaces the old file,
+     * so a crash while writing does not leave a truncated file.
+     *
+     * @param file    the file
+     * @param tracks  the tracks, one row per track
+     * @param columns the fields to store
+     * @param date    the date of the library, may be null
+     * @return the entries for the columns in the footer
+     * @throws IOException if writing the file fails
+     */
+    public static List<ColumnInfo> write (Path file, List<Track> tracks, List<TrackField> columns, Date date)
+            throws
+            IOException
+    {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        List<ColumnInfo> infos = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(temporaryFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header);
+
+            for (TrackField field : columns)
+            {
+                long offset = channel.position();
+                ByteBuffer column = encodeColumn(field, tracks, infos, offset);
+                writeFully(channel, column);
+            }
+
+            ByteBuffer footer = encodeFooter(tracks.size(), date, infos);
+            writeFully(channel, footer);
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return infos;
+    }
+
+    /**
+     * Encode the column for a field.
+     *
+     * @param field  the field
+     * @param tracks the tracks
+     * @param infos  the list to which the entry for the column in the footer is added
+     * @param offset the position of the column in the file
+     * @return the encoded column, ready to be written
+     */
+    private static ByteBuffer encodeColumn (TrackField field, List<Track> tracks, List<ColumnInfo> infos, long offset)
+    {
+        int rows = tracks.size();
+        long[] values = new long[rows];
+        long[] nullBits = new long[IntegerCodec.wordCount(rows, 1)];
+        int nullCount = 0;
+
+        // For strings: the distinct strings, and then their index in the sorted dictionary.
+        Map<String, Integer> codes = new HashMap<>();
+        String[] strings = new String[rows];
+
+        // The first row with a value, rows without values copy the value of the previous row.
+        int firstNonNull = -1;
+        for (int row = 0; row < rows; row++)
+        {
+            Track track = tracks.get(row);
+            Object value = field.getValue(track);
+            if (value == null)
+            {
+                nullBits[row >>> 6] |= 1L << (row & 63);
+                nullCount++;
+                values[row] = row == 0 ? 0 : values[row - 1];
+                continue;
+            }
+            if (firstNonNull < 0)
+            {
+                firstNonNull = row;
+            }
+
+            switch (field.getType())
+            {
+                case STRING ->
+                {
+                    String string = value.toString();
+                    strings[row] = string;
+                    codes.putIfAbsent(string, codes.size());
+                }
+                case BOOLEAN -> values[row] = (Boolean) value ? 1 : 0;
+                case NUMBER, DATE -> values[row] = field.getLong(track);
+            }
+        }
+
+        String[] dictionary = null;
+        if (field.getType() == TrackField.Type.STRING)
+        {
+            // Sort the dictionary, so that the order of the codes is the order of the strings.
+            dictionary = codes.keySet().toArray(new String[0]);
+            Arrays.sort(dictionary);
+            for (int i = 0; i < dictionary.length; i++)
+            {
+                codes.put(dictionary[i], i);
+            }
+            for (int row = 0; row < rows; row++)
+            {
+                values[row] = strings[row] == null ? (row == 0 ? 0 : values[row - 1]) : codes.get(strings[row]);
+            }
+        }
+
+        // Leading rows without value get the first value, so they do not form a run or widen the range.
+        if (firstNonNull > 0)
+        {
+            Arrays.fill(values, 0, firstNonNull, values[firstNonNull]);
+        }
+
+        IntegerCodec codec = new IntegerCodec(values);
+        byte[][] encodedStrings = dictionary == null ? null : encodeStrings(dictionary);
+
+        int size = (nullCount > 0 ? 8 * nullBits.length : 0)
+                + (encodedStrings == null ? 0 : dictionarySize(encodedStrings))
+                + codec.getSize();
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (nullCount > 0)
+        {
+            buffer.asLongBuffer().put(nullBits);
+            buffer.position(8 * nullBits.length);
+        }
+        if (encodedStrings != null)
+        {
+            writeDictionary(buffer, encodedStrings);
+        }
+        codec.writeTo(buffer);
+        buffer.flip();
+
+        infos.add(new ColumnInfo(field.getName(), field.getType(), codec.getEncoding(), offset, size, nullCount, codec.getMin(), codec.getMax()));
+        return buffer;
+    }
+
+    /**
+     * Encode the strings of a dictionary as UTF-8.
+     *
+     * @param strings the strings
+     * @return the encoded strings, in the same order
+     */
+    private static byte[][] encodeStrings (String[] strings)
+    {
+        byte[][] encoded = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++)
+        {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    /**
+     * @param strings the UTF-8 encoded strings of a dictionary
+     * @return the size of the dictionary in bytes, including padding
+     */
+    private static int dictionarySize (byte[][] strings)
+    {
+        int size = 4 + 4 * (strings.length + 1);
+        for (byte[] string : strings)
+        {
+            size += string.length;
+        }
+        return IntegerCodec.align(size);
+    }
+
+    /**
+     * Write a dictionary: the number of strings, their offsets, the strings, and the padding.
+     *
+     * @param buffer  a little-endian buffer with at least {@link #dictionarySize(byte[][])} bytes remaining
+     * @param strings the UTF-8 encoded strings, sorted
+     */
+    private static void writeDictionary (ByteBuffer buffer, byte[][] strings)
+    {
+        int start = buffer.position();
+
+        buffer.putInt(strings.length);
+        int offset = 0;
+        buffer.putInt(offset);
+        for (byte[] string : strings)
+        {
+            offset += string.length;
+            buffer.putInt(offset);
+        }
+        for (byte[] string : strings)
+        {
+            buffer.put(string);
+        }
+
+        buffer.position(start + dictionarySize(strings));
+    }
+
+    /**
+     * Encode the footer, including the trailer.
+     *
+     * @param rows  the number of rows
+     * @param date  the date of the library, may be null
+     * @param infos the entries for the columns
+     * @return the encoded footer, ready to be written
+     */
+    private static ByteBuffer encodeFooter (int rows, Date date, List<ColumnInfo> infos)
+    {
+        List<byte[]> names = new ArrayList<>();
+        List<byte[]> types = new ArrayList<>();
+        int size = 4 + 8 + 4;
+        for (ColumnInfo info : infos)
+        {
+            byte[] name = info.name().getBytes(StandardCharsets.UTF_8);
+            byte[] type = info.type().name().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            types.add(type);
+            size += 2 + name.length + 2 + type.length + 1 + 8 + 8 + 4 + 8 + 8;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size + HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(rows);
+        buffer.putLong(date == null ? UNKNOWN_DATE : date.getTime());
+        buffer.putInt(infos.size());
+        for (int i = 0; i < infos.size(); i++)
+        {
+            ColumnInfo info = infos.get(i);
+            buffer.putShort((short) names.get(i).length).put(names.get(i));
+            buffer.putShort((short) types.get(i).length).put(types.get(i));
+            buffer.put((byte) info.encoding().ordinal());
+            buffer.putLong(info.offset());
+            buffer.putLong(info.length());
+            buffer.putInt(info.nullCount());
+            buffer.putLong(info.min());
+            buffer.putLong(info.max());
+        }
+        buffer.putInt(size);
+        buffer.putInt(MAGIC);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Write all remaining bytes of a buffer.
+     *
+     * @param channel the channel
+     * @param buffer  the buffer
+     * @throws IOException if writing fails
+     */
+    private static void writeFully (FileChannel channel, ByteBuffer buffer)
+            throws
+            IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+}
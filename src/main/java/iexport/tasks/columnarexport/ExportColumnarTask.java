@@ -0,0 +1,221 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import iexport.itunes.Library;
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+import iexport.utils.ByteFormatter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A task that exports the tracks as columnar file (see {@link ColumnarWriter}) for analytics,
+ * e.g. over daily snapshots of the library.
+ * <p>
+ * The file is written to tasks.exportColumnar.outputFolder, named according to tasks.exportColumnar.fileName,
+ * in which %DATE% is replaced by the date of the library.
+ * The files can be read using {@link ColumnarReader}, e.g. by {@link AggregateSnapshotsTask}.
+ * If tasks.exportColumnar.verify is set, the written file is read back and compared against the tracks.
+ */
+public class ExportColumnarTask extends Task
+{
+    /**
+     * The placeholder in tasks.exportColumnar.fileName that gets replaced by the date of the library.
+     */
+    private static final String DATE_PLACEHOLDER = "%DATE%";
+
+    /**
+     * The settings used for this task.
+     */
+    private ExportColumnarTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "exportColumnar";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "exports the tracks in a columnar binary format for analytics";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new ExportColumnarTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        List<TrackField> columns = getColumns();
+
+        // Use the date of the library for the file name, so that a snapshot taken twice on the same day replaces the first one.
+        Date date = library.date() != null ? library.date() : new Date();
+        String dateString = LocalDate.ofInstant(date.toInstant(), ZoneId.systemDefault()).toString();
+        String fileName = settings.getFileName().replace(DATE_PLACEHOLDER, dateString);
+
+        Path outputFolder = Path.of(settings.getOutputFolder());
+        Path file = outputFolder.resolve(fileName);
+        try
+        {
+            Files.createDirectories(outputFolder);
+            List<ColumnInfo> infos = ColumnarWriter.write(file, library.tracks(), columns, library.date());
+
+            for (ColumnInfo info : infos)
+            {
+                Logging.getLogger().debug(info.name() + ": " + info.encoding() + ", " + ByteFormatter.format(info.length())
+                        + (info.nullCount() > 0 ? ", " + info.nullCount() + " rows without value" : ""));
+            }
+            Logging.getLogger().message("Wrote " + library.tracks().size() + " tracks with " + columns.size() + " columns to " + file
+                    + " (" + ByteFormatter.format(Files.size(file)) + ")");
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not write " + file + ": " + e.getMessage(), e);
+        }
+
+        if (settings.getVerify())
+        {
+            verify(file, library.tracks(), columns);
+            Logging.getLogger().message("Verified " + file + " by reading it back.");
+        }
+    }
+
+    /**
+     * Read a written file back and check that it contains the values of the tracks.
+     *
+     * @param file    the file
+     * @param tracks  the tracks that have been written, one row per track
+     * @param columns the fields that have been written
+     * @throws RuntimeException if the file cannot be read or a value differs
+     */
+    static void verify (Path file, List<Track> tracks, List<TrackField> columns)
+    {
+        try (ColumnarReader reader = ColumnarReader.open(file))
+        {
+            if (reader.getRowCount() != tracks.size())
+            {
+                throw new RuntimeException("File " + file + " has " + reader.getRowCount() + " rows, expected " + tracks.size());
+            }
+
+            for (TrackField field : columns)
+            {
+                Column column = field.getType() == TrackField.Type.STRING
+                        ? reader.readStringColumn(field.getName())
+                        : reader.readLongColumn(field.getName());
+
+                for (int row = 0; row < tracks.size(); row++)
+                {
+                    Object expected = field.getValue(tracks.get(row));
+                    Object actual = column.isNull(row) ? null : switch (field.getType())
+                            {
+                                case STRING -> ((StringColumn) column).get(row);
+                                case BOOLEAN -> ((LongColumn) column).get(row) != 0;
+                                case NUMBER, DATE -> ((LongColumn) column).get(row);
+                            };
+                    if (expected != null && field.getType() != TrackField.Type.BOOLEAN)
+                    {
+                        expected = field.getType() == TrackField.Type.STRING ? expected.toString() : field.getLong(tracks.get(row));
+                    }
+
+                    if (!Objects.equals(expected, actual))
+                    {
+                        throw new RuntimeException("File " + file + " does not match the library: column " + field.getName()
+                                + " has value " + actual + " in row " + row + ", expected " + expected);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not read " + file + " back: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the columns specified in tasks.exportColumnar.columns
+     */
+    private List<TrackField> getColumns ()
+    {
+        List<String> names = settings.getColumns();
+        if (names.isEmpty())
+        {
+            return Arrays.asList(TrackField.values());
+        }
+
+        List<TrackField> columns = new ArrayList<>();
+        for (String name : names)
+        {
+            TrackField field = TrackField.forName(name);
+            if (field == null)
+            {
+                throw new RuntimeException("Unknown column \"" + name + "\" in " + settings.getYamlPath("columns")
+                        + ", expected one of " + TrackField.getNames());
+            }
+            columns.add(field);
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.Settings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link ExportColumnarTask}.
+ */
+public class ExportColumnarTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the exportColumnar task
+     */
+    private static final Map<String, Object> EXPORT_COLUMNAR_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.exportColumnar.outputFolder
+     * <p>
+     * The folder to which the file should be written; it will be created if it does not exist.
+     * Supports the %USERPROFILE% placeholder, which will typically get replaced by "C:\Users\<USERNAME>".
+     */
+    private static final String SETTING_OUTPUT_FOLDER = "outputFolder";
+
+    /**
+     * Default value for tasks.exportColumnar.outputFolder
+     */
+    private static final String SETTING_OUTPUT_FOLDER_DEFAULT_VALUE = "%USERPROFILE%\\Desktop\\iExport\\Snapshots";
+
+    /**
+     * tasks.exportColumnar.fileName
+     * <p>
+     * The name of the file.
+     * Supports the %DATE% placeholder, which will get replaced by the date of the library, e.g. "2022-09-11".
+     */
+    private static final String SETTING_FILE_NAME = "fileName";
+
+    /**
+     * Default value for tasks.exportColumnar.fileName
+     */
+    private static final String SETTING_FILE_NAME_DEFAULT_VALUE = "library-%DATE%.icol";
+
+    /**
+     * tasks.exportColumnar.columns
+     * <p>
+     * The columns that should be written, named as in {@link iexport.itunes.TrackField}, or an empty list for all columns.
+     */
+    private static final String SETTING_COLUMNS = "columns";
+
+    /**
+     * Default value for tasks.exportColumnar.columns
+     */
+    private static final List<String> SETTING_COLUMNS_DEFAULT_VALUE = List.of(); // empty list
+
+    /**
+     * tasks.exportColumnar.verify
+     * <p>
+     * Whether the written file should be read back and compared against the tracks.
+     */
+    private static final String SETTING_VERIFY = "verify";
+
+    /**
+     * Default value for tasks.exportColumnar.verify
+     */
+    private static final boolean SETTING_VERIFY_DEFAULT_VALUE = true;
+
+    static
+    {
+        // Set default values.
+        EXPORT_COLUMNAR_DEFAULT_SETTINGS.put(SETTING_OUTPUT_FOLDER, SETTING_OUTPUT_FOLDER_DEFAULT_VALUE);
+        EXPORT_COLUMNAR_DEFAULT_SETTINGS.put(SETTING_FILE_NAME, SETTING_FILE_NAME_DEFAULT_VALUE);
+        EXPORT_COLUMNAR_DEFAULT_SETTINGS.put(SETTING_COLUMNS, SETTING_COLUMNS_DEFAULT_VALUE);
+        EXPORT_COLUMNAR_DEFAULT_SETTINGS.put(SETTING_VERIFY, SETTING_VERIFY_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link ExportColumnarTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public ExportColumnarTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(EXPORT_COLUMNAR_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
+     *
+     * @return tasks.exportColumnar.outputFolder
+     */
+    public String getOutputFolder ()
+    {
+        String key = SETTING_OUTPUT_FOLDER;
+        Object result = getValueFor(key);
+
+        try
+        {
+            String resultString = (String) result;
+            return Settings.applyUserProfileReplacement(resultString);
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.exportColumnar.fileName, without replacing %DATE%
+     */
+    public String getFileName ()
+    {
+        String key = SETTING_FILE_NAME;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.exportColumnar.columns
+     */
+    public List<String> getColumns ()
+    {
+        String key = SETTING_COLUMNS;
+        Object result = getValueFor(key);
+
+        try
+        {
+            // Type erasure yada yada
+            @SuppressWarnings("unchecked")
+            List<String> resultList = (List<String>) result;
+            return resultList;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.exportColumnar.verify
+     */
+    public boolean getVerify ()
+    {
+        String key = SETTING_VERIFY;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return EXPORT_COLUMNAR_DEFAULT_SETTINGS.get(key);
+    }
+}
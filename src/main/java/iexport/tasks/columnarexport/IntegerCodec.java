@@ -0,0 +1,362 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes and decodes the integers stored for a column, see {@link ColumnEncoding}.
+ * <p>
+ * An encoder analyzes the values once and then picks the encoding that results in the smaller payload.
+ * The payload has one of the following layouts (all numbers little endian, the payload starts 8-byte aligned):
+ * <ul>
+ *     <li> {@link ColumnEncoding#BIT_PACKED}: {@code long base, long scale, int bitWidth, int 0, long[] words},
+ *     where the values are packed into the words starting at the least significant bit,
+ *     <li> {@link ColumnEncoding#RUN_LENGTH}: {@code int runCount, int 0, long[runCount] values, int[runCount] lengths}.
+ * </ul>
+ */
+class IntegerCodec
+{
+    /**
+     * The values to encode.
+     */
+    private final long[] values;
+
+    /**
+     * The minimal value.
+     */
+    private final long min;
+
+    /**
+     * The maximal value.
+     */
+    private final long max;
+
+    /**
+     * The greatest common divisor of the differences between the values and {@link #min}, or 1 if they are all 0.
+     */
+    private final long scale;
+
+    /**
+     * The number of bits needed to store {@code (value - min) / scale}.
+     */
+    private final int bitWidth;
+
+    /**
+     * The number of runs of equal values.
+     */
+    private final int runCount;
+
+    /**
+     * Analyze the values to encode.
+     *
+     * @param values the values, one per row
+     */
+    IntegerCodec (long[] values)
+    {
+        this.values = values;
+
+        long min = values.length == 0 ? 0 : values[0];
+        long max = min;
+        int runCount = values.length == 0 ? 0 : 1;
+        for (int i = 1; i < values.length; i++)
+        {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+            if (values[i] != values[i - 1])
+            {
+                runCount++;
+            }
+        }
+
+        long scale = 0;
+        for (long value : values)
+        {
+            long difference = value - min;
+            if (difference < 0)
+            {
+                // The range exceeds Long.MAX_VALUE, only the unscaled unsigned difference fits.
+                scale = 1;
+                break;
+            }
+            scale = gcd(scale, difference);
+            if (scale == 1)
+            {
+                break;
+            }
+        }
+        if (scale == 0)
+        {
+            scale = 1;
+        }
+
+        this.min = min;
+        this.max = max;
+        this.scale = scale;
+        this.bitWidth = 64 - Long.numberOfLeadingZeros(scale == 1 ? max - min : (max - min) / scale);
+        this.runCount = runCount;
+    }
+
+    /**
+     * @return the minimal value
+     */
+    long getMin ()
+    {
+        return min;
+    }
+
+    /**
+     * @return the maximal value
+     */
+    long getMax ()
+    {
+        return max;
+    }
+
+    /**
+     * @return the encoding resulting in the smaller payload
+     */
+    ColumnEncoding getEncoding ()
+    {
+        return runLengthSize() < bitPackedSize() ? ColumnEncoding.RUN_LENGTH : ColumnEncoding.BIT_PACKED;
+    }
+
+    /**
+     * @return the size of the payload in bytes, a multiple of 8
+     */
+    int getSize ()
+    {
+        return Math.min(runLengthSize(), bitPackedSize());
+    }
+
+    /**
+     * Write the payload.
+     *
+     * @param buffer a little-endian buffer with at least {@link #getSize()} bytes remaining
+     */
+    void writeTo (ByteBuffer buffer)
+    {
+        if (getEncoding() == ColumnEncoding.RUN_LENGTH)
+        {
+            writeRunLength(buffer);
+        }
+        else
+        {
+            writeBitPacked(buffer);
+        }
+    }
+
+    /**
+     * Decode a payload.
+     *
+     * @param payload  a little-endian buffer starting at the payload
+     * @param encoding the encoding of the payload
+     * @param rows     the number of rows
+     * @return the values, one per row
+     */
+    static long[] decode (ByteBuffer payload, ColumnEncoding encoding, int rows)
+    {
+        return switch (encoding)
+                {
+                    case BIT_PACKED -> decodeBitPacked(payload, rows);
+                    case RUN_LENGTH -> decodeRunLength(payload, rows);
+                };
+    }
+
+    /**
+     * @return the size of the payload for {@link ColumnEncoding#BIT_PACKED}
+     */
+    private int bitPackedSize ()
+    {
+        return 24 + 8 * wordCount(values.length, bitWidth);
+    }
+
+    /**
+     * @return the size of the payload for {@link ColumnEncoding#RUN_LENGTH}
+     */
+    private int runLengthSize ()
+    {
+        return 8 + align(12 * runCount);
+    }
+
+    /**
+     * Write the payload for {@link ColumnEncoding#BIT_PACKED}.
+     *
+     * @param buffer a little-endian buffer with at least {@link #bitPackedSize()} bytes remaining
+     */
+    private void writeBitPacked (ByteBuffer buffer)
+    {
+        buffer.putLong(min);
+        buffer.putLong(scale);
+        buffer.putInt(bitWidth);
+        buffer.putInt(0);
+
+        long[] words = new long[wordCount(values.length, bitWidth)];
+        if (bitWidth > 0)
+        {
+            for (int i = 0; i < values.length; i++)
+            {
+                long packed = scale == 1 ? values[i] - min : (values[i] - min) / scale;
+                long bitPosition = (long) i * bitWidth;
+                int word = (int) (bitPosition >>> 6);
+                int shift = (int) (bitPosition & 63);
+
+                words[word] |= packed << shift;
+                if (shift + bitWidth > 64)
+                {
+                    words[word + 1] |= packed >>> (64 - shift);
+                }
+            }
+        }
+        buffer.asLongBuffer().put(words);
+        buffer.position(buffer.position() + 8 * words.length);
+    }
+
+    /**
+     * Write the payload for {@link ColumnEncoding#RUN_LENGTH}.
+     *
+     * @param buffer a little-endian buffer with at least {@link #runLengthSize()} bytes remaining
+     */
+    private void writeRunLength (ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        buffer.putInt(runCount);
+        buffer.putInt(0);
+
+        int valuesPosition = buffer.position();
+        int lengthsPosition = valuesPosition + 8 * runCount;
+        int run = 0;
+        int runStart = 0;
+        for (int i = 1; i <= values.length; i++)
+        {
+            if (i == values.length || values[i] != values[i - 1])
+            {
+                buffer.putLong(valuesPosition + 8 * run, values[runStart]);
+                buffer.putInt(lengthsPosition + 4 * run, i - runStart);
+                run++;
+                runStart = i;
+            }
+        }
+        buffer.position(start + runLengthSize());
+    }
+
+    /**
+     * Decode a payload in {@link ColumnEncoding#BIT_PACKED}.
+     *
+     * @param payload a little-endian buffer starting at the payload
+     * @param rows    the number of rows
+     * @return the values, one per row
+     */
+    private static long[] decodeBitPacked (ByteBuffer payload, int rows)
+    {
+        long base = payload.getLong(0);
+        long scale = payload.getLong(8);
+        int bitWidth = payload.getInt(16);
+
+        long[] values = new long[rows];
+        if (bitWidth == 0)
+        {
+            Arrays.fill(values, base);
+            return values;
+        }
+
+        LongBuffer words = payload.slice(24, 8 * wordCount(rows, bitWidth)).order(payload.order()).asLongBuffer();
+        long mask = bitWidth == 64 ? -1L : (1L << bitWidth) - 1;
+        for (int i = 0; i < rows; i++)
+        {
+            long bitPosition = (long) i * bitWidth;
+            int word = (int) (bitPosition >>> 6);
+            int shift = (int) (bitPosition & 63);
+
+            long packed = words.get(word) >>> shift;
+            if (shift + bitWidth > 64)
+            {
+                packed |= words.get(word + 1) << (64 - shift);
+            }
+            values[i] = base + (packed & mask) * scale;
+        }
+        return values;
+    }
+
+    /**
+     * Decode a payload in {@link ColumnEncoding#RUN_LENGTH}.
+     *
+     * @param payload a little-endian buffer starting at the payload
+     * @param rows    the number of rows
+     * @return the values, one per row
+     * @throws RuntimeException if the lengths of the runs do not add up to the number of rows
+     */
+    private static long[] decodeRunLength (ByteBuffer payload, int rows)
+    {
+        int runCount = payload.getInt(0);
+        int valuesPosition = 8;
+        int lengthsPosition = valuesPosition + 8 * runCount;
+
+        long[] values = new long[rows];
+        int row = 0;
+        for (int run = 0; run < runCount; run++)
+        {
+            long value = payload.getLong(valuesPosition + 8 * run);
+            int length = payload.getInt(lengthsPosition + 4 * run);
+            Arrays.fill(values, row, row + length, value);
+            row += length;
+        }
+        if (row != rows)
+        {
+            throw new RuntimeException("Run-length encoded column has " + row + " rows, expected " + rows);
+        }
+        return values;
+    }
+
+    /**
+     * @param count    a number of values
+     * @param bitWidth the number of bits per value
+     * @return the number of longs needed to store {@code count} values of {@code bitWidth} bits each
+     */
+    static int wordCount (int count, int bitWidth)
+    {
+        return (int) (((long) count * bitWidth + 63) >>> 6);
+    }
+
+    /**
+     * @param size a size in bytes
+     * @return the smallest multiple of 8 that is at least {@code size}
+     */
+    static int align (int size)
+    {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * @param a a non-negative number
+     * @param b a non-negative number
+     * @return the greatest common divisor of {@code a} and {@code b}, where the divisor of 0 and {@code a} is {@code a}
+     */
+    private static long gcd (long a, long b)
+    {
+        while (b != 0)
+        {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
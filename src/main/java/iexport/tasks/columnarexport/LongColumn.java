@@ -0,0 +1,52 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+/**
+ * A column of type {@link iexport.itunes.TrackField.Type#NUMBER}, {@link iexport.itunes.TrackField.Type#DATE},
+ * or {@link iexport.itunes.TrackField.Type#BOOLEAN}, decoded into a primitive array.
+ * <p>
+ * Dates are represented as milliseconds since the epoch, booleans as 0 or 1.
+ */
+public class LongColumn extends Column
+{
+    /**
+     * The values, one per row.
+     */
+    private final long[] values;
+
+    /**
+     * @param info     the entry for the column in the footer of the file
+     * @param values   the values, one per row
+     * @param nullBits one bit per row that is set if the row has no value, or null if all rows have a value
+     */
+    LongColumn (ColumnInfo info, long[] values, long[] nullBits)
+    {
+        super(info, values.length, nullBits);
+        this.values = values;
+    }
+
+    /**
+     * @param row a row
+     * @return the value in the row; unspecified if the row has no value (see {@link #isNull(int)})
+     */
+    public long get (int row)
+    {
+        return values[row];
+    }
+}
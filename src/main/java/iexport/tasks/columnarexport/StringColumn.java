@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.columnarexport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A column of type {@link iexport.itunes.TrackField.Type#STRING},
+ * decoded into its dictionary and the code of each row.
+ * <p>
+ * The dictionary is sorted, so comparing codes is the same as comparing strings.
+ * Aggregations (e.g. grouping by genre) should work on the codes and only look up the strings at the end.
+ */
+public class StringColumn extends Column
+{
+    /**
+     * The distinct strings of the column, sorted.
+     */
+    private final String[] dictionary;
+
+    /**
+     * The index into {@link #dictionary} per row.
+     */
+    private final int[] codes;
+
+    /**
+     * @param info       the entry for the column in the footer of the file
+     * @param dictionary the distinct strings of the column, sorted
+     * @param codes      the index into the dictionary per row
+     * @param nullBits   one bit per row that is set if the row has no value, or null if all rows have a value
+     */
+    StringColumn (ColumnInfo info, String[] dictionary, int[] codes, long[] nullBits)
+    {
+        super(info, codes.length, nullBits);
+        this.dictionary = dictionary;
+        this.codes = codes;
+    }
+
+    /**
+     * @return the distinct strings of the column, sorted
+     */
+    public List<String> getDictionary ()
+    {
+        return Collections.unmodifiableList(Arrays.asList(dictionary));
+    }
+
+    /**
+     * @param row a row
+     * @return the index of the value of the row in the dictionary; unspecified if the row has no value (see {@link #isNull(int)})
+     */
+    public int getCode (int row)
+    {
+        return codes[row];
+    }
+
+    /**
+     * @param row a row
+     * @return the value of the row, or null if the row has no value
+     */
+    public String get (int row)
+    {
+        return isNull(row) ? null : dictionary[codes[row]];
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport;
+
+import iexport.logging.Logging;
+import iexport.utils.ByteFormatter;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of concurrent copy operations per device
+ * (tasks.exportFiles.maxCopiesPerSourceDevice and tasks.exportFiles.maxCopiesPerDestinationDevice)
+ * and keeps track of the throughput per device.
+ * <p>
+ * A device is identified by the {@link FileStore} of a path, i.e. a drive under Windows and a mount point elsewhere.
+ * File stores are compared with {@link FileStore#equals(Object)}, which compares the underlying devices,
+ * so e.g. two tmpfs mounts or two network shares with the same name are different devices.
+ * Their short names are only used for display.
+ * Source devices and destination devices are limited independently,
+ * so a drive that is both source and destination has one limit for reading and one for writing.
+ * <p>
+ * Each copy operation holds one permit for its source device and one for its destination device.
+ * To avoid deadlocks between threads, the permits are always acquired in the same global order
+ * (the order in which the devices have been seen first).
+ * <p>
+ * This class is thread-safe.
+ */
+public class DeviceLimiter
+{
+    /**
+     * The length of the time window over which the throughput is computed, in nanoseconds.
+     */
+    private static final long THROUGHPUT_WINDOW_NANOS = 10_000_000_000L;
+
+    /**
+     * The maximal number of concurrent copies reading from the same device.
+     */
+    private final int maxCopiesPerSource;
+
+    /**
+     * The maximal number of concurrent copies writing to the same device.
+     */
+    private final int maxCopiesPerDestination;
+
+    /**
+     * The file stores of folders that have already been resolved.
+     * <p>
+     * Resolving the {@link FileStore} may require a system call, and most files share their folder with other files.
+     */
+    private final Map<Path, Store> storesByFolder = new ConcurrentHashMap<>();
+
+    /**
+     * The devices that have been seen so far, keyed by their role and file store.
+     */
+    private final Map<DeviceKey, Device> devices = new ConcurrentHashMap<>();
+
+    /**
+     * The ordinal of the next device, which determines the global order in which permits are acquired.
+     */
+    private final AtomicInteger nextOrdinal = new AtomicInteger();
+
+    /**
+     * The time (as returned by {@link System#nanoTime()}) at which this limiter was created.
+     */
+    private final long start = System.nanoTime();
+
+    /**
+     * @param maxCopiesPerSource      the maximal number of concurrent copies reading from the same device
+     * @param maxCopiesPerDestination the maximal number of concurrent copies writing to the same device
+     */
+    public DeviceLimiter (int maxCopiesPerSource, int maxCopiesPerDestination)
+    {
+        this.maxCopiesPerSource = maxCopiesPerSource;
+        this.maxCopiesPerDestination = maxCopiesPerDestination;
+    }
+
+    /**
+     * Acquire the permits for an operation, blocking until they are available.
+     *
+     * @param operation the operation
+     * @return the permits, which have to be passed to {@link #release(Permits, long)} after the operation
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Permits acquire (ExportOperation operation)
+            throws
+            InterruptedException
+    {
+        Device source = deviceOf(true, operation.source());
+        Device destination = deviceOf(false, operation.destination());
+
+        // Always acquire in the order of the ordinals, so no two threads can wait for each other.
+        Permits permits = source.ordinal < destination.ordinal
+                ? new Permits(source, destination)
+                : new Permits(destination, source);
+
+        permits.first().semaphore.acquire();
+        try
+        {
+            permits.second().semaphore.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            permits.first().semaphore.release();
+            throw e;
+        }
+
+        return permits;
+    }
+
+    /**
+     * Release the permits of an operation and record the number of bytes that have been copied.
+     *
+     * @param permits     the permits returned by {@link #acquire(ExportOperation)}
+     * @param copiedBytes the number of bytes that have been copied
+     */
+    public void release (Permits permits, long copiedBytes)
+    {
+        permits.second().semaphore.release();
+        permits.first().semaphore.release();
+
+        long now = System.nanoTime();
+        permits.first().record(now, copiedBytes);
+        permits.second().record(now, copiedBytes);
+    }
+
+    /**
+     * Describe the current throughput per device, i.e. the throughput during the last few seconds,
+     * e.g. {@code src sda1 40.2 MiB/s, dst sdb2 38.5 MiB/s}.
+     *
+     * @return the description
+     */
+    public String describeThroughput ()
+    {
+        long now = System.nanoTime();
+        double seconds = Math.max(Math.min(now - start, THROUGHPUT_WINDOW_NANOS) / 1e9, 1e-3);
+
+        // Short names are ambiguous if two devices with the same role share them, fall back to the full description.
+        Map<String, Integer> devicesPerName = new HashMap<>();
+        for (Device device : devices.values())
+        {
+            devicesPerName.merge(device.shortName(), 1, Integer::sum);
+        }
+
+        List<Device> sortedDevices = new ArrayList<>(devices.values());
+        sortedDevices.sort(Comparator.comparing((Device device) -> !device.source)
+                                   .thenComparing(Device::shortName)
+                                   .thenComparingInt(device -> device.ordinal));
+
+        StringBuilder description = new StringBuilder();
+        for (Device device : sortedDevices)
+        {
+            if (!description.isEmpty())
+            {
+                description.append(", ");
+            }
+            String name = devicesPerName.get(device.shortName()) > 1 ? device.fullName() : device.shortName();
+            description.append(name)
+                    .append(' ')
+                    .append(ByteFormatter.format((long) (device.bytesSince(now - THROUGHPUT_WINDOW_NANOS) / seconds)))
+                    .append("/s");
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * Determine the device of a path.
+     *
+     * @param source whether the path is read from (otherwise, it is written to)
+     * @param path   the path to a file
+     * @return the device
+     */
+    private Device deviceOf (boolean source, Path path)
+    {
+        Path folder = path.toAbsolutePath().getParent();
+        Store store = storesByFolder.computeIfAbsent(folder, DeviceLimiter::resolveStore);
+        return devices.computeIfAbsent(new DeviceKey(source, store.identity()),
+                                       (key) -> new Device(source,
+                                                           store,
+                                                           nextOrdinal.getAndIncrement(),
+                                                           source ? maxCopiesPerSource : maxCopiesPerDestination));
+    }
+
+    /**
+     * Determine the file store of a folder.
+     *
+     * @param folder an existing folder
+     * @return the file store, or the root of the folder if the file store cannot be determined
+     */
+    private static Store resolveStore (Path folder)
+    {
+        try
+        {
+            FileStore fileStore = Files.getFileStore(folder);
+
+            // The name is e.g. /dev/sda1 on Linux or the volume label under Windows, only keep the last segment.
+            String name = fileStore.name();
+            if (name == null || name.isBlank())
+            {
+                name = fileStore.toString();
+            }
+            return new Store(fileStore, name.substring(name.lastIndexOf('/') + 1), fileStore.toString());
+        }
+        catch (IOException e)
+        {
+            Logging.getLogger().debug("Could not determine the file store of " + folder + ": " + e.getMessage());
+            Path root = folder.getRoot();
+            return new Store(root, String.valueOf(root), String.valueOf(root));
+        }
+    }
+
+    /**
+     * The permits held by an operation, in the order in which they have been acquired.
+     *
+     * @param first  the device whose permit has been acquired first
+     * @param second the device whose permit has been acquired second
+     */
+    public record Permits(Device first, Device second)
+    {
+    }
+
+    /**
+     * A resolved file store.
+     *
+     * @param identity  the {@link FileStore}, or the root of the path if the file store cannot be determined
+     * @param shortName a short name for display, e.g. sda1
+     * @param fullName  an unambiguous name for display, e.g. /mnt/data (/dev/sda1)
+     */
+    private record Store(Object identity, String shortName, String fullName)
+    {
+    }
+
+    /**
+     * The key of a device.
+     *
+     * @param source   whether the device is read from (otherwise, it is written to)
+     * @param identity the identity of the file store, see {@link Store#identity()}
+     */
+    private record DeviceKey(boolean source, Object identity)
+    {
+    }
+
+    /**
+     * A device in the role of a source or a destination, together with its semaphore and the recently copied bytes.
+     */
+    public static final class Device
+    {
+        /**
+         * Whether the device is read from (otherwise, it is written to).
+         */
+        private final boolean source;
+
+        /**
+         * The file store of the device.
+         */
+        private final Store store;
+
+        /**
+         * The position of the device in the global order in which permits are acquired.
+         */
+        private final int ordinal;
+
+        /**
+         * The semaphore limiting the concurrent copies.
+         */
+        private final Semaphore semaphore;
+
+        /**
+         * The completed copies within the throughput window as pairs of time (as returned by {@link System#nanoTime()})
+         * and number of bytes, oldest first, guarded by synchronizing on it.
+         */
+        private final Deque<long[]> recentCopies = new ArrayDeque<>();
+
+        /**
+         * @param source  whether the device is read from (otherwise, it is written to)
+         * @param store   the file store of the device
+         * @param ordinal the position of the device in the global order in which permits are acquired
+         * @param permits the maximal number of concurrent copies
+         */
+        private Device (boolean source, Store store, int ordinal, int permits)
+        {
+            this.source = source;
+            this.store = store;
+            this.ordinal = ordinal;
+            this.semaphore = new Semaphore(permits, true);
+        }
+
+        /**
+         * @return a short name for display, e.g. {@code src sda1}
+         */
+        private String shortName ()
+        {
+            return (source ? "src " : "dst ") + store.shortName();
+        }
+
+        /**
+         * @return an unambiguous name for display, e.g. {@code src /mnt/data (/dev/sda1)}
+         */
+        private String fullName ()
+        {
+            return (source ? "src " : "dst ") + store.fullName();
+        }
+
+        /**
+         * Record a completed copy and forget the copies that have left the throughput window.
+         *
+         * @param time  the time of completion (as returned by {@link System#nanoTime()})
+         * @param bytes the number of bytes that have been copied
+         */
+        private void record (long time, long bytes)
+        {
+            synchronized (recentCopies)
+            {
+                recentCopies.addLast(new long[]{time, bytes});
+                forgetBefore(time - THROUGHPUT_WINDOW_NANOS);
+            }
+        }
+
+        /**
+         * Compute the number of bytes copied since a point in time.
+         *
+         * @param since the point in time (as returned by {@link System#nanoTime()})
+         * @return the number of bytes
+         */
+        private long bytesSince (long since)
+        {
+            synchronized (recentCopies)
+            {
+                forgetBefore(since);
+
+                long bytes = 0;
+                for (long[] copy : recentCopies)
+                {
+                    bytes += copy[1];
+                }
+                return bytes;
+            }
+        }
+
+        /**
+         * Forget the copies that have completed before a point in time. Has to be called while holding the lock.
+         *
+         * @param since the point in time (as returned by {@link System#nanoTime()})
+         */
+        private void forgetBefore (long since)
+        {
+            while (!recentCopies.isEmpty() && recentCopies.peekFirst()[0] - since < 0)
+            {
+                recentCopies.removeFirst();
+            }
+        }
+    }
+}
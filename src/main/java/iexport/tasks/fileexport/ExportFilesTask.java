@@ -18,43 +18,54 @@
 package iexport.tasks.fileexport;
 
 import iexport.itunes.Library;
-import iexport.itunes.Playlist;
-import iexport.itunes.Track;
 import iexport.logging.Logging;
-import iexport.parsing.sorting.TrackComparator;
 import iexport.settings.RawTaskSettings;
 import iexport.tasks.Task;
+import iexport.tasks.fileexport.copying.*;
+import iexport.tasks.fileexport.verification.ChecksumManifest;
+import iexport.tasks.fileexport.verification.Crc32cHasher;
 import iexport.utils.FolderDeleter;
-import iexport.utils.IntegerFormatter;
 import iexport.utils.ProgressPrinter;
 
-import java.io.File;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.Predicate;
-
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
 
 /**
  * An advanced task that exports iTunes playlists as folders.
  * <p>
  * For each playlist in iTunes, this task will create a folder inside tasks.exportFiles.outputFolder
  * and then copy all files for tracks inside that playlist into that folder.
+ * <p>
+ * The task first computes an {@link ExportPlan} using {@link ExportPlanner}
+ * that resolves all source paths, destination paths, and file sizes.
+ * If tasks.exportFiles.dryRun is set, the task stops after reporting the plan.
+ * Otherwise, the operations of the plan are executed in the order determined by {@link ExportScheduler}.
+ * <p>
+ * Completed operations are recorded in an {@link ExportJournal} in the output folder,
+ * so that an interrupted export can be resumed using tasks.exportFiles.resume.
+ * If copying a file fails, the task continues with the remaining files and fails at the end.
+ * <p>
+ * Files can be copied by several threads (tasks.exportFiles.copyThreads).
+ * The number of concurrent copies per device is limited by a {@link DeviceLimiter},
+ * and the total bandwidth can be limited by a {@link BandwidthThrottle}.
+ * <p>
+ * If tasks.exportFiles.verify is set, the checksum of each file is computed while copying it,
+ * the copy is read back and compared against it,
+ * and the checksums are written to a {@link ChecksumManifest} that can be checked later by
+ * {@link iexport.tasks.fileexport.verification.VerifyExportTask}.
  */
 public class ExportFilesTask extends Task
 {
-    /**
-     * A list of tracks that should be exported into the root folder
-     */
-    private final List<Track> toRootFolder = new ArrayList<>();
-
     /**
      * Printer for a progress bar.
      */
@@ -66,25 +77,48 @@ public class ExportFilesTask extends Task
     private ExportFilesTaskSettings settings;
 
     /**
-     * The number of tracks that have been processed
-     * <p>
-     * Needed for displaying a progress bar.
+     * The strategy used for copying files, see tasks.exportFiles.copyStrategy.
      */
-    private int tracksProcessed = 0;
+    private CopyStrategy copyStrategy;
 
     /**
-     * The number of the next folder that should be exported.
+     * If tasks.exportFiles.verify is set, the strategy used for copying files while computing their checksum, otherwise null.
      * <p>
-     * Needed for folder numbering.
+     * This is the same object as {@link #copyStrategy}.
+     */
+    private DirectBufferCopyStrategy checksumCopyStrategy;
+
+    /**
+     * If tasks.exportFiles.verify is set, the checksums of the exported files, otherwise null.
      */
-    private int nextFolderNumber = 0;
+    private ChecksumManifest checksumManifest;
 
     /**
-     * The total number of folders that should be exported.
+     * Throughput metrics for {@link #copyStrategy}.
+     */
+    private CopyStatistics copyStatistics;
+
+    /**
+     * Limits the number of concurrent copies per device and tracks the throughput per device.
+     */
+    private DeviceLimiter deviceLimiter;
+
+    /**
+     * The copy operations that failed.
+     */
+    private List<ExportOperation> failedOperations;
+
+    /**
+     * The number of copy operations that have been skipped because they have been completed by a previous run.
+     */
+    private final AtomicInteger skippedOperations = new AtomicInteger();
+
+    /**
+     * The number of tracks that have been processed
      * <p>
-     * Needed for folder numbering.
+     * Needed for displaying a progress bar.
      */
-    private int totalFolderNumber = 0;
+    private final AtomicInteger tracksProcessed = new AtomicInteger();
 
     @Override
     public String getTaskName ()
@@ -138,298 +172,414 @@ public class ExportFilesTask extends Task
     @Override
     public void run ()
     {
-        // Prepare the output folder
-        prepareOutputFolder();
-
-        // Check which playlists have to be processed (i.e. they are not ignored).
-        List<Playlist> playlistsToProcess = library.playlists().stream().filter(Predicate.not(this::isIgnored)).toList();
-
-        // Initialize some variables
-        tracksProcessed = 0;
-        nextFolderNumber = settings.getInitialNumber();
-        totalFolderNumber = playlistsToProcess.size();
-
-        int totalTrackNumber = (int) playlistsToProcess.stream().mapToLong(Playlist::getNumberOfTracks).sum();
-
-        progressPrinter = new ProgressPrinter(totalTrackNumber);
+        // Compute the plan
+        Logging.getLogger().message("Planning the export.");
+        ExportPlan plan = new ExportPlanner(library, settings).plan();
+        plan.report();
 
-        Logging.getLogger().message("Exporting " + totalFolderNumber + " playlists with "
-                + totalTrackNumber + " tracks.");
-
-        // Export each playlist
-        playlistsToProcess.forEach(this::exportPlaylist);
-
-        // Export the tracks that should go to the root folder
-
-        // The tracks in the root folder might come from different playlists, we should sort them.
-        toRootFolder.sort(new TrackComparator());
+        // If tasks.exportFiles.dryRun is set, we are done
+        if (settings.getDryRun())
+        {
+            Logging.getLogger().message("tasks.exportFiles.dryRun is set to true, not exporting anything.");
+            return;
+        }
 
-        // Now we can copy them
-        copyTracks(toRootFolder, Paths.get(settings.getOutputFolder()));
-    }
+        // Prepare the output folder
+        boolean resume = prepareOutputFolder(plan.outputFolder());
 
-    /**
-     * Prepare the output folder,
-     * i.e. check whether it exists,
-     * delete it if tasks.exportFiles.deleteFolder is set,
-     * then recreate it.
-     */
-    private void prepareOutputFolder ()
-    {
-        // Get the location of the output folder.
-        String outputFolderPathAsString = settings.getOutputFolder();
-        Path outputFolderPath = Paths.get(outputFolderPathAsString);
+        // Set up the strategy for copying files
+        copyStrategy = createCopyStrategy();
+        copyStatistics = new CopyStatistics(copyStrategy.getName());
 
-        if (Files.exists(outputFolderPath))
+        // Create the folders
+        for (Path folder : plan.folders())
         {
-            // The folder already exists.
-            if (!settings.getDeleteFolder())
+            try
             {
-                throw new RuntimeException("The specified output folder " + outputFolderPathAsString + " already exists. Delete the folder or set tasks.exportFiles.deleteFolder to true.");
+                Files.createDirectories(folder);
             }
-            else
+            catch (IOException e)
             {
-                // Delete the folder
-                Logging.getLogger().message("Folder " + outputFolderPathAsString + " exists and tasks.exportFiles.deleteFolder is set to true, deleting it.");
-
-                try
-                {
-                    FolderDeleter.recursiveDelete(outputFolderPath);
-                }
-                catch (IOException e)
-                {
-                    throw new RuntimeException("Deleting the folder " + outputFolderPathAsString + "failed", e);
-                }
+                throw new RuntimeException(" Creating the directory at " + folder + " failed", e);
             }
+        }
 
-            // Now the folder definitely does not exist and we can delete it
+        // Set up the checksum manifest, keeping the checksums of files that have been exported previously
+        checksumManifest = null;
+        if (settings.getVerify())
+        {
             try
             {
-                Logging.getLogger().debug("Creating empty folder " + outputFolderPathAsString + ".");
-
-                Files.createDirectories(outputFolderPath);
+                checksumManifest = resume ? ChecksumManifest.load(plan.outputFolder()) : new ChecksumManifest(plan.outputFolder());
             }
             catch (IOException e)
             {
-                throw new RuntimeException("Creating the folder " + outputFolderPathAsString + "failed ", e);
+                throw new RuntimeException("Reading the checksum manifest in " + plan.outputFolder() + " failed", e);
             }
         }
-    }
 
-    private void exportPlaylist (Playlist playlist)
-    {
-        // Check if this playlist should go to the root folder.
-        // If yes, we will process it later.
-        if (settings.getToRootFolder().contains(playlist.name()))
-        {
-            toRootFolder.addAll(playlist.tracks());
-            return;
-        }
+        // Initialize some variables
+        tracksProcessed.set(0);
+        skippedOperations.set(0);
+        failedOperations = Collections.synchronizedList(new ArrayList<>());
+        progressPrinter = new ProgressPrinter(plan.operations().size());
+        deviceLimiter = new DeviceLimiter(settings.getMaxCopiesPerSourceDevice(), settings.getMaxCopiesPerDestinationDevice());
 
-        Logging.getLogger().debug("Exporting playlist " + playlist);
+        Logging.getLogger().message("Exporting " + (plan.folders().size() - 1) + " playlists with "
+                + plan.operations().size() + " tracks.");
 
-        // Create the folder this playlist should be exported to
-        Path destination = destinationFolder(playlist);
+        // Order the copy operations according to tasks.exportFiles.copyOrder
+        List<ExportOperation> operations = new ExportScheduler(settings).schedule(plan.operations());
 
+        // Execute the copy operations, recording them in the journal
+        ExportJournal journal;
         try
         {
-            Files.createDirectories(destination);
+            journal = ExportJournal.open(plan.outputFolder(), resume);
         }
         catch (IOException e)
         {
-            throw new RuntimeException(" Creating the directory at " + destination + " failed", e);
+            throw new RuntimeException("Opening the export journal in " + plan.outputFolder() + " failed", e);
         }
 
-        copyTracks(playlist.tracks(), destination);
-    }
+        if (resume)
+        {
+            Logging.getLogger().message("Resuming export, " + journal.getPreviousEntryCount() + " files have been exported previously.");
+        }
 
-    /**
-     * Check if a playlist should not be exported
-     * because it is a folder and tasks.exportFiles.onlyActualPlaylists is set,
-     * because it is distinguished and tasks.exportFiles.ignoreDistinguishedPlaylists is set,
-     * or because its name is specified in tasks.exportFiles.ignorePlaylists.
-     *
-     * @param playlist the play
-     * @return true iff it should not be exported
-     */
-    private boolean isIgnored (Playlist playlist)
-    {
-        return
-                (settings.getIgnoreDistinguishedPlaylists() && playlist.distinguishedKind() != null)
-                        ||
-                        (settings.getOnlyActualPlaylists() && playlist.isFolder())
-                        ||
-                        (playlist.name() != null && settings.getIgnorePlaylists().contains(playlist.name()))
-                ;
+        // Closing the journal synchronizes it, even if the export is aborted by an exception
+        boolean completed = false;
+        try (ExportJournal openedJournal = journal)
+        {
+            executeOperations(operations, openedJournal);
+            completed = true;
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Writing the export journal in " + plan.outputFolder() + " failed", e);
+        }
+        finally
+        {
+            // Write the checksums, also if some files failed or the export is aborted,
+            // so that the copied files can be verified later
+            if (checksumManifest != null)
+            {
+                writeChecksumManifest(plan.outputFolder(), completed);
+            }
+        }
+
+        // Report the throughput of the copy strategy
+        copyStatistics.report();
+
+        if (skippedOperations.get() > 0)
+        {
+            Logging.getLogger().message("Skipped " + skippedOperations.get() + " files that have already been exported by a previous run.");
+        }
+
+        if (!failedOperations.isEmpty())
+        {
+            Logging.getLogger().error("Exporting " + failedOperations.size() + " files failed:");
+            for (ExportOperation operation : failedOperations)
+            {
+                Logging.getLogger().error(1, operation.source() + " -> " + operation.destination());
+            }
+
+            throw new RuntimeException("Exporting " + failedOperations.size() + " of " + plan.operations().size() + " files failed."
+                    + " Fix the problem and set tasks.exportFiles.resume to true to export only the missing files.");
+        }
     }
 
     /**
-     * Compute the path to the file to which the playlist should be exported,
-     * taking tasks.exportFiles.hierarchicalNames and tasks.exportFiles.organizeInFolders into account.
+     * Execute the copy operations using tasks.exportFiles.copyThreads threads.
+     * <p>
+     * {@link ExportPlanner} emits at most one operation per destination, so concurrent operations never write the same file.
      *
-     * @param playlist the playlist
-     * @return the path
+     * @param operations the operations, in the order in which they should be started
+     * @param journal    the journal in which completed operations are recorded
      */
-    private Path destinationFolder (Playlist playlist)
+    private void executeOperations (List<ExportOperation> operations, ExportJournal journal)
     {
-        String outputFolder = settings.getOutputFolder();
+        int copyThreads = settings.getCopyThreads();
 
-        String folderName = "";
+        if (copyThreads == 1)
+        {
+            operations.forEach((operation) -> copyTrack(operation, journal));
+            return;
+        }
 
-        // If tasks.exportFiles.folderNumbering is set, we should start the folder name with a number
-        if (settings.getFolderNumbering())
+        ExecutorService executor = Executors.newFixedThreadPool(copyThreads);
+        try
         {
-            // If tasks.exportFiles.padFolderNumbers, we should pad the folder numbers to be of the same length
-            String folderNumber;
-            if (settings.getPadFolderNumbers())
+            List<Future<?>> futures = new ArrayList<>(operations.size());
+            for (ExportOperation operation : operations)
             {
-                folderNumber = IntegerFormatter.pad(nextFolderNumber, IntegerFormatter.digits(totalFolderNumber), '0');
+                futures.add(executor.submit(() -> copyTrack(operation, journal)));
             }
-            else
+
+            // Wait for all operations, propagating the first unexpected exception.
+            for (Future<?> future : futures)
             {
-                folderNumber = Integer.toString(nextFolderNumber);
+                future.get();
             }
-            nextFolderNumber++;
-
-            folderName += folderNumber;
-            folderName += " - ";
         }
-
-        if (settings.getHierarchicalNames() && playlist.ancestry() != null)
+        catch (InterruptedException e)
         {
-            // If tasks.exportFiles.hierarchicalNames is set, the folder name is composed of the ancestry
-            folderName += playlist.ancestry().stream().map(Playlist::name).reduce((s1, s2) -> s1 + " - " + s2).orElse(playlist.name());
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while exporting", e);
         }
-        else
+        catch (ExecutionException e)
         {
-            // Otherwise, the folder name is simply the name of the playlist
-            folderName = playlist.name();
+            throw new RuntimeException("Exporting failed", e.getCause());
         }
-
-        // If tasks.exportFiles.normalize is set, we should normalize the name to only use ASCII
-        if (settings.getNormalize())
+        finally
         {
-            folderName = Normalizer
-                    .normalize(folderName, Normalizer.Form.NFD)
-                    .replaceAll("[^\\p{ASCII}]", "");
+            executor.shutdownNow();
         }
-
-        return Paths.get(outputFolder).resolve(folderName);
     }
 
     /**
-     * Compute the path to the file to which a track should be exported.
+     * Write {@link #checksumManifest}.
      *
-     * @param source                       the source path of the track
-     * @param trackNumber                  the track number
-     * @param totalTrackNumberInThisFolder the total number of tracks in that folder
-     * @return the destination path as string
+     * @param outputFolder the output folder of the export
+     * @param completed    whether all operations have been executed; if not, an exception is already being thrown,
+     *                     so a failure to write the manifest is only logged instead of replacing that exception
      */
-    private String destinationFilename (Path source, int trackNumber, int totalTrackNumberInThisFolder)
+    private void writeChecksumManifest (Path outputFolder, boolean completed)
     {
-        String fileName = "";
-
-        // If tasks.exportFiles.trackNumbering is set, we should start the file name with a number
-        if (settings.getTrackNumbering())
+        try
         {
-            // If tasks.exportFiles.padTrackNumbers is set, we should pad the track numbers to be of the same length
-            String fileNumber;
-            if (settings.getPadTrackNumbers())
+            checksumManifest.write();
+        }
+        catch (IOException e)
+        {
+            if (completed)
             {
-                fileNumber = IntegerFormatter.pad(trackNumber, IntegerFormatter.digits(totalTrackNumberInThisFolder), '0');
+                throw new RuntimeException("Writing the checksum manifest in " + outputFolder + " failed", e);
             }
-            else
+            Logging.getLogger().error("Writing the checksum manifest in " + outputFolder + " failed: " + e);
+            return;
+        }
+        Logging.getLogger().message("Wrote the checksums of " + checksumManifest.getEntries().size() + " files to "
+                + outputFolder.resolve(ChecksumManifest.MANIFEST_FILE_NAME) + ".");
+    }
+
+    /**
+     * Create the {@link CopyStrategy} specified by tasks.exportFiles.copyStrategy
+     * (or {@link DirectBufferCopyStrategy} if tasks.exportFiles.verify is set),
+     * limited to tasks.exportFiles.maxBytesPerSecond.
+     *
+     * @return the copy strategy
+     */
+    private CopyStrategy createCopyStrategy ()
+    {
+        String copyStrategyName = settings.getCopyStrategy();
+        BandwidthThrottle throttle = new BandwidthThrottle(settings.getMaxBytesPerSecond());
+
+        // Computing checksums while copying requires the data to pass through our own buffer.
+        checksumCopyStrategy = null;
+        if (settings.getVerify())
+        {
+            if (!DirectBufferCopyStrategy.NAME.equals(copyStrategyName))
             {
-                fileNumber = Integer.toString(trackNumber);
+                Logging.getLogger().message("tasks.exportFiles.verify is set to true, using copy strategy \"" + DirectBufferCopyStrategy.NAME
+                        + "\" instead of \"" + copyStrategyName + "\".");
             }
-
-            fileName += fileNumber;
-            fileName += " - ";
+            checksumCopyStrategy = new DirectBufferCopyStrategy(settings.getChunkSize(), throttle);
+            return checksumCopyStrategy;
         }
 
-        // Then we can use the real filename on the dic.
-        fileName += source.getFileName().toString();
+        return switch (copyStrategyName)
+                {
+                    case FilesCopyStrategy.NAME -> new FilesCopyStrategy(throttle);
+                    case TransferToCopyStrategy.NAME -> new TransferToCopyStrategy(settings.getChunkSize(), throttle);
+                    case DirectBufferCopyStrategy.NAME -> new DirectBufferCopyStrategy(settings.getChunkSize(), throttle);
+                    default -> throw new RuntimeException("Unknown copy strategy \"" + copyStrategyName + "\" for "
+                            + settings.getYamlPath("copyStrategy") + ", expected one of "
+                            + List.of(FilesCopyStrategy.NAME, TransferToCopyStrategy.NAME, DirectBufferCopyStrategy.NAME));
+                };
+    }
 
-        // If tasks.exportFiles.normalize is set, we should normalize the name to only use ASCII
-        if (settings.getNormalize())
+    /**
+     * Read back the copy of a file and compare its checksum against the checksum of the source,
+     * then record it in {@link #checksumManifest}.
+     * <p>
+     * The copy is read right after it has been written, so the data usually comes from the page cache of the operating system
+     * rather than from the storage device. This checks the copy path (reading, buffering and writing),
+     * but not whether the device has stored the data correctly; the task verifyExport can be run later
+     * (e.g. after unmounting and remounting the device) to check that.
+     *
+     * @param operation      the operation that has been executed
+     * @param sourceChecksum the checksum of the source file, computed while copying it
+     * @param copiedBytes    the number of bytes that have been copied
+     * @throws IOException if reading the copy fails or the checksums do not match
+     */
+    private void verifyCopy (ExportOperation operation, long sourceChecksum, long copiedBytes)
+            throws
+            IOException
+    {
+        long destinationChecksum = Crc32cHasher.hash(operation.destination());
+
+        if (destinationChecksum != sourceChecksum)
         {
-            fileName = Normalizer
-                    .normalize(fileName, Normalizer.Form.NFD)
-                    .replaceAll("[^\\p{ASCII}]", "");
+            throw new IOException("Checksum mismatch: source has " + Crc32cHasher.format(sourceChecksum)
+                    + ", copy has " + Crc32cHasher.format(destinationChecksum));
         }
 
-        return fileName;
+        checksumManifest.put(operation.destination(), sourceChecksum, copiedBytes);
     }
 
     /**
-     * Copy the source files for a list of tracks into a destination folder,
-     * renaming them appropriately.
+     * Prepare the output folder,
+     * i.e. check whether it exists,
+     * keep it if tasks.exportFiles.resume is set and it contains a journal,
+     * otherwise delete it if tasks.exportFiles.deleteFolder is set,
+     * then recreate it.
      *
-     * @param tracks      a list of tracks
-     * @param destination the destination folder
+     * @param outputFolderPath the output folder
+     * @return true if the export should be resumed, false if it starts from an empty output folder
      */
-    private void copyTracks (List<Track> tracks, Path destination)
+    private boolean prepareOutputFolder (Path outputFolderPath)
     {
-        int trackNumber = 0;
-        int totalTrackNumberInThisFolder = tracks.size();
+        String outputFolderPathAsString = outputFolderPath.toString();
 
-        for (Track track : tracks)
+        if (settings.getResume() && Files.exists(outputFolderPath))
         {
-            trackNumber++;
-
-            String uriString = track.location();
-            URI uri;
-            try
+            if (!Files.exists(outputFolderPath.resolve(ExportJournal.JOURNAL_FILE_NAME)))
             {
-                uri = new URI(uriString);
+                throw new RuntimeException("tasks.exportFiles.resume is set to true, but the output folder " + outputFolderPathAsString
+                        + " contains no export journal (" + ExportJournal.JOURNAL_FILE_NAME + "). Delete the folder or set tasks.exportFiles.resume to false.");
             }
-            catch (URISyntaxException e)
+
+            Logging.getLogger().message("Folder " + outputFolderPathAsString + " contains an export journal and tasks.exportFiles.resume is set to true, resuming the export.");
+            return true;
+        }
+
+        if (Files.exists(outputFolderPath))
+        {
+            // The folder already exists.
+            if (!settings.getDeleteFolder())
             {
-                Logging.getLogger().warning("Error when converting track " + track + ": Bad URI. " + e + " (" + e.getMessage() + "); skipping this track.");
-                return;
+                throw new RuntimeException("The specified output folder " + outputFolderPathAsString + " already exists. Delete the folder or set tasks.exportFiles.deleteFolder to true.");
             }
-
-            // We can only deal with local files
-            if (!uri.getAuthority().equals("localhost"))
+            else
             {
-                Logging.getLogger().warning("Track " + track + " is at remote location " + uriString + "; skipping this track.");
-                return;
+                // Delete the folder
+                Logging.getLogger().message("Folder " + outputFolderPathAsString + " exists and tasks.exportFiles.deleteFolder is set to true, deleting it.");
+
+                try
+                {
+                    FolderDeleter.recursiveDelete(outputFolderPath);
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException("Deleting the folder " + outputFolderPathAsString + "failed", e);
+                }
             }
 
-            // Get of the authority (e.g. localhost)
-            String pathString = uri.getPath();
+            // Now the folder definitely does not exist and we can delete it
+            try
+            {
+                Logging.getLogger().debug("Creating empty folder " + outputFolderPathAsString + ".");
 
-            // Under Windows, the String may be of the shape /E:/... something
-            // We need to get rid of the initial backslash
-            if (pathString.contains(":") && pathString.charAt(0) == '/')
+                Files.createDirectories(outputFolderPath);
+            }
+            catch (IOException e)
             {
-                pathString = pathString.substring(1);
+                throw new RuntimeException("Creating the folder " + outputFolderPathAsString + "failed ", e);
             }
+        }
 
-            Path path = Paths.get(pathString);
+        return false;
+    }
 
-            String fileName = destinationFilename(path, trackNumber, totalTrackNumberInThisFolder);
+    /**
+     * Execute a single copy operation of the plan,
+     * unless the journal says that it has already been completed by a previous run.
+     * <p>
+     * If copying fails, the operation is added to {@link #failedOperations}.
+     * This method may be called by several threads concurrently.
+     *
+     * @param operation the operation
+     * @param journal   the journal in which completed operations are recorded
+     */
+    private void copyTrack (ExportOperation operation, ExportJournal journal)
+    {
+        Path destination = operation.destination();
 
-            String destinationString = destination.toString();
-            destinationString += File.separator;
-            destinationString += fileName;
-            Path destinationPath = Paths.get(destinationString);
+        if (journal.isCompleted(operation, settings.getVerify()))
+        {
+            Logging.getLogger().debug("Skipping " + destination + ", it has already been exported.");
+            skippedOperations.incrementAndGet();
 
+            // The manifest may not have been written if the previous run crashed, the journal has the checksum.
+            if (checksumManifest != null)
+            {
+                checksumManifest.put(destination, journal.getPreviousChecksum(operation), operation.size());
+            }
+        }
+        else
+        {
+            boolean copied = false;
+            long copiedBytes = 0;
+            long checksum = ExportJournal.NO_CHECKSUM;
+
+            DeviceLimiter.Permits permits;
             try
             {
-                Files.copy(path, destinationPath, REPLACE_EXISTING);
+                permits = deviceLimiter.acquire(operation);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to copy " + operation.source(), e);
+            }
+
+            try
+            {
+                long startCopy = System.nanoTime();
+                if (checksumCopyStrategy == null)
+                {
+                    copiedBytes = copyStrategy.copy(operation.source(), destination);
+                    copyStatistics.record(copiedBytes, System.nanoTime() - startCopy);
+                }
+                else
+                {
+                    CRC32C sourceChecksum = new CRC32C();
+                    copiedBytes = checksumCopyStrategy.copy(operation.source(), destination, sourceChecksum);
+                    copyStatistics.record(copiedBytes, System.nanoTime() - startCopy);
+
+                    verifyCopy(operation, sourceChecksum.getValue(), copiedBytes);
+                    checksum = sourceChecksum.getValue();
+                }
+                copied = true;
             }
             catch (IOException e)
             {
-                e.printStackTrace();
-                throw new RuntimeException();
+                Logging.getLogger().error("Copying " + operation.source() + " to " + destination + " failed: " + e);
+                failedOperations.add(operation);
+            }
+            finally
+            {
+                deviceLimiter.release(permits, copiedBytes);
             }
 
-            tracksProcessed++;
-            if (settings.getShowContinuousProgress())
+            if (copied)
             {
-                progressPrinter.update(tracksProcessed, "Exporting to " + destination.getFileName().toString());
+                try
+                {
+                    journal.record(operation, checksum);
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException("Writing the export journal failed", e);
+                }
             }
         }
+
+        int processed = tracksProcessed.incrementAndGet();
+        if (settings.getShowContinuousProgress())
+        {
+            progressPrinter.update(processed, "Exporting: " + deviceLimiter.describeThroughput());
+        }
     }
 }
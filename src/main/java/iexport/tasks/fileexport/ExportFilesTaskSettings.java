@@ -233,6 +233,135 @@ public class ExportFilesTaskSettings extends TaskSettings
      */
     private static final Boolean SETTING_NORMALIZE_DEFAULT_VALUE = true;
 
+    /**
+     * tasks.exportFiles.copyStrategy
+     * <p>
+     * How the files should be copied.
+     * "files" uses the default copy mechanism of Java.
+     * "transferTo" lets the operating system copy the data directly (zero-copy), which is usually fastest on local disks.
+     * "directBuffer" copies the data through a buffer of size tasks.exportFiles.chunkSize,
+     * which may work better for USB flash drives and network shares.
+     */
+    private static final String SETTING_COPY_STRATEGY = "copyStrategy";
+
+    /**
+     * Default value for tasks.exportFiles.copyStrategy
+     */
+    private static final String SETTING_COPY_STRATEGY_DEFAULT_VALUE = "files";
+
+    /**
+     * tasks.exportFiles.chunkSize
+     * <p>
+     * The number of bytes that are copied at once by the copy strategies "transferTo" and "directBuffer".
+     */
+    private static final String SETTING_CHUNK_SIZE = "chunkSize";
+
+    /**
+     * Default value for tasks.exportFiles.chunkSize
+     */
+    private static final Integer SETTING_CHUNK_SIZE_DEFAULT_VALUE = 8 * 1024 * 1024; // 8 MiB
+
+    /**
+     * tasks.exportFiles.dryRun
+     * <p>
+     * If set to true, iExport will only plan the export and report
+     * the number of files, the total size, missing source files and whether there is enough free space,
+     * but it will not create or delete any folders or copy any files.
+     */
+    private static final String SETTING_DRY_RUN = "dryRun";
+
+    /**
+     * Default value for tasks.exportFiles.dryRun
+     */
+    private static final Boolean SETTING_DRY_RUN_DEFAULT_VALUE = false;
+
+    /**
+     * tasks.exportFiles.resume
+     * <p>
+     * If set to true and the output folder contains a journal from a previous (interrupted) export,
+     * the export is resumed: files that have already been copied and whose source has not changed are skipped.
+     * Takes precedence over tasks.exportFiles.deleteFolder.
+     */
+    private static final String SETTING_RESUME = "resume";
+
+    /**
+     * Default value for tasks.exportFiles.resume
+     */
+    private static final Boolean SETTING_RESUME_DEFAULT_VALUE = false;
+
+    /**
+     * tasks.exportFiles.copyOrder
+     * <p>
+     * The order in which files are copied, see {@link ExportScheduler}.
+     */
+    private static final String SETTING_COPY_ORDER = "copyOrder";
+
+    /**
+     * Default value for tasks.exportFiles.copyOrder
+     */
+    private static final String SETTING_COPY_ORDER_DEFAULT_VALUE = "playlist";
+
+    /**
+     * tasks.exportFiles.copyThreads
+     * <p>
+     * The number of files that are copied concurrently.
+     */
+    private static final String SETTING_COPY_THREADS = "copyThreads";
+
+    /**
+     * Default value for tasks.exportFiles.copyThreads
+     */
+    private static final Integer SETTING_COPY_THREADS_DEFAULT_VALUE = 1;
+
+    /**
+     * tasks.exportFiles.maxCopiesPerSourceDevice
+     * <p>
+     * The maximal number of concurrent copies reading from the same device, see {@link DeviceLimiter}.
+     */
+    private static final String SETTING_MAX_COPIES_PER_SOURCE_DEVICE = "maxCopiesPerSourceDevice";
+
+    /**
+     * Default value for tasks.exportFiles.maxCopiesPerSourceDevice
+     */
+    private static final Integer SETTING_MAX_COPIES_PER_SOURCE_DEVICE_DEFAULT_VALUE = 2;
+
+    /**
+     * tasks.exportFiles.maxCopiesPerDestinationDevice
+     * <p>
+     * The maximal number of concurrent copies writing to the same device, see {@link DeviceLimiter}.
+     */
+    private static final String SETTING_MAX_COPIES_PER_DESTINATION_DEVICE = "maxCopiesPerDestinationDevice";
+
+    /**
+     * Default value for tasks.exportFiles.maxCopiesPerDestinationDevice
+     */
+    private static final Integer SETTING_MAX_COPIES_PER_DESTINATION_DEVICE_DEFAULT_VALUE = 2;
+
+    /**
+     * tasks.exportFiles.maxBytesPerSecond
+     * <p>
+     * The maximal number of bytes copied per second (over all threads), or 0 for no limit.
+     */
+    private static final String SETTING_MAX_BYTES_PER_SECOND = "maxBytesPerSecond";
+
+    /**
+     * Default value for tasks.exportFiles.maxBytesPerSecond
+     */
+    private static final Integer SETTING_MAX_BYTES_PER_SECOND_DEFAULT_VALUE = 0;
+
+    /**
+     * tasks.exportFiles.verify
+     * <p>
+     * If set to true, the checksum of each file is computed while copying it and compared to the checksum of the copy,
+     * and the checksums are written to a {@link iexport.tasks.fileexport.verification.ChecksumManifest}.
+     */
+    private static final String SETTING_VERIFY = "verify";
+
+    /**
+     * Default value for tasks.exportFiles.verify
+     */
+    private static final Boolean SETTING_VERIFY_DEFAULT_VALUE = false;
+
     static
     {
         // Set default values.
@@ -250,6 +379,16 @@ public class ExportFilesTaskSettings extends TaskSettings
         EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_NORMALIZE, SETTING_NORMALIZE_DEFAULT_VALUE);
         EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_PAD_FOLDER_NUMBERS, SETTING_PAD_FOLDER_NUMBERS_DEFAULT_VALUE);
         EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_IGNORE_DISTINGUISHED_PLAYLISTS, SETTING_IGNORE_DISTINGUISHED_PLAYLISTS_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_COPY_STRATEGY, SETTING_COPY_STRATEGY_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_CHUNK_SIZE, SETTING_CHUNK_SIZE_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_DRY_RUN, SETTING_DRY_RUN_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_RESUME, SETTING_RESUME_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_COPY_ORDER, SETTING_COPY_ORDER_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_COPY_THREADS, SETTING_COPY_THREADS_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_MAX_COPIES_PER_SOURCE_DEVICE, SETTING_MAX_COPIES_PER_SOURCE_DEVICE_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_MAX_COPIES_PER_DESTINATION_DEVICE, SETTING_MAX_COPIES_PER_DESTINATION_DEVICE_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_MAX_BYTES_PER_SECOND, SETTING_MAX_BYTES_PER_SECOND_DEFAULT_VALUE);
+        EXPORT_FILES_DEFAULT_SETTINGS.put(SETTING_VERIFY, SETTING_VERIFY_DEFAULT_VALUE);
     }
 
     public ExportFilesTaskSettings (RawTaskSettings rawTaskSettings)
@@ -582,6 +721,280 @@ public class ExportFilesTaskSettings extends TaskSettings
         }
     }
 
+    /**
+     * @return tasks.exportFiles.copyStrategy
+     */
+    public String getCopyStrategy ()
+    {
+        String key = SETTING_COPY_STRATEGY;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.exportFiles.chunkSize
+     */
+    public int getChunkSize ()
+    {
+        String key = SETTING_CHUNK_SIZE;
+        Object result = getValueFor(key);
+
+        int chunkSize;
+        try
+        {
+            chunkSize = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (chunkSize <= 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    /**
+     * @return tasks.exportFiles.dryRun
+     */
+    public boolean getDryRun ()
+    {
+        String key = SETTING_DRY_RUN;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.exportFiles.resume
+     */
+    public boolean getResume ()
+    {
+        String key = SETTING_RESUME;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.exportFiles.copyOrder
+     */
+    public String getCopyOrder ()
+    {
+        String key = SETTING_COPY_ORDER;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.exportFiles.copyThreads
+     */
+    public int getCopyThreads ()
+    {
+        String key = SETTING_COPY_THREADS;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value <= 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.exportFiles.maxCopiesPerSourceDevice
+     */
+    public int getMaxCopiesPerSourceDevice ()
+    {
+        String key = SETTING_MAX_COPIES_PER_SOURCE_DEVICE;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value <= 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.exportFiles.maxCopiesPerDestinationDevice
+     */
+    public int getMaxCopiesPerDestinationDevice ()
+    {
+        String key = SETTING_MAX_COPIES_PER_DESTINATION_DEVICE;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value <= 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.exportFiles.maxBytesPerSecond
+     */
+    public int getMaxBytesPerSecond ()
+    {
+        String key = SETTING_MAX_BYTES_PER_SECOND;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a non-negative integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.exportFiles.verify
+     */
+    public boolean getVerify ()
+    {
+        String key = SETTING_VERIFY;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
     /**
      * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
      *
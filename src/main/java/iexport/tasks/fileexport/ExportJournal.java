@@ -0,0 +1,432 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport;
+
+import iexport.logging.Logging;
+import iexport.tasks.fileexport.verification.Crc32cHasher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * An append-only journal of the files that have been exported by {@link ExportFilesTask}.
+ * <p>
+ * The journal is stored as the file {@value #JOURNAL_FILE_NAME} in the output folder.
+ * After the header line, it contains one line per successfully copied file of the form
+ * <pre>
+ *     size TAB lastModified TAB checksum TAB source TAB destination
+ * </pre>
+ * where {@code size} and {@code lastModified} describe the source file at the time it was copied,
+ * {@code checksum} is its CRC32C as hexadecimal number if tasks.exportFiles.verify was set (otherwise {@code -}),
+ * {@code source} is the absolute path of the source file,
+ * and {@code destination} is the path of the copied file relative to the output folder (with {@code /} as separator).
+ * Backslashes, tabs and line breaks in the paths are escaped as {@code \\}, {@code \t}, {@code \n} and {@code \r}.
+ * <p>
+ * If an export is interrupted (e.g. by a crash or a full disk),
+ * a rerun with tasks.exportFiles.resume can use the journal to skip files that have already been exported.
+ * A file is only skipped if it has been copied from the same source,
+ * the source has neither changed its size nor its modification time,
+ * and the copied file still exists with the right size.
+ * If tasks.exportFiles.verify is set, the copied file is additionally read and its checksum has to match the recorded one.
+ * <p>
+ * Lines are only written after the corresponding file has been copied completely,
+ * so a file that was being copied during a crash will be copied again.
+ * To avoid slowing down the export, lines are written in batches
+ * and the journal is only synchronized to the storage device every {@value #SYNC_INTERVAL_ENTRIES} entries
+ * or every {@value #SYNC_INTERVAL_MILLIS} milliseconds, whichever comes first.
+ * After a crash, at most the files recorded since the last synchronization will be copied again.
+ */
+public class ExportJournal implements AutoCloseable
+{
+    /**
+     * The name of the journal file inside the output folder.
+     */
+    public static final String JOURNAL_FILE_NAME = ".iexport-journal";
+
+    /**
+     * The first line of the journal file, used to recognize the format.
+     */
+    private static final String HEADER = "iExport journal v2";
+
+    /**
+     * The prefix of the first line of journal files written by any version of iExport.
+     */
+    private static final String HEADER_PREFIX = "iExport journal ";
+
+    /**
+     * The checksum of an entry that has been recorded without checksum, because tasks.exportFiles.verify was not set.
+     */
+    public static final long NO_CHECKSUM = -1;
+
+    /**
+     * The maximal number of entries that are recorded before the journal is synchronized to the storage device.
+     */
+    private static final int SYNC_INTERVAL_ENTRIES = 64;
+
+    /**
+     * The maximal time in milliseconds between recording an entry and synchronizing it to the storage device.
+     */
+    private static final long SYNC_INTERVAL_MILLIS = 2000;
+
+    /**
+     * The output folder of the export.
+     */
+    private final Path outputFolder;
+
+    /**
+     * The channel to which the journal is written.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The entries that have been recorded in a previous run, by relative destination path.
+     */
+    private final Map<String, Entry> previousEntries;
+
+    /**
+     * Entries that have been recorded, but not yet written to {@link #channel}.
+     */
+    private final StringBuilder pending = new StringBuilder();
+
+    /**
+     * The number of entries in {@link #pending}.
+     */
+    private int pendingEntries = 0;
+
+    /**
+     * The time (as returned by {@link System#currentTimeMillis()}) at which the journal was last synchronized.
+     */
+    private long lastSync = System.currentTimeMillis();
+
+    /**
+     * Open the journal in the given output folder for appending.
+     * <p>
+     * If {@code resume} is set and a journal exists, its entries are loaded and new entries are appended to it.
+     * Otherwise, a new journal is started.
+     *
+     * @param outputFolder the output folder of the export (which has to exist)
+     * @param resume       whether entries from a previous run should be loaded
+     * @return the journal
+     * @throws IOException if reading or opening the journal fails
+     */
+    public static ExportJournal open (Path outputFolder, boolean resume)
+            throws
+            IOException
+    {
+        Path journalFile = outputFolder.resolve(JOURNAL_FILE_NAME);
+
+        Map<String, Entry> previousEntries = new HashMap<>();
+        if (resume && Files.exists(journalFile))
+        {
+            previousEntries = load(journalFile);
+            if (previousEntries != null)
+            {
+                FileChannel channel = FileChannel.open(journalFile, WRITE, APPEND);
+                return new ExportJournal(outputFolder, channel, previousEntries);
+            }
+
+            Logging.getLogger().warning("The export journal " + journalFile + " has been written by a different version of iExport,"
+                    + " exporting all files again.");
+            previousEntries = new HashMap<>();
+        }
+
+        FileChannel channel = FileChannel.open(journalFile, WRITE, CREATE, TRUNCATE_EXISTING);
+        channel.write(StandardCharsets.UTF_8.encode(HEADER + "\n"));
+        channel.force(false);
+        return new ExportJournal(outputFolder, channel, previousEntries);
+    }
+
+    /**
+     * Load the entries of an existing journal.
+     * <p>
+     * Lines that cannot be parsed (e.g. a line that was only partially written during a crash) are ignored.
+     *
+     * @param journalFile the journal file
+     * @return the entries, by relative destination path, or null if the journal has been written in a different format
+     * @throws IOException if reading the file fails
+     */
+    private static Map<String, Entry> load (Path journalFile)
+            throws
+            IOException
+    {
+        List<String> lines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+
+        if (lines.isEmpty() || !lines.get(0).startsWith(HEADER_PREFIX))
+        {
+            throw new RuntimeException("File " + journalFile + " is not an iExport journal");
+        }
+        if (!HEADER.equals(lines.get(0)))
+        {
+            return null;
+        }
+
+        Map<String, Entry> entries = new HashMap<>();
+        for (String line : lines.subList(1, lines.size()))
+        {
+            String[] parts = line.split("\t", -1);
+            if (parts.length != 5)
+            {
+                Logging.getLogger().debug("Ignoring malformed journal line \"" + line + "\"");
+                continue;
+            }
+
+            try
+            {
+                long checksum = "-".equals(parts[2]) ? NO_CHECKSUM : Long.parseLong(parts[2], 16);
+                entries.put(unescape(parts[4]), new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), checksum, unescape(parts[3])));
+            }
+            catch (NumberFormatException e)
+            {
+                Logging.getLogger().debug("Ignoring malformed journal line \"" + line + "\"");
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * @param outputFolder    the output folder of the export
+     * @param channel         the channel to which the journal is written
+     * @param previousEntries the entries that have been recorded in a previous run
+     */
+    private ExportJournal (Path outputFolder, FileChannel channel, Map<String, Entry> previousEntries)
+    {
+        this.outputFolder = outputFolder;
+        this.channel = channel;
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * @return the number of entries that have been loaded from a previous run
+     */
+    public int getPreviousEntryCount ()
+    {
+        return previousEntries.size();
+    }
+
+    /**
+     * Check whether an operation has already been completed in a previous run.
+     *
+     * @param operation the operation
+     * @param verify    whether the checksum of the destination file should be compared against the recorded checksum
+     * @return true if the journal contains an entry for the destination that matches the source,
+     * the destination file exists and has the size of the source,
+     * and, if {@code verify} is set, the destination file has the recorded checksum
+     */
+    public boolean isCompleted (ExportOperation operation, boolean verify)
+    {
+        Entry entry = previousEntries.get(relativeDestination(operation));
+        if (entry == null
+                || entry.size() != operation.size()
+                || entry.lastModified() != operation.lastModified()
+                || !entry.source().equals(absoluteSource(operation)))
+        {
+            return false;
+        }
+
+        if (verify && entry.checksum() == NO_CHECKSUM)
+        {
+            return false;
+        }
+
+        try
+        {
+            if (Files.size(operation.destination()) != operation.size())
+            {
+                return false;
+            }
+
+            if (verify && Crc32cHasher.hash(operation.destination()) != entry.checksum())
+            {
+                Logging.getLogger().debug(operation.destination() + " does not have the checksum recorded in the journal, exporting it again.");
+                return false;
+            }
+
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Get the checksum that has been recorded for the destination of an operation in a previous run.
+     *
+     * @param operation the operation
+     * @return the checksum, or {@link #NO_CHECKSUM} if there is no entry or it has been recorded without checksum
+     */
+    public long getPreviousChecksum (ExportOperation operation)
+    {
+        Entry entry = previousEntries.get(relativeDestination(operation));
+        return entry == null ? NO_CHECKSUM : entry.checksum();
+    }
+
+    /**
+     * Record that an operation has been completed.
+     * <p>
+     * The entry is written and synchronized to the storage device lazily, see {@link ExportJournal}.
+     *
+     * @param operation the operation
+     * @param checksum  the CRC32C of the source file, or {@link #NO_CHECKSUM} if it has not been computed
+     * @throws IOException if writing the journal fails
+     */
+    public synchronized void record (ExportOperation operation, long checksum)
+            throws
+            IOException
+    {
+        pending.append(operation.size())
+                .append('\t')
+                .append(operation.lastModified())
+                .append('\t')
+                .append(checksum == NO_CHECKSUM ? "-" : Long.toHexString(checksum))
+                .append('\t')
+                .append(escape(absoluteSource(operation)))
+                .append('\t')
+                .append(escape(relativeDestination(operation)))
+                .append('\n');
+        pendingEntries++;
+
+        if (pendingEntries >= SYNC_INTERVAL_ENTRIES || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL_MILLIS)
+        {
+            sync();
+        }
+    }
+
+    /**
+     * Write all pending entries and synchronize the journal to the storage device.
+     *
+     * @throws IOException if writing the journal fails
+     */
+    public synchronized void sync ()
+            throws
+            IOException
+    {
+        if (pendingEntries > 0)
+        {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(pending.toString());
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(false);
+
+            pending.setLength(0);
+            pendingEntries = 0;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Synchronize all pending entries and close the journal.
+     *
+     * @throws IOException if writing the journal fails
+     */
+    @Override
+    public synchronized void close ()
+            throws
+            IOException
+    {
+        try
+        {
+            sync();
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param operation an operation
+     * @return the destination of the operation relative to the output folder, using {@code /} as separator
+     */
+    private String relativeDestination (ExportOperation operation)
+    {
+        return outputFolder.relativize(operation.destination()).toString().replace('\\', '/');
+    }
+
+    /**
+     * @param operation an operation
+     * @return the absolute path of the source of the operation
+     */
+    private static String absoluteSource (ExportOperation operation)
+    {
+        return operation.source().toAbsolutePath().toString();
+    }
+
+    /**
+     * Escape backslashes, tabs and line breaks in a path, so that it can be stored in one field of a journal line.
+     *
+     * @param path a path
+     * @return the escaped path
+     */
+    private static String escape (String path)
+    {
+        return path.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /**
+     * Undo {@link #escape(String)}.
+     *
+     * @param field an escaped path
+     * @return the path
+     */
+    private static String unescape (String field)
+    {
+        StringBuilder path = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++)
+        {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length())
+            {
+                i++;
+                c = switch (field.charAt(i))
+                        {
+                            case 't' -> '\t';
+                            case 'n' -> '\n';
+                            case 'r' -> '\r';
+                            default -> field.charAt(i);
+                        };
+            }
+            path.append(c);
+        }
+        return path.toString();
+    }
+
+    /**
+     * An entry of a journal loaded from a previous run.
+     *
+     * @param size         the size of the source file at the time it was copied
+     * @param lastModified the modification time of the source file at the time it was copied
+     * @param checksum     the CRC32C of the source file, or {@link #NO_CHECKSUM} if it has not been computed
+     * @param source       the absolute path of the source file
+     */
+    private record Entry(long size, long lastModified, long checksum, String source)
+    {
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport;
+
+import iexport.itunes.Track;
+
+import java.nio.file.Path;
+
+/**
+ * A single copy operation of an {@link ExportPlan}:
+ * the file of {@code track} at {@code source} should be copied to {@code destination}.
+ *
+ * @param track        the track whose file is exported
+ * @param source       the location of the file
+ * @param destination  the location to which the file should be copied
+ * @param size         the size of the file in bytes (as determined by the file system)
+ * @param lastModified the time at which the file was last modified, in milliseconds since the epoch
+ */
+public record ExportOperation
+        (
+                Track track,
+                Path source,
+                Path destination,
+                long size,
+                long lastModified
+        )
+{
+}
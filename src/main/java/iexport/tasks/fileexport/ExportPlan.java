@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport;
+
+import iexport.itunes.Track;
+import iexport.logging.Logging;
+import iexport.utils.ByteFormatter;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The result of the planning phase of {@link ExportFilesTask}, computed by {@link ExportPlanner}.
+ * <p>
+ * The plan contains every folder that needs to be created and every file that needs to be copied,
+ * with source and destination paths and file sizes already resolved,
+ * so that the actual export does not need to resolve anything a second time.
+ *
+ * @param outputFolder         the root folder of the export (tasks.exportFiles.outputFolder)
+ * @param folders              the folders that need to be created (including the output folder itself)
+ * @param operations           the copy operations, in the order in which they should be executed
+ * @param missingTracks        tracks whose source file does not exist or cannot be read
+ * @param duplicates           the number of operations that copy a source file that is also copied by an earlier operation
+ * @param destinationConflicts the number of operations that have been dropped because a later operation writes the same destination
+ * @param totalBytes           the total number of bytes that will be copied
+ * @param usableSpace          the usable space at the destination in bytes, or -1 if it could not be determined
+ */
+public record ExportPlan
+        (
+                Path outputFolder,
+                List<Path> folders,
+                List<ExportOperation> operations,
+                List<Track> missingTracks,
+                int duplicates,
+                int destinationConflicts,
+                long totalBytes,
+                long usableSpace
+        )
+{
+    /**
+     * @return the number of bytes that are missing at the destination, or 0 if there is enough space (or the space is unknown)
+     */
+    public long getSpaceShortfall ()
+    {
+        if (usableSpace < 0)
+        {
+            return 0;
+        }
+        return Math.max(0, totalBytes - usableSpace);
+    }
+
+    /**
+     * Log a summary of the plan.
+     */
+    public void report ()
+    {
+        Logging.getLogger().message("Export plan:");
+        Logging.getLogger().message(1, folders.size() + " folders, " + operations.size() + " files, " + ByteFormatter.format(totalBytes) + " in total");
+
+        if (duplicates > 0)
+        {
+            Logging.getLogger().message(1, duplicates + " files are exported more than once (they are contained in multiple playlists)");
+        }
+
+        if (destinationConflicts > 0)
+        {
+            Logging.getLogger().warning(1, destinationConflicts + " files will not be exported because a later file has the same name and would overwrite them");
+        }
+
+        if (!missingTracks.isEmpty())
+        {
+            Logging.getLogger().warning(1, missingTracks.size() + " tracks have no readable source file and will be skipped:");
+            for (Track track : missingTracks)
+            {
+                Logging.getLogger().warning(2, track.toString());
+            }
+        }
+
+        if (usableSpace < 0)
+        {
+            Logging.getLogger().warning(1, "Could not determine the free space at " + outputFolder);
+        }
+        else if (getSpaceShortfall() > 0)
+        {
+            Logging.getLogger().warning(1, "Not enough space at " + outputFolder + ": "
+                    + ByteFormatter.format(usableSpace) + " available, " + ByteFormatter.format(getSpaceShortfall()) + " missing");
+        }
+        else
+        {
+            Logging.getLogger().message(1, ByteFormatter.format(usableSpace) + " available at " + outputFolder);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport;
+
+import iexport.itunes.Library;
+import iexport.itunes.Playlist;
+import iexport.itunes.Track;
+import iexport.logging.Logging;
+import iexport.parsing.sorting.TrackComparator;
+import iexport.utils.IntegerFormatter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Computes the {@link ExportPlan} for {@link ExportFilesTask}.
+ * <p>
+ * Planning proceeds in two phases:
+ * <ol>
+ *     <li> Go through the playlists that should be exported (in order)
+ *     and compute the destination folder for each playlist and the source and destination path for each track.
+ *     This has to be done sequentially because of the folder and track numbering.
+ *     <li> Query the file system for the size of each source file.
+ *     This is done in parallel, because on network shares and spinning disks each query may take several milliseconds.
+ * </ol>
+ */
+public class ExportPlanner
+{
+    /**
+     * The library that should be exported.
+     */
+    private final Library library;
+
+    /**
+     * The settings of {@link ExportFilesTask}.
+     */
+    private final ExportFilesTaskSettings settings;
+
+    /**
+     * The number of the next folder that should be exported.
+     * <p>
+     * Needed for folder numbering.
+     */
+    private int nextFolderNumber = 0;
+
+    /**
+     * The total number of folders that should be exported.
+     * <p>
+     * Needed for folder numbering.
+     */
+    private int totalFolderNumber = 0;
+
+    /**
+     * @param library  the library that should be exported
+     * @param settings the settings of {@link ExportFilesTask}
+     */
+    public ExportPlanner (Library library, ExportFilesTaskSettings settings)
+    {
+        this.library = library;
+        this.settings = settings;
+    }
+
+    /**
+     * Compute the plan.
+     *
+     * @return the plan
+     */
+    public ExportPlan plan ()
+    {
+        Path outputFolder = Paths.get(settings.getOutputFolder());
+
+        // Check which playlists have to be processed (i.e. they are not ignored).
+        List<Playlist> playlistsToProcess = library.playlists().stream().filter(Predicate.not(this::isIgnored)).toList();
+
+        // Initialize the numbering
+        nextFolderNumber = settings.getInitialNumber();
+        totalFolderNumber = playlistsToProcess.size();
+
+        List<Path> folders = new ArrayList<>();
+        folders.add(outputFolder);
+
+        List<PendingOperation> pendingOperations = new ArrayList<>();
+
+        // A list of tracks that should be exported into the root folder
+        List<Track> toRootFolder = new ArrayList<>();
+
+        // Phase 1: compute the paths for each playlist
+        for (Playlist playlist : playlistsToProcess)
+        {
+            // Check if this playlist should go to the root folder.
+            // If yes, we will process it later.
+            if (settings.getToRootFolder().contains(playlist.name()))
+            {
+                toRootFolder.addAll(playlist.tracks());
+                continue;
+            }
+
+            Path destination = destinationFolder(playlist);
+            folders.add(destination);
+            planTracks(playlist.tracks(), destination, pendingOperations);
+        }
+
+        // The tracks in the root folder might come from different playlists, we should sort them.
+        toRootFolder.sort(new TrackComparator());
+        planTracks(toRootFolder, outputFolder, pendingOperations);
+
+        // Phase 2: get the file sizes (and modification times) in parallel.
+        BasicFileAttributes[] attributes = pendingOperations.parallelStream()
+                .map((pending) -> attributesOf(pending.source()))
+                .toArray(BasicFileAttributes[]::new);
+
+        // Phase 3: drop the operations whose destination is overwritten by a later operation.
+        // Files may be copied concurrently, so two operations must never write the same destination;
+        // keeping the last one gives the same result as copying all of them one after another.
+        boolean[] overwritten = new boolean[attributes.length];
+        Set<Path> destinations = new HashSet<>();
+        int destinationConflicts = 0;
+        for (int i = attributes.length - 1; i >= 0; i--)
+        {
+            if (attributes[i] != null && !destinations.add(pendingOperations.get(i).destination()))
+            {
+                overwritten[i] = true;
+                destinationConflicts++;
+            }
+        }
+
+        List<ExportOperation> operations = new ArrayList<>(pendingOperations.size());
+        List<Track> missingTracks = new ArrayList<>();
+        Set<Path> sources = new HashSet<>();
+        int duplicates = 0;
+        long totalBytes = 0;
+
+        for (int i = 0; i < attributes.length; i++)
+        {
+            PendingOperation pending = pendingOperations.get(i);
+
+            if (attributes[i] == null)
+            {
+                missingTracks.add(pending.track());
+                continue;
+            }
+
+            if (overwritten[i])
+            {
+                Logging.getLogger().debug(() -> "Not copying " + pending.source() + " because " + pending.destination() + " is overwritten by a later file.");
+                continue;
+            }
+
+            long size = attributes[i].size();
+
+            // Tracks store their size in the library; a different size on disk may indicate a stale library entry.
+            Integer expectedSize = pending.track().size();
+            if (expectedSize != null && expectedSize != size)
+            {
+                Logging.getLogger().debug("File " + pending.source() + " has size " + size + ", but the library says " + expectedSize);
+            }
+
+            if (!sources.add(pending.source()))
+            {
+                duplicates++;
+            }
+
+            totalBytes += size;
+            operations.add(new ExportOperation(pending.track(), pending.source(), pending.destination(), size,
+                    attributes[i].lastModifiedTime().toMillis()));
+        }
+
+        return new ExportPlan(outputFolder, folders, operations, missingTracks, duplicates, destinationConflicts, totalBytes, usableSpace(outputFolder));
+    }
+
+    /**
+     * Compute the source and destination path for each of the given tracks and add them to {@code pendingOperations}.
+     *
+     * @param tracks            a list of tracks
+     * @param destination       the destination folder
+     * @param pendingOperations the list to which the operations should be added
+     */
+    private void planTracks (List<Track> tracks, Path destination, List<PendingOperation> pendingOperations)
+    {
+        int trackNumber = 0;
+        int totalTrackNumberInThisFolder = tracks.size();
+
+        for (Track track : tracks)
+        {
+            trackNumber++;
+
+            Path source = sourcePath(track);
+            if (source == null)
+            {
+                continue;
+            }
+
+            String fileName = destinationFilename(source, trackNumber, totalTrackNumberInThisFolder);
+            pendingOperations.add(new PendingOperation(track, source, destination.resolve(fileName)));
+        }
+    }
+
+    /**
+     * Compute the path to the file of a track from its location.
+     *
+     * @param track the track
+     * @return the path, or null if the track has no local file
+     */
+    private Path sourcePath (Track track)
+    {
+        String uriString = track.location();
+        if (uriString == null)
+        {
+            Logging.getLogger().warning("Track " + track + " has no location; skipping this track.");
+            return null;
+        }
+
+        URI uri;
+        try
+        {
+            uri = new URI(uriString);
+        }
+        catch (URISyntaxException e)
+        {
+            Logging.getLogger().warning("Error when converting track " + track + ": Bad URI. " + e + " (" + e.getMessage() + "); skipping this track.");
+            return null;
+        }
+
+        // We can only deal with local files
+        if (!"localhost".equals(uri.getAuthority()))
+        {
+            Logging.getLogger().warning("Track " + track + " is at remote location " + uriString + "; skipping this track.");
+            return null;
+        }
+
+        // Get of the authority (e.g. localhost)
+        String pathString = uri.getPath();
+
+        // Under Windows, the String may be of the shape /E:/... something
+        // We need to get rid of the initial backslash
+        if (pathString.contains(":") && pathString.charAt(0) == '/')
+        {
+            pathString = pathString.substring(1);
+        }
+
+        return Paths.get(pathString);
+    }
+
+    /**
+     * Get the attributes (size, modification time) of a file.
+     *
+     * @param path the path to the file
+     * @return the attributes, or null if the file does not exist or is not a regular file
+     */
+    private static BasicFileAttributes attributesOf (Path path)
+    {
+        try
+        {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes : null;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Determine the usable space at the output folder.
+     * <p>
+     * As the output folder may not exist yet, we look at its closest existing ancestor.
+     * Note that this does not take into account the space that is freed if tasks.exportFiles.deleteFolder is set.
+     *
+     * @param outputFolder the output folder
+     * @return the usable space in bytes, or -1 if it could not be determined
+     */
+    private static long usableSpace (Path outputFolder)
+    {
+        Path existing = outputFolder.toAbsolutePath();
+        while (existing != null && !Files.exists(existing))
+        {
+            existing = existing.getParent();
+        }
+
+        if (existing == null)
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Files.getFileStore(existing).getUsableSpace();
+        }
+        catch (IOException e)
+        {
+            Logging.getLogger().debug("Could not determine the file store of " + existing + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Check if a playlist should not be exported
+     * because it is a folder and tasks.exportFiles.onlyActualPlaylists is set,
+     * because it is distinguished and tasks.exportFiles.ignoreDistinguishedPlaylists is set,
+     * or because its name is specified in tasks.exportFiles.ignorePlaylists.
+     *
+     * @param playlist the play
+     * @return true iff it should not be exported
+     */
+    private boolean isIgnored (Playlist playlist)
+    {
+        return
+                (settings.getIgnoreDistinguishedPlaylists() && playlist.distinguishedKind() != null)
+                        ||
+                        (settings.getOnlyActualPlaylists() && playlist.isFolder())
+                        ||
+                        (playlist.name() != null && settings.getIgnorePlaylists().contains(playlist.name()))
+                ;
+    }
+
+    /**
+     * Compute the path to the file to which the playlist should be exported,
+     * taking tasks.exportFiles.hierarchicalNames and tasks.exportFiles.organizeInFolders into account.
+     *
+     * @param playlist the playlist
+     * @return the path
+     */
+    private Path destinationFolder (Playlist playlist)
+    {
+        String outputFolder = settings.getOutputFolder();
+
+        String folderName = "";
+
+        // If tasks.exportFiles.folderNumbering is set, we should start the folder name with a number
+        if (settings.getFolderNumbering())
+        {
+            // If tasks.exportFiles.padFolderNumbers, we should pad the folder numbers to be of the same length
+            String folderNumber;
+            if (settings.getPadFolderNumbers())
+            {
+                folderNumber = IntegerFormatter.pad(nextFolderNumber, IntegerFormatter.digits(totalFolderNumber), '0');
+            }
+            else
+            {
+                folderNumber = Integer.toString(nextFolderNumber);
+            }
+            nextFolderNumber++;
+
+            folderName += folderNumber;
+            folderName += " - ";
+        }
+
+        if (settings.getHierarchicalNames() && playlist.ancestry() != null)
+        {
+            // If tasks.exportFiles.hierarchicalNames is set, the folder name is composed of the ancestry
+            folderName += playlist.ancestry().stream().map(Playlist::name).reduce((s1, s2) -> s1 + " - " + s2).orElse(playlist.name());
+        }
+        else
+        {
+            // Otherwise, the folder name is simply the name of the playlist
+            folderName = playlist.name();
+        }
+
+        // If tasks.exportFiles.normalize is set, we should normalize the name to only use ASCII
+        if (settings.getNormalize())
+        {
+            folderName = Normalizer
+                    .normalize(folderName, Normalizer.Form.NFD)
+                    .replaceAll("[^\\p{ASCII}]", "");
+        }
+
+        return Paths.get(outputFolder).resolve(folderName);
+    }
+
+    /**
+     * Compute the path to the file to which a track should be exported.
+     *
+     * @param source                       the source path of the track
+     * @param trackNumber                  the track number
+     * @param totalTrackNumberInThisFolder the total number of tracks in that folder
+     * @return the destination path as string
+     */
+    private String destinationFilename (Path source, int trackNumber, int totalTrackNumberInThisFolder)
+    {
+        String fileName = "";
+
+        // If tasks.exportFiles.trackNumbering is set, we should start the file name with a number
+        if (settings.getTrackNumbering())
+        {
+            // If tasks.exportFiles.padTrackNumbers is set, we should pad the track numbers to be of the same length
+            String fileNumber;
+            if (settings.getPadTrackNumbers())
+            {
+                fileNumber = IntegerFormatter.pad(trackNumber, IntegerFormatter.digits(totalTrackNumberInThisFolder), '0');
+            }
+            else
+            {
+                fileNumber = Integer.toString(trackNumber);
+            }
+
+            fileName += fileNumber;
+            fileName += " - ";
+        }
+
+        // Then we can use the real filename on the dic.
+        fileName += source.getFileName().toString();
+
+        // If tasks.exportFiles.normalize is set, we should normalize the name to only use ASCII
+        if (settings.getNormalize())
+        {
+            fileName = Normalizer
+                    .normalize(fileName, Normalizer.Form.NFD)
+                    .replaceAll("[^\\p{ASCII}]", "");
+        }
+
+        return fileName;
+    }
+
+    /**
+     * A copy operation whose file size has not been determined yet.
+     *
+     * @param track       the track
+     * @param source      the source path
+     * @param destination the destination path
+     */
+    private record PendingOperation(Track track, Path source, Path destination)
+    {
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport;
+
+import iexport.logging.Logging;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Determines the order in which the operations of an {@link ExportPlan} are executed (tasks.exportFiles.copyOrder).
+ * <p>
+ * The plan lists the operations in playlist order, which may jump around the source device a lot
+ * if playlists mix tracks from different artists and albums.
+ * On spinning disks and network shares, reading the files in the order in which they are stored is considerably faster.
+ * <p>
+ * Reordering the operations does not change the destination of any file,
+ * the numbering of folders and tracks has already been fixed by {@link ExportPlanner}.
+ * <p>
+ * The following orders are supported:
+ * <ul>
+ *     <li> {@value #ORDER_PLAYLIST}: keep the order of the plan.
+ *     <li> {@value #ORDER_SOURCE_PATH}: sort by the path of the source file,
+ *     so that files in the same folder (usually the same album) are read one after another.
+ *     <li> {@value #ORDER_FILE_KEY}: sort by the device and the file id (inode) of the source file,
+ *     which approximates the physical location of the file on many file systems.
+ *     If the file system does not provide file ids (e.g. on Windows), this falls back to {@value #ORDER_SOURCE_PATH}.
+ * </ul>
+ */
+public class ExportScheduler
+{
+    /**
+     * Keep the order of the plan.
+     */
+    public static final String ORDER_PLAYLIST = "playlist";
+
+    /**
+     * Sort by the path of the source file.
+     */
+    public static final String ORDER_SOURCE_PATH = "sourcePath";
+
+    /**
+     * Sort by the device and file id of the source file.
+     */
+    public static final String ORDER_FILE_KEY = "fileKey";
+
+    /**
+     * Pattern for extracting the device and inode from a file key.
+     * <p>
+     * On Unix-like systems, {@link BasicFileAttributes#fileKey()} has the shape {@code (dev=803,ino=1234)}.
+     */
+    private static final Pattern UNIX_FILE_KEY = Pattern.compile("dev=(\\p{XDigit}+),ino=(\\d+)");
+
+    /**
+     * The settings of {@link ExportFilesTask}.
+     */
+    private final ExportFilesTaskSettings settings;
+
+    /**
+     * @param settings the settings of {@link ExportFilesTask}
+     */
+    public ExportScheduler (ExportFilesTaskSettings settings)
+    {
+        this.settings = settings;
+    }
+
+    /**
+     * Order the operations according to tasks.exportFiles.copyOrder.
+     *
+     * @param operations the operations of the plan
+     * @return a new list containing the operations in the order in which they should be executed
+     */
+    public List<ExportOperation> schedule (List<ExportOperation> operations)
+    {
+        String copyOrder = settings.getCopyOrder();
+
+        List<ExportOperation> scheduled = new ArrayList<>(operations);
+        switch (copyOrder)
+        {
+            case ORDER_PLAYLIST ->
+            {
+                // Nothing to do
+            }
+            case ORDER_SOURCE_PATH -> scheduled.sort(Comparator.comparing(ExportOperation::source));
+            case ORDER_FILE_KEY -> sortByFileKey(scheduled);
+            default -> throw new RuntimeException("Unknown copy order \"" + copyOrder + "\" for "
+                    + settings.getYamlPath("copyOrder") + ", expected one of "
+                    + List.of(ORDER_PLAYLIST, ORDER_SOURCE_PATH, ORDER_FILE_KEY));
+        }
+
+        return scheduled;
+    }
+
+    /**
+     * Sort the operations by the device and file id of their source file.
+     * <p>
+     * Operations whose file id cannot be determined are sorted by source path after all other operations.
+     *
+     * @param operations the operations, will be sorted in place
+     */
+    private static void sortByFileKey (List<ExportOperation> operations)
+    {
+        // Querying the file keys may take a while on network shares, do it in parallel.
+        long[][] fileKeys = operations.parallelStream()
+                .map((operation) -> fileKeyOf(operation.source()))
+                .toArray(long[][]::new);
+
+        List<KeyedOperation> keyed = new ArrayList<>(operations.size());
+        int unknown = 0;
+        for (int i = 0; i < fileKeys.length; i++)
+        {
+            if (fileKeys[i] == null)
+            {
+                unknown++;
+                keyed.add(new KeyedOperation(operations.get(i), Long.MAX_VALUE, Long.MAX_VALUE));
+            }
+            else
+            {
+                keyed.add(new KeyedOperation(operations.get(i), fileKeys[i][0], fileKeys[i][1]));
+            }
+        }
+
+        if (unknown > 0)
+        {
+            Logging.getLogger().debug("Could not determine the file id of " + unknown + " files, ordering them by path instead.");
+        }
+
+        keyed.sort(Comparator.comparingLong(KeyedOperation::device)
+                .thenComparingLong(KeyedOperation::inode)
+                .thenComparing((keyedOperation) -> keyedOperation.operation().source()));
+
+        for (int i = 0; i < keyed.size(); i++)
+        {
+            operations.set(i, keyed.get(i).operation());
+        }
+    }
+
+    /**
+     * Determine the device and file id of a file.
+     *
+     * @param path the path to the file
+     * @return an array containing the device and the inode, or null if they cannot be determined
+     */
+    private static long[] fileKeyOf (Path path)
+    {
+        Object fileKey;
+        try
+        {
+            fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+
+        if (fileKey == null)
+        {
+            return null;
+        }
+
+        Matcher matcher = UNIX_FILE_KEY.matcher(fileKey.toString());
+        if (!matcher.find())
+        {
+            return null;
+        }
+
+        try
+        {
+            return new long[]{Long.parseLong(matcher.group(1), 16), Long.parseLong(matcher.group(2))};
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * An operation together with the file key of its source.
+     *
+     * @param operation the operation
+     * @param device    the device of the source file
+     * @param inode     the file id of the source file
+     */
+    private record KeyedOperation(ExportOperation operation, long device, long inode)
+    {
+    }
+}
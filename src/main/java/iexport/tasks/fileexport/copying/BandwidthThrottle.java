@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.copying;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A token bucket that limits the number of bytes copied per second (tasks.exportFiles.maxBytesPerSecond).
+ * <p>
+ * The bucket holds at most one second worth of bytes and is refilled continuously.
+ * Before copying a chunk, a {@link CopyStrategy} takes the corresponding number of bytes from the bucket.
+ * If the bucket does not contain enough bytes, it goes into debt and the calling thread sleeps until the debt has been paid back.
+ * As the debt is shared, the limit applies to all threads copying with the same throttle combined.
+ * <p>
+ * A throttle with a limit of 0 bytes per second does not limit anything.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BandwidthThrottle
+{
+    /**
+     * The number of bytes per second, or 0 if unlimited.
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * The number of bytes currently in the bucket; negative if the bucket is in debt.
+     */
+    private double available;
+
+    /**
+     * The time (as returned by {@link System#nanoTime()}) at which the bucket was last refilled.
+     */
+    private long lastRefill;
+
+    /**
+     * @param bytesPerSecond the maximal number of bytes per second, or 0 for no limit
+     */
+    public BandwidthThrottle (long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+        this.available = bytesPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return true if this throttle actually limits the bandwidth
+     */
+    public boolean isLimited ()
+    {
+        return bytesPerSecond > 0;
+    }
+
+    /**
+     * Take {@code bytes} bytes from the bucket, sleeping if the bucket is in debt afterwards.
+     *
+     * @param bytes the number of bytes that are about to be copied
+     * @throws InterruptedIOException if the thread is interrupted while sleeping
+     */
+    public void acquire (long bytes)
+            throws
+            InterruptedIOException
+    {
+        if (!isLimited() || bytes <= 0)
+        {
+            return;
+        }
+
+        long waitNanos;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            available = Math.min(bytesPerSecond, available + (now - lastRefill) * bytesPerSecond / 1e9);
+            lastRefill = now;
+
+            available -= bytes;
+            waitNanos = available < 0 ? (long) (-available * 1e9 / bytesPerSecond) : 0;
+        }
+
+        if (waitNanos > 0)
+        {
+            try
+            {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the bandwidth throttle");
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.copying;
+
+import iexport.logging.Logging;
+import iexport.utils.ByteFormatter;
+
+/**
+ * Throughput metrics for a {@link CopyStrategy}.
+ * <p>
+ * Records the number of files and bytes that have been copied and the time spent copying them,
+ * so that the user can compare the different strategies for their source and destination devices.
+ * <p>
+ * This class is thread-safe.
+ */
+public class CopyStatistics
+{
+    /**
+     * The name of the strategy these statistics are for.
+     */
+    private final String strategyName;
+
+    /**
+     * The number of files that have been copied.
+     */
+    private long files = 0;
+
+    /**
+     * The number of bytes that have been copied.
+     */
+    private long bytes = 0;
+
+    /**
+     * The time spent copying, in nanoseconds.
+     * <p>
+     * If multiple files are copied in parallel, this is the sum over all copies.
+     */
+    private long nanos = 0;
+
+    /**
+     * @param strategyName the name of the strategy these statistics are for
+     */
+    public CopyStatistics (String strategyName)
+    {
+        this.strategyName = strategyName;
+    }
+
+    /**
+     * Record that a file has been copied.
+     *
+     * @param copiedBytes the size of the file
+     * @param copyNanos   the time it took to copy it, in nanoseconds
+     */
+    public synchronized void record (long copiedBytes, long copyNanos)
+    {
+        files++;
+        bytes += copiedBytes;
+        nanos += copyNanos;
+    }
+
+    /**
+     * @return the number of bytes copied per second, or 0 if nothing has been copied
+     */
+    public synchronized double getBytesPerSecond ()
+    {
+        if (nanos == 0)
+        {
+            return 0;
+        }
+        return bytes / (nanos / 1e9);
+    }
+
+    /**
+     * Log a summary of the statistics.
+     */
+    public synchronized void report ()
+    {
+        double seconds = nanos / 1e9;
+
+        Logging.getLogger().message("Copied " + files + " files (" + ByteFormatter.format(bytes) + ")"
+                + " using copy strategy \"" + strategyName + "\""
+                + " in " + String.format("%.3f", seconds) + "s"
+                + " (" + ByteFormatter.format((long) getBytesPerSecond()) + "/s).");
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.copying;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A strategy for copying a single file from a source location to a destination location.
+ * <p>
+ * Different strategies perform differently depending on the source and destination device
+ * (e.g. local SSD, USB flash drive, network share),
+ * which is why {@link iexport.tasks.fileexport.ExportFilesTask} allows the user to select one via tasks.exportFiles.copyStrategy.
+ */
+public interface CopyStrategy
+{
+    /**
+     * The name of the strategy, as it can be specified in the settings .yaml file.
+     *
+     * @return the name
+     */
+    String getName ();
+
+    /**
+     * Copy the file at {@code source} to {@code destination}, replacing {@code destination} if it already exists.
+     *
+     * @param source      the file to copy
+     * @param destination the location of the copy
+     * @return the number of bytes that have been copied
+     * @throws IOException if copying fails
+     */
+    long copy (Path source, Path destination)
+            throws
+            IOException;
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.copying;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.Checksum;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link CopyStrategy} that reads the file into a direct {@link ByteBuffer} and writes it out again.
+ * <p>
+ * A direct buffer lives outside the Java heap, so the JDK can hand it to the operating system without an additional copy.
+ * The buffer has the size tasks.exportFiles.chunkSize and is reused for all files copied by the same thread.
+ * <p>
+ * Compared to {@link TransferToCopyStrategy}, this strategy gives us full control over the size of each read and write,
+ * which tends to work better for destinations such as USB flash drives or network shares
+ * where the kernel-side copy falls back to small writes.
+ * The {@link BandwidthThrottle} is applied per chunk.
+ */
+public class DirectBufferCopyStrategy implements CopyStrategy
+{
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "directBuffer";
+
+    /**
+     * One buffer per thread, allocated lazily.
+     */
+    private final ThreadLocal<ByteBuffer> buffers;
+
+    /**
+     * The throttle limiting the bandwidth.
+     */
+    private final BandwidthThrottle throttle;
+
+    /**
+     * @param chunkSize the size of the direct buffer
+     * @param throttle  the throttle limiting the bandwidth
+     */
+    public DirectBufferCopyStrategy (int chunkSize, BandwidthThrottle throttle)
+    {
+        buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(chunkSize));
+        this.throttle = throttle;
+    }
+
+    @Override
+    public String getName ()
+    {
+        return NAME;
+    }
+
+    @Override
+    public long copy (Path source, Path destination)
+            throws
+            IOException
+    {
+        return copy(source, destination, null);
+    }
+
+    /**
+     * Copy the file at {@code source} to {@code destination}, replacing {@code destination} if it already exists,
+     * and update {@code checksum} with the copied bytes.
+     * <p>
+     * As the bytes pass through our buffer anyway, computing the checksum does not require reading the source a second time.
+     *
+     * @param source      the file to copy
+     * @param destination the location of the copy
+     * @param checksum    the checksum that should be updated with the content of the file, or null
+     * @return the number of bytes that have been copied
+     * @throws IOException if copying fails
+     */
+    public long copy (Path source, Path destination, Checksum checksum)
+            throws
+            IOException
+    {
+        ByteBuffer buffer = buffers.get();
+
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = FileChannel.open(destination, WRITE, CREATE, TRUNCATE_EXISTING))
+        {
+            long copied = 0;
+
+            buffer.clear();
+            while (in.read(buffer) != -1)
+            {
+                throttle.acquire(buffer.position());
+                buffer.flip();
+
+                if (checksum != null)
+                {
+                    // Updating the checksum consumes the buffer, rewind it before writing.
+                    checksum.update(buffer);
+                    buffer.rewind();
+                }
+
+                while (buffer.hasRemaining())
+                {
+                    copied += out.write(buffer);
+                }
+                buffer.clear();
+            }
+
+            return copied;
+        }
+    }
+}
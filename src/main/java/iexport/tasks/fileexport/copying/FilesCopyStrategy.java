@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.copying;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A {@link CopyStrategy} that simply delegates to {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}.
+ * <p>
+ * This leaves all decisions to the JDK and the operating system and is a sensible default.
+ * <p>
+ * As the file is copied in one go, a {@link BandwidthThrottle} can only be applied to the file as a whole.
+ */
+public class FilesCopyStrategy implements CopyStrategy
+{
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "files";
+
+    /**
+     * The throttle limiting the bandwidth.
+     */
+    private final BandwidthThrottle throttle;
+
+    /**
+     * @param throttle the throttle limiting the bandwidth
+     */
+    public FilesCopyStrategy (BandwidthThrottle throttle)
+    {
+        this.throttle = throttle;
+    }
+
+    @Override
+    public String getName ()
+    {
+        return NAME;
+    }
+
+    @Override
+    public long copy (Path source, Path destination)
+            throws
+            IOException
+    {
+        throttle.acquire(Files.size(source));
+        Files.copy(source, destination, REPLACE_EXISTING);
+        return Files.size(destination);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.copying;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link CopyStrategy} that uses {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * <p>
+ * Depending on the operating system, this allows the kernel to copy the data without moving it through user space
+ * (e.g. via {@code sendfile} or {@code copy_file_range} on Linux).
+ * <p>
+ * The file is transferred in chunks of a configurable size (tasks.exportFiles.chunkSize).
+ * Large chunks reduce the number of system calls,
+ * small chunks can help with destinations that stall on large writes (e.g. some network shares).
+ * The {@link BandwidthThrottle} is applied per chunk.
+ */
+public class TransferToCopyStrategy implements CopyStrategy
+{
+    /**
+     * The name of this strategy.
+     */
+    public static final String NAME = "transferTo";
+
+    /**
+     * The maximum number of bytes that should be transferred with a single call to {@link FileChannel#transferTo}.
+     */
+    private final long chunkSize;
+
+    /**
+     * The throttle limiting the bandwidth.
+     */
+    private final BandwidthThrottle throttle;
+
+    /**
+     * @param chunkSize the maximum number of bytes per call to {@link FileChannel#transferTo}
+     * @param throttle  the throttle limiting the bandwidth
+     */
+    public TransferToCopyStrategy (long chunkSize, BandwidthThrottle throttle)
+    {
+        this.chunkSize = chunkSize;
+        this.throttle = throttle;
+    }
+
+    @Override
+    public String getName ()
+    {
+        return NAME;
+    }
+
+    @Override
+    public long copy (Path source, Path destination)
+            throws
+            IOException
+    {
+        try (FileChannel in = FileChannel.open(source, READ);
+             FileChannel out = FileChannel.open(destination, WRITE, CREATE, TRUNCATE_EXISTING))
+        {
+            long size = in.size();
+            long position = 0;
+
+            while (position < size)
+            {
+                long chunk = Math.min(chunkSize, size - position);
+                throttle.acquire(chunk);
+                long transferred = in.transferTo(position, chunk, out);
+
+                // transferTo returns 0 if the source has been truncated while we were copying it
+                if (transferred <= 0)
+                {
+                    throw new IOException("File " + source + " has been truncated while copying it (copied " + position + " of " + size + " bytes)");
+                }
+
+                position += transferred;
+            }
+
+            return position;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.verification;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The checksums of the files of an export,
+ * stored as the file {@value #MANIFEST_FILE_NAME} in the output folder.
+ * <p>
+ * After a header line, the manifest contains one line per exported file of the form
+ * <pre>
+ *     checksum  size  path
+ * </pre>
+ * where {@code checksum} is the CRC32C checksum as 8 hexadecimal digits (see {@link Crc32cHasher}),
+ * {@code size} is the size in bytes,
+ * and {@code path} is the path of the file relative to the output folder (with {@code /} as separator).
+ * The lines are sorted by path.
+ * <p>
+ * The manifest is written by {@link iexport.tasks.fileexport.ExportFilesTask} if tasks.exportFiles.verify is set
+ * and checked by {@link VerifyExportTask}.
+ * <p>
+ * This class is thread-safe.
+ */
+public class ChecksumManifest
+{
+    /**
+     * The name of the manifest file inside the output folder.
+     */
+    public static final String MANIFEST_FILE_NAME = ".iexport-checksums";
+
+    /**
+     * The first line of the manifest file, used to recognize the format.
+     */
+    private static final String HEADER = "iExport checksums v1 crc32c";
+
+    /**
+     * The output folder of the export.
+     */
+    private final Path outputFolder;
+
+    /**
+     * The entries, by relative path.
+     */
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Create an empty manifest.
+     *
+     * @param outputFolder the output folder of the export
+     */
+    public ChecksumManifest (Path outputFolder)
+    {
+        this.outputFolder = outputFolder;
+    }
+
+    /**
+     * Load the manifest of an export.
+     *
+     * @param outputFolder the output folder of the export
+     * @return the manifest, or an empty manifest if the output folder contains none
+     * @throws IOException if reading the manifest fails
+     */
+    public static ChecksumManifest load (Path outputFolder)
+            throws
+            IOException
+    {
+        ChecksumManifest manifest = new ChecksumManifest(outputFolder);
+
+        Path manifestFile = outputFolder.resolve(MANIFEST_FILE_NAME);
+        if (!Files.exists(manifestFile))
+        {
+            return manifest;
+        }
+
+        List<String> lines = Files.readAllLines(manifestFile, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !HEADER.equals(lines.get(0)))
+        {
+            throw new RuntimeException("File " + manifestFile + " is not an iExport checksum manifest");
+        }
+
+        for (String line : lines.subList(1, lines.size()))
+        {
+            String[] parts = line.split("  ", 3);
+            try
+            {
+                manifest.entries.put(parts[2], new Entry(Long.parseLong(parts[0], 16), Long.parseLong(parts[1])));
+            }
+            catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+            {
+                throw new RuntimeException("Malformed line \"" + line + "\" in " + manifestFile, e);
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * @param outputFolder the output folder of an export
+     * @return true if the output folder contains a manifest
+     */
+    public static boolean exists (Path outputFolder)
+    {
+        return Files.exists(outputFolder.resolve(MANIFEST_FILE_NAME));
+    }
+
+    /**
+     * Add or replace the entry for a file.
+     *
+     * @param file     the file, inside the output folder
+     * @param checksum the checksum of the file
+     * @param size     the size of the file
+     */
+    public synchronized void put (Path file, long checksum, long size)
+    {
+        entries.put(relativize(file), new Entry(checksum, size));
+    }
+
+    /**
+     * @return an unmodifiable view of the entries, by relative path
+     */
+    public synchronized Map<String, Entry> getEntries ()
+    {
+        return Collections.unmodifiableMap(new TreeMap<>(entries));
+    }
+
+    /**
+     * @param relativePath a path relative to the output folder, as used in the manifest
+     * @return the path inside the output folder
+     */
+    public Path resolve (String relativePath)
+    {
+        return outputFolder.resolve(relativePath);
+    }
+
+    /**
+     * @param file a file inside the output folder
+     * @return the path of the file relative to the output folder, as used in the manifest
+     */
+    public String relativize (Path file)
+    {
+        return outputFolder.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * Write the manifest to the output folder, replacing an existing manifest.
+     * <p>
+     * The manifest is first written to a temporary file that then replaces the old manifest,
+     * so a crash while writing does not destroy the old manifest.
+     *
+     * @throws IOException if writing the manifest fails
+     */
+    public synchronized void write ()
+            throws
+            IOException
+    {
+        Path manifestFile = outputFolder.resolve(MANIFEST_FILE_NAME);
+        Path temporaryFile = outputFolder.resolve(MANIFEST_FILE_NAME + ".tmp");
+
+        try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8))
+        {
+            writer.write(HEADER);
+            writer.write('\n');
+
+            for (Map.Entry<String, Entry> entry : entries.entrySet())
+            {
+                writer.write(Crc32cHasher.format(entry.getValue().checksum()));
+                writer.write("  ");
+                writer.write(Long.toString(entry.getValue().size()));
+                writer.write("  ");
+                writer.write(entry.getKey());
+                writer.write('\n');
+            }
+        }
+
+        Files.move(temporaryFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * An entry of the manifest.
+     *
+     * @param checksum the CRC32C checksum of the file
+     * @param size     the size of the file in bytes
+     */
+    public record Entry(long checksum, long size)
+    {
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.verification;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Computes CRC32C checksums of files.
+ * <p>
+ * CRC32C is not a cryptographic hash, but it reliably detects accidental corruption
+ * (e.g. flipped bits on a flash drive or truncated files),
+ * and modern CPUs compute it in hardware, so hashing is limited by the speed of the storage device.
+ * <p>
+ * Files are read sequentially in large chunks into a direct buffer, which is the fastest access pattern for all kinds of devices.
+ * Each thread uses its own buffer.
+ */
+public class Crc32cHasher
+{
+    /**
+     * The size of the buffers used for reading.
+     */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * One buffer per thread, allocated lazily.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /**
+     * Compute the checksum of a file.
+     *
+     * @param file the file
+     * @return the CRC32C checksum of the content of the file
+     * @throws IOException if reading the file fails
+     */
+    public static long hash (Path file)
+            throws
+            IOException
+    {
+        ByteBuffer buffer = BUFFERS.get();
+        CRC32C checksum = new CRC32C();
+
+        try (FileChannel channel = FileChannel.open(file, READ))
+        {
+            buffer.clear();
+            while (channel.read(buffer) != -1)
+            {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return checksum.getValue();
+    }
+
+    /**
+     * Format a checksum as it is written to the {@link ChecksumManifest}.
+     *
+     * @param checksum the checksum
+     * @return the checksum as 8 hexadecimal digits
+     */
+    public static String format (long checksum)
+    {
+        return String.format("%08x", checksum);
+    }
+
+    /**
+     * Do not instantiate this class.
+     */
+    private Crc32cHasher ()
+    {
+    }
+}
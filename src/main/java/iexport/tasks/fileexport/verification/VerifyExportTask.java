@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.verification;
+
+import iexport.itunes.Library;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+import iexport.tasks.fileexport.ExportJournal;
+import iexport.utils.ByteFormatter;
+import iexport.utils.ProgressPrinter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * A task that verifies the files of an export against the {@link ChecksumManifest}
+ * that has been written by {@link iexport.tasks.fileexport.ExportFilesTask} (if tasks.exportFiles.verify was set).
+ * <p>
+ * Every file listed in the manifest is read and hashed again,
+ * using tasks.verifyExport.threads threads that each read whole files sequentially.
+ * The task reports files that are missing, have the wrong size, or have the wrong checksum,
+ * as well as files in the output folder that are not listed in the manifest.
+ * It fails if any listed file does not match.
+ */
+public class VerifyExportTask extends Task
+{
+    /**
+     * The settings used for this task.
+     */
+    private VerifyExportTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "verifyExport";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "verify exported files against the checksums written by exportFiles";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new VerifyExportTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        Path outputFolder = Paths.get(settings.getOutputFolder());
+
+        if (!ChecksumManifest.exists(outputFolder))
+        {
+            throw new RuntimeException("The folder " + outputFolder + " contains no checksum manifest (" + ChecksumManifest.MANIFEST_FILE_NAME + ")."
+                    + " Export with tasks.exportFiles.verify set to true to create one.");
+        }
+
+        ChecksumManifest manifest;
+        try
+        {
+            manifest = ChecksumManifest.load(outputFolder);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Reading the checksum manifest in " + outputFolder + " failed", e);
+        }
+
+        Map<String, ChecksumManifest.Entry> entries = manifest.getEntries();
+        Logging.getLogger().message("Verifying " + entries.size() + " files in " + outputFolder + ".");
+
+        // Hash the files in parallel, but report the results in the order of the manifest.
+        ProgressPrinter progressPrinter = new ProgressPrinter(entries.size());
+        AtomicInteger filesProcessed = new AtomicInteger();
+
+        long start = System.nanoTime();
+        List<String> problems = new ArrayList<>();
+        long verifiedBytes = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(settings.getThreads());
+        try
+        {
+            List<Future<String>> results = new ArrayList<>(entries.size());
+            for (Map.Entry<String, ChecksumManifest.Entry> entry : entries.entrySet())
+            {
+                results.add(executor.submit(() ->
+                {
+                    String problem = verify(manifest.resolve(entry.getKey()), entry.getValue());
+                    int processed = filesProcessed.incrementAndGet();
+                    if (settings.getShowContinuousProgress())
+                    {
+                        progressPrinter.update(processed, "Verifying " + entry.getKey());
+                    }
+                    return problem;
+                }));
+            }
+
+            Iterator<Map.Entry<String, ChecksumManifest.Entry>> entryIterator = entries.entrySet().iterator();
+            for (Future<String> result : results)
+            {
+                Map.Entry<String, ChecksumManifest.Entry> entry = entryIterator.next();
+                String problem = result.get();
+                if (problem == null)
+                {
+                    verifiedBytes += entry.getValue().size();
+                }
+                else
+                {
+                    problems.add(entry.getKey() + ": " + problem);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while verifying", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException("Verifying failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Logging.getLogger().message("Verified " + (entries.size() - problems.size()) + " files (" + ByteFormatter.format(verifiedBytes) + ")"
+                + " in " + String.format("%.3f", seconds) + "s"
+                + " (" + ByteFormatter.format((long) (verifiedBytes / Math.max(seconds, 1e-3))) + "/s).");
+
+        reportUnlistedFiles(outputFolder, manifest, entries.keySet());
+
+        if (!problems.isEmpty())
+        {
+            Logging.getLogger().error(problems.size() + " files do not match the checksum manifest:");
+            for (String problem : problems)
+            {
+                Logging.getLogger().error(1, problem);
+            }
+
+            throw new RuntimeException("Verifying the export in " + outputFolder + " failed for " + problems.size() + " of " + entries.size() + " files.");
+        }
+
+        Logging.getLogger().message("All files match the checksum manifest.");
+    }
+
+    /**
+     * Verify a single file.
+     *
+     * @param file  the file
+     * @param entry the manifest entry of the file
+     * @return a description of the problem, or null if the file matches the entry
+     */
+    private static String verify (Path file, ChecksumManifest.Entry entry)
+    {
+        try
+        {
+            long size = Files.size(file);
+            if (size != entry.size())
+            {
+                return "size is " + size + " bytes, expected " + entry.size() + " bytes";
+            }
+
+            long checksum = Crc32cHasher.hash(file);
+            if (checksum != entry.checksum())
+            {
+                return "checksum is " + Crc32cHasher.format(checksum) + ", expected " + Crc32cHasher.format(entry.checksum());
+            }
+
+            return null;
+        }
+        catch (NoSuchFileException e)
+        {
+            return "file is missing";
+        }
+        catch (IOException e)
+        {
+            return "reading the file failed: " + e;
+        }
+    }
+
+    /**
+     * Warn about files in the output folder that are not listed in the manifest.
+     *
+     * @param outputFolder the output folder
+     * @param manifest     the manifest
+     * @param listedFiles  the relative paths of the files listed in the manifest
+     */
+    private static void reportUnlistedFiles (Path outputFolder, ChecksumManifest manifest, Set<String> listedFiles)
+    {
+        Set<String> ownFiles = Set.of(ChecksumManifest.MANIFEST_FILE_NAME, ExportJournal.JOURNAL_FILE_NAME);
+
+        List<String> unlistedFiles;
+        try (Stream<Path> files = Files.walk(outputFolder))
+        {
+            unlistedFiles = files
+                    .filter(Files::isRegularFile)
+                    .map(manifest::relativize)
+                    .filter((relativePath) -> !listedFiles.contains(relativePath) && !ownFiles.contains(relativePath))
+                    .sorted()
+                    .toList();
+        }
+        catch (IOException e)
+        {
+            Logging.getLogger().warning("Could not list the files in " + outputFolder + ": " + e.getMessage());
+            return;
+        }
+
+        if (!unlistedFiles.isEmpty())
+        {
+            Logging.getLogger().warning(unlistedFiles.size() + " files in " + outputFolder + " are not listed in the checksum manifest:");
+            for (String unlistedFile : unlistedFiles)
+            {
+                Logging.getLogger().warning(1, unlistedFile);
+            }
+        }
+    }
+}
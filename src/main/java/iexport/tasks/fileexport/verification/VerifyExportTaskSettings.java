@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.fileexport.verification;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.Settings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link VerifyExportTask}.
+ */
+public class VerifyExportTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the verifyExport task
+     */
+    private static final Map<String, Object> VERIFY_EXPORT_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.verifyExport.outputFolder
+     * <p>
+     * The folder containing the export that should be verified (usually tasks.exportFiles.outputFolder).
+     * Supports the %USERPROFILE% placeholder, which will typically get replaced by "C:\Users\<USERNAME>".
+     */
+    private static final String SETTING_OUTPUT_FOLDER = "outputFolder";
+
+    /**
+     * Default value for tasks.verifyExport.outputFolder
+     */
+    private static final String SETTING_OUTPUT_FOLDER_DEFAULT_VALUE = "%USERPROFILE%\\Desktop\\iExport\\Files";
+
+    /**
+     * tasks.verifyExport.threads
+     * <p>
+     * The number of files that are hashed concurrently.
+     */
+    private static final String SETTING_THREADS = "threads";
+
+    /**
+     * Default value for tasks.verifyExport.threads
+     */
+    private static final Integer SETTING_THREADS_DEFAULT_VALUE = 4;
+
+    /**
+     * tasks.verifyExport.showContinuousProgress
+     * <p>
+     * Whether to show a continuously updating progress bar while verifying
+     */
+    private static final String SETTING_SHOW_CONTINUOUS_PROGRESS = "showContinuousProgress";
+
+    /**
+     * Default value for tasks.verifyExport.showContinuousProgress
+     */
+    private static final Boolean SETTING_SHOW_CONTINUOUS_PROGRESS_DEFAULT_VALUE = true;
+
+    static
+    {
+        // Set default values.
+        VERIFY_EXPORT_DEFAULT_SETTINGS.put(SETTING_OUTPUT_FOLDER, SETTING_OUTPUT_FOLDER_DEFAULT_VALUE);
+        VERIFY_EXPORT_DEFAULT_SETTINGS.put(SETTING_THREADS, SETTING_THREADS_DEFAULT_VALUE);
+        VERIFY_EXPORT_DEFAULT_SETTINGS.put(SETTING_SHOW_CONTINUOUS_PROGRESS, SETTING_SHOW_CONTINUOUS_PROGRESS_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link VerifyExportTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public VerifyExportTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(VERIFY_EXPORT_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
+     *
+     * @return tasks.verifyExport.outputFolder
+     */
+    public String getOutputFolder ()
+    {
+        String key = SETTING_OUTPUT_FOLDER;
+        Object result = getValueFor(key);
+
+        try
+        {
+            String resultString = (String) result;
+            return Settings.applyUserProfileReplacement(resultString);
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.verifyExport.threads
+     */
+    public int getThreads ()
+    {
+        String key = SETTING_THREADS;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 1)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.verifyExport.showContinuousProgress
+     */
+    public boolean getShowContinuousProgress ()
+    {
+        String key = SETTING_SHOW_CONTINUOUS_PROGRESS;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return VERIFY_EXPORT_DEFAULT_SETTINGS.get(key);
+    }
+}
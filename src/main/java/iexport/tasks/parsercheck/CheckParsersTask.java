@@ -0,0 +1,364 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.tasks.parsercheck;
+
+import iexport.itunes.Library;
+import iexport.logging.LogLevel;
+import iexport.logging.Logging;
+import iexport.parsing.ITunesParsingException;
+import iexport.parsing.LibraryInput;
+import iexport.parsing.LibraryParser;
+import iexport.settings.ParsingSettings;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A task that checks that all parsers of iExport read the same library.
+ * <p>
+ * The library file tasks.checkParsers.libraryFilePath (by default, a small sample library bundled with iExport
+ * that covers the syntax and the keys handled by the parsers) is converted by dd-plist into the other format,
+ * i.e. an .xml file into a binary property list and vice versa.
+ * Both are read by dd-plist, {@code MappedLibraryParser} (.xml) or {@code BinaryLibraryParser} (binary),
+ * sequentially and in parallel chunks, with lazily decoded tracks and (for .xml) with a cache of the previous run.
+ * Each library is compared with the library read by dd-plist from the original file using {@link LibraryDifferences},
+ * once with all playlists and once ignoring the master, empty and non-music playlists.
+ * <p>
+ * The parsers only split libraries with thousands of tracks into chunks,
+ * so the chunked variants only differ from the sequential ones when checking a real library.
+ * <p>
+ * Additionally, the task checks using {@link PlaylistOrderCheck} that the playlists of the reference library
+ * and of a random playlist tree (tasks.checkParsers.randomPlaylists) are sorted as by
+ * {@link iexport.parsing.sorting.PlaylistComparator}.
+ * <p>
+ * The task fails if any check fails, so it can be run e.g. before releasing changes to the parsers.
+ */
+public class CheckParsersTask extends Task
+{
+    /**
+     * The name of the resource holding the sample library.
+     */
+    private static final String SAMPLE_LIBRARY = "sampleLibrary.xml";
+
+    /**
+     * The maximal number of differences that are printed per variant.
+     */
+    private static final int MAX_PRINTED_DIFFERENCES = 20;
+
+    /**
+     * The seed of the random playlist tree, fixed so that failures can be reproduced.
+     */
+    private static final long RANDOM_TREE_SEED = 42;
+
+    /**
+     * The settings used for this task.
+     */
+    private CheckParsersTaskSettings settings;
+
+    /**
+     * The number of checks that have failed.
+     */
+    private int failedChecks = 0;
+
+    /**
+     * The number of checks that have been run.
+     */
+    private int checks = 0;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "checkParsers";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "checks that all parsers read the same library from a sample library or a library file";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new CheckParsersTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        // It would be pretty silly to call this task but then hide the output.
+        if (Logging.getLogger().getLogLevel().lessVerbose(LogLevel.NORMAL))
+        {
+            Logging.getLogger().setLogLevel(LogLevel.NORMAL);
+        }
+
+        try
+        {
+            LibraryInput original = openLibrary();
+            LibraryInput converted = original.convert();
+            boolean binary = original.isBinaryPropertyList();
+            LibraryInput xml = binary ? converted : original;
+            LibraryInput binaryPropertyList = binary ? original : converted;
+
+            Logging.getLogger().message("Checking the parsers on " + original + " and " + converted);
+
+            checkParsers(original, xml, binaryPropertyList, true);
+            checkParsers(original, xml, binaryPropertyList, false);
+        }
+        catch (IOException | ITunesParsingException e)
+        {
+            throw new RuntimeException("Reading the library for task " + getTaskName() + " has failed: " + e.getMessage(), e);
+        }
+
+        int randomPlaylists = settings.getRandomPlaylists();
+        if (randomPlaylists > 0)
+        {
+            report("PlaylistTreeOrder on a random tree of " + randomPlaylists + " playlists",
+                   PlaylistOrderCheck.checkRandomTree(randomPlaylists, RANDOM_TREE_SEED), 0);
+        }
+
+        Logging.getLogger().message("");
+        if (failedChecks > 0)
+        {
+            throw new RuntimeException(failedChecks + " of " + checks + " checks have failed");
+        }
+        Logging.getLogger().message("All " + checks + " checks have passed.");
+    }
+
+    /**
+     * Compare each variant of the parsers with dd-plist on the original file.
+     *
+     * @param original           the original library file
+     * @param xml                the library as .xml file
+     * @param binaryPropertyList the library as binary property list
+     * @param allPlaylists       whether to keep all playlists (otherwise, the master, empty and non-music playlists are ignored)
+     * @throws ITunesParsingException if parsing fails in a non-recoverable way
+     * @throws IOException            if the temporary cache file cannot be created
+     */
+    private void checkParsers (LibraryInput original, LibraryInput xml, LibraryInput binaryPropertyList, boolean allPlaylists)
+            throws ITunesParsingException, IOException
+    {
+        String playlists = allPlaylists ? "all playlists" : "ignoring the master, empty and non-music playlists";
+        Logging.getLogger().message("");
+        Logging.getLogger().message("Comparing with dd-plist on " + original + ", " + playlists + ":");
+
+        Library reference = parse(original, LibraryParser.PARSER_DD_PLIST, parsingSettings(allPlaylists, false, 1, false, ""));
+        report("playlist order of dd-plist", PlaylistOrderCheck.checkLibrary(reference), 1);
+
+        int threads = settings.getParserThreads();
+        for (LibraryInput input : List.of(xml, binaryPropertyList))
+        {
+            boolean binary = input == binaryPropertyList;
+            String format = binary ? ", binary" : ", .xml";
+            String parser = binary ? LibraryParser.PARSER_BINARY : LibraryParser.PARSER_MAPPED;
+
+            if (input != original)
+            {
+                compare(reference, input, LibraryParser.PARSER_DD_PLIST + format, LibraryParser.PARSER_DD_PLIST,
+                        parsingSettings(allPlaylists, false, 1, false, ""));
+            }
+            compare(reference, input, parser + format, parser,
+                    parsingSettings(allPlaylists, true, 1, false, ""));
+            compare(reference, input, parser + format + ", " + threads + " threads", parser,
+                    parsingSettings(allPlaylists, true, threads, false, ""));
+            compare(reference, input, parser + format + ", " + threads + " threads, lazy tracks", parser,
+                    parsingSettings(allPlaylists, true, threads, true, ""));
+
+            if (!binary)
+            {
+                // Write the cache in a first run, use it in a second one.
+                Path cacheFile = Files.createTempFile("iExport-checkParsers", ".cache");
+                try
+                {
+                    Files.delete(cacheFile);
+                    Map<String, Object> cacheSettings = parsingSettings(allPlaylists, true, threads, true, cacheFile.toString());
+                    compare(reference, input, parser + format + ", writing the cache", parser, cacheSettings);
+                    compare(reference, input, parser + format + ", reading the cache", parser, cacheSettings);
+                }
+                finally
+                {
+                    Files.deleteIfExists(cacheFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a library with a variant of the parsers and compare it with the reference library.
+     *
+     * @param reference       the library read by dd-plist from the original file
+     * @param input           the library file
+     * @param variant         a description of the variant
+     * @param parser          the parser that has to read the library, see {@link LibraryParser#getParserName()}
+     * @param parsingSettings the parsing settings of the variant
+     * @throws ITunesParsingException if parsing fails in a non-recoverable way
+     */
+    private void compare (Library reference, LibraryInput input, String variant, String parser, Map<String, Object> parsingSettings)
+            throws ITunesParsingException
+    {
+        LibraryParser libraryParser = new LibraryParser(input, new ParsingSettings(parsingSettings));
+        Library library = libraryParser.parse();
+
+        List<String> problems = new ArrayList<>();
+        if (!parser.equals(libraryParser.getParserName()))
+        {
+            problems.add("the library has been read by " + libraryParser.getParserName() + " instead of " + parser);
+        }
+
+        LibraryDifferences differences = LibraryDifferences.between(reference, library, MAX_PRINTED_DIFFERENCES);
+        problems.addAll(differences.descriptions());
+        if (differences.count() > differences.descriptions().size())
+        {
+            problems.add("... and " + (differences.count() - differences.descriptions().size()) + " more differences");
+        }
+
+        report(variant, problems, 1);
+    }
+
+    /**
+     * Parse a library.
+     *
+     * @param input           the library file
+     * @param parser          the parser that has to read the library, see {@link LibraryParser#getParserName()}
+     * @param parsingSettings the parsing settings
+     * @return the library
+     * @throws ITunesParsingException if parsing fails in a non-recoverable way
+     */
+    private static Library parse (LibraryInput input, String parser, Map<String, Object> parsingSettings)
+            throws ITunesParsingException
+    {
+        LibraryParser libraryParser = new LibraryParser(input, new ParsingSettings(parsingSettings));
+        Library library = libraryParser.parse();
+        if (!parser.equals(libraryParser.getParserName()))
+        {
+            throw new RuntimeException("The library has been read by " + libraryParser.getParserName() + " instead of " + parser);
+        }
+        return library;
+    }
+
+    /**
+     * Print the result of a check.
+     *
+     * @param check       a description of the check
+     * @param problems    the problems that have been found, empty if the check has passed
+     * @param indentation the indentation of the output
+     */
+    private void report (String check, List<String> problems, int indentation)
+    {
+        checks++;
+        if (problems.isEmpty())
+        {
+            Logging.getLogger().message(indentation, "OK: " + check);
+            return;
+        }
+
+        failedChecks++;
+        Logging.getLogger().error(indentation, "FAILED: " + check);
+        for (String problem : problems)
+        {
+            Logging.getLogger().error(indentation + 1, problem);
+        }
+    }
+
+    /**
+     * @return the library file tasks.checkParsers.libraryFilePath, or the sample library if it is empty
+     * @throws IOException if the sample library cannot be read
+     */
+    private LibraryInput openLibrary ()
+            throws IOException
+    {
+        String libraryFilePath = settings.getLibraryFilePath();
+        if (!libraryFilePath.isEmpty())
+        {
+            return LibraryInput.fromPath(libraryFilePath);
+        }
+
+        InputStream sampleLibrary = CheckParsersTask.class.getResourceAsStream(SAMPLE_LIBRARY);
+        if (sampleLibrary == null)
+        {
+            throw new IOException("The sample library " + SAMPLE_LIBRARY + " is missing");
+        }
+        return new LibraryInput(sampleLibrary, "the sample library");
+    }
+
+    /**
+     * Specify all parsing settings, so that none of them is reported as missing.
+     *
+     * @param allPlaylists  whether to keep all playlists (otherwise, the master, empty and non-music playlists are ignored)
+     * @param mappedParser  parsing.mappedParser
+     * @param parserThreads parsing.parserThreads
+     * @param lazyTracks    parsing.lazyTracks
+     * @param cacheFilePath parsing.cacheFilePath
+     * @return the raw parsing settings
+     */
+    private static Map<String, Object> parsingSettings (boolean allPlaylists, boolean mappedParser, int parserThreads, boolean lazyTracks, String cacheFilePath)
+    {
+        Map<String, Object> parsingSettings = new HashMap<>();
+        parsingSettings.put("mappedParser", mappedParser);
+        parsingSettings.put("parserThreads", parserThreads);
+        parsingSettings.put("lazyTracks", lazyTracks);
+        parsingSettings.put("cacheFilePath", cacheFilePath);
+        parsingSettings.put("ignoreEmptyPlaylists", !allPlaylists);
+        parsingSettings.put("ignoreNonMusicPlaylists", !allPlaylists);
+        parsingSettings.put("ignoreDistinguishedPlaylists", false);
+        parsingSettings.put("ignoreMaster", !allPlaylists);
+        parsingSettings.put("ignorePlaylistsByName", List.of());
+        parsingSettings.put("smartPlaylists", Map.of());
+        return parsingSettings;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.tasks.parsercheck;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.Settings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link CheckParsersTask}.
+ */
+public class CheckParsersTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the checkParsers task
+     */
+    private static final Map<String, Object> CHECK_PARSERS_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.checkParsers.libraryFilePath
+     * <p>
+     * The library file (.xml or binary property list, possibly compressed) on which the parsers should be compared,
+     * or the empty string for the small sample library that is bundled with iExport.
+     * Supports the %USERPROFILE% placeholder, which will typically get replaced by "C:\Users\<USERNAME>".
+     */
+    private static final String SETTING_LIBRARY_FILE_PATH = "libraryFilePath";
+
+    /**
+     * Default value for tasks.checkParsers.libraryFilePath
+     */
+    private static final String SETTING_LIBRARY_FILE_PATH_DEFAULT_VALUE = "";
+
+    /**
+     * tasks.checkParsers.parserThreads
+     * <p>
+     * The number of threads for the variants of the parsers that parse in parallel chunks.
+     */
+    private static final String SETTING_PARSER_THREADS = "parserThreads";
+
+    /**
+     * Default value for tasks.checkParsers.parserThreads
+     */
+    private static final Integer SETTING_PARSER_THREADS_DEFAULT_VALUE = 4;
+
+    /**
+     * tasks.checkParsers.randomPlaylists
+     * <p>
+     * The number of playlists in the random playlist tree on which the playlist orders are compared, or 0 to skip this check.
+     */
+    private static final String SETTING_RANDOM_PLAYLISTS = "randomPlaylists";
+
+    /**
+     * Default value for tasks.checkParsers.randomPlaylists
+     */
+    private static final Integer SETTING_RANDOM_PLAYLISTS_DEFAULT_VALUE = 400;
+
+    static
+    {
+        // Set default values.
+        CHECK_PARSERS_DEFAULT_SETTINGS.put(SETTING_LIBRARY_FILE_PATH, SETTING_LIBRARY_FILE_PATH_DEFAULT_VALUE);
+        CHECK_PARSERS_DEFAULT_SETTINGS.put(SETTING_PARSER_THREADS, SETTING_PARSER_THREADS_DEFAULT_VALUE);
+        CHECK_PARSERS_DEFAULT_SETTINGS.put(SETTING_RANDOM_PLAYLISTS, SETTING_RANDOM_PLAYLISTS_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link CheckParsersTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public CheckParsersTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(CHECK_PARSERS_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
+     *
+     * @return tasks.checkParsers.libraryFilePath
+     */
+    public String getLibraryFilePath ()
+    {
+        String key = SETTING_LIBRARY_FILE_PATH;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return Settings.applyUserProfileReplacement((String) result);
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.checkParsers.parserThreads
+     */
+    public int getParserThreads ()
+    {
+        return getInteger(SETTING_PARSER_THREADS, 1);
+    }
+
+    /**
+     * @return tasks.checkParsers.randomPlaylists
+     */
+    public int getRandomPlaylists ()
+    {
+        return getInteger(SETTING_RANDOM_PLAYLISTS, 0);
+    }
+
+    /**
+     * @param key     the key of a setting whose value is an integer
+     * @param minimum the smallest valid value
+     * @return the value of the setting
+     */
+    private int getInteger (String key, int minimum)
+    {
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < minimum)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer of at least " + minimum + ", but got " + value);
+        }
+        return value;
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return CHECK_PARSERS_DEFAULT_SETTINGS.get(key);
+    }
+}
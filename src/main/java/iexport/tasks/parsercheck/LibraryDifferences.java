@@ -0,0 +1,245 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.tasks.parsercheck;
+
+import iexport.itunes.Library;
+import iexport.itunes.Playlist;
+import iexport.itunes.Track;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The differences between two libraries, e.g. between the libraries read by two parsers from the same file.
+ * <p>
+ * The libraries are compared component by component: the metadata of the library, each track, and each playlist
+ * (matched by Track ID and Playlist Persistent ID) including the order of the lists of tracks and playlists.
+ * Tracks and playlists that are referenced by a component (e.g. {@link Playlist#parent()} or {@link Track#inPlaylists()})
+ * are compared by their IDs, the elements of sets regardless of their order.
+ */
+class LibraryDifferences
+{
+    /**
+     * The maximal number of differences that are described, further differences are only counted.
+     */
+    private final int maxDescribedDifferences;
+
+    /**
+     * The descriptions of the first differences.
+     */
+    private final List<String> descriptions = new ArrayList<>();
+
+    /**
+     * The number of differences that have been found.
+     */
+    private int count = 0;
+
+    /**
+     * @param maxDescribedDifferences the maximal number of differences that are described, further differences are only counted
+     */
+    private LibraryDifferences (int maxDescribedDifferences)
+    {
+        this.maxDescribedDifferences = maxDescribedDifferences;
+    }
+
+    /**
+     * Compare two libraries.
+     *
+     * @param expected                the expected library
+     * @param actual                  the library that should be equal to it
+     * @param maxDescribedDifferences the maximal number of differences that are described, further differences are only counted
+     * @return the differences
+     */
+    static LibraryDifferences between (Library expected, Library actual, int maxDescribedDifferences)
+    {
+        LibraryDifferences differences = new LibraryDifferences(maxDescribedDifferences);
+        differences.compareComponents("library", expected, actual);
+
+        Map<Integer, Track> actualTracksById = new HashMap<>();
+        for (Track track : actual.tracks())
+        {
+            actualTracksById.put(track.trackId(), track);
+        }
+        for (Track track : expected.tracks())
+        {
+            Track actualTrack = actualTracksById.get(track.trackId());
+            if (actualTrack != null)
+            {
+                differences.compareComponents("track " + track.trackId(), track, actualTrack);
+            }
+        }
+
+        Map<String, Playlist> actualPlaylistsById = new HashMap<>();
+        for (Playlist playlist : actual.playlists())
+        {
+            actualPlaylistsById.put(playlist.playlistPersistentId(), playlist);
+        }
+        for (Playlist playlist : expected.playlists())
+        {
+            Playlist actualPlaylist = actualPlaylistsById.get(playlist.playlistPersistentId());
+            if (actualPlaylist != null)
+            {
+                differences.compareComponents("playlist " + playlist.playlistPersistentId(), playlist, actualPlaylist);
+            }
+        }
+
+        return differences;
+    }
+
+    /**
+     * @return true iff no differences have been found
+     */
+    boolean isEmpty ()
+    {
+        return count == 0;
+    }
+
+    /**
+     * @return the number of differences that have been found
+     */
+    int count ()
+    {
+        return count;
+    }
+
+    /**
+     * @return the descriptions of the first differences
+     */
+    List<String> descriptions ()
+    {
+        return descriptions;
+    }
+
+    /**
+     * Compare the record components of two records of the same class.
+     *
+     * @param description a description of the records, e.g. {@code track 42}
+     * @param expected    the expected record
+     * @param actual      the record that should be equal to it
+     */
+    private void compareComponents (String description, Record expected, Record actual)
+    {
+        for (RecordComponent component : expected.getClass().getRecordComponents())
+        {
+            Object expectedValue = normalize(valueOf(component, expected));
+            Object actualValue = normalize(valueOf(component, actual));
+            if (Objects.equals(expectedValue, actualValue))
+            {
+                continue;
+            }
+
+            if (expectedValue instanceof List<?> expectedList && actualValue instanceof List<?> actualList)
+            {
+                add(description + ": " + component.getName() + " " + describeDifference(expectedList, actualList));
+            }
+            else
+            {
+                add(description + ": " + component.getName() + " is " + actualValue + ", expected " + expectedValue);
+            }
+        }
+    }
+
+    /**
+     * @param difference the description of a difference
+     */
+    private void add (String difference)
+    {
+        count++;
+        if (descriptions.size() < maxDescribedDifferences)
+        {
+            descriptions.add(difference);
+        }
+    }
+
+    /**
+     * @param component a record component
+     * @param record    a record having this component
+     * @return the value of the component
+     */
+    private static Object valueOf (RecordComponent component, Record record)
+    {
+        try
+        {
+            return component.getAccessor().invoke(record);
+        }
+        catch (IllegalAccessException | InvocationTargetException e)
+        {
+            throw new RuntimeException("Accessing " + component.getName() + " of " + record.getClass().getSimpleName() + " has failed", e);
+        }
+    }
+
+    /**
+     * Replace tracks and playlists by their IDs (also in collections), and sets by sorted lists.
+     *
+     * @param value the value of a record component
+     * @return a value that can be compared using {@link Objects#equals(Object, Object)}
+     */
+    private static Object normalize (Object value)
+    {
+        if (value instanceof Track track)
+        {
+            return track.trackId();
+        }
+        if (value instanceof Playlist playlist)
+        {
+            return playlist.playlistPersistentId();
+        }
+        if (value instanceof Collection<?> collection)
+        {
+            List<Object> normalized = new ArrayList<>(collection.size());
+            for (Object element : collection)
+            {
+                normalized.add(normalize(element));
+            }
+            if (value instanceof Set<?>)
+            {
+                normalized.sort(Comparator.comparing(String::valueOf));
+            }
+            return normalized;
+        }
+        return value;
+    }
+
+    /**
+     * @param expected the expected list
+     * @param actual   a different list
+     * @return a description of the first difference, e.g. {@code differ at index 3: 17, expected 42}
+     */
+    private static String describeDifference (List<?> expected, List<?> actual)
+    {
+        int index = 0;
+        while (index < expected.size() && index < actual.size() && Objects.equals(expected.get(index), actual.get(index)))
+        {
+            index++;
+        }
+
+        String actualElement = index < actual.size() ? String.valueOf(actual.get(index)) : "the end";
+        String expectedElement = index < expected.size() ? String.valueOf(expected.get(index)) : "the end";
+        return "(" + actual.size() + " elements, expected " + expected.size() + ") differ at index " + index + ": "
+                + actualElement + ", expected " + expectedElement;
+    }
+}
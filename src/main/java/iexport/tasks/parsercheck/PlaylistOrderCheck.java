@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.tasks.parsercheck;
+
+import iexport.itunes.Library;
+import iexport.itunes.Playlist;
+import iexport.parsing.sorting.PlaylistComparator;
+import iexport.parsing.sorting.PlaylistTreeOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that the playlists are sorted in the order of {@link PlaylistComparator},
+ * which the parser computes using {@link PlaylistTreeOrder}.
+ * <p>
+ * This class should not be instantiated.
+ */
+class PlaylistOrderCheck
+{
+    /**
+     * The names of the playlists in random trees, with duplicates up to case, so that many siblings are only ordered by their IDs.
+     */
+    private static final String[] RANDOM_NAMES = {"Mix", "mix", "MIX", "A", "b", "Zed", "Café", "", null};
+
+    /**
+     * The comparator defining the expected order.
+     */
+    private static final PlaylistComparator PLAYLIST_COMPARATOR = new PlaylistComparator();
+
+    /**
+     * Check that the playlists of a parsed library, its top-level playlists, and the children of each playlist
+     * are sorted by {@link PlaylistComparator}.
+     *
+     * @param library the library
+     * @return the descriptions of the lists that are not sorted
+     */
+    static List<String> checkLibrary (Library library)
+    {
+        List<String> problems = new ArrayList<>();
+        checkSorted("all playlists", library.playlists(), problems);
+        checkSorted("top-level playlists", library.playlistsAtTopLevel(), problems);
+        for (Playlist playlist : library.playlists())
+        {
+            checkSorted("children of " + playlist.playlistPersistentId(), playlist.children(), problems);
+        }
+        return problems;
+    }
+
+    /**
+     * Build a random tree of playlists in shuffled lists, sort it using {@link PlaylistTreeOrder}
+     * and check that the resulting orders are those of {@link PlaylistComparator}.
+     * <p>
+     * This covers both the replacement of the list of all playlists by the pre-order ({@link PlaylistTreeOrder#sort(List)})
+     * and the comparison of ranks (for a sublist).
+     *
+     * @param size the number of playlists
+     * @param seed the seed of the random tree
+     * @return the descriptions of the lists whose orders differ
+     */
+    static List<String> checkRandomTree (int size, long seed)
+    {
+        Random random = new Random(seed);
+
+        List<Playlist> playlists = new ArrayList<>(size);
+        List<Playlist> playlistsAtTopLevel = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            // Every fourth playlist is at the top level, the others are children of a random earlier playlist.
+            Playlist parent = playlists.isEmpty() || random.nextInt(4) == 0 ? null : playlists.get(random.nextInt(playlists.size()));
+            Playlist playlist = new Playlist(i,
+                                             parent == null ? 0 : parent.depth() + 1,
+                                             null,
+                                             RANDOM_NAMES[random.nextInt(RANDOM_NAMES.length)],
+                                             String.format("%016X", i * 0x9E3779B97F4A7C15L),
+                                             parent == null ? null : parent.playlistPersistentId(),
+                                             true, true, null, false, true, false, false, false,
+                                             parent);
+            if (parent == null)
+            {
+                playlistsAtTopLevel.add(playlist);
+            }
+            else
+            {
+                playlist.ancestry().addAll(parent.ancestry());
+                parent.addChild(playlist);
+            }
+            playlist.ancestry().add(playlist);
+            playlists.add(playlist);
+        }
+
+        Collections.shuffle(playlists, random);
+        Collections.shuffle(playlistsAtTopLevel, random);
+        for (Playlist playlist : playlists)
+        {
+            Collections.shuffle(playlist.children(), random);
+        }
+        List<Playlist> sublist = new ArrayList<>(playlists.subList(0, size / 2));
+
+        // The expected orders, computed before PlaylistTreeOrder sorts the lists of siblings in place.
+        List<Playlist> expectedPlaylists = sorted(playlists);
+        List<Playlist> expectedPlaylistsAtTopLevel = sorted(playlistsAtTopLevel);
+        List<Playlist> expectedSublist = sorted(sublist);
+        Map<Playlist, List<Playlist>> expectedChildren = new IdentityHashMap<>();
+        for (Playlist playlist : playlists)
+        {
+            expectedChildren.put(playlist, sorted(playlist.children()));
+        }
+
+        PlaylistTreeOrder playlistTreeOrder = new PlaylistTreeOrder(playlistsAtTopLevel);
+        playlistTreeOrder.sort(playlists);
+        sublist.sort(playlistTreeOrder);
+
+        List<String> problems = new ArrayList<>();
+        compare("all playlists", expectedPlaylists, playlists, problems);
+        compare("top-level playlists", expectedPlaylistsAtTopLevel, playlistsAtTopLevel, problems);
+        compare("half of the playlists", expectedSublist, sublist, problems);
+        for (Playlist playlist : playlists)
+        {
+            compare("children of " + playlist.playlistPersistentId(), expectedChildren.get(playlist), playlist.children(), problems);
+        }
+        return problems;
+    }
+
+    /**
+     * @param description a description of the list
+     * @param playlists   the list
+     * @param problems    the list to which a problem is added if the list is not sorted
+     */
+    private static void checkSorted (String description, List<Playlist> playlists, List<String> problems)
+    {
+        compare(description, sorted(playlists), playlists, problems);
+    }
+
+    /**
+     * @param description a description of the lists
+     * @param expected    the list in the expected order
+     * @param actual      the list that should have the same order
+     * @param problems    the list to which a problem is added if the orders differ
+     */
+    private static void compare (String description, List<Playlist> expected, List<Playlist> actual, List<String> problems)
+    {
+        // Compare by identity, since playlists only compare their persistent IDs.
+        int index = 0;
+        for (Playlist playlist : actual)
+        {
+            if (index >= expected.size() || expected.get(index) != playlist)
+            {
+                problems.add(description + " differ at index " + index + ": " + playlist.name() + " (" + playlist.playlistPersistentId() + ")"
+                        + ", expected " + (index < expected.size() ? expected.get(index).name() + " (" + expected.get(index).playlistPersistentId() + ")" : "the end"));
+                return;
+            }
+            index++;
+        }
+        if (index < expected.size())
+        {
+            problems.add(description + " end after " + index + " playlists, expected " + expected.size());
+        }
+    }
+
+    /**
+     * @param playlists a list of playlists
+     * @return a copy of the list sorted by {@link PlaylistComparator}
+     */
+    private static List<Playlist> sorted (List<Playlist> playlists)
+    {
+        List<Playlist> copy = new ArrayList<>(playlists);
+        copy.sort(PLAYLIST_COMPARATOR);
+        return copy;
+    }
+
+    /**
+     * This class should not be instantiated.
+     */
+    private PlaylistOrderCheck ()
+    {
+
+    }
+}
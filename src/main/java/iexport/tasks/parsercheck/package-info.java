@@ -0,0 +1,24 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Classes for a task that checks that the parsers of iExport read the same library,
+ * and that playlists are sorted in the same order by {@link iexport.parsing.sorting.PlaylistTreeOrder}
+ * and {@link iexport.parsing.sorting.PlaylistComparator}.
+ */
+package iexport.tasks.parsercheck;
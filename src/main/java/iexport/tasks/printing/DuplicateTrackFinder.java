@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.printing;
+
+import iexport.itunes.Track;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Finds tracks that are likely duplicates of each other based on their metadata,
+ * e.g. the same song imported twice or in different bit rates.
+ * <p>
+ * Two tracks are considered duplicates if their normalized artists are equal,
+ * their durations differ by at most a given tolerance,
+ * and the similarity score of their normalized names and durations reaches a given minimum.
+ * <p>
+ * Comparing all pairs of tracks would take quadratic time, which is infeasible for large libraries.
+ * Instead, the tracks are first partitioned into blocks by a blocking key
+ * (the normalized artist and the first {@value #BLOCKING_PREFIX_LENGTH} characters of the normalized name),
+ * and only tracks within the same block are compared.
+ * Within a block, the tracks are sorted by duration,
+ * so that each track is only compared to the tracks whose duration lies within the tolerance.
+ * Blocks are processed in parallel.
+ * Finally, the pairs of duplicates are merged into groups using a union-find structure,
+ * so that e.g. three copies of the same song end up in one group.
+ * <p>
+ * Normalizing a string means removing diacritics, converting it to lower case,
+ * optionally removing parts in parentheses or brackets (like "(Remastered 2011)"),
+ * and replacing all non-alphanumeric characters by single spaces.
+ */
+public class DuplicateTrackFinder
+{
+    /**
+     * The number of characters of the normalized name that are part of the blocking key.
+     */
+    private static final int BLOCKING_PREFIX_LENGTH = 6;
+
+    /**
+     * Weight of the similarity of the names in the score; the remaining weight is given to the durations.
+     */
+    private static final double NAME_WEIGHT = 0.8;
+
+    /**
+     * Matches diacritical marks after NFD normalization.
+     */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Matches parts in parentheses or brackets.
+     */
+    private static final Pattern PARENTHESES = Pattern.compile("\\([^)]*\\)|\\[[^]]*]");
+
+    /**
+     * Matches sequences of characters that are neither letters nor digits.
+     */
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * The maximal difference in duration (in milliseconds) between two duplicates.
+     */
+    private final int durationTolerance;
+
+    /**
+     * The minimal score (between 0 and 1) of two duplicates.
+     */
+    private final double minimumScore;
+
+    /**
+     * Whether parts of the name in parentheses or brackets should be ignored.
+     */
+    private final boolean ignoreParentheses;
+
+    /**
+     * @param durationTolerance the maximal difference in duration (in milliseconds) between two duplicates
+     * @param minimumScore      the minimal score (between 0 and 1) of two duplicates
+     * @param ignoreParentheses whether parts of the name in parentheses or brackets should be ignored
+     */
+    public DuplicateTrackFinder (int durationTolerance, double minimumScore, boolean ignoreParentheses)
+    {
+        this.durationTolerance = durationTolerance;
+        this.minimumScore = minimumScore;
+        this.ignoreParentheses = ignoreParentheses;
+    }
+
+    /**
+     * Find groups of likely duplicates.
+     * <p>
+     * Tracks without name or duration are never considered duplicates.
+     *
+     * @param tracks the tracks
+     * @return the groups of duplicates (each containing at least two tracks, in the order of {@code tracks}),
+     * ordered by their first track
+     */
+    public List<List<Track>> find (List<Track> tracks)
+    {
+        // Normalize all tracks once and partition them into blocks.
+        List<Candidate> candidates = new ArrayList<>(tracks.size());
+        for (int i = 0; i < tracks.size(); i++)
+        {
+            Track track = tracks.get(i);
+            if (track.name() != null && track.totalTime() != null)
+            {
+                candidates.add(new Candidate(i, normalize(track.artist()), normalize(track.name()), track.totalTime()));
+            }
+        }
+
+        Collection<List<Candidate>> blocks = candidates.parallelStream()
+                .collect(Collectors.groupingByConcurrent(Candidate::blockingKey))
+                .values();
+
+        // Compare the tracks within each block.
+        List<int[]> pairs = blocks.parallelStream()
+                .filter((block) -> block.size() > 1)
+                .flatMap((block) -> findPairs(block).stream())
+                .toList();
+
+        // Merge the pairs into groups.
+        int[] parent = new int[tracks.size()];
+        for (int i = 0; i < parent.length; i++)
+        {
+            parent[i] = i;
+        }
+        for (int[] pair : pairs)
+        {
+            union(parent, pair[0], pair[1]);
+        }
+
+        // The representative of each group is its smallest index, so the groups are ordered by their first track.
+        Map<Integer, List<Track>> groups = new TreeMap<>();
+        Set<Integer> duplicates = new TreeSet<>();
+        for (int[] pair : pairs)
+        {
+            duplicates.add(pair[0]);
+            duplicates.add(pair[1]);
+        }
+        for (int index : duplicates)
+        {
+            groups.computeIfAbsent(find(parent, index), (key) -> new ArrayList<>()).add(tracks.get(index));
+        }
+
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * Find the pairs of duplicates within a block.
+     *
+     * @param block the candidates of a block
+     * @return the pairs of indices of duplicates
+     */
+    private List<int[]> findPairs (List<Candidate> block)
+    {
+        List<Candidate> sorted = new ArrayList<>(block);
+        sorted.sort(Comparator.comparingInt(Candidate::duration));
+
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++)
+        {
+            Candidate first = sorted.get(i);
+            for (int j = i + 1; j < sorted.size(); j++)
+            {
+                Candidate second = sorted.get(j);
+                int difference = second.duration() - first.duration();
+                if (difference > durationTolerance)
+                {
+                    // All further candidates have an even longer duration.
+                    break;
+                }
+                if (score(first, second, difference) >= minimumScore)
+                {
+                    pairs.add(new int[]{first.index(), second.index()});
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * @param first      a candidate
+     * @param second     another candidate from the same block
+     * @param difference the difference of their durations, at most {@link #durationTolerance}
+     * @return the similarity score of the two candidates, between 0 and 1
+     */
+    private double score (Candidate first, Candidate second, int difference)
+    {
+        double durationSimilarity = durationTolerance == 0 ? 1 : 1 - (double) difference / durationTolerance;
+        return NAME_WEIGHT * similarity(first.name(), second.name()) + (1 - NAME_WEIGHT) * durationSimilarity;
+    }
+
+    /**
+     * @param first  a string
+     * @param second another string
+     * @return 1 minus the edit distance of the strings divided by the length of the longer string
+     */
+    private static double similarity (String first, String second)
+    {
+        if (first.equals(second))
+        {
+            return 1;
+        }
+
+        int maxLength = Math.max(first.length(), second.length());
+        return 1 - (double) editDistance(first, second) / maxLength;
+    }
+
+    /**
+     * Compute the Levenshtein distance of two strings using two rows of the dynamic programming table.
+     *
+     * @param first  a string
+     * @param second another string
+     * @return the minimal number of insertions, deletions, and substitutions needed to turn one string into the other
+     */
+    private static int editDistance (String first, String second)
+    {
+        int[] previous = new int[second.length() + 1];
+        int[] current = new int[second.length() + 1];
+        for (int j = 0; j <= second.length(); j++)
+        {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= first.length(); i++)
+        {
+            current[0] = i;
+            for (int j = 1; j <= second.length(); j++)
+            {
+                int substitution = previous[j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[second.length()];
+    }
+
+    /**
+     * @param string a string (may be null)
+     * @return the normalized string (empty if {@code string} is null)
+     */
+    private String normalize (String string)
+    {
+        if (string == null)
+        {
+            return "";
+        }
+
+        String result = Normalizer.normalize(string, Normalizer.Form.NFD);
+        result = DIACRITICS.matcher(result).replaceAll("");
+        result = result.toLowerCase(Locale.ROOT);
+        if (ignoreParentheses)
+        {
+            result = PARENTHESES.matcher(result).replaceAll(" ");
+        }
+        return NON_ALPHANUMERIC.matcher(result).replaceAll(" ").trim();
+    }
+
+    /**
+     * @param parent the union-find forest
+     * @param index  an element
+     * @return the representative of the set containing the element
+     */
+    private static int find (int[] parent, int index)
+    {
+        while (parent[index] != index)
+        {
+            // Path halving
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    /**
+     * Merge the sets containing two elements, using the smaller representative for the merged set.
+     *
+     * @param parent the union-find forest
+     * @param first  an element
+     * @param second another element
+     */
+    private static void union (int[] parent, int first, int second)
+    {
+        int firstRoot = find(parent, first);
+        int secondRoot = find(parent, second);
+        if (firstRoot < secondRoot)
+        {
+            parent[secondRoot] = firstRoot;
+        }
+        else if (secondRoot < firstRoot)
+        {
+            parent[firstRoot] = secondRoot;
+        }
+    }
+
+    /**
+     * A track prepared for comparison.
+     *
+     * @param index    the index of the track in the list of tracks
+     * @param artist   the normalized artist
+     * @param name     the normalized name
+     * @param duration the duration in milliseconds
+     */
+    private record Candidate(int index, String artist, String name, int duration)
+    {
+        /**
+         * @return the key of the block this candidate belongs to
+         */
+        String blockingKey ()
+        {
+            return artist + '\u0000' + name.substring(0, Math.min(name.length(), BLOCKING_PREFIX_LENGTH));
+        }
+    }
+}
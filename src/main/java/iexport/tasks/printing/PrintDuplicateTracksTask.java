@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.printing;
+
+import iexport.itunes.Library;
+import iexport.itunes.Track;
+import iexport.logging.LogLevel;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+
+import java.util.List;
+
+/**
+ * A task that will print groups of tracks that are likely duplicates of each other,
+ * e.g. because a song has been imported twice or in different bit rates.
+ * <p>
+ * Duplicates are detected based on the artist, name, and duration of the tracks, see {@link DuplicateTrackFinder}.
+ */
+public class PrintDuplicateTracksTask extends Task
+{
+    /**
+     * The settings used for this task.
+     */
+    private PrintDuplicateTracksTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "printDuplicateTracks";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "prints tracks that are likely duplicates of each other";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new PrintDuplicateTracksTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        // It would be pretty silly to call this task but then hide the output.
+        if (Logging.getLogger().getLogLevel().lessVerbose(LogLevel.NORMAL))
+        {
+            Logging.getLogger().setLogLevel(LogLevel.NORMAL);
+        }
+
+        DuplicateTrackFinder finder = new DuplicateTrackFinder(
+                settings.getDurationTolerance(),
+                settings.getMinimumScore() / 100.0,
+                settings.getIgnoreParentheses());
+
+        long start = System.nanoTime();
+        List<List<Track>> groups = finder.find(library.tracks());
+        Logging.getLogger().debug("Searched " + library.tracks().size() + " tracks for duplicates in "
+                + String.format("%.1f", (System.nanoTime() - start) / 1e6) + "ms");
+
+        if (groups.isEmpty())
+        {
+            Logging.getLogger().message("No duplicate tracks found.");
+            return;
+        }
+
+        Logging.getLogger().message("Likely duplicate tracks");
+        Logging.getLogger().message("-----------------------");
+
+        for (List<Track> group : groups)
+        {
+            Logging.getLogger().message("");
+            for (Track track : group)
+            {
+                Logging.getLogger().message(track.toString());
+                Logging.getLogger().message(1, describe(track));
+            }
+        }
+
+        Logging.getLogger().message("");
+        Logging.getLogger().message(groups.size() + " groups of duplicates, "
+                + groups.stream().mapToInt(List::size).sum() + " tracks in total");
+    }
+
+    /**
+     * @param track a track
+     * @return a description of the properties in which duplicates typically differ
+     */
+    private static String describe (Track track)
+    {
+        return "album: " + (track.album() != null ? track.album() : "-")
+                + ", duration: " + track.totalTime() + "ms"
+                + ", bit rate: " + (track.bitRate() != null ? track.bitRate() + " kbit/s" : "-")
+                + ", kind: " + (track.kind() != null ? track.kind() : "-");
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.printing;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link PrintDuplicateTracksTask}.
+ */
+public class PrintDuplicateTracksTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the printDuplicateTracks task
+     */
+    private static final Map<String, Object> PRINT_DUPLICATE_TRACKS_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.printDuplicateTracks.durationTolerance
+     * <p>
+     * The maximal difference in duration (in milliseconds) between two tracks that are considered duplicates.
+     */
+    private static final String SETTING_DURATION_TOLERANCE = "durationTolerance";
+
+    /**
+     * Default value for tasks.printDuplicateTracks.durationTolerance
+     */
+    private static final Integer SETTING_DURATION_TOLERANCE_DEFAULT_VALUE = 2000;
+
+    /**
+     * tasks.printDuplicateTracks.minimumScore
+     * <p>
+     * The minimal similarity score (in percent) of two tracks that are considered duplicates.
+     * The score is mostly determined by the similarity of the names and to a lesser degree by the difference of the durations.
+     */
+    private static final String SETTING_MINIMUM_SCORE = "minimumScore";
+
+    /**
+     * Default value for tasks.printDuplicateTracks.minimumScore
+     */
+    private static final Integer SETTING_MINIMUM_SCORE_DEFAULT_VALUE = 90;
+
+    /**
+     * tasks.printDuplicateTracks.ignoreParentheses
+     * <p>
+     * Ignore parts of the names in parentheses or brackets, e.g. "(Remastered)" or "[Live]".
+     */
+    private static final String SETTING_IGNORE_PARENTHESES = "ignoreParentheses";
+
+    /**
+     * Default value for tasks.printDuplicateTracks.ignoreParentheses
+     */
+    private static final Boolean SETTING_IGNORE_PARENTHESES_DEFAULT_VALUE = true;
+
+    static
+    {
+        // Set default values.
+        PRINT_DUPLICATE_TRACKS_DEFAULT_SETTINGS.put(SETTING_DURATION_TOLERANCE, SETTING_DURATION_TOLERANCE_DEFAULT_VALUE);
+        PRINT_DUPLICATE_TRACKS_DEFAULT_SETTINGS.put(SETTING_MINIMUM_SCORE, SETTING_MINIMUM_SCORE_DEFAULT_VALUE);
+        PRINT_DUPLICATE_TRACKS_DEFAULT_SETTINGS.put(SETTING_IGNORE_PARENTHESES, SETTING_IGNORE_PARENTHESES_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link PrintDuplicateTracksTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public PrintDuplicateTracksTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(PRINT_DUPLICATE_TRACKS_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * @return tasks.printDuplicateTracks.durationTolerance
+     */
+    public int getDurationTolerance ()
+    {
+        String key = SETTING_DURATION_TOLERANCE;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a non-negative integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.printDuplicateTracks.minimumScore
+     */
+    public int getMinimumScore ()
+    {
+        String key = SETTING_MINIMUM_SCORE;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 0 || value > 100)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer between 0 and 100, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.printDuplicateTracks.ignoreParentheses
+     */
+    public boolean getIgnoreParentheses ()
+    {
+        String key = SETTING_IGNORE_PARENTHESES;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (boolean) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a boolean, but got null");
+        }
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return PRINT_DUPLICATE_TRACKS_DEFAULT_SETTINGS.get(key);
+    }
+}
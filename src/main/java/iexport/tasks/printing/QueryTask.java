@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.printing;
+
+import iexport.itunes.Library;
+import iexport.itunes.Track;
+import iexport.logging.LogLevel;
+import iexport.logging.Logging;
+import iexport.query.Query;
+import iexport.query.QueryContext;
+import iexport.query.QueryParser;
+import iexport.query.QueryParsingException;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+
+import java.util.List;
+
+/**
+ * A task that prints the tracks matching a query (tasks.query.query).
+ * <p>
+ * The query is parsed by {@link QueryParser} and evaluated by {@link QueryContext},
+ * which uses indexes for conditions on frequently filtered fields like artist or year.
+ */
+public class QueryTask extends Task
+{
+    /**
+     * The settings used for this task.
+     */
+    private QueryTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "query";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "prints the tracks matching a query";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new QueryTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        // It would be pretty silly to call this task but then hide the output.
+        if (Logging.getLogger().getLogLevel().lessVerbose(LogLevel.NORMAL))
+        {
+            Logging.getLogger().setLogLevel(LogLevel.NORMAL);
+        }
+
+        Query query;
+        try
+        {
+            query = QueryParser.parse(settings.getQuery());
+        }
+        catch (QueryParsingException e)
+        {
+            throw new RuntimeException("Invalid query in " + settings.getYamlPath("query") + ": " + e.getMessage(), e);
+        }
+        Logging.getLogger().debug("Parsed query: " + query);
+
+        long start = System.nanoTime();
+        QueryContext context = new QueryContext(library);
+        List<Track> matchingTracks = context.evaluate(query);
+        Logging.getLogger().debug("Evaluated query in " + String.format("%.1f", (System.nanoTime() - start) / 1e6) + "ms");
+
+        int limit = settings.getLimit();
+        List<Track> printedTracks = limit > 0 && matchingTracks.size() > limit ? matchingTracks.subList(0, limit) : matchingTracks;
+        for (Track track : printedTracks)
+        {
+            Logging.getLogger().message(track.toString());
+        }
+
+        if (printedTracks.size() < matchingTracks.size())
+        {
+            Logging.getLogger().message("... (" + (matchingTracks.size() - printedTracks.size()) + " more)");
+        }
+        Logging.getLogger().message("");
+        Logging.getLogger().message(matchingTracks.size() + " of " + context.size() + " tracks match " + query);
+    }
+}
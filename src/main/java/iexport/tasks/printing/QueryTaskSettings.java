@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.printing;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link QueryTask}.
+ */
+public class QueryTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the query task
+     */
+    private static final Map<String, Object> QUERY_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.query.query
+     * <p>
+     * The query selecting the tracks that should be printed, e.g. "artist = 'Radiohead' and year >= 2000".
+     * See {@link iexport.query.QueryParser} for the syntax.
+     */
+    private static final String SETTING_QUERY = "query";
+
+    /**
+     * Default value for tasks.query.query
+     */
+    private static final String SETTING_QUERY_DEFAULT_VALUE = "loved = true";
+
+    /**
+     * tasks.query.limit
+     * <p>
+     * The maximal number of tracks that should be printed, or 0 to print all matching tracks.
+     */
+    private static final String SETTING_LIMIT = "limit";
+
+    /**
+     * Default value for tasks.query.limit
+     */
+    private static final Integer SETTING_LIMIT_DEFAULT_VALUE = 0;
+
+    static
+    {
+        // Set default values.
+        QUERY_DEFAULT_SETTINGS.put(SETTING_QUERY, SETTING_QUERY_DEFAULT_VALUE);
+        QUERY_DEFAULT_SETTINGS.put(SETTING_LIMIT, SETTING_LIMIT_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link QueryTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public QueryTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(QUERY_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * @return tasks.query.query
+     */
+    public String getQuery ()
+    {
+        String key = SETTING_QUERY;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.query.limit
+     */
+    public int getLimit ()
+    {
+        String key = SETTING_LIMIT;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a non-negative integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return QUERY_DEFAULT_SETTINGS.get(key);
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.sqliteexport;
+
+import iexport.itunes.Library;
+import iexport.itunes.Playlist;
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+import iexport.tasks.tableexport.PlaylistColumn;
+import iexport.utils.ByteFormatter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A task that exports the library into an SQLite database file (tasks.exportSqlite.outputFile),
+ * so that it can be queried using SQL.
+ * <p>
+ * The database contains the following tables, named like the tables written by {@link iexport.tasks.tableexport.ExportTableTask}:
+ * <ul>
+ *     <li> {@value #TABLE_TRACKS}: one row per track, with one column per {@link TrackField} and {@code trackId} as primary key,
+ *     <li> {@value #TABLE_PLAYLISTS}: one row per playlist, with one column per {@link PlaylistColumn};
+ *     the hierarchy of playlists is given by {@code parentPersistentId},
+ *     <li> {@value #TABLE_PLAYLIST_TRACKS}: one row per track in a playlist,
+ *     with the persistent id of the playlist, the position of the track in the playlist (starting at 1), and the track id.
+ * </ul>
+ * Dates are stored as ISO-8601 strings, e.g. {@code 2022-06-17T20:48:49Z}, which the date functions of SQLite understand,
+ * and booleans as 0 or 1.
+ * <p>
+ * To load the data quickly, the rows are inserted using prepared statements in batches of tasks.exportSqlite.batchSize
+ * in a single transaction without journal, and the indexes are only created after all rows have been inserted.
+ * The database is written to a temporary file that only replaces the output file when it is complete.
+ * <p>
+ * The task accesses the database via JDBC and needs an SQLite JDBC driver (<a href="https://github.com/xerial/sqlite-jdbc">sqlite-jdbc</a>) at runtime.
+ */
+public class ExportSqliteTask extends Task
+{
+    /**
+     * The table of tracks.
+     */
+    private static final String TABLE_TRACKS = "tracks";
+
+    /**
+     * The table of playlists.
+     */
+    private static final String TABLE_PLAYLISTS = "playlists";
+
+    /**
+     * The table of the membership of tracks in playlists.
+     */
+    private static final String TABLE_PLAYLIST_TRACKS = "playlistTracks";
+
+    /**
+     * The indexes that are created after loading, as pairs of table and columns.
+     */
+    private static final List<List<String>> INDEXES = List.of(
+            List.of(TABLE_TRACKS, "persistentId"),
+            List.of(TABLE_TRACKS, "artist"),
+            List.of(TABLE_TRACKS, "albumArtist"),
+            List.of(TABLE_TRACKS, "album"),
+            List.of(TABLE_TRACKS, "genre"),
+            List.of(TABLE_PLAYLISTS, "playlistPersistentId"),
+            List.of(TABLE_PLAYLISTS, "parentPersistentId"),
+            List.of(TABLE_PLAYLIST_TRACKS, "playlistPersistentId, position"),
+            List.of(TABLE_PLAYLIST_TRACKS, "trackId")
+    );
+
+    /**
+     * The settings used for this task.
+     */
+    private ExportSqliteTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "exportSqlite";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "exports tracks and playlists into an SQLite database";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new ExportSqliteTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        int batchSize = settings.getBatchSize();
+        Path outputFile = Path.of(settings.getOutputFile()).toAbsolutePath();
+        Path temporaryFile = outputFile.resolveSibling(outputFile.getFileName() + ".tmp");
+
+        try
+        {
+            Files.createDirectories(outputFile.getParent());
+            Files.deleteIfExists(temporaryFile);
+
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + temporaryFile))
+            {
+                try (Statement statement = connection.createStatement())
+                {
+                    // The file is only used once it is complete, so there is no need for crash safety while loading.
+                    statement.execute("PRAGMA journal_mode = OFF");
+                    statement.execute("PRAGMA synchronous = OFF");
+                }
+                connection.setAutoCommit(false);
+
+                createTables(connection);
+                insertTracks(connection, batchSize);
+                insertPlaylists(connection, batchSize);
+                insertPlaylistTracks(connection, batchSize);
+                createIndexes(connection);
+
+                connection.commit();
+            }
+
+            Files.move(temporaryFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+            Logging.getLogger().message("Wrote " + library.tracks().size() + " tracks and " + library.playlists().size() + " playlists to "
+                    + outputFile + " (" + ByteFormatter.format(Files.size(outputFile)) + ")");
+        }
+        catch (SQLException e)
+        {
+            if (e.getMessage() != null && e.getMessage().startsWith("No suitable driver"))
+            {
+                throw new RuntimeException("No SQLite JDBC driver found, make sure that sqlite-jdbc is on the class path", e);
+            }
+            throw new RuntimeException("Could not write database " + outputFile + ": " + e.getMessage(), e);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not write database " + outputFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create the tables, without indexes.
+     */
+    private void createTables (Connection connection)
+            throws
+            SQLException
+    {
+        String trackColumns = Arrays.stream(TrackField.values())
+                .map((field) -> field.getName() + " " + getSqlType(field) + (field == TrackField.TRACK_ID ? " PRIMARY KEY" : ""))
+                .collect(Collectors.joining(", "));
+        String playlistColumns = Arrays.stream(PlaylistColumn.values())
+                .map((column) -> column.getName() + " " + getSqlType(column))
+                .collect(Collectors.joining(", "));
+
+        try (Statement statement = connection.createStatement())
+        {
+            statement.execute("CREATE TABLE " + TABLE_TRACKS + " (" + trackColumns + ")");
+            statement.execute("CREATE TABLE " + TABLE_PLAYLISTS + " (" + playlistColumns + ")");
+            statement.execute("CREATE TABLE " + TABLE_PLAYLIST_TRACKS + " (playlistPersistentId TEXT, position INTEGER, trackId INTEGER)");
+        }
+    }
+
+    /**
+     * Fill the table {@value #TABLE_TRACKS}.
+     */
+    private void insertTracks (Connection connection, int batchSize)
+            throws
+            SQLException
+    {
+        TrackField[] fields = TrackField.values();
+
+        try (PreparedStatement statement = connection.prepareStatement(insertStatement(TABLE_TRACKS, fields.length)))
+        {
+            int rows = 0;
+            for (Track track : library.tracks())
+            {
+                for (int i = 0; i < fields.length; i++)
+                {
+                    bind(statement, i + 1, fields[i].getValue(track));
+                }
+                statement.addBatch();
+
+                if (++rows % batchSize == 0)
+                {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Fill the table {@value #TABLE_PLAYLISTS}.
+     */
+    private void insertPlaylists (Connection connection, int batchSize)
+            throws
+            SQLException
+    {
+        PlaylistColumn[] columns = PlaylistColumn.values();
+
+        try (PreparedStatement statement = connection.prepareStatement(insertStatement(TABLE_PLAYLISTS, columns.length)))
+        {
+            int rows = 0;
+            for (Playlist playlist : library.playlists())
+            {
+                for (int i = 0; i < columns.length; i++)
+                {
+                    bind(statement, i + 1, columns[i].getValue(playlist));
+                }
+                statement.addBatch();
+
+                if (++rows % batchSize == 0)
+                {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Fill the table {@value #TABLE_PLAYLIST_TRACKS}.
+     */
+    private void insertPlaylistTracks (Connection connection, int batchSize)
+            throws
+            SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement(insertStatement(TABLE_PLAYLIST_TRACKS, 3)))
+        {
+            int rows = 0;
+            for (Playlist playlist : library.playlists())
+            {
+                int position = 1;
+                for (Track track : playlist.tracks())
+                {
+                    bind(statement, 1, playlist.playlistPersistentId());
+                    statement.setInt(2, position++);
+                    bind(statement, 3, track.trackId());
+                    statement.addBatch();
+
+                    if (++rows % batchSize == 0)
+                    {
+                        statement.executeBatch();
+                    }
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Create the indexes {@link #INDEXES} and collect statistics about them for the query planner.
+     * <p>
+     * Creating an index once after loading sorts the rows once,
+     * which is much faster than updating the index for every inserted row.
+     */
+    private static void createIndexes (Connection connection)
+            throws
+            SQLException
+    {
+        try (Statement statement = connection.createStatement())
+        {
+            for (List<String> index : INDEXES)
+            {
+                String table = index.get(0);
+                String columns = index.get(1);
+                String name = table + "_" + columns.replace(", ", "_");
+                statement.execute("CREATE INDEX " + name + " ON " + table + " (" + columns + ")");
+            }
+            statement.execute("ANALYZE");
+        }
+    }
+
+    /**
+     * @return an insert statement with the given number of parameters
+     */
+    private static String insertStatement (String table, int columns)
+    {
+        return "INSERT INTO " + table + " VALUES (" + String.join(", ", Collections.nCopies(columns, "?")) + ")";
+    }
+
+    /**
+     * Bind a value to a parameter of a statement.
+     * <p>
+     * {@link Date dates} are bound as ISO-8601 strings, booleans as 0 or 1, null as NULL.
+     */
+    private static void bind (PreparedStatement statement, int parameter, Object value)
+            throws
+            SQLException
+    {
+        if (value == null)
+        {
+            statement.setNull(parameter, Types.NULL);
+        }
+        else if (value instanceof Integer integer)
+        {
+            statement.setInt(parameter, integer);
+        }
+        else if (value instanceof Long longValue)
+        {
+            statement.setLong(parameter, longValue);
+        }
+        else if (value instanceof Boolean bool)
+        {
+            statement.setInt(parameter, bool ? 1 : 0);
+        }
+        else if (value instanceof Date date)
+        {
+            statement.setString(parameter, date.toInstant().toString());
+        }
+        else
+        {
+            statement.setString(parameter, value.toString());
+        }
+    }
+
+    /**
+     * @return the SQL type of the column for a field
+     */
+    private static String getSqlType (TrackField field)
+    {
+        return switch (field.getType())
+                {
+                    case NUMBER, BOOLEAN -> "INTEGER";
+                    case STRING, DATE -> "TEXT";
+                };
+    }
+
+    /**
+     * @return the SQL type of a column of the table {@value #TABLE_PLAYLISTS}
+     */
+    private static String getSqlType (PlaylistColumn column)
+    {
+        return switch (column)
+                {
+                    case PLAYLIST_ID, DEPTH, FOLDER, DISTINGUISHED_KIND, TRACK_COUNT -> "INTEGER";
+                    case PLAYLIST_PERSISTENT_ID, NAME, PARENT_PERSISTENT_ID, PATH -> "TEXT";
+                };
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.sqliteexport;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.Settings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link ExportSqliteTask}.
+ */
+public class ExportSqliteTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the exportSqlite task
+     */
+    private static final Map<String, Object> EXPORT_SQLITE_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.exportSqlite.outputFile
+     * <p>
+     * The database file that should be written; an existing file will be replaced.
+     * Supports the %USERPROFILE% placeholder, which will typically get replaced by "C:\Users\<USERNAME>".
+     */
+    private static final String SETTING_OUTPUT_FILE = "outputFile";
+
+    /**
+     * Default value for tasks.exportSqlite.outputFile
+     */
+    private static final String SETTING_OUTPUT_FILE_DEFAULT_VALUE = "%USERPROFILE%\\Desktop\\iExport\\library.sqlite";
+
+    /**
+     * tasks.exportSqlite.batchSize
+     * <p>
+     * The number of rows that are sent to the database at once.
+     */
+    private static final String SETTING_BATCH_SIZE = "batchSize";
+
+    /**
+     * Default value for tasks.exportSqlite.batchSize
+     */
+    private static final Integer SETTING_BATCH_SIZE_DEFAULT_VALUE = 5000;
+
+    static
+    {
+        // Set default values.
+        EXPORT_SQLITE_DEFAULT_SETTINGS.put(SETTING_OUTPUT_FILE, SETTING_OUTPUT_FILE_DEFAULT_VALUE);
+        EXPORT_SQLITE_DEFAULT_SETTINGS.put(SETTING_BATCH_SIZE, SETTING_BATCH_SIZE_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link ExportSqliteTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public ExportSqliteTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(EXPORT_SQLITE_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
+     *
+     * @return tasks.exportSqlite.outputFile
+     */
+    public String getOutputFile ()
+    {
+        String key = SETTING_OUTPUT_FILE;
+        Object result = getValueFor(key);
+
+        try
+        {
+            String resultString = (String) result;
+            return Settings.applyUserProfileReplacement(resultString);
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.exportSqlite.batchSize
+     */
+    public int getBatchSize ()
+    {
+        String key = SETTING_BATCH_SIZE;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 1)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return EXPORT_SQLITE_DEFAULT_SETTINGS.get(key);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import java.util.List;
+
+/**
+ * A bounded priority queue that keeps the {@code capacity} largest values offered to it,
+ * each together with the ordinal of the track it belongs to.
+ * <p>
+ * The heap is a binary min-heap stored in two primitive arrays,
+ * so the smallest of the kept values is at the root and can be replaced in logarithmic time.
+ * Offering a value that is not larger than the root costs only a single comparison,
+ * so selecting the top {@code k} of {@code n} tracks takes {@code O(n log k)} time and {@code O(k)} memory,
+ * instead of {@code O(n log n)} time and {@code O(n)} memory for sorting all tracks.
+ * <p>
+ * Ties are broken by the ordinal: of two equal values, the one with the smaller ordinal is considered larger,
+ * so the result does not depend on the order in which the values have been offered.
+ * <p>
+ * Instances are not thread-safe.
+ * To select in parallel, each thread fills its own heap, and the heaps are combined using {@link #merge(BoundedHeap)}.
+ */
+public class BoundedHeap
+{
+    /**
+     * The maximal number of values to keep.
+     */
+    private final int capacity;
+
+    /**
+     * The values, arranged as binary min-heap.
+     */
+    private final long[] values;
+
+    /**
+     * The ordinals belonging to {@link #values}.
+     */
+    private final int[] ordinals;
+
+    /**
+     * The number of values currently in the heap.
+     */
+    private int size = 0;
+
+    /**
+     * @param capacity the maximal number of values to keep
+     */
+    public BoundedHeap (int capacity)
+    {
+        this.capacity = capacity;
+        this.values = new long[capacity];
+        this.ordinals = new int[capacity];
+    }
+
+    /**
+     * Offer a value to the heap; it is kept if it is among the {@code capacity} largest values so far.
+     *
+     * @param value   the value
+     * @param ordinal the ordinal of the track the value belongs to
+     */
+    public void offer (long value, int ordinal)
+    {
+        if (size < capacity)
+        {
+            values[size] = value;
+            ordinals[size] = ordinal;
+            siftUp(size);
+            size++;
+        }
+        else if (capacity > 0 && less(values[0], ordinals[0], value, ordinal))
+        {
+            values[0] = value;
+            ordinals[0] = ordinal;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Offer all values of another heap to this heap.
+     *
+     * @param other the other heap
+     */
+    public void merge (BoundedHeap other)
+    {
+        for (int i = 0; i < other.size; i++)
+        {
+            offer(other.values[i], other.ordinals[i]);
+        }
+    }
+
+    /**
+     * @return the kept values together with their ordinals, largest value first
+     */
+    public List<Entry> getDescending ()
+    {
+        // Sort a copy using the heap itself: repeatedly remove the root, which is the smallest remaining value.
+        BoundedHeap copy = new BoundedHeap(capacity);
+        copy.merge(this);
+
+        Entry[] result = new Entry[size];
+        for (int i = size - 1; i >= 0; i--)
+        {
+            result[i] = new Entry(copy.values[0], copy.ordinals[0]);
+            copy.size--;
+            copy.values[0] = copy.values[copy.size];
+            copy.ordinals[0] = copy.ordinals[copy.size];
+            copy.siftDown(0);
+        }
+        return List.of(result);
+    }
+
+    /**
+     * @return true if the first entry is smaller than the second one, see {@link BoundedHeap}
+     */
+    private static boolean less (long firstValue, int firstOrdinal, long secondValue, int secondOrdinal)
+    {
+        return firstValue < secondValue || (firstValue == secondValue && firstOrdinal > secondOrdinal);
+    }
+
+    /**
+     * Restore the heap property by moving the entry at the given index up.
+     */
+    private void siftUp (int index)
+    {
+        while (index > 0)
+        {
+            int parent = (index - 1) / 2;
+            if (!less(values[index], ordinals[index], values[parent], ordinals[parent]))
+            {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    /**
+     * Restore the heap property by moving the entry at the given index down.
+     */
+    private void siftDown (int index)
+    {
+        while (true)
+        {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && less(values[left], ordinals[left], values[smallest], ordinals[smallest]))
+            {
+                smallest = left;
+            }
+            if (right < size && less(values[right], ordinals[right], values[smallest], ordinals[smallest]))
+            {
+                smallest = right;
+            }
+            if (smallest == index)
+            {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    /**
+     * Swap two entries.
+     */
+    private void swap (int first, int second)
+    {
+        long value = values[first];
+        values[first] = values[second];
+        values[second] = value;
+
+        int ordinal = ordinals[first];
+        ordinals[first] = ordinals[second];
+        ordinals[second] = ordinal;
+    }
+
+    /**
+     * A kept value.
+     *
+     * @param value   the value
+     * @param ordinal the ordinal of the track the value belongs to
+     */
+    public record Entry(long value, int ordinal)
+    {
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import iexport.itunes.Track;
+
+/**
+ * Aggregated statistics of a group of tracks: the number of tracks, their total duration, and their total size.
+ * <p>
+ * The values are accumulated in primitive fields, so adding a track does not allocate.
+ * Instances are not thread-safe; each thread accumulates into its own instances,
+ * which are combined using {@link #merge(GroupStatistics)} afterwards.
+ */
+public class GroupStatistics
+{
+    /**
+     * The number of tracks.
+     */
+    private long tracks = 0;
+
+    /**
+     * The total duration of the tracks in milliseconds (tracks without duration count as 0).
+     */
+    private long totalTime = 0;
+
+    /**
+     * The total size of the tracks in bytes (tracks without size count as 0).
+     */
+    private long size = 0;
+
+    /**
+     * Add a track to this group.
+     *
+     * @param track the track
+     */
+    public void add (Track track)
+    {
+        tracks++;
+        if (track.totalTime() != null)
+        {
+            totalTime += track.totalTime();
+        }
+        if (track.size() != null)
+        {
+            size += track.size();
+        }
+    }
+
+    /**
+     * Add the statistics of another group to this group.
+     *
+     * @param other the other group
+     */
+    public void merge (GroupStatistics other)
+    {
+        tracks += other.tracks;
+        totalTime += other.totalTime;
+        size += other.size;
+    }
+
+    /**
+     * @return the number of tracks
+     */
+    public long getTracks ()
+    {
+        return tracks;
+    }
+
+    /**
+     * @return the total duration of the tracks in milliseconds
+     */
+    public long getTotalTime ()
+    {
+        return totalTime;
+    }
+
+    /**
+     * @return the total size of the tracks in bytes
+     */
+    public long getSize ()
+    {
+        return size;
+    }
+}
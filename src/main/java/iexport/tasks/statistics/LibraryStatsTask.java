@@ -0,0 +1,341 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import iexport.itunes.Library;
+import iexport.itunes.TrackField;
+import iexport.logging.LogLevel;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+import iexport.utils.ByteFormatter;
+import iexport.utils.JsonFormatter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A task that computes statistics about the library:
+ * the number of tracks, their total duration, and their total size,
+ * grouped by the fields specified in tasks.libraryStats.groupBy (e.g. per genre, per artist, per year).
+ * <p>
+ * All groupings are computed in a single parallel pass over the tracks using {@link StatisticsAccumulator}.
+ * The result is either printed or written to a file (tasks.libraryStats.outputFile),
+ * as a table or as JSON (tasks.libraryStats.format).
+ */
+public class LibraryStatsTask extends Task
+{
+    /**
+     * Output the statistics as human-readable table.
+     */
+    public static final String FORMAT_TABLE = "table";
+
+    /**
+     * Output the statistics as JSON.
+     */
+    public static final String FORMAT_JSON = "json";
+
+    /**
+     * Sort groups by the number of tracks, descending.
+     */
+    public static final String SORT_BY_TRACKS = "tracks";
+
+    /**
+     * Sort groups by the total duration, descending.
+     */
+    public static final String SORT_BY_TOTAL_TIME = "totalTime";
+
+    /**
+     * Sort groups by the total size, descending.
+     */
+    public static final String SORT_BY_SIZE = "size";
+
+    /**
+     * Sort groups by their value.
+     */
+    public static final String SORT_BY_VALUE = "value";
+
+    /**
+     * The settings used for this task.
+     */
+    private LibraryStatsTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "libraryStats";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "prints statistics about the library";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new LibraryStatsTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        // Validate all settings before doing any work.
+        List<TrackField> groupBy = getGroupByFields();
+        Comparator<Map.Entry<String, GroupStatistics>> order = getOrder();
+        String format = settings.getFormat();
+        if (!format.equals(FORMAT_TABLE) && !format.equals(FORMAT_JSON))
+        {
+            throw new RuntimeException("Unknown format \"" + format + "\" for " + settings.getYamlPath("format")
+                    + ", expected one of " + List.of(FORMAT_TABLE, FORMAT_JSON));
+        }
+        String outputFile = settings.getOutputFile();
+
+        long start = System.nanoTime();
+        StatisticsAccumulator statistics = StatisticsAccumulator.collect(library.tracks(), groupBy);
+        Logging.getLogger().debug("Computed statistics for " + statistics.getTotal().getTracks() + " tracks in "
+                + String.format("%.1f", (System.nanoTime() - start) / 1e6) + "ms");
+
+        List<String> lines = format.equals(FORMAT_JSON)
+                ? formatJson(statistics, order)
+                : formatTable(statistics, order);
+
+        if (outputFile.isEmpty())
+        {
+            // It would be pretty silly to call this task but then hide the output.
+            if (Logging.getLogger().getLogLevel().lessVerbose(LogLevel.NORMAL))
+            {
+                Logging.getLogger().setLogLevel(LogLevel.NORMAL);
+            }
+
+            lines.forEach(Logging.getLogger()::message);
+        }
+        else
+        {
+            Path path = Path.of(outputFile);
+            try
+            {
+                Files.write(path, lines, StandardCharsets.UTF_8);
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Could not write statistics to " + path + ": " + e.getMessage(), e);
+            }
+            Logging.getLogger().message("Wrote statistics to " + path.toAbsolutePath());
+        }
+    }
+
+    /**
+     * @return the fields specified in tasks.libraryStats.groupBy
+     */
+    private List<TrackField> getGroupByFields ()
+    {
+        List<TrackField> fields = new ArrayList<>();
+        for (String name : settings.getGroupBy())
+        {
+            TrackField field = TrackField.forName(name);
+            if (field == null)
+            {
+                throw new RuntimeException("Unknown field \"" + name + "\" in " + settings.getYamlPath("groupBy")
+                        + ", expected one of " + TrackField.getNames());
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    /**
+     * @return the order of the groups specified by tasks.libraryStats.sortBy
+     */
+    private Comparator<Map.Entry<String, GroupStatistics>> getOrder ()
+    {
+        String sortBy = settings.getSortBy();
+
+        Comparator<Map.Entry<String, GroupStatistics>> byValue = Map.Entry.comparingByKey();
+        Comparator<Map.Entry<String, GroupStatistics>> primary = switch (sortBy)
+                {
+                    case SORT_BY_TRACKS -> Comparator.comparingLong((entry) -> -entry.getValue().getTracks());
+                    case SORT_BY_TOTAL_TIME -> Comparator.comparingLong((entry) -> -entry.getValue().getTotalTime());
+                    case SORT_BY_SIZE -> Comparator.comparingLong((entry) -> -entry.getValue().getSize());
+                    case SORT_BY_VALUE -> byValue;
+                    default -> throw new RuntimeException("Unknown order \"" + sortBy + "\" for " + settings.getYamlPath("sortBy")
+                            + ", expected one of " + List.of(SORT_BY_TRACKS, SORT_BY_TOTAL_TIME, SORT_BY_SIZE, SORT_BY_VALUE));
+                };
+
+        return primary.thenComparing(byValue);
+    }
+
+    /**
+     * @param groups the statistics of each group
+     * @param order  the order of the groups
+     * @return the groups that should be output, sorted, and limited to tasks.libraryStats.maxRows
+     */
+    private List<Map.Entry<String, GroupStatistics>> sortedGroups (Map<String, GroupStatistics> groups,
+                                                                   Comparator<Map.Entry<String, GroupStatistics>> order)
+    {
+        List<Map.Entry<String, GroupStatistics>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort(order);
+
+        int maxRows = settings.getMaxRows();
+        return maxRows > 0 && sorted.size() > maxRows ? sorted.subList(0, maxRows) : sorted;
+    }
+
+    /**
+     * Format the statistics as one table per field.
+     *
+     * @param statistics the statistics
+     * @param order      the order of the groups
+     * @return the lines of the output
+     */
+    private List<String> formatTable (StatisticsAccumulator statistics, Comparator<Map.Entry<String, GroupStatistics>> order)
+    {
+        List<String> lines = new ArrayList<>();
+
+        GroupStatistics total = statistics.getTotal();
+        lines.add("Library statistics");
+        lines.add("------------------");
+        lines.add("");
+        lines.add("Tracks:     " + total.getTracks());
+        lines.add("Total time: " + formatDuration(total.getTotalTime()));
+        lines.add("Total size: " + ByteFormatter.format(total.getSize()));
+
+        for (int i = 0; i < statistics.getGroupBy().size(); i++)
+        {
+            String name = statistics.getGroupBy().get(i).getName();
+            Map<String, GroupStatistics> groups = statistics.getGroups(i);
+            List<Map.Entry<String, GroupStatistics>> rows = sortedGroups(groups, order);
+
+            int width = name.length();
+            for (Map.Entry<String, GroupStatistics> row : rows)
+            {
+                width = Math.max(width, row.getKey().length());
+            }
+
+            lines.add("");
+            lines.add("By " + name + " (" + groups.size() + (groups.size() == 1 ? " group)" : " groups)"));
+            lines.add("");
+            lines.add(String.format("%-" + width + "s  %8s  %14s  %10s", name, "tracks", "total time", "size"));
+            lines.add("-".repeat(width + 40));
+            for (Map.Entry<String, GroupStatistics> row : rows)
+            {
+                GroupStatistics group = row.getValue();
+                lines.add(String.format("%-" + width + "s  %8d  %14s  %10s", row.getKey(), group.getTracks(),
+                        formatDuration(group.getTotalTime()), ByteFormatter.format(group.getSize())));
+            }
+            if (rows.size() < groups.size())
+            {
+                lines.add("... (" + (groups.size() - rows.size()) + " more)");
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Format the statistics as JSON document.
+     *
+     * @param statistics the statistics
+     * @param order      the order of the groups
+     * @return the lines of the output
+     */
+    private List<String> formatJson (StatisticsAccumulator statistics, Comparator<Map.Entry<String, GroupStatistics>> order)
+    {
+        List<String> lines = new ArrayList<>();
+
+        lines.add("{");
+        lines.add("  \"total\": {" + toJson(statistics.getTotal()) + "},");
+        lines.add("  \"groups\": {");
+        for (int i = 0; i < statistics.getGroupBy().size(); i++)
+        {
+            List<Map.Entry<String, GroupStatistics>> rows = sortedGroups(statistics.getGroups(i), order);
+
+            lines.add("    " + JsonFormatter.quote(statistics.getGroupBy().get(i).getName()) + ": [");
+            for (int j = 0; j < rows.size(); j++)
+            {
+                Map.Entry<String, GroupStatistics> row = rows.get(j);
+                lines.add("      {\"value\": " + JsonFormatter.quote(row.getKey()) + ", " + toJson(row.getValue()) + "}"
+                        + (j < rows.size() - 1 ? "," : ""));
+            }
+            lines.add("    ]" + (i < statistics.getGroupBy().size() - 1 ? "," : ""));
+        }
+        lines.add("  }");
+        lines.add("}");
+
+        return lines;
+    }
+
+    /**
+     * @param group the statistics of a group
+     * @return the members of a JSON object containing the statistics (without braces)
+     */
+    private static String toJson (GroupStatistics group)
+    {
+        return "\"tracks\": " + group.getTracks()
+                + ", \"totalTime\": " + group.getTotalTime()
+                + ", \"size\": " + group.getSize();
+    }
+
+    /**
+     * Format a duration, e.g. {@code 2d 03:04:05}.
+     *
+     * @param millis the duration in milliseconds
+     * @return the formatted duration
+     */
+    private static String formatDuration (long millis)
+    {
+        long seconds = millis / 1000;
+        long days = seconds / 86400;
+        String time = String.format("%02d:%02d:%02d", (seconds / 3600) % 24, (seconds / 60) % 60, seconds % 60);
+        return days > 0 ? days + "d " + time : time;
+    }
+}
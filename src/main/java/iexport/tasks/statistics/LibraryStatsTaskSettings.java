@@ -0,0 +1,253 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.Settings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link LibraryStatsTask}.
+ */
+public class LibraryStatsTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the libraryStats task
+     */
+    private static final Map<String, Object> LIBRARY_STATS_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.libraryStats.groupBy
+     * <p>
+     * The fields by which the tracks should be grouped, named as in {@link iexport.itunes.TrackField}.
+     * Dates are grouped by year.
+     */
+    private static final String SETTING_GROUP_BY = "groupBy";
+
+    /**
+     * Default value for tasks.libraryStats.groupBy
+     */
+    private static final List<String> SETTING_GROUP_BY_DEFAULT_VALUE = List.of("genre", "artist", "year", "kind");
+
+    /**
+     * tasks.libraryStats.sortBy
+     * <p>
+     * How the groups should be sorted: "tracks", "totalTime", "size" (all descending), or "value".
+     */
+    private static final String SETTING_SORT_BY = "sortBy";
+
+    /**
+     * Default value for tasks.libraryStats.sortBy
+     */
+    private static final String SETTING_SORT_BY_DEFAULT_VALUE = "tracks";
+
+    /**
+     * tasks.libraryStats.maxRows
+     * <p>
+     * The maximal number of groups that should be output per field, or 0 to output all groups.
+     */
+    private static final String SETTING_MAX_ROWS = "maxRows";
+
+    /**
+     * Default value for tasks.libraryStats.maxRows
+     */
+    private static final Integer SETTING_MAX_ROWS_DEFAULT_VALUE = 0;
+
+    /**
+     * tasks.libraryStats.format
+     * <p>
+     * The output format: "table" or "json".
+     */
+    private static final String SETTING_FORMAT = "format";
+
+    /**
+     * Default value for tasks.libraryStats.format
+     */
+    private static final String SETTING_FORMAT_DEFAULT_VALUE = "table";
+
+    /**
+     * tasks.libraryStats.outputFile
+     * <p>
+     * The file to which the statistics should be written, or the empty string to print them.
+     * Supports the %USERPROFILE% placeholder, which will typically get replaced by "C:\Users\<USERNAME>".
+     */
+    private static final String SETTING_OUTPUT_FILE = "outputFile";
+
+    /**
+     * Default value for tasks.libraryStats.outputFile
+     */
+    private static final String SETTING_OUTPUT_FILE_DEFAULT_VALUE = "";
+
+    static
+    {
+        // Set default values.
+        LIBRARY_STATS_DEFAULT_SETTINGS.put(SETTING_GROUP_BY, SETTING_GROUP_BY_DEFAULT_VALUE);
+        LIBRARY_STATS_DEFAULT_SETTINGS.put(SETTING_SORT_BY, SETTING_SORT_BY_DEFAULT_VALUE);
+        LIBRARY_STATS_DEFAULT_SETTINGS.put(SETTING_MAX_ROWS, SETTING_MAX_ROWS_DEFAULT_VALUE);
+        LIBRARY_STATS_DEFAULT_SETTINGS.put(SETTING_FORMAT, SETTING_FORMAT_DEFAULT_VALUE);
+        LIBRARY_STATS_DEFAULT_SETTINGS.put(SETTING_OUTPUT_FILE, SETTING_OUTPUT_FILE_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link LibraryStatsTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public LibraryStatsTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(LIBRARY_STATS_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * @return tasks.libraryStats.groupBy
+     */
+    public List<String> getGroupBy ()
+    {
+        String key = SETTING_GROUP_BY;
+        Object result = getValueFor(key);
+
+        try
+        {
+            // Type erasure yada yada
+            @SuppressWarnings("unchecked")
+            List<String> resultList = (List<String>) result;
+            return resultList;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.libraryStats.sortBy
+     */
+    public String getSortBy ()
+    {
+        String key = SETTING_SORT_BY;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.libraryStats.maxRows
+     */
+    public int getMaxRows ()
+    {
+        String key = SETTING_MAX_ROWS;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 0)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a non-negative integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @return tasks.libraryStats.format
+     */
+    public String getFormat ()
+    {
+        String key = SETTING_FORMAT;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
+     *
+     * @return tasks.libraryStats.outputFile
+     */
+    public String getOutputFile ()
+    {
+        String key = SETTING_OUTPUT_FILE;
+        Object result = getValueFor(key);
+
+        try
+        {
+            String resultString = (String) result;
+            return Settings.applyUserProfileReplacement(resultString);
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return LIBRARY_STATS_DEFAULT_SETTINGS.get(key);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import iexport.itunes.Library;
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+import iexport.logging.LogLevel;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A task that prints the top tracks according to several rankings (tasks.printTopTracks.rankBy),
+ * e.g. the most played, the most skipped, and the most recently added tracks.
+ * <p>
+ * All rankings are computed in a single parallel pass over the tracks using bounded heaps,
+ * see {@link TopTracksAccumulator}, instead of sorting all tracks once per ranking.
+ */
+public class PrintTopTracksTask extends Task
+{
+    /**
+     * The settings used for this task.
+     */
+    private PrintTopTracksTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "printTopTracks";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "prints the top tracks, e.g. the most played ones";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new PrintTopTracksTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        // It would be pretty silly to call this task but then hide the output.
+        if (Logging.getLogger().getLogLevel().lessVerbose(LogLevel.NORMAL))
+        {
+            Logging.getLogger().setLogLevel(LogLevel.NORMAL);
+        }
+
+        List<TopTracksAccumulator.Ranking> rankings = getRankings();
+        int count = settings.getCount();
+
+        long start = System.nanoTime();
+        TopTracksAccumulator topTracks = TopTracksAccumulator.collect(library.tracks(), rankings, count);
+        Logging.getLogger().debug("Ranked " + library.tracks().size() + " tracks in "
+                + String.format("%.1f", (System.nanoTime() - start) / 1e6) + "ms");
+
+        for (int i = 0; i < rankings.size(); i++)
+        {
+            TopTracksAccumulator.Ranking ranking = rankings.get(i);
+            List<Track> tracks = topTracks.getTopTracks(i);
+
+            String title = "Top " + count + " tracks with " + ranking;
+            Logging.getLogger().message(title);
+            Logging.getLogger().message("-".repeat(title.length()));
+            Logging.getLogger().message("");
+
+            if (tracks.isEmpty())
+            {
+                Logging.getLogger().message("No track has a value for " + ranking.field().getName() + ".");
+            }
+
+            int width = Integer.toString(tracks.size()).length();
+            for (int rank = 0; rank < tracks.size(); rank++)
+            {
+                Track track = tracks.get(rank);
+                Logging.getLogger().message(String.format("%" + width + "d. %s  %s", rank + 1,
+                        formatValue(ranking.field(), track), track));
+            }
+            Logging.getLogger().message("");
+        }
+    }
+
+    /**
+     * @return the rankings specified in tasks.printTopTracks.rankBy
+     */
+    private List<TopTracksAccumulator.Ranking> getRankings ()
+    {
+        List<TopTracksAccumulator.Ranking> rankings = new ArrayList<>();
+        for (String name : settings.getRankBy())
+        {
+            boolean ascending = name.startsWith("-");
+            TrackField field = TrackField.forName(ascending ? name.substring(1) : name);
+            if (field == null || !field.isNumeric())
+            {
+                throw new RuntimeException("Invalid field \"" + name + "\" in " + settings.getYamlPath("rankBy")
+                        + ", expected a numeric field or a date field (optionally prefixed by \"-\"), e.g. "
+                        + List.of("playCount", "-rating", "dateAdded"));
+            }
+            rankings.add(new TopTracksAccumulator.Ranking(field, ascending));
+        }
+        return rankings;
+    }
+
+    /**
+     * @param field a numeric field or a date field
+     * @param track a track that has a value for the field
+     * @return the value, with dates formatted as ISO-8601 instants
+     */
+    private static String formatValue (TrackField field, Track track)
+    {
+        Object value = field.getValue(track);
+        if (value instanceof Date date)
+        {
+            return date.toInstant().toString();
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link PrintTopTracksTask}.
+ */
+public class PrintTopTracksTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the printTopTracks task
+     */
+    private static final Map<String, Object> PRINT_TOP_TRACKS_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.printTopTracks.rankBy
+     * <p>
+     * The numeric fields or date fields by which the tracks should be ranked, named as in {@link iexport.itunes.TrackField}.
+     * By default, the tracks with the highest values are printed; prefix a field with "-" to print the tracks with the lowest values instead.
+     */
+    private static final String SETTING_RANK_BY = "rankBy";
+
+    /**
+     * Default value for tasks.printTopTracks.rankBy
+     */
+    private static final List<String> SETTING_RANK_BY_DEFAULT_VALUE = List.of("playCount", "skipCount", "rating", "dateAdded", "playDateUTC");
+
+    /**
+     * tasks.printTopTracks.count
+     * <p>
+     * The number of tracks that should be printed per ranking.
+     */
+    private static final String SETTING_COUNT = "count";
+
+    /**
+     * Default value for tasks.printTopTracks.count
+     */
+    private static final Integer SETTING_COUNT_DEFAULT_VALUE = 10;
+
+    static
+    {
+        // Set default values.
+        PRINT_TOP_TRACKS_DEFAULT_SETTINGS.put(SETTING_RANK_BY, SETTING_RANK_BY_DEFAULT_VALUE);
+        PRINT_TOP_TRACKS_DEFAULT_SETTINGS.put(SETTING_COUNT, SETTING_COUNT_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link PrintTopTracksTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public PrintTopTracksTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(PRINT_TOP_TRACKS_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * @return tasks.printTopTracks.rankBy
+     */
+    public List<String> getRankBy ()
+    {
+        String key = SETTING_RANK_BY;
+        Object result = getValueFor(key);
+
+        try
+        {
+            // Type erasure yada yada
+            @SuppressWarnings("unchecked")
+            List<String> resultList = (List<String>) result;
+            return resultList;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.printTopTracks.count
+     */
+    public int getCount ()
+    {
+        String key = SETTING_COUNT;
+        Object result = getValueFor(key);
+
+        int value;
+        try
+        {
+            value = (int) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an integer, but got null");
+        }
+
+        if (value < 1)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a positive integer, but got " + value);
+        }
+
+        return value;
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return PRINT_TOP_TRACKS_DEFAULT_SETTINGS.get(key);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates {@link GroupStatistics} for several groupings of the tracks at once,
+ * so that all groupings can be computed in a single pass over the library.
+ * <p>
+ * The value a track is grouped by is
+ * <ul>
+ *     <li> the value of the field as string for numbers and strings,
+ *     <li> the year (in UTC) for dates,
+ *     <li> {@code true} or {@code false} for booleans (a missing value counts as {@code false}),
+ *     <li> {@value #MISSING_VALUE} if the track has no value for the field.
+ * </ul>
+ * Values of string fields are grouped exactly, i.e. "Rock" and "rock" are different groups.
+ * <p>
+ * Instances are not thread-safe.
+ * To compute the statistics in parallel, each thread uses its own accumulator,
+ * and the accumulators are combined using {@link #merge(StatisticsAccumulator)},
+ * see {@link #collect(List, List)}.
+ */
+public class StatisticsAccumulator
+{
+    /**
+     * The group of tracks that do not have a value for a field.
+     */
+    public static final String MISSING_VALUE = "(none)";
+
+    /**
+     * The number of milliseconds per day.
+     */
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * The fields by which the tracks are grouped.
+     */
+    private final List<TrackField> groupBy;
+
+    /**
+     * For each field in {@link #groupBy}, the statistics of each group.
+     */
+    private final List<Map<String, GroupStatistics>> groups;
+
+    /**
+     * The statistics of all tracks.
+     */
+    private final GroupStatistics total = new GroupStatistics();
+
+    /**
+     * @param groupBy the fields by which the tracks should be grouped
+     */
+    public StatisticsAccumulator (List<TrackField> groupBy)
+    {
+        this.groupBy = groupBy;
+        this.groups = new ArrayList<>(groupBy.size());
+        for (int i = 0; i < groupBy.size(); i++)
+        {
+            groups.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Compute the statistics of the given tracks in parallel.
+     *
+     * @param tracks  the tracks
+     * @param groupBy the fields by which the tracks should be grouped
+     * @return the accumulated statistics
+     */
+    public static StatisticsAccumulator collect (List<Track> tracks, List<TrackField> groupBy)
+    {
+        return tracks.parallelStream().collect(
+                () -> new StatisticsAccumulator(groupBy),
+                StatisticsAccumulator::add,
+                StatisticsAccumulator::merge);
+    }
+
+    /**
+     * Add a track to the statistics.
+     *
+     * @param track the track
+     */
+    public void add (Track track)
+    {
+        total.add(track);
+        for (int i = 0; i < groupBy.size(); i++)
+        {
+            groups.get(i).computeIfAbsent(groupValue(groupBy.get(i), track), (key) -> new GroupStatistics()).add(track);
+        }
+    }
+
+    /**
+     * Add the statistics accumulated by another accumulator (for the same fields) to this accumulator.
+     *
+     * @param other the other accumulator
+     */
+    public void merge (StatisticsAccumulator other)
+    {
+        total.merge(other.total);
+        for (int i = 0; i < groupBy.size(); i++)
+        {
+            Map<String, GroupStatistics> ownGroups = groups.get(i);
+            other.groups.get(i).forEach((value, statistics) ->
+                    ownGroups.computeIfAbsent(value, (key) -> new GroupStatistics()).merge(statistics));
+        }
+    }
+
+    /**
+     * @return the fields by which the tracks are grouped
+     */
+    public List<TrackField> getGroupBy ()
+    {
+        return groupBy;
+    }
+
+    /**
+     * @param index the index of a field in {@link #getGroupBy()}
+     * @return the statistics of each group for that field
+     */
+    public Map<String, GroupStatistics> getGroups (int index)
+    {
+        return groups.get(index);
+    }
+
+    /**
+     * @return the statistics of all tracks
+     */
+    public GroupStatistics getTotal ()
+    {
+        return total;
+    }
+
+    /**
+     * @param field a field
+     * @param track a track
+     * @return the value by which the track is grouped for that field
+     */
+    private static String groupValue (TrackField field, Track track)
+    {
+        Object value = field.getValue(track);
+        if (field.getType() == TrackField.Type.BOOLEAN)
+        {
+            return String.valueOf(Boolean.TRUE.equals(value));
+        }
+        if (value == null)
+        {
+            return MISSING_VALUE;
+        }
+        if (field.getType() == TrackField.Type.DATE)
+        {
+            long millis = field.getLong(track);
+            return String.valueOf(LocalDate.ofEpochDay(Math.floorDiv(millis, MILLIS_PER_DAY)).getYear());
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.statistics;
+
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Selects the top tracks for several rankings at once,
+ * so that all rankings can be computed in a single pass over the library.
+ * <p>
+ * Each ranking keeps a {@link BoundedHeap}; tracks without a value for the field of a ranking are skipped for it.
+ * <p>
+ * Instances are not thread-safe.
+ * To select in parallel, each thread uses its own accumulator,
+ * and the accumulators are combined using {@link #merge(TopTracksAccumulator)}, see {@link #collect(List, List, int)}.
+ */
+public class TopTracksAccumulator
+{
+    /**
+     * The rankings.
+     */
+    private final List<Ranking> rankings;
+
+    /**
+     * The tracks, indexed by their ordinal.
+     */
+    private final List<Track> tracks;
+
+    /**
+     * One heap per ranking.
+     */
+    private final List<BoundedHeap> heaps;
+
+    /**
+     * @param rankings the rankings
+     * @param tracks   the tracks, indexed by their ordinal
+     * @param count    the number of tracks to select per ranking
+     */
+    public TopTracksAccumulator (List<Ranking> rankings, List<Track> tracks, int count)
+    {
+        this.rankings = rankings;
+        this.tracks = tracks;
+        this.heaps = new ArrayList<>(rankings.size());
+        for (int i = 0; i < rankings.size(); i++)
+        {
+            heaps.add(new BoundedHeap(count));
+        }
+    }
+
+    /**
+     * Select the top tracks for all rankings in parallel.
+     *
+     * @param tracks   the tracks
+     * @param rankings the rankings
+     * @param count    the number of tracks to select per ranking
+     * @return the accumulator containing the selected tracks
+     */
+    public static TopTracksAccumulator collect (List<Track> tracks, List<Ranking> rankings, int count)
+    {
+        return IntStream.range(0, tracks.size()).parallel().collect(
+                () -> new TopTracksAccumulator(rankings, tracks, count),
+                TopTracksAccumulator::add,
+                TopTracksAccumulator::merge);
+    }
+
+    /**
+     * Offer a track to all rankings.
+     *
+     * @param ordinal the ordinal of the track
+     */
+    public void add (int ordinal)
+    {
+        Track track = tracks.get(ordinal);
+        for (int i = 0; i < rankings.size(); i++)
+        {
+            Ranking ranking = rankings.get(i);
+            Long value = ranking.field().getLong(track);
+            if (value != null)
+            {
+                heaps.get(i).offer(ranking.ascending() ? -value : value, ordinal);
+            }
+        }
+    }
+
+    /**
+     * Add the tracks selected by another accumulator (for the same rankings) to this accumulator.
+     *
+     * @param other the other accumulator
+     */
+    public void merge (TopTracksAccumulator other)
+    {
+        for (int i = 0; i < rankings.size(); i++)
+        {
+            heaps.get(i).merge(other.heaps.get(i));
+        }
+    }
+
+    /**
+     * @param index the index of a ranking
+     * @return the selected tracks of that ranking, best first
+     */
+    public List<Track> getTopTracks (int index)
+    {
+        return heaps.get(index).getDescending().stream().map((entry) -> tracks.get(entry.ordinal())).toList();
+    }
+
+    /**
+     * A ranking of the tracks by a numeric field or a date field.
+     *
+     * @param field     the field
+     * @param ascending whether the tracks with the lowest values should be selected instead of the highest
+     */
+    public record Ranking(TrackField field, boolean ascending)
+    {
+        @Override
+        public String toString ()
+        {
+            return (ascending ? "lowest " : "highest ") + field.getName();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.tableexport;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes a table as CSV file according to RFC 4180:
+ * a header line with the column names, values separated by commas,
+ * and values containing commas, quotes, or line breaks enclosed in quotes (with quotes doubled).
+ * Missing values are written as empty fields.
+ */
+public class CsvTableWriter extends TableWriter
+{
+    /**
+     * @param writer  the writer for the file
+     * @param columns the names of the columns
+     */
+    CsvTableWriter (Writer writer, List<String> columns)
+    {
+        super(writer, columns);
+    }
+
+    @Override
+    protected void writeHeader ()
+            throws
+            IOException
+    {
+        line.setLength(0);
+        formatRow(columns.toArray());
+        writeLine();
+    }
+
+    @Override
+    protected void formatRow (Object[] values)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                line.append(',');
+            }
+
+            Object value = values[i];
+            if (value == null)
+            {
+                continue;
+            }
+            if (value instanceof Number || value instanceof Boolean)
+            {
+                line.append(value);
+            }
+            else if (value instanceof Date date)
+            {
+                line.append(date.toInstant());
+            }
+            else
+            {
+                appendString(value.toString());
+            }
+        }
+    }
+
+    /**
+     * Append a string, quoting it if necessary.
+     *
+     * @param string the string
+     */
+    private void appendString (String string)
+    {
+        boolean needsQuotes = false;
+        for (int i = 0; i < string.length() && !needsQuotes; i++)
+        {
+            char c = string.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!needsQuotes)
+        {
+            line.append(string);
+            return;
+        }
+
+        line.append('"');
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            if (c == '"')
+            {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.tableexport;
+
+import iexport.itunes.Library;
+import iexport.itunes.Playlist;
+import iexport.itunes.Track;
+import iexport.itunes.TrackField;
+import iexport.logging.Logging;
+import iexport.settings.RawTaskSettings;
+import iexport.tasks.Task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A task that exports the library as tables for use in other tools,
+ * as CSV or JSON Lines files (tasks.exportTable.format) in tasks.exportTable.outputFolder.
+ * <p>
+ * The following tables can be written (tasks.exportTable.tables):
+ * <ul>
+ *     <li> {@value #TABLE_TRACKS}: one row per track, with the columns specified in tasks.exportTable.trackColumns,
+ *     <li> {@value #TABLE_PLAYLISTS}: one row per playlist, with the columns specified in tasks.exportTable.playlistColumns,
+ *     <li> {@value #TABLE_PLAYLIST_TRACKS}: one row per track in a playlist,
+ *     with the persistent id of the playlist, the position of the track in the playlist (starting at 1),
+ *     and the track id and persistent id of the track.
+ * </ul>
+ * The rows are streamed to the files using {@link TableWriter}.
+ */
+public class ExportTableTask extends Task
+{
+    /**
+     * The table of tracks.
+     */
+    public static final String TABLE_TRACKS = "tracks";
+
+    /**
+     * The table of playlists.
+     */
+    public static final String TABLE_PLAYLISTS = "playlists";
+
+    /**
+     * The table of the membership of tracks in playlists.
+     */
+    public static final String TABLE_PLAYLIST_TRACKS = "playlistTracks";
+
+    /**
+     * The columns of the table {@value #TABLE_PLAYLIST_TRACKS}.
+     */
+    private static final List<String> PLAYLIST_TRACKS_COLUMNS = List.of("playlistPersistentId", "position", "trackId", "trackPersistentId");
+
+    /**
+     * The settings used for this task.
+     */
+    private ExportTableTaskSettings settings;
+
+    @Override
+    public String getTaskName ()
+    {
+        return "exportTable";
+    }
+
+    @Override
+    public String getDescription ()
+    {
+        return "exports tracks and playlists as CSV or JSON Lines files";
+    }
+
+    @Override
+    public void initialize (Library library, RawTaskSettings rawTaskSettings)
+    {
+        super.initialize(library, rawTaskSettings);
+
+        // Convert the RawTaskSettings into settings for this type of task.
+        settings = new ExportTableTaskSettings(rawTaskSettings);
+    }
+
+    @Override
+    public void reportProblems ()
+    {
+        // Check that this task has been initialized.
+        super.reportProblems();
+
+        // Settings should now be non-null.
+        if (settings == null)
+        {
+            throw new RuntimeException("Settings have not been initialized for Task " + getTaskName());
+        }
+
+        // Report if we are using default settings.
+        if (settings.isDefault())
+        {
+            Logging.getLogger().warning("No settings for task " + getTaskName() + " have been specified in the .yaml file, using all default settings from now on");
+        }
+        else
+        {
+            // Report settings that are specified in the .yaml file, but not actually used by this task.
+            for (String key : settings.unusedSettings())
+            {
+                Logging.getLogger().warning("Setting for key \"" + settings.getYamlPath(key) + "\""
+                        + " specified in .yaml file, but it is not used by iExport");
+            }
+        }
+    }
+
+    @Override
+    public void run ()
+    {
+        // Validate all settings before writing anything.
+        String format = settings.getFormat();
+        if (!format.equals(TableWriter.FORMAT_CSV) && !format.equals(TableWriter.FORMAT_JSON_LINES))
+        {
+            throw new RuntimeException("Unknown format \"" + format + "\" for " + settings.getYamlPath("format")
+                    + ", expected one of " + List.of(TableWriter.FORMAT_CSV, TableWriter.FORMAT_JSON_LINES));
+        }
+
+        List<String> tables = settings.getTables();
+        for (String table : tables)
+        {
+            if (!List.of(TABLE_TRACKS, TABLE_PLAYLISTS, TABLE_PLAYLIST_TRACKS).contains(table))
+            {
+                throw new RuntimeException("Unknown table \"" + table + "\" in " + settings.getYamlPath("tables")
+                        + ", expected one of " + List.of(TABLE_TRACKS, TABLE_PLAYLISTS, TABLE_PLAYLIST_TRACKS));
+            }
+        }
+
+        List<TrackField> trackColumns = getTrackColumns();
+        List<PlaylistColumn> playlistColumns = getPlaylistColumns();
+
+        Path outputFolder = Path.of(settings.getOutputFolder());
+        try
+        {
+            Files.createDirectories(outputFolder);
+
+            if (tables.contains(TABLE_TRACKS))
+            {
+                writeTracks(format, outputFolder, trackColumns);
+            }
+            if (tables.contains(TABLE_PLAYLISTS))
+            {
+                writePlaylists(format, outputFolder, playlistColumns);
+            }
+            if (tables.contains(TABLE_PLAYLIST_TRACKS))
+            {
+                writePlaylistTracks(format, outputFolder);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Could not write tables to " + outputFolder + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write the table {@value #TABLE_TRACKS}.
+     */
+    private void writeTracks (String format, Path outputFolder, List<TrackField> columns)
+            throws
+            IOException
+    {
+        List<String> names = columns.stream().map(TrackField::getName).toList();
+        Object[] values = new Object[columns.size()];
+
+        try (TableWriter writer = TableWriter.open(format, outputFolder, TABLE_TRACKS, names))
+        {
+            for (Track track : library.tracks())
+            {
+                for (int i = 0; i < values.length; i++)
+                {
+                    values[i] = columns.get(i).getValue(track);
+                }
+                writer.writeRow(values);
+            }
+            report(writer, outputFolder, TABLE_TRACKS, format);
+        }
+    }
+
+    /**
+     * Write the table {@value #TABLE_PLAYLISTS}.
+     */
+    private void writePlaylists (String format, Path outputFolder, List<PlaylistColumn> columns)
+            throws
+            IOException
+    {
+        List<String> names = columns.stream().map(PlaylistColumn::getName).toList();
+        Object[] values = new Object[columns.size()];
+
+        try (TableWriter writer = TableWriter.open(format, outputFolder, TABLE_PLAYLISTS, names))
+        {
+            for (Playlist playlist : library.playlists())
+            {
+                for (int i = 0; i < values.length; i++)
+                {
+                    values[i] = columns.get(i).getValue(playlist);
+                }
+                writer.writeRow(values);
+            }
+            report(writer, outputFolder, TABLE_PLAYLISTS, format);
+        }
+    }
+
+    /**
+     * Write the table {@value #TABLE_PLAYLIST_TRACKS}.
+     */
+    private void writePlaylistTracks (String format, Path outputFolder)
+            throws
+            IOException
+    {
+        Object[] values = new Object[PLAYLIST_TRACKS_COLUMNS.size()];
+
+        try (TableWriter writer = TableWriter.open(format, outputFolder, TABLE_PLAYLIST_TRACKS, PLAYLIST_TRACKS_COLUMNS))
+        {
+            for (Playlist playlist : library.playlists())
+            {
+                int position = 1;
+                for (Track track : playlist.tracks())
+                {
+                    values[0] = playlist.playlistPersistentId();
+                    values[1] = position++;
+                    values[2] = track.trackId();
+                    values[3] = track.persistentId();
+                    writer.writeRow(values);
+                }
+            }
+            report(writer, outputFolder, TABLE_PLAYLIST_TRACKS, format);
+        }
+    }
+
+    /**
+     * Log the number of rows that have been written to a table.
+     */
+    private static void report (TableWriter writer, Path outputFolder, String table, String format)
+    {
+        Logging.getLogger().message("Wrote " + writer.getRowCount() + " rows to " + outputFolder.resolve(table + "." + format));
+    }
+
+    /**
+     * @return the columns specified in tasks.exportTable.trackColumns
+     */
+    private List<TrackField> getTrackColumns ()
+    {
+        List<String> names = settings.getTrackColumns();
+        if (names.isEmpty())
+        {
+            return Arrays.asList(TrackField.values());
+        }
+
+        List<TrackField> columns = new ArrayList<>();
+        for (String name : names)
+        {
+            TrackField field = TrackField.forName(name);
+            if (field == null)
+            {
+                throw new RuntimeException("Unknown column \"" + name + "\" in " + settings.getYamlPath("trackColumns")
+                        + ", expected one of " + TrackField.getNames());
+            }
+            columns.add(field);
+        }
+        return columns;
+    }
+
+    /**
+     * @return the columns specified in tasks.exportTable.playlistColumns
+     */
+    private List<PlaylistColumn> getPlaylistColumns ()
+    {
+        List<String> names = settings.getPlaylistColumns();
+        if (names.isEmpty())
+        {
+            return Arrays.asList(PlaylistColumn.values());
+        }
+
+        List<PlaylistColumn> columns = new ArrayList<>();
+        for (String name : names)
+        {
+            PlaylistColumn column = PlaylistColumn.forName(name);
+            if (column == null)
+            {
+                throw new RuntimeException("Unknown column \"" + name + "\" in " + settings.getYamlPath("playlistColumns")
+                        + ", expected one of " + PlaylistColumn.getNames());
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.tableexport;
+
+import iexport.settings.RawTaskSettings;
+import iexport.settings.Settings;
+import iexport.settings.TaskSettings;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Settings for {@link ExportTableTask}.
+ */
+public class ExportTableTaskSettings extends TaskSettings
+{
+    /**
+     * Default settings for the exportTable task
+     */
+    private static final Map<String, Object> EXPORT_TABLE_DEFAULT_SETTINGS = new HashMap<>();
+
+    /**
+     * tasks.exportTable.outputFolder
+     * <p>
+     * The folder to which the tables should be written; it will be created if it does not exist.
+     * Supports the %USERPROFILE% placeholder, which will typically get replaced by "C:\Users\<USERNAME>".
+     */
+    private static final String SETTING_OUTPUT_FOLDER = "outputFolder";
+
+    /**
+     * Default value for tasks.exportTable.outputFolder
+     */
+    private static final String SETTING_OUTPUT_FOLDER_DEFAULT_VALUE = "%USERPROFILE%\\Desktop\\iExport\\Tables";
+
+    /**
+     * tasks.exportTable.format
+     * <p>
+     * The format of the tables: "csv" or "jsonl" (JSON Lines).
+     */
+    private static final String SETTING_FORMAT = "format";
+
+    /**
+     * Default value for tasks.exportTable.format
+     */
+    private static final String SETTING_FORMAT_DEFAULT_VALUE = "csv";
+
+    /**
+     * tasks.exportTable.tables
+     * <p>
+     * The tables that should be written: "tracks", "playlists", and/or "playlistTracks" (the membership of tracks in playlists).
+     */
+    private static final String SETTING_TABLES = "tables";
+
+    /**
+     * Default value for tasks.exportTable.tables
+     */
+    private static final List<String> SETTING_TABLES_DEFAULT_VALUE = List.of("tracks", "playlists", "playlistTracks");
+
+    /**
+     * tasks.exportTable.trackColumns
+     * <p>
+     * The columns of the track table, named as in {@link iexport.itunes.TrackField}, or an empty list for all columns.
+     */
+    private static final String SETTING_TRACK_COLUMNS = "trackColumns";
+
+    /**
+     * Default value for tasks.exportTable.trackColumns
+     */
+    private static final List<String> SETTING_TRACK_COLUMNS_DEFAULT_VALUE = List.of("trackId", "persistentId", "name", "artist", "albumArtist", "album", "genre", "year", "totalTime", "size", "playCount", "rating", "dateAdded", "location");
+
+    /**
+     * tasks.exportTable.playlistColumns
+     * <p>
+     * The columns of the playlist table, named as in {@link PlaylistColumn}, or an empty list for all columns.
+     */
+    private static final String SETTING_PLAYLIST_COLUMNS = "playlistColumns";
+
+    /**
+     * Default value for tasks.exportTable.playlistColumns
+     */
+    private static final List<String> SETTING_PLAYLIST_COLUMNS_DEFAULT_VALUE = List.of(); // empty list
+
+    static
+    {
+        // Set default values.
+        EXPORT_TABLE_DEFAULT_SETTINGS.put(SETTING_OUTPUT_FOLDER, SETTING_OUTPUT_FOLDER_DEFAULT_VALUE);
+        EXPORT_TABLE_DEFAULT_SETTINGS.put(SETTING_FORMAT, SETTING_FORMAT_DEFAULT_VALUE);
+        EXPORT_TABLE_DEFAULT_SETTINGS.put(SETTING_TABLES, SETTING_TABLES_DEFAULT_VALUE);
+        EXPORT_TABLE_DEFAULT_SETTINGS.put(SETTING_TRACK_COLUMNS, SETTING_TRACK_COLUMNS_DEFAULT_VALUE);
+        EXPORT_TABLE_DEFAULT_SETTINGS.put(SETTING_PLAYLIST_COLUMNS, SETTING_PLAYLIST_COLUMNS_DEFAULT_VALUE);
+    }
+
+    /**
+     * Convert raw task settings into settings for {@link ExportTableTask}.
+     *
+     * @param rawTaskSettings the raw task settings
+     */
+    public ExportTableTaskSettings (RawTaskSettings rawTaskSettings)
+    {
+        super(rawTaskSettings);
+    }
+
+    @Override
+    public Set<String> unusedSettings ()
+    {
+        return getUserSpecifiedKeys().stream().filter(Predicate.not(EXPORT_TABLE_DEFAULT_SETTINGS::containsKey)).collect(Collectors.toSet());
+    }
+
+    /**
+     * Also replace %USERPROFILE% using {@link Settings#applyUserProfileReplacement(String)}.
+     *
+     * @return tasks.exportTable.outputFolder
+     */
+    public String getOutputFolder ()
+    {
+        String key = SETTING_OUTPUT_FOLDER;
+        Object result = getValueFor(key);
+
+        try
+        {
+            String resultString = (String) result;
+            return Settings.applyUserProfileReplacement(resultString);
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.exportTable.format
+     */
+    public String getFormat ()
+    {
+        String key = SETTING_FORMAT;
+        Object result = getValueFor(key);
+
+        try
+        {
+            return (String) result;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected a string, but got " + result.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return tasks.exportTable.tables
+     */
+    public List<String> getTables ()
+    {
+        String key = SETTING_TABLES;
+        Object result = getValueFor(key);
+
+        try
+        {
+            // Type erasure yada yada
+            @SuppressWarnings("unchecked")
+            List<String> resultList = (List<String>) result;
+            return resultList;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.exportTable.trackColumns
+     */
+    public List<String> getTrackColumns ()
+    {
+        String key = SETTING_TRACK_COLUMNS;
+        Object result = getValueFor(key);
+
+        try
+        {
+            // Type erasure yada yada
+            @SuppressWarnings("unchecked")
+            List<String> resultList = (List<String>) result;
+            return resultList;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got null");
+        }
+    }
+
+    /**
+     * @return tasks.exportTable.playlistColumns
+     */
+    public List<String> getPlaylistColumns ()
+    {
+        String key = SETTING_PLAYLIST_COLUMNS;
+        Object result = getValueFor(key);
+
+        try
+        {
+            // Type erasure yada yada
+            @SuppressWarnings("unchecked")
+            List<String> resultList = (List<String>) result;
+            return resultList;
+        }
+        catch (ClassCastException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got " + result.getClass().getSimpleName());
+        }
+        catch (NullPointerException e)
+        {
+            throw new RuntimeException(this.getClass().getSimpleName() + ": invalid entry for " + getYamlPath(key)
+                    + ", expected an array of strings, but got null");
+        }
+    }
+
+    protected Object getDefaultValueFor (String key)
+    {
+        return EXPORT_TABLE_DEFAULT_SETTINGS.get(key);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.tableexport;
+
+import iexport.utils.JsonFormatter;
+
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes a table as JSON Lines file: one JSON object per row and line, mapping the column names to the values.
+ * Missing values are written as {@code null}.
+ */
+public class JsonLinesTableWriter extends TableWriter
+{
+    /**
+     * @param writer  the writer for the file
+     * @param columns the names of the columns
+     */
+    JsonLinesTableWriter (Writer writer, List<String> columns)
+    {
+        super(writer, columns);
+    }
+
+    @Override
+    protected void formatRow (Object[] values)
+    {
+        line.append('{');
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                line.append(", ");
+            }
+            JsonFormatter.appendQuoted(line, columns.get(i));
+            line.append(": ");
+
+            Object value = values[i];
+            if (value == null)
+            {
+                line.append("null");
+            }
+            else if (value instanceof Number || value instanceof Boolean)
+            {
+                line.append(value);
+            }
+            else if (value instanceof Date date)
+            {
+                line.append('"').append(date.toInstant()).append('"');
+            }
+            else
+            {
+                JsonFormatter.appendQuoted(line, value.toString());
+            }
+        }
+        line.append('}');
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.tableexport;
+
+import iexport.itunes.Playlist;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The columns of the playlist table written by {@link ExportTableTask}.
+ */
+public enum PlaylistColumn
+{
+    PLAYLIST_ID("playlistId", Playlist::playlistId),
+    PLAYLIST_PERSISTENT_ID("playlistPersistentId", Playlist::playlistPersistentId),
+    NAME("name", Playlist::name),
+    PARENT_PERSISTENT_ID("parentPersistentId", Playlist::parentPersistentId),
+    PATH("path", (playlist) -> playlist.ancestry().stream().map(Playlist::name).collect(Collectors.joining("/"))),
+    DEPTH("depth", Playlist::depth),
+    FOLDER("folder", Playlist::isFolder),
+    DISTINGUISHED_KIND("distinguishedKind", Playlist::distinguishedKind),
+    TRACK_COUNT("trackCount", Playlist::getNumberOfTracks);
+
+    /**
+     * The columns by their name in lower case.
+     */
+    private static final Map<String, PlaylistColumn> COLUMNS_BY_NAME = new HashMap<>();
+
+    static
+    {
+        for (PlaylistColumn column : values())
+        {
+            COLUMNS_BY_NAME.put(column.name.toLowerCase(Locale.ROOT), column);
+        }
+    }
+
+    /**
+     * The name of the column.
+     */
+    private final String name;
+
+    /**
+     * Function computing the value of the column for a playlist.
+     */
+    private final Function<Playlist, Object> accessor;
+
+    /**
+     * @param name     the name of the column
+     * @param accessor function computing the value of the column for a playlist
+     */
+    PlaylistColumn (String name, Function<Playlist, Object> accessor)
+    {
+        this.name = name;
+        this.accessor = accessor;
+    }
+
+    /**
+     * Look up a column by its name, ignoring case.
+     *
+     * @param name the name of a column
+     * @return the column, or null if there is no column of that name
+     */
+    public static PlaylistColumn forName (String name)
+    {
+        return COLUMNS_BY_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the names of all columns
+     */
+    public static List<String> getNames ()
+    {
+        return Arrays.stream(values()).map(PlaylistColumn::getName).toList();
+    }
+
+    /**
+     * @return the name of the column
+     */
+    public String getName ()
+    {
+        return name;
+    }
+
+    /**
+     * @param playlist a playlist
+     * @return the value of the column for the playlist (may be null)
+     */
+    public Object getValue (Playlist playlist)
+    {
+        return accessor.apply(playlist);
+    }
+}
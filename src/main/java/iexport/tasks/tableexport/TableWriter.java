@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.tasks.tableexport;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes a table row by row to a file.
+ * <p>
+ * Rows are formatted into a single reused buffer and then handed to a {@link BufferedWriter},
+ * so writing a row creates no intermediate strings and the file is written in large blocks.
+ * <p>
+ * Values are written as follows:
+ * <ul>
+ *     <li> {@link Number} and {@link Boolean} as they are,
+ *     <li> {@link Date} as ISO-8601 instant, e.g. {@code 2022-06-17T20:48:49Z},
+ *     <li> everything else as string,
+ *     <li> null as missing value.
+ * </ul>
+ */
+public abstract class TableWriter implements AutoCloseable
+{
+    /**
+     * Output CSV files.
+     */
+    public static final String FORMAT_CSV = "csv";
+
+    /**
+     * Output JSON Lines files.
+     */
+    public static final String FORMAT_JSON_LINES = "jsonl";
+
+    /**
+     * The size of the buffer of the underlying {@link BufferedWriter}.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The names of the columns.
+     */
+    protected final List<String> columns;
+
+    /**
+     * The buffer into which the current row is formatted.
+     */
+    protected final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * The writer for the file.
+     */
+    private final Writer writer;
+
+    /**
+     * The number of rows that have been written (excluding headers).
+     */
+    private long rowCount = 0;
+
+    /**
+     * Open a writer for a table.
+     *
+     * @param format  the format, {@value #FORMAT_CSV} or {@value #FORMAT_JSON_LINES}
+     * @param folder  the folder in which the file should be created
+     * @param name    the name of the table, used as file name (without extension)
+     * @param columns the names of the columns
+     * @return the writer
+     * @throws IOException if the file cannot be created
+     */
+    public static TableWriter open (String format, Path folder, String name, List<String> columns)
+            throws
+            IOException
+    {
+        Path file = folder.resolve(name + "." + format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        TableWriter tableWriter = switch (format)
+                {
+                    case FORMAT_CSV -> new CsvTableWriter(writer, columns);
+                    case FORMAT_JSON_LINES -> new JsonLinesTableWriter(writer, columns);
+                    default -> throw new IllegalArgumentException("Unknown format " + format);
+                };
+        tableWriter.writeHeader();
+        return tableWriter;
+    }
+
+    /**
+     * @param writer  the writer for the file
+     * @param columns the names of the columns
+     */
+    protected TableWriter (Writer writer, List<String> columns)
+    {
+        this.writer = writer;
+        this.columns = columns;
+    }
+
+    /**
+     * Write a row.
+     *
+     * @param values the values of the row, one per column
+     * @throws IOException if writing fails
+     */
+    public void writeRow (Object[] values)
+            throws
+            IOException
+    {
+        line.setLength(0);
+        formatRow(values);
+        line.append('\n');
+        writer.append(line);
+        rowCount++;
+    }
+
+    /**
+     * @return the number of rows that have been written
+     */
+    public long getRowCount ()
+    {
+        return rowCount;
+    }
+
+    @Override
+    public void close ()
+            throws
+            IOException
+    {
+        writer.close();
+    }
+
+    /**
+     * Write the header of the file, if the format has one.
+     *
+     * @throws IOException if writing fails
+     */
+    protected void writeHeader ()
+            throws
+            IOException
+    {
+    }
+
+    /**
+     * Write a line that is not a row, e.g. a header.
+     *
+     * @throws IOException if writing fails
+     */
+    protected void writeLine ()
+            throws
+            IOException
+    {
+        line.append('\n');
+        writer.append(line);
+    }
+
+    /**
+     * Format a row into {@link #line}, without the line break.
+     *
+     * @param values the values of the row, one per column
+     */
+    protected abstract void formatRow (Object[] values);
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.utils;
+
+/**
+ * A static class for formatting numbers of bytes in a human-readable way.
+ */
+public class ByteFormatter
+{
+    /**
+     * The units, each 1024 times the previous one.
+     */
+    private static final String[] UNITS = {"B", "KiB", "MiB", "GiB", "TiB", "PiB"};
+
+    /**
+     * Format a number of bytes using binary units, e.g. {@code 1536} becomes {@code "1.5 KiB"}.
+     *
+     * @param bytes the number of bytes
+     * @return the formatted string
+     */
+    public static String format (long bytes)
+    {
+        if (bytes < 1024)
+        {
+            return bytes + " " + UNITS[0];
+        }
+
+        double value = bytes;
+        int unit = 0;
+        while (value >= 1024 && unit < UNITS.length - 1)
+        {
+            value /= 1024;
+            unit++;
+        }
+
+        return String.format("%.1f %s", value, UNITS[unit]);
+    }
+
+    /**
+     * Do not instantiate this class.
+     */
+    private ByteFormatter ()
+    {
+    }
+}
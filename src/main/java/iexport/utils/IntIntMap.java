@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.utils;
+
+import java.util.Arrays;
+
+/**
+ * A map from {@code int} keys to non-negative {@code int} values, e.g. from Track IDs to the positions of the tracks in a list.
+ * <p>
+ * The map uses open addressing with linear probing in two parallel arrays, so neither keys nor values are boxed.
+ * It does not support removing keys.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class IntIntMap
+{
+    /**
+     * The value returned by {@link #get(int)} for keys that are not contained in the map.
+     */
+    public static final int ABSENT = -1;
+
+    /**
+     * The maximal ratio of used slots before the table is grown.
+     */
+    private static final double MAX_LOAD = 0.5;
+
+    /**
+     * The key in each slot.
+     */
+    private int[] keys;
+
+    /**
+     * The value in each slot, {@link #ABSENT} for empty slots.
+     */
+    private int[] values;
+
+    /**
+     * The number of keys.
+     */
+    private int size = 0;
+
+    public IntIntMap ()
+    {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize the number of keys that the map should be able to hold without growing
+     */
+    public IntIntMap (int expectedSize)
+    {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize && capacity < 1 << 30)
+        {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @param key a key
+     * @return the value of the key, or {@link #ABSENT} if the map does not contain the key
+     */
+    public int get (int key)
+    {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask)
+        {
+            if (values[slot] == ABSENT)
+            {
+                return ABSENT;
+            }
+            if (keys[slot] == key)
+            {
+                return values[slot];
+            }
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return true iff the map contains the key
+     */
+    public boolean containsKey (int key)
+    {
+        return get(key) != ABSENT;
+    }
+
+    /**
+     * Associate a value with a key, unless the key already has a value.
+     *
+     * @param key   the key
+     * @param value the value, must not be negative
+     * @return the previous value of the key, or {@link #ABSENT} if the value has been associated with the key
+     */
+    public int putIfAbsent (int key, int value)
+    {
+        if (value < 0)
+        {
+            throw new IllegalArgumentException("Negative value " + value + " for key " + key);
+        }
+
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        for (; values[slot] != ABSENT; slot = (slot + 1) & mask)
+        {
+            if (keys[slot] == key)
+            {
+                return values[slot];
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        if (size > MAX_LOAD * keys.length)
+        {
+            grow();
+        }
+        return ABSENT;
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * Remove all keys.
+     */
+    public void clear ()
+    {
+        allocate(16);
+        size = 0;
+    }
+
+    /**
+     * Allocate empty tables.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate (int capacity)
+    {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, ABSENT);
+    }
+
+    /**
+     * Double the number of slots and re-insert all keys.
+     */
+    private void grow ()
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(2 * oldKeys.length);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldValues[i] != ABSENT)
+            {
+                int slot = slot(oldKeys[i], mask);
+                while (values[slot] != ABSENT)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * @param key  a key
+     * @param mask the number of slots minus one
+     * @return the first slot to probe for the key
+     */
+    private static int slot (int key, int mask)
+    {
+        // Track IDs are often consecutive, spread them so that runs of keys do not form long clusters.
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package iexport.utils;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A growable list of {@code int}s, stored in an array without boxing.
+ * <p>
+ * It replaces {@code List<Integer>} where millions of small numbers (e.g. Track IDs) are stored,
+ * which would otherwise cost an object and a pointer per element.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class IntList
+{
+    /**
+     * The elements, followed by unused capacity.
+     */
+    private int[] elements;
+
+    /**
+     * The number of elements.
+     */
+    private int size = 0;
+
+    public IntList ()
+    {
+        this(16);
+    }
+
+    /**
+     * @param capacity the initial capacity
+     */
+    public IntList (int capacity)
+    {
+        elements = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Append an element.
+     *
+     * @param element the element
+     */
+    public void add (int element)
+    {
+        if (size == elements.length)
+        {
+            elements = Arrays.copyOf(elements, 2 * size);
+        }
+        elements[size++] = element;
+    }
+
+    /**
+     * Append all elements of another list.
+     *
+     * @param other the other list
+     */
+    public void addAll (IntList other)
+    {
+        if (size + other.size > elements.length)
+        {
+            elements = Arrays.copyOf(elements, Math.max(2 * elements.length, size + other.size));
+        }
+        System.arraycopy(other.elements, 0, elements, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * @param index the index of an element
+     * @return the element
+     * @throws IndexOutOfBoundsException if there is no element with this index
+     */
+    public int get (int index)
+    {
+        if (index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return elements[index];
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int size ()
+    {
+        return size;
+    }
+
+    /**
+     * @return true iff the list has no elements
+     */
+    public boolean isEmpty ()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return an iterator over the elements that does not box them
+     */
+    public PrimitiveIterator.OfInt iterator ()
+    {
+        return new PrimitiveIterator.OfInt()
+        {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext ()
+            {
+                return index < size;
+            }
+
+            @Override
+            public int nextInt ()
+            {
+                if (index >= size)
+                {
+                    throw new NoSuchElementException();
+                }
+                return elements[index++];
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the elements
+     */
+    public int[] toArray ()
+    {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014-2022 Sebastian Muskalla
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package iexport.utils;
+
+/**
+ * A static class for formatting values as JSON.
+ * <p>
+ * iExport only writes small, flat JSON documents, so we do not depend on a JSON library.
+ */
+public class JsonFormatter
+{
+    /**
+     * Format a string as JSON string literal, escaping quotes, backslashes, and control characters.
+     *
+     * @param string the string (may be null)
+     * @return the JSON string literal, or {@code null} if the string is null
+     */
+    public static String quote (String string)
+    {
+        StringBuilder result = new StringBuilder(string == null ? 4 : string.length() + 2);
+        appendQuoted(result, string);
+        return result.toString();
+    }
+
+    /**
+     * Append a string as JSON string literal to a buffer, see {@link #quote(String)}.
+     * <p>
+     * Appending to a reused buffer avoids creating intermediate strings when writing many values.
+     *
+     * @param buffer the buffer
+     * @param string the string (may be null)
+     */
+    public static void appendQuoted (StringBuilder buffer, String string)
+    {
+        if (string == null)
+        {
+            buffer.append("null");
+            return;
+        }
+
+        buffer.append('"');
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            switch (c)
+            {
+                case '"' -> buffer.append("\\\"");
+                case '\\' -> buffer.append("\\\\");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                case '\t' -> buffer.append("\\t");
+                default ->
+                {
+                    if (c < 0x20)
+                    {
+                        buffer.append("\\u");
+                        String hex = Integer.toHexString(c);
+                        buffer.append("0".repeat(4 - hex.length())).append(hex);
+                    }
+                    else
+                    {
+                        buffer.append(c);
+                    }
+                }
+            }
+        }
+        buffer.append('"');
+    }
+
+    /**
+     * Do not instantiate this class.
+     */
+    private JsonFormatter ()
+    {
+    }
+}
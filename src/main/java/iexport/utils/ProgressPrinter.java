@@ -17,6 +17,8 @@
 
 package iexport.utils;
 
+import iexport.logging.Logging;
+
 import java.io.PrintStream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -36,6 +38,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * and a message.
  * <p>
  * The whole line is truncated to 80 characters.
+ * <p>
+ * Updates may come from several threads; they are serialized.
  */
 public class ProgressPrinter
 {
@@ -98,7 +102,7 @@ public class ProgressPrinter
      * @param newValue the new value
      * @param message  the message that should be printed
      */
-    public void update (long newValue, String message)
+    public synchronized void update (long newValue, String message)
     {
         // If the progress has already been completed, we accept no additional updates
         if (done)
@@ -152,7 +156,8 @@ public class ProgressPrinter
             display += " ".repeat(MAX_CHARACTERS - display.length());
         }
 
-        // Print it
+        // Print it, after the messages that have been logged before
+        Logging.getLogger().flush();
         OUT.print(display);
 
         // If we are done, also append a newline a print "Done!"